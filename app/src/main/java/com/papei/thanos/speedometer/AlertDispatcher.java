@@ -0,0 +1,344 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.speech.tts.TextToSpeech;
+import android.widget.Toast;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Plays sound, toast and text to speech alerts on a dedicated thread,
+ * so that the detection path never waits for audio.
+ */
+public final class AlertDispatcher {
+    /**
+     * The minimum time between two violation beeps.
+     */
+    private static final long MIN_BEEP_INTERVAL_MILLIS = 1_000;
+
+    /**
+     * The minimum time between two spoken violation messages.
+     */
+    private static final long MIN_SPEECH_INTERVAL_MILLIS = 10_000;
+
+    /**
+     * The minimum time between two pre alert beeps.
+     */
+    private static final long MIN_PRE_ALERT_INTERVAL_MILLIS = 5_000;
+
+    /**
+     * The application context.
+     */
+    private final Context context;
+
+    /**
+     * The thread that plays all alerts.
+     */
+    private final HandlerThread thread;
+
+    /**
+     * The handler of the alert thread.
+     */
+    private final Handler handler;
+
+    /**
+     * The handler of the main thread, used for toasts.
+     */
+    private final Handler mainHandler;
+
+    /**
+     * The flight recorder that logs played alerts.
+     */
+    private final FlightRecorder flightRecorder;
+
+    /**
+     * Whether a violation alert is queued and not played yet.
+     */
+    private final AtomicBoolean violationPending = new AtomicBoolean(false);
+
+    /**
+     * The detection time of the oldest coalesced violation, in elapsed realtime nanos.
+     */
+    private volatile long pendingDetectionTime;
+
+    /**
+     * The sound pool that holds the preloaded beep sound.
+     */
+    private SoundPool soundPool;
+
+    /**
+     * The sound pool ID of the beep sound.
+     */
+    private int beepSoundId;
+
+    /**
+     * Whether the beep sound has finished loading.
+     */
+    private volatile boolean beepLoaded = false;
+
+    /**
+     * Whether a beep was requested before the sound finished loading. Only used on the alert thread.
+     */
+    private boolean beepQueued = false;
+
+    /**
+     * The detection time of the queued violation beep in elapsed realtime nanos, or 0 if the
+     * queued beep is not a violation. Only used on the alert thread.
+     */
+    private long queuedDetectionTime = 0;
+
+    /**
+     * The text to speech reference.
+     */
+    private volatile TextToSpeech tts;
+
+    /**
+     * Whether text to speech has finished initializing.
+     */
+    private volatile boolean ttsReady = false;
+
+    /**
+     * The text waiting for text to speech to become ready.
+     */
+    private String pendingSpeech;
+
+    /**
+     * The utterance ID of the text waiting for text to speech.
+     */
+    private String pendingUtteranceId;
+
+    /**
+     * The elapsed realtime of the last violation beep.
+     */
+    private long lastBeepTime = -MIN_BEEP_INTERVAL_MILLIS;
+
+    /**
+     * The elapsed realtime of the last spoken violation message.
+     */
+    private long lastSpeechTime = -MIN_SPEECH_INTERVAL_MILLIS;
+
+    /**
+     * The elapsed realtime of the last pre alert beep.
+     */
+    private long lastPreAlertTime = -MIN_PRE_ALERT_INTERVAL_MILLIS;
+
+    /**
+     * Default constructor.
+     *
+     * @param context The current context.
+     */
+    public AlertDispatcher(Context context) {
+        this.context = context.getApplicationContext();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.flightRecorder = FlightRecorder.getInstance(context);
+
+        this.thread = new HandlerThread("AlertDispatcher", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        this.thread.start();
+        this.handler = new Handler(this.thread.getLooper());
+
+        // Load the sound and warm up text to speech before the first alert.
+        this.handler.post(this::prepare);
+    }
+
+    /**
+     * Plays the beep sound once, without rate limits.
+     */
+    public void playBeep() {
+        this.handler.post(() -> this.beep(0));
+    }
+
+    /**
+     * Queues a violation alert. Alerts that arrive while another one is still
+     * queued are merged into it.
+     *
+     * @param detectionTime The elapsed realtime nanos when the violation was detected.
+     */
+    public void dispatchViolation(long detectionTime) {
+        if (this.violationPending.compareAndSet(false, true)) {
+            this.pendingDetectionTime = detectionTime;
+            this.handler.post(this::playViolation);
+        } else {
+            PerformanceMetrics.getInstance().increment(PerformanceMetrics.ALERTS_COALESCED);
+        }
+    }
+
+    /**
+     * Queues a pre alert, a softer and higher beep that warns that the speed limit is about
+     * to be exceeded.
+     */
+    public void dispatchPreAlert() {
+        this.handler.post(this::playPreAlert);
+    }
+
+    /**
+     * Queues a text to speech message.
+     *
+     * @param text The text to speak.
+     * @param utteranceId The utterance ID of the message.
+     */
+    public void speak(String text, String utteranceId) {
+        this.handler.post(() -> this.speakNow(text, utteranceId));
+    }
+
+    /**
+     * Stops the alert thread and releases all audio resources.
+     */
+    public void release() {
+        this.handler.post(() -> {
+            if (this.soundPool != null) {
+                this.soundPool.release();
+            }
+
+            if (this.tts != null) {
+                this.tts.shutdown();
+            }
+        });
+
+        this.thread.quitSafely();
+    }
+
+    private void prepare() {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+
+        this.soundPool = new SoundPool.Builder()
+                .setMaxStreams(2)
+                .setAudioAttributes(attributes)
+                .build();
+
+        // The pool was created on the alert thread, so the load callback runs on it too.
+        this.soundPool.setOnLoadCompleteListener(
+                (pool, sampleId, status) -> this.onBeepLoaded(status == 0));
+
+        this.beepSoundId = this.soundPool.load(this.context, R.raw.beep, 1);
+
+        this.tts = new TextToSpeech(this.context, status -> {
+            if (status == TextToSpeech.SUCCESS) {
+                this.handler.post(this::onSpeechReady);
+            }
+        });
+    }
+
+    private void onSpeechReady() {
+        this.tts.setLanguage(Locale.US);
+        this.ttsReady = true;
+
+        // Speak anything that was requested while initializing.
+        if (this.pendingSpeech != null) {
+            this.speakNow(this.pendingSpeech, this.pendingUtteranceId);
+            this.pendingSpeech = null;
+            this.pendingUtteranceId = null;
+        }
+    }
+
+    private void onBeepLoaded(boolean loaded) {
+        this.beepLoaded = loaded;
+
+        // Play the beep that was requested while loading, such as the start beep.
+        if (loaded && this.beepQueued) {
+            long detectionTime = this.queuedDetectionTime;
+            this.beepQueued = false;
+            this.queuedDetectionTime = 0;
+
+            this.beep(detectionTime);
+        }
+    }
+
+    /**
+     * Plays the beep sound, or queues it until the sound has loaded.
+     *
+     * @param detectionTime The detection time of the violation in elapsed realtime nanos, or 0 if none.
+     * @return True if the beep was played or queued.
+     */
+    private boolean beep(long detectionTime) {
+        if (!this.beepLoaded) {
+            // Keep the oldest violation, so the measured latency includes the loading time.
+            this.beepQueued = true;
+
+            if (this.queuedDetectionTime == 0) {
+                this.queuedDetectionTime = detectionTime;
+            }
+
+            return true;
+        }
+
+        if (this.soundPool.play(this.beepSoundId, 1, 1, 1, 0, 1) == 0) {
+            return false;
+        }
+
+        if (detectionTime != 0) {
+            this.flightRecorder.recordEvent(FlightRecorder.EVENT_ALERT,
+                    SystemClock.elapsedRealtime(), System.currentTimeMillis());
+
+            // Measure the time from detection until the sound started.
+            long latency = SystemClock.elapsedRealtimeNanos() - detectionTime;
+            PerformanceMetrics.getInstance().recordLatency(
+                    PerformanceMetrics.ALERT_LATENCY, TimeUnit.NANOSECONDS.toMillis(latency));
+        }
+
+        return true;
+    }
+
+    private void playPreAlert() {
+        long now = SystemClock.elapsedRealtime();
+
+        // Skip the pre alert if a violation beep was just played. A pre alert is only useful
+        // right away, so it is not queued while the sound loads.
+        if (now - this.lastPreAlertTime < MIN_PRE_ALERT_INTERVAL_MILLIS
+                || now - this.lastBeepTime < MIN_BEEP_INTERVAL_MILLIS || !this.beepLoaded) {
+            return;
+        }
+
+        if (this.soundPool.play(this.beepSoundId, 0.5f, 0.5f, 1, 0, 1.5f) != 0) {
+            this.lastPreAlertTime = now;
+            this.flightRecorder.recordEvent(FlightRecorder.EVENT_PRE_ALERT, now, System.currentTimeMillis());
+            PerformanceMetrics.getInstance().increment(PerformanceMetrics.PRE_ALERTS);
+        }
+    }
+
+    private void playViolation() {
+        long detectionTime = this.pendingDetectionTime;
+        this.violationPending.set(false);
+
+        long now = SystemClock.elapsedRealtime();
+
+        if (now - this.lastBeepTime >= MIN_BEEP_INTERVAL_MILLIS && this.beep(detectionTime)) {
+            this.lastBeepTime = now;
+        }
+
+        if (now - this.lastSpeechTime >= MIN_SPEECH_INTERVAL_MILLIS) {
+            this.lastSpeechTime = now;
+
+            String message = this.context.getString(R.string.speed_violation);
+
+            this.mainHandler.post(() -> Toast.makeText(
+                    this.context,
+                    message,
+                    Toast.LENGTH_SHORT).show());
+
+            this.speakNow(message, "speed_violation");
+        }
+    }
+
+    private void speakNow(String text, String utteranceId) {
+        if (!this.ttsReady) {
+            // Keep only the latest message until text to speech is ready.
+            this.pendingSpeech = text;
+            this.pendingUtteranceId = utteranceId;
+            return;
+        }
+
+        this.tts.speak(text, TextToSpeech.QUEUE_ADD, null, utteranceId);
+    }
+}
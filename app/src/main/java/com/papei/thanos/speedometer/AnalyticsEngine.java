@@ -0,0 +1,478 @@
+package com.papei.thanos.speedometer;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the reports over the whole violation history in a single parallel pass. The
+ * history is split into slices on a fork/join pool, every slice fills its own partial
+ * accumulators without any sharing, and the partials are merged pairwise as the tasks join.
+ */
+public final class AnalyticsEngine {
+    /**
+     * The width of a speed histogram bin, in km/h.
+     */
+    public static final int BIN_KMH = 10;
+
+    /**
+     * The number of speed histogram bins, the last one holding every higher speed.
+     */
+    public static final int BIN_COUNT = 26;
+
+    /**
+     * The number of days in the worst day ranking.
+     */
+    public static final int WORST_DAYS = 10;
+
+    /**
+     * The smallest slice of violations handled by one task.
+     */
+    static final int MIN_SLICE = 16_384;
+
+    /**
+     * The number of seconds in a day.
+     */
+    private static final int DAY_SECONDS = 86_400;
+
+    /**
+     * The pool that runs the tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Default constructor, which runs on the common pool sized to the device cores.
+     */
+    public AnalyticsEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor with a custom pool.
+     *
+     * @param pool The pool that runs the tasks.
+     */
+    public AnalyticsEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Computes the reports of a violation history.
+     *
+     * @param history The violation history.
+     * @param zone The time zone of the hours and days.
+     * @return The report.
+     */
+    public Report compute(ViolationHistory history, ZoneId zone) {
+        int count = history.getCount();
+
+        if (count == 0) {
+            return new Report(new Partial(0), 0, Collections.emptyList());
+        }
+
+        // Look the zone offset up once per day instead of once per violation. Violations in
+        // the hours around a daylight saving change may land an hour off.
+        long firstUtcDay = Math.floorDiv(history.getMinTime(), DAY_SECONDS);
+        long lastUtcDay = Math.floorDiv(history.getMaxTime(), DAY_SECONDS);
+        int[] offsets = new int[(int) (lastUtcDay - firstUtcDay + 1)];
+        ZoneRules rules = zone.getRules();
+
+        for (int i = 0; i < offsets.length; i++) {
+            Instant noon = Instant.ofEpochSecond((firstUtcDay + i) * DAY_SECONDS + DAY_SECONDS / 2);
+            offsets[i] = rules.getOffset(noon).getTotalSeconds();
+        }
+
+        // Local days can be one day before or after the UTC days.
+        long firstLocalDay = firstUtcDay - 1;
+        int days = offsets.length + 2;
+        int slice = Math.max(MIN_SLICE, count / (this.pool.getParallelism() * 4));
+
+        Partial total = this.pool.invoke(new Task(history, 0, count, slice, offsets, firstUtcDay, firstLocalDay, days));
+
+        return new Report(total, firstLocalDay, rankDays(total, firstLocalDay));
+    }
+
+    /**
+     * Ranks the days with the most violations, breaking ties by the highest speed.
+     */
+    private static List<Day> rankDays(Partial total, long firstLocalDay) {
+        int[] ranked = new int[WORST_DAYS];
+        int size = 0;
+
+        for (int day = 0; day < total.dayCounts.length; day++) {
+            if (total.dayCounts[day] == 0) {
+                continue;
+            }
+
+            // Insert into the short sorted ranking, dropping the last day if it is full.
+            int position = size;
+
+            while (position > 0 && worse(total, day, ranked[position - 1])) {
+                position--;
+            }
+
+            if (position < WORST_DAYS) {
+                int end = Math.min(size, WORST_DAYS - 1);
+                System.arraycopy(ranked, position, ranked, position + 1, end - position);
+                ranked[position] = day;
+                size = Math.min(size + 1, WORST_DAYS);
+            }
+        }
+
+        List<Day> worst = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int day = ranked[i];
+            worst.add(new Day(firstLocalDay + day, total.dayCounts[day], total.dayMaxSpeeds[day] / 100f));
+        }
+
+        return worst;
+    }
+
+    private static boolean worse(Partial total, int day, int other) {
+        if (total.dayCounts[day] != total.dayCounts[other]) {
+            return total.dayCounts[day] > total.dayCounts[other];
+        }
+
+        return total.dayMaxSpeeds[day] > total.dayMaxSpeeds[other];
+    }
+
+    /**
+     * The aggregates of a slice of the history, merged into the aggregates of the whole.
+     */
+    private static final class Partial {
+        /**
+         * The number of violations.
+         */
+        long count = 0;
+
+        /**
+         * The sum of all speeds, in hundredths of km/h.
+         */
+        long speedSum = 0;
+
+        /**
+         * The highest speed, in hundredths of km/h.
+         */
+        int maxSpeed = 0;
+
+        /**
+         * The violations per speed bin.
+         */
+        final long[] speedBins = new long[BIN_COUNT];
+
+        /**
+         * The violations per local hour of day.
+         */
+        final long[] hours = new long[24];
+
+        /**
+         * The violations per day of week, from Monday.
+         */
+        final long[] weekdays = new long[7];
+
+        /**
+         * The violations per local day, from the first day.
+         */
+        final int[] dayCounts;
+
+        /**
+         * The highest speed per local day, in hundredths of km/h.
+         */
+        final int[] dayMaxSpeeds;
+
+        Partial(int days) {
+            this.dayCounts = new int[days];
+            this.dayMaxSpeeds = new int[days];
+        }
+
+        void merge(Partial other) {
+            this.count += other.count;
+            this.speedSum += other.speedSum;
+            this.maxSpeed = Math.max(this.maxSpeed, other.maxSpeed);
+
+            for (int i = 0; i < BIN_COUNT; i++) {
+                this.speedBins[i] += other.speedBins[i];
+            }
+
+            for (int i = 0; i < 24; i++) {
+                this.hours[i] += other.hours[i];
+            }
+
+            for (int i = 0; i < 7; i++) {
+                this.weekdays[i] += other.weekdays[i];
+            }
+
+            for (int i = 0; i < this.dayCounts.length; i++) {
+                this.dayCounts[i] += other.dayCounts[i];
+                this.dayMaxSpeeds[i] = Math.max(this.dayMaxSpeeds[i], other.dayMaxSpeeds[i]);
+            }
+        }
+    }
+
+    /**
+     * Aggregates a slice of the history, splitting it further while it is large.
+     */
+    private static final class Task extends RecursiveTask<Partial> {
+        /**
+         * The serialization version, required of every fork/join task.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The violation history.
+         */
+        private final ViolationHistory history;
+
+        /**
+         * The first violation of the slice.
+         */
+        private final int from;
+
+        /**
+         * The end of the slice, exclusive.
+         */
+        private final int to;
+
+        /**
+         * The largest slice that is not split further.
+         */
+        private final int slice;
+
+        /**
+         * The zone offset of every UTC day, in seconds.
+         */
+        private final int[] offsets;
+
+        /**
+         * The first UTC day of the history, in days since the epoch.
+         */
+        private final long firstUtcDay;
+
+        /**
+         * The first local day of the partials, in days since the epoch.
+         */
+        private final long firstLocalDay;
+
+        /**
+         * The number of local days of the partials.
+         */
+        private final int days;
+
+        Task(ViolationHistory history, int from, int to, int slice, int[] offsets, long firstUtcDay, long firstLocalDay, int days) {
+            this.history = history;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+            this.offsets = offsets;
+            this.firstUtcDay = firstUtcDay;
+            this.firstLocalDay = firstLocalDay;
+            this.days = days;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (this.to - this.from > this.slice) {
+                int middle = (this.from + this.to) >>> 1;
+                Task left = new Task(this.history, this.from, middle, this.slice, this.offsets, this.firstUtcDay, this.firstLocalDay, this.days);
+                Task right = new Task(this.history, middle, this.to, this.slice, this.offsets, this.firstUtcDay, this.firstLocalDay, this.days);
+
+                // Run the right half here while another worker may steal the left one.
+                left.fork();
+                Partial partial = right.compute();
+                partial.merge(left.join());
+
+                return partial;
+            }
+
+            Partial partial = new Partial(this.days);
+
+            for (int i = this.from; i < this.to; i++) {
+                int speed = this.history.getSpeed(i);
+                long time = this.history.getTime(i);
+                long local = time + this.offsets[(int) (Math.floorDiv(time, DAY_SECONDS) - this.firstUtcDay)];
+                long localDay = Math.floorDiv(local, DAY_SECONDS);
+                int day = (int) (localDay - this.firstLocalDay);
+
+                partial.count++;
+                partial.speedSum += speed;
+                partial.maxSpeed = Math.max(partial.maxSpeed, speed);
+                partial.speedBins[Math.min(Math.max(speed, 0) / (BIN_KMH * 100), BIN_COUNT - 1)]++;
+                partial.hours[(int) (local - localDay * DAY_SECONDS) / 3_600]++;
+
+                // The epoch started on a Thursday.
+                partial.weekdays[Math.floorMod((int) localDay + 3, 7)]++;
+                partial.dayCounts[day]++;
+                partial.dayMaxSpeeds[day] = Math.max(partial.dayMaxSpeeds[day], speed);
+            }
+
+            return partial;
+        }
+    }
+
+    /**
+     * A day in the worst day ranking.
+     */
+    public static final class Day {
+        /**
+         * The local day, in days since the epoch.
+         */
+        private final long epochDay;
+
+        /**
+         * The number of violations on the day.
+         */
+        private final int count;
+
+        /**
+         * The highest speed of the day, in km/h.
+         */
+        private final float maxSpeed;
+
+        /**
+         * Default constructor.
+         *
+         * @param epochDay The local day, in days since the epoch.
+         * @param count The number of violations on the day.
+         * @param maxSpeed The highest speed of the day, in km/h.
+         */
+        public Day(long epochDay, int count, float maxSpeed) {
+            this.epochDay = epochDay;
+            this.count = count;
+            this.maxSpeed = maxSpeed;
+        }
+
+        /**
+         * Gets the date of the day.
+         *
+         * @return The local date.
+         */
+        public LocalDate getDate() {
+            return LocalDate.ofEpochDay(this.epochDay);
+        }
+
+        /**
+         * Gets the number of violations on the day.
+         *
+         * @return The violation count.
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the highest speed of the day.
+         *
+         * @return The speed in km/h.
+         */
+        public float getMaxSpeed() {
+            return this.maxSpeed;
+        }
+    }
+
+    /**
+     * The reports over the whole violation history.
+     */
+    public static final class Report {
+        /**
+         * The merged aggregates.
+         */
+        private final Partial total;
+
+        /**
+         * The first local day of the history, in days since the epoch.
+         */
+        private final long firstDay;
+
+        /**
+         * The days with the most violations, worst first.
+         */
+        private final List<Day> worstDays;
+
+        private Report(Partial total, long firstDay, List<Day> worstDays) {
+            this.total = total;
+            this.firstDay = firstDay;
+            this.worstDays = worstDays;
+        }
+
+        /**
+         * Gets the number of violations.
+         *
+         * @return The violation count.
+         */
+        public long getCount() {
+            return this.total.count;
+        }
+
+        /**
+         * Gets the average violation speed.
+         *
+         * @return The speed in km/h, or 0 if there are no violations.
+         */
+        public float getAverageSpeed() {
+            return this.total.count == 0 ? 0 : this.total.speedSum / 100f / this.total.count;
+        }
+
+        /**
+         * Gets the highest violation speed.
+         *
+         * @return The speed in km/h.
+         */
+        public float getMaxSpeed() {
+            return this.total.maxSpeed / 100f;
+        }
+
+        /**
+         * Gets the number of violations per speed bin of {@link #BIN_KMH} km/h.
+         *
+         * @return The bin counts. Must not be modified.
+         */
+        public long[] getSpeedHistogram() {
+            return this.total.speedBins;
+        }
+
+        /**
+         * Gets the number of violations per local hour of day.
+         *
+         * @return The 24 hour counts. Must not be modified.
+         */
+        public long[] getHourCounts() {
+            return this.total.hours;
+        }
+
+        /**
+         * Gets the number of violations per day of week.
+         *
+         * @return The 7 day counts, from Monday. Must not be modified.
+         */
+        public long[] getWeekdayCounts() {
+            return this.total.weekdays;
+        }
+
+        /**
+         * Gets the number of violations on a local day.
+         *
+         * @param date The local date.
+         * @return The violation count.
+         */
+        public int getDayCount(LocalDate date) {
+            long day = date.toEpochDay() - this.firstDay;
+            return day < 0 || day >= this.total.dayCounts.length ? 0 : this.total.dayCounts[(int) day];
+        }
+
+        /**
+         * Gets the days with the most violations.
+         *
+         * @return Up to {@link #WORST_DAYS} days, worst first.
+         */
+        public List<Day> getWorstDays() {
+            return this.worstDays;
+        }
+    }
+}
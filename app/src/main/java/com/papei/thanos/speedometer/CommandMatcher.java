@@ -0,0 +1,154 @@
+package com.papei.thanos.speedometer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Matches spoken text to voice commands through a precompiled trie of
+ * command phrases, where every phrase is a sequence of words.
+ */
+public final class CommandMatcher {
+    /**
+     * The commands that can be recognized.
+     */
+    public enum Command {
+        HOME, RECORDS, MAP, PREFERENCES
+    }
+
+    /**
+     * The root of the phrase trie.
+     */
+    private final Node root = new Node();
+
+    /**
+     * Creates a matcher with the phrases and synonyms of every navigation command. Generic
+     * words such as "main" or "list" are left out, since partial results fire on them before
+     * the rest of the sentence, as in "open the main map".
+     *
+     * @return A new command matcher.
+     */
+    public static CommandMatcher createDefault() {
+        CommandMatcher matcher = new CommandMatcher();
+
+        matcher.addPhrases(Command.HOME, "home", "main screen", "speedometer");
+        matcher.addPhrases(Command.RECORDS, "records", "violations", "history");
+        matcher.addPhrases(Command.MAP, "map", "maps", "show map", "show on map");
+        matcher.addPhrases(Command.PREFERENCES, "preferences", "preference", "settings", "speed limit");
+
+        return matcher;
+    }
+
+    /**
+     * Adds phrases that trigger a command.
+     *
+     * @param command The command triggered by the phrases.
+     * @param phrases The phrases, as words separated by spaces.
+     */
+    public void addPhrases(Command command, String... phrases) {
+        for (String phrase : phrases) {
+            Node node = this.root;
+
+            for (String word : phrase.toLowerCase(Locale.US).split(" ")) {
+                node = node.children.computeIfAbsent(word, key -> new Node());
+            }
+
+            node.command = command;
+        }
+    }
+
+    /**
+     * Finds the command mentioned in a text.
+     *
+     * @param text The spoken text.
+     * @return The mentioned command, or null if none or more than one command is mentioned.
+     */
+    public Command match(String text) {
+        String[] words = text.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+");
+        Command found = null;
+
+        for (int start = 0; start < words.length; start++) {
+            Node node = this.root;
+
+            // Follow the longest phrase that starts at this word.
+            for (int i = start; i < words.length; i++) {
+                node = node.children.get(words[i]);
+
+                if (node == null) {
+                    break;
+                }
+
+                if (node.command != null) {
+                    if (found != null && found != node.command) {
+                        return null;
+                    }
+
+                    found = node.command;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds a command that every hypothesis agrees on, used with partial results.
+     * Hypotheses that mention no command do not count against the agreement.
+     *
+     * @param hypotheses The recognition hypotheses, best first.
+     * @return The agreed command, or null while the hypotheses are ambiguous.
+     */
+    public Command matchUnambiguous(List<String> hypotheses) {
+        Command agreed = null;
+
+        for (String hypothesis : hypotheses) {
+            Command command = this.match(hypothesis);
+
+            if (command == null) {
+                continue;
+            }
+
+            if (agreed != null && agreed != command) {
+                return null;
+            }
+
+            agreed = command;
+        }
+
+        return agreed;
+    }
+
+    /**
+     * Finds the command of the best hypothesis that mentions one, used with final results.
+     *
+     * @param hypotheses The recognition hypotheses, best first.
+     * @return The command, or null if no hypothesis mentions exactly one.
+     */
+    public Command matchBest(List<String> hypotheses) {
+        for (String hypothesis : hypotheses) {
+            Command command = this.match(hypothesis);
+
+            if (command != null) {
+                return command;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A node of the phrase trie.
+     */
+    private static final class Node {
+        /**
+         * The next words of the phrases, keyed by word.
+         */
+        final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * The command of the phrase that ends at this node, or null.
+         */
+        Command command;
+    }
+}
@@ -1,17 +1,22 @@
 package com.papei.thanos.speedometer;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.provider.BaseColumns;
+import android.database.sqlite.SQLiteStatement;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a wrapper around SQLite android helpers.
@@ -25,120 +30,895 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
     /**
      * The database version used for updates.
      */
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 7;
+
+    /**
+     * The maximum number of compiled SQL statements kept per connection.
+     */
+    private static final int SQL_CACHE_SIZE = 25;
+
+    /**
+     * The query that fetches all violations, shared with the benchmarks.
+     */
+    static final ViolationQuery ALL_VIOLATIONS = new ViolationQuery.Builder().build();
+
+    /**
+     * The statement that inserts a new violation, shared with the benchmarks.
+     */
+    static final String INSERT_VIOLATION = "INSERT INTO " + ViolationRecordColumns.TABLE_NAME + "(" +
+            ViolationRecordColumns.LONGITUDE + ", " +
+            ViolationRecordColumns.LATITUDE + ", " +
+            ViolationRecordColumns.SPEED + ", " +
+            ViolationRecordColumns.TIMESTAMP + ", " +
+            ViolationRecordColumns.TRIP_ID + ") VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * The maximum estimated size of cached query results in bytes.
+     */
+    private static final long QUERY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The cache key of all violations.
+     */
+    private static final String KEY_ALL_VIOLATIONS = "all";
+
+    /**
+     * The cache key of the violations of the last week.
+     */
+    private static final String KEY_LAST_WEEK_VIOLATIONS = "last_week";
+
+    /**
+     * The single instance shared by the whole application.
+     */
+    private static DatabaseHelper instance;
+
+    /**
+     * The number of times the shared instance was handed out again.
+     */
+    private static final AtomicLong reuseCount = new AtomicLong();
+
+    /**
+     * The number of times a database connection was opened.
+     */
+    private final AtomicLong openCount = new AtomicLong();
+
+    /**
+     * The number of times a cached compiled statement was reused.
+     */
+    private final AtomicLong statementReuseCount = new AtomicLong();
+
+    /**
+     * The compiled write statements, keyed by SQL.
+     */
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    /**
+     * The single thread that performs all writes, so writes never wait for each other's locks.
+     */
+    private final ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(
+            1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+
+    /**
+     * The threads that perform reads, which run alongside writes thanks to write-ahead logging.
+     */
+    private final ThreadPoolExecutor readExecutor = new ThreadPoolExecutor(
+            2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+
+    /**
+     * The cache of violation query results.
+     */
+    private final ViolationQueryCache queryCache = new ViolationQueryCache(QUERY_CACHE_BYTES);
+
+    /**
+     * The listeners notified every time a violation is stored.
+     */
+    private final List<ViolationListener> violationListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Whether a sync endpoint is configured, so violations are queued for upload.
+     */
+    private final boolean syncEnabled;
+
+    /**
+     * The ID of the trip in progress, or -1 if none. Only used on the write thread.
+     */
+    private long openTripId = -1;
 
     /**
      * Default constructor.
      *
-     * @param context The context reference.
+     * @param context The context reference.
+     */
+    private DatabaseHelper(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+
+        // Without an endpoint nothing ever uploads the outbox, so nothing is queued in it.
+        this.syncEnabled = !context.getString(R.string.sync_endpoint).isEmpty();
+    }
+
+    /**
+     * Gets the database helper shared by the whole application.
+     * The shared helper stays open for the lifetime of the process and must not be closed.
+     *
+     * @param context The context reference.
+     * @return The shared database helper.
+     */
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        } else {
+            reuseCount.incrementAndGet();
+        }
+
+        return instance;
+    }
+
+    /**
+     * Adds a new speeding violation to the database asynchronously.
+     *
+     * @param longitude The longitude of the violation.
+     * @param latitude The latitude of the violation.
+     * @param speed The current speed of the violation.
+     * @return A completable future that returns the ID of the new record once created.
+     */
+    public CompletableFuture<Long> addViolation(double longitude, double latitude, float speed) {
+        return CompletableFuture.supplyAsync(() -> {
+            long longitudeE7 = ViolationRecordColumns.encodeCoordinate(longitude);
+            long latitudeE7 = ViolationRecordColumns.encodeCoordinate(latitude);
+            long centiKmh = ViolationRecordColumns.encodeSpeed(speed);
+            long seconds = ViolationRecordColumns.encodeTime(System.currentTimeMillis());
+
+            SQLiteStatement statement = this.getStatement(INSERT_VIOLATION);
+            statement.bindLong(1, longitudeE7);
+            statement.bindLong(2, latitudeE7);
+            statement.bindLong(3, centiKmh);
+            statement.bindLong(4, seconds);
+
+            // Tag the violation with the trip in progress, if any.
+            if (this.openTripId != -1) {
+                statement.bindLong(5, this.openTripId);
+            } else {
+                statement.bindNull(5);
+            }
+
+            SQLiteDatabase db = getWritableDatabase();
+            long id;
+
+            // Queue the violation for upload in the same transaction, so it is never stored without it.
+            db.beginTransaction();
+
+            try {
+                id = statement.executeInsert();
+
+                if (id != -1 && this.syncEnabled) {
+                    SQLiteStatement outbox = this.getStatement(OutboxColumns.INSERT);
+                    outbox.bindLong(1, id);
+                    outbox.executeInsert();
+                }
+
+                if (id != -1) {
+                    // Count the violation in its hotspot cells, so hotspots never need a scan.
+                    addToHotspots(this.getStatement(HotspotColumns.UPDATE), this.getStatement(HotspotColumns.INSERT),
+                            latitudeE7, longitudeE7, centiKmh, seconds);
+                }
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (id != -1) {
+                PerformanceMetrics.getInstance().increment(PerformanceMetrics.VIOLATIONS_PERSISTED);
+
+                // Let the listeners update anything derived from the violations.
+                // Hand out the stored values, so the record matches what later queries read.
+                ViolationRecord record = new ViolationRecord(id,
+                        ViolationRecordColumns.decodeCoordinate(longitudeE7),
+                        ViolationRecordColumns.decodeCoordinate(latitudeE7),
+                        ViolationRecordColumns.decodeSpeed(centiKmh),
+                        ViolationRecordColumns.decodeTime(seconds));
+                this.queryCache.onInsert(record);
+
+                for (ViolationListener listener : this.violationListeners) {
+                    listener.onViolationAdded(record);
+                }
+            }
+
+            return id;
+        }, this.writeExecutor);
+    }
+
+    /**
+     * Stores the start of a new trip. Violations added after this call belong to the trip until it is finished.
+     *
+     * @param startTime The start time of the trip in milliseconds.
+     * @return A completable future that returns the ID of the new trip once created.
+     */
+    public CompletableFuture<Long> startTrip(long startTime) {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteStatement statement = this.getStatement(TripColumns.INSERT);
+            statement.bindLong(1, startTime);
+
+            this.openTripId = statement.executeInsert();
+
+            return this.openTripId;
+        }, this.writeExecutor);
+    }
+
+    /**
+     * Stores the summary of the trip in progress.
+     *
+     * @param endTime The end time of the trip in milliseconds.
+     * @param distance The distance covered in the trip, in meters.
+     * @return A completable future that completes once the summary is stored.
+     */
+    public CompletableFuture<Void> finishTrip(long endTime, double distance) {
+        return CompletableFuture.runAsync(() -> {
+            if (this.openTripId == -1) {
+                return;
+            }
+
+            SQLiteStatement statement = this.getStatement(TripColumns.FINISH);
+            statement.bindLong(1, endTime);
+            statement.bindDouble(2, distance);
+            statement.bindLong(3, endTime);
+            statement.bindLong(4, this.openTripId);
+            statement.executeUpdateDelete();
+
+            this.openTripId = -1;
+        }, this.writeExecutor);
+    }
+
+    /**
+     * Stores a chunk of track points of the trip in progress, in a single transaction.
+     * Points are dropped if no trip is in progress.
+     *
+     * @param times The timestamp of every point in milliseconds.
+     * @param latitudes The latitude of every point.
+     * @param longitudes The longitude of every point.
+     * @param count The number of points.
+     * @return A completable future that completes once the points are stored.
+     */
+    public CompletableFuture<Void> addTrackPoints(long[] times, double[] latitudes, double[] longitudes, int count) {
+        return CompletableFuture.runAsync(() -> {
+            if (this.openTripId == -1) {
+                return;
+            }
+
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement statement = this.getStatement(TrackPointColumns.INSERT);
+
+            db.beginTransaction();
+
+            try {
+                for (int i = 0; i < count; i++) {
+                    statement.bindLong(1, this.openTripId);
+                    statement.bindDouble(2, latitudes[i]);
+                    statement.bindDouble(3, longitudes[i]);
+                    statement.bindLong(4, times[i]);
+                    statement.executeInsert();
+                }
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }, this.writeExecutor);
+    }
+
+    /**
+     * Reads the route of a trip and prepares its levels of detail for the map.
+     *
+     * @param tripId The trip ID.
+     * @return A completable future that returns the route levels once built.
+     */
+    public CompletableFuture<TrackLevels> getTrack(long tripId) {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(TrackPointColumns.SELECT_TRIP, new String[]{Long.toString(tripId)});
+
+            int count = cursor.getCount();
+            double[] latitudes = new double[count];
+            double[] longitudes = new double[count];
+
+            for (int i = 0; cursor.moveToNext(); i++) {
+                latitudes[i] = cursor.getDouble(0);
+                longitudes[i] = cursor.getDouble(1);
+            }
+
+            cursor.close();
+
+            return new TrackLevels(latitudes, longitudes, count);
+        }, this.readExecutor);
+    }
+
+    /**
+     * Measures the stored track of a trip.
+     *
+     * @param db The database reference.
+     * @param tripId The trip ID.
+     * @return The length of the track in meters.
+     */
+    private double readTrackLength(SQLiteDatabase db, long tripId) {
+        Cursor cursor = db.rawQuery(TrackPointColumns.SELECT_TRIP, new String[]{Long.toString(tripId)});
+        double length = 0;
+
+        // Sum the legs while reading, so long tracks are not copied into arrays.
+        if (cursor.moveToNext()) {
+            double latitude = cursor.getDouble(0);
+            double longitude = cursor.getDouble(1);
+
+            while (cursor.moveToNext()) {
+                length += Geodesy.haversine(latitude, longitude, cursor.getDouble(0), cursor.getDouble(1));
+                latitude = cursor.getDouble(0);
+                longitude = cursor.getDouble(1);
+            }
+        }
+
+        cursor.close();
+
+        return length;
+    }
+
+    /**
+     * Gets the ID of the newest finished trip.
+     *
+     * @return A completable future that returns the trip ID once fetched, or -1 if there are no trips.
+     */
+    public CompletableFuture<Long> getLatestTripId() {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(TripColumns.SELECT_LATEST_ID, null);
+
+            long id = cursor.moveToNext() ? cursor.getLong(0) : -1;
+            cursor.close();
+
+            return id;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the list of all finished trips, newest first.
+     *
+     * @return A completable future that returns a list of trips once fetched.
+     */
+    public CompletableFuture<List<TripRecord>> getTrips() {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(TripColumns.SELECT_FINISHED, null);
+
+            List<TripRecord> trips = new ArrayList<>(cursor.getCount());
+            int id = cursor.getColumnIndex(TripColumns._ID);
+            int startTime = cursor.getColumnIndex(TripColumns.START_TIME);
+            int endTime = cursor.getColumnIndex(TripColumns.END_TIME);
+            int distance = cursor.getColumnIndex(TripColumns.DISTANCE);
+            int duration = cursor.getColumnIndex(TripColumns.DURATION);
+            int violationCount = cursor.getColumnIndex(TripColumns.VIOLATION_COUNT);
+
+            while (cursor.moveToNext()) {
+                trips.add(new TripRecord(
+                        cursor.getLong(id),
+                        cursor.getLong(startTime),
+                        cursor.getLong(endTime),
+                        cursor.getDouble(distance),
+                        cursor.getLong(duration),
+                        cursor.getInt(violationCount)));
+            }
+
+            cursor.close();
+
+            return trips;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the newest violations stored after an ID, oldest first. The primary key lookup only
+     * reads the new rows, however many violations were stored before them.
+     *
+     * @param id The highest violation ID that is already known.
+     * @param limit The maximum number of violations.
+     * @return A completable future that returns a list of the newer violations once fetched.
+     */
+    public CompletableFuture<List<ViolationRecord>> getViolationsAfter(long id, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(ViolationRecordColumns.SELECT_AFTER,
+                    new String[]{Long.toString(id), Integer.toString(limit)});
+
+            List<ViolationRecord> records = new ArrayList<>(cursor.getCount());
+            ColumnIndices indices = new ColumnIndices(cursor);
+
+            while (cursor.moveToNext()) {
+                records.add(this.bindCursorToViolation(cursor, indices));
+            }
+
+            cursor.close();
+
+            return records;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the speed and time of every violation in primitive arrays, for the reports.
+     *
+     * @return A completable future that returns the violation history once fetched.
+     */
+    public CompletableFuture<ViolationHistory> getViolationHistory() {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(ViolationRecordColumns.SELECT_HISTORY, null);
+
+            ViolationHistory history = new ViolationHistory(cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                history.add(cursor.getInt(0), cursor.getLong(1));
+            }
+
+            cursor.close();
+
+            return history;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the position of every violation in primitive arrays, for the heatmap. The rows are
+     * read straight from the cursor, so the query cache is never filled with every record.
+     *
+     * @return A completable future that returns the violation positions once fetched.
+     */
+    public CompletableFuture<ViolationPositions> getViolationPositions() {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(ViolationRecordColumns.SELECT_POSITIONS, null);
+
+            ViolationPositions positions = new ViolationPositions(cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                positions.add(cursor.getLong(0),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(1)),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(2)));
+            }
+
+            cursor.close();
+
+            return positions;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the hotspot cells with the highest decayed scores, read from the hotspot index alone.
+     * The cells are not counted per time window: a cell is active since a time if its latest
+     * violation is that recent, and it is still ranked by its whole decayed score. With the
+     * score half life of a month, old violations weigh little in the ranking.
+     *
+     * @param level The geohash precision of the cells, one of the hotspot levels.
+     * @param box The area as south, west, north and east, or null for everywhere.
+     * @param activeSince The earliest time of the latest violation of a cell, or 0 for all cells.
+     * @param limit The maximum number of cells.
+     * @return A completable future that returns the cells, highest score first.
+     */
+    public CompletableFuture<List<HotspotRecord>> getHotspots(int level, double[] box, long activeSince, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            long now = ViolationRecordColumns.encodeTime(System.currentTimeMillis());
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(HotspotColumns.SELECT_TOP, new String[]{
+                    Integer.toString(level),
+                    Long.toString(ViolationRecordColumns.encodeTime(activeSince)),
+                    Long.toString(ViolationRecordColumns.encodeCoordinate(box != null ? box[0] : -90)),
+                    Long.toString(ViolationRecordColumns.encodeCoordinate(box != null ? box[2] : 90)),
+                    Long.toString(ViolationRecordColumns.encodeCoordinate(box != null ? box[1] : -180)),
+                    Long.toString(ViolationRecordColumns.encodeCoordinate(box != null ? box[3] : 180)),
+                    Integer.toString(limit)});
+
+            List<HotspotRecord> records = new ArrayList<>(cursor.getCount());
+            int cell = cursor.getColumnIndex(HotspotColumns.CELL);
+            int latitude = cursor.getColumnIndex(HotspotColumns.LATITUDE);
+            int longitude = cursor.getColumnIndex(HotspotColumns.LONGITUDE);
+            int count = cursor.getColumnIndex(HotspotColumns.COUNT);
+            int score = cursor.getColumnIndex(HotspotColumns.SCORE);
+            int peakSpeed = cursor.getColumnIndex(HotspotColumns.PEAK_SPEED);
+            int lastTime = cursor.getColumnIndex(HotspotColumns.LAST_TIME);
+
+            while (cursor.moveToNext()) {
+                records.add(new HotspotRecord(
+                        Geohash.toString(cursor.getLong(cell), level),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(latitude)),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(longitude)),
+                        cursor.getInt(count),
+                        HotspotColumns.decay(cursor.getDouble(score), now),
+                        ViolationRecordColumns.decodeSpeed(cursor.getLong(peakSpeed)),
+                        ViolationRecordColumns.decodeTime(cursor.getLong(lastTime))));
+            }
+
+            cursor.close();
+
+            return records;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Registers a listener that is notified every time a violation is stored.
+     *
+     * @param listener The violation listener.
+     */
+    public void addViolationListener(ViolationListener listener) {
+        this.violationListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a violation listener.
+     *
+     * @param listener The violation listener.
+     */
+    public void removeViolationListener(ViolationListener listener) {
+        this.violationListeners.remove(listener);
+    }
+
+    /**
+     * Gets the list of all violations in the database.
+     *
+     * @return A completable future that returns a list of all violations once fetched.
+     */
+    public CompletableFuture<List<ViolationRecord>> getViolations() {
+        return CompletableFuture.supplyAsync(() -> {
+            // Copy a cached result here rather than on the calling thread.
+            List<ViolationRecord> cached = this.queryCache.get(KEY_ALL_VIOLATIONS);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            long version = this.queryCache.getVersion();
+            List<ViolationRecord> records = this.queryViolations(ALL_VIOLATIONS);
+
+            this.queryCache.put(KEY_ALL_VIOLATIONS, version, records, record -> true, orderOf(ALL_VIOLATIONS), 0);
+
+            return records;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the list of violations that match a query, filtered and sorted by the database.
+     *
+     * @param query The violation query.
+     * @return A completable future that returns a list of matching violations once fetched.
+     */
+    public CompletableFuture<List<ViolationRecord>> getViolations(ViolationQuery query) {
+        String key = query.getKey();
+
+        return CompletableFuture.supplyAsync(() -> {
+            List<ViolationRecord> cached = this.queryCache.get(key);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            long version = this.queryCache.getVersion();
+            List<ViolationRecord> records = this.queryViolations(query);
+
+            this.queryCache.put(key, version, records,
+                    record -> query.matches(record.getLongitude(), record.getLatitude(), record.getSpeed(), record.getTimestamp()),
+                    orderOf(query),
+                    query.getLimit());
+
+            return records;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Gets the list of all violations recorded during the week.
+     *
+     * @return A completable future that returns a list of violations once fetched.
+     */
+    public CompletableFuture<List<ViolationRecord>> getLastWeekViolations() {
+        return CompletableFuture.supplyAsync(() -> {
+            long time = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+
+            // The cached result may have been read earlier, so drop the records that have
+            // fallen out of the week since from the cached result itself.
+            this.queryCache.removeIf(KEY_LAST_WEEK_VIOLATIONS, record -> record.getTimestamp() < time);
+            List<ViolationRecord> cached = this.queryCache.get(KEY_LAST_WEEK_VIOLATIONS);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            long version = this.queryCache.getVersion();
+            ViolationQuery query = lastWeekQuery(time);
+            List<ViolationRecord> records = this.queryViolations(query);
+
+            // New violations are always recorded after the start of the week.
+            this.queryCache.put(KEY_LAST_WEEK_VIOLATIONS, version, records, record -> true, orderOf(query), 0);
+
+            return records;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Reads the oldest violations waiting for upload.
+     *
+     * @param limit The maximum number of violations.
+     * @return A completable future that returns the queued violations in outbox order.
+     */
+    public CompletableFuture<List<SyncBatch.Entry>> readOutbox(int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = getReadableDatabase();
+            Cursor cursor = db.rawQuery(OutboxColumns.SELECT_PENDING, new String[]{Integer.toString(limit)});
+
+            List<SyncBatch.Entry> entries = new ArrayList<>(cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                entries.add(new SyncBatch.Entry(
+                        cursor.getLong(0),
+                        cursor.getLong(1),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(2)),
+                        ViolationRecordColumns.decodeCoordinate(cursor.getLong(3)),
+                        ViolationRecordColumns.decodeSpeed(cursor.getLong(4)),
+                        ViolationRecordColumns.decodeTime(cursor.getLong(5))));
+            }
+
+            cursor.close();
+
+            return entries;
+        }, this.readExecutor);
+    }
+
+    /**
+     * Removes uploaded violations from the outbox.
+     *
+     * @param outboxId The outbox ID of the last uploaded violation.
+     * @return A completable future that completes once the violations are removed.
+     */
+    public CompletableFuture<Void> acknowledgeOutbox(long outboxId) {
+        return CompletableFuture.runAsync(() -> {
+            SQLiteStatement statement = this.getStatement(OutboxColumns.DELETE_UP_TO);
+            statement.bindLong(1, outboxId);
+            statement.executeUpdateDelete();
+        }, this.writeExecutor);
+    }
+
+    /**
+     * Gets the number of writes that are queued or running.
+     *
+     * @return The pending write count.
+     */
+    public int getPendingWriteCount() {
+        return this.writeExecutor.getQueue().size() + this.writeExecutor.getActiveCount();
+    }
+
+    /**
+     * Gets the number of reads that are queued or running.
+     *
+     * @return The pending read count.
+     */
+    public int getPendingReadCount() {
+        return this.readExecutor.getQueue().size() + this.readExecutor.getActiveCount();
+    }
+
+    /**
+     * Gets the number of times a database connection was opened.
+     *
+     * @return The connection open count.
      */
-    public DatabaseHelper(Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+    public long getOpenCount() {
+        return this.openCount.get();
     }
 
     /**
-     * Adds a new speeding violation to the database asynchronously.
+     * Gets the number of times the shared helper was handed out again instead of being created.
      *
-     * @param longitude The longitude of the violation.
-     * @param latitude The latitude of the violation.
-     * @param speed The current speed of the violation.
-     * @return A completable future that returns the ID of the new record once created.
+     * @return The helper reuse count.
      */
-    public CompletableFuture<Long> addViolation(double longitude, double latitude, float speed) {
-        return CompletableFuture.supplyAsync(() -> {
-            SQLiteDatabase db = getWritableDatabase();
+    public static long getReuseCount() {
+        return reuseCount.get();
+    }
 
-            ContentValues values = new ContentValues();
-            values.put(ViolationRecordColumns.LONGITUDE, longitude);
-            values.put(ViolationRecordColumns.LATITUDE, latitude);
-            values.put(ViolationRecordColumns.SPEED, speed);
-            values.put(ViolationRecordColumns.TIMESTAMP, System.currentTimeMillis());
+    /**
+     * Gets the number of times a cached compiled statement was reused.
+     *
+     * @return The statement reuse count.
+     */
+    public long getStatementReuseCount() {
+        return this.statementReuseCount.get();
+    }
 
-            return db.insert(ViolationRecordColumns.TABLE_NAME, null, values);
-        });
+    /**
+     * Gets the number of violation queries served from memory.
+     *
+     * @return The query cache hit count.
+     */
+    public long getCacheHitCount() {
+        return this.queryCache.getHitCount();
     }
 
     /**
-     * Gets the list of all violations in the database.
+     * Gets the number of violation queries that had to run on the database.
      *
-     * @return A completable future that returns a list of all violations once fetched.
+     * @return The query cache miss count.
      */
-    public CompletableFuture<List<ViolationRecord>> getViolations() {
-        return CompletableFuture.supplyAsync(() -> {
-            SQLiteDatabase db = getReadableDatabase();
+    public long getCacheMissCount() {
+        return this.queryCache.getMissCount();
+    }
 
-            Cursor cursor = db.query(
-                    ViolationRecordColumns.TABLE_NAME,
-                    null,
-                    null,
-                    null,
-                    null,
-                    null,
-                    ViolationRecordColumns.TIMESTAMP + " DESC"
-            );
+    /**
+     * Runs a violation query and maps every row to a record.
+     *
+     * @param query The query to run.
+     * @return The list of fetched violations.
+     */
+    private List<ViolationRecord> queryViolations(ViolationQuery query) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery(query.getSql(), query.getArgs());
 
-            List<ViolationRecord> records = new ArrayList<>();
+        List<ViolationRecord> records = new ArrayList<>(cursor.getCount());
+        ColumnIndices indices = new ColumnIndices(cursor);
 
-            while (cursor.moveToNext()) {
-                records.add(this.bindCursorToViolation(cursor));
-            }
+        while (cursor.moveToNext()) {
+            records.add(this.bindCursorToViolation(cursor, indices));
+        }
 
-            cursor.close();
+        cursor.close();
 
-            return records;
-        });
+        return records;
     }
 
     /**
-     * Gets the list of all violations recorded during the week.
+     * Creates the query that fetches the violations of the last week.
      *
-     * @return A completable future that returns a list of violations once fetched.
+     * @param from The timestamp a week ago in milliseconds.
+     * @return The last week query.
      */
-    public CompletableFuture<List<ViolationRecord>> getLastWeekViolations() {
-        return CompletableFuture.supplyAsync(() -> {
-            SQLiteDatabase db = getReadableDatabase();
+    static ViolationQuery lastWeekQuery(long from) {
+        return new ViolationQuery.Builder().since(from).build();
+    }
 
-            long time = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(7);
+    /**
+     * Creates a comparator that sorts records the same way the database sorts a query.
+     *
+     * @param query The violation query.
+     * @return The comparator of the query order.
+     */
+    private static Comparator<ViolationRecord> orderOf(ViolationQuery query) {
+        Comparator<ViolationRecord> comparator;
 
-            Cursor cursor = db.query(
-                    ViolationRecordColumns.TABLE_NAME,
-                    null,
-                    ViolationRecordColumns.TIMESTAMP + " >= ?",
-                    new String[]{Long.toString(time)},
-                    null,
-                    null,
-                    ViolationRecordColumns.TIMESTAMP + " DESC"
-            );
+        switch (query.getOrder()) {
+            case SPEED:
+                comparator = Comparator.comparingDouble(ViolationRecord::getSpeed);
+                break;
+            case TIME:
+                comparator = Comparator.comparingLong(ViolationRecord::getTimestamp);
+                break;
+            default:
+                comparator = (a, b) -> 0;
+                break;
+        }
 
-            List<ViolationRecord> records = new ArrayList<>();
+        comparator = comparator.thenComparingLong(ViolationRecord::getId);
 
-            while (cursor.moveToNext()) {
-                ViolationRecord record = this.bindCursorToViolation(cursor);
-                records.add(record);
-            }
+        return query.isDescending() ? comparator.reversed() : comparator;
+    }
 
-            cursor.close();
+    /**
+     * Gets a compiled statement from the cache, compiling it the first time.
+     * Only called from the write thread, which owns all cached statements.
+     *
+     * @param sql The statement SQL.
+     * @return The compiled statement.
+     */
+    private SQLiteStatement getStatement(String sql) {
+        SQLiteStatement statement = this.statements.get(sql);
 
-            return records;
-        });
+        if (statement == null) {
+            statement = getWritableDatabase().compileStatement(sql);
+            this.statements.put(sql, statement);
+        } else {
+            statement.clearBindings();
+            this.statementReuseCount.incrementAndGet();
+        }
+
+        return statement;
+    }
+
+    /**
+     * Counts a violation in its cell at every hotspot level.
+     *
+     * @param update The compiled hotspot update statement.
+     * @param insert The compiled hotspot insert statement.
+     * @param latitudeE7 The stored latitude of the violation.
+     * @param longitudeE7 The stored longitude of the violation.
+     * @param centiKmh The stored speed of the violation.
+     * @param seconds The stored time of the violation.
+     */
+    private static void addToHotspots(SQLiteStatement update, SQLiteStatement insert,
+                                      long latitudeE7, long longitudeE7, long centiKmh, long seconds) {
+        double latitude = ViolationRecordColumns.decodeCoordinate(latitudeE7);
+        double longitude = ViolationRecordColumns.decodeCoordinate(longitudeE7);
+        double weight = HotspotColumns.weight(seconds);
+        double[] center = new double[2];
+
+        for (int level : HotspotColumns.LEVELS) {
+            long cell = Geohash.encode(latitude, longitude, level);
+
+            update.clearBindings();
+            update.bindDouble(1, weight);
+            update.bindLong(2, centiKmh);
+            update.bindLong(3, seconds);
+            update.bindLong(4, level);
+            update.bindLong(5, cell);
+
+            if (update.executeUpdateDelete() == 0) {
+                // The first violation of the cell.
+                Geohash.decodeCenter(cell, level, center);
+
+                insert.clearBindings();
+                insert.bindLong(1, level);
+                insert.bindLong(2, cell);
+                insert.bindLong(3, ViolationRecordColumns.encodeCoordinate(center[0]));
+                insert.bindLong(4, ViolationRecordColumns.encodeCoordinate(center[1]));
+                insert.bindDouble(5, weight);
+                insert.bindLong(6, centiKmh);
+                insert.bindLong(7, seconds);
+                insert.executeInsert();
+            }
+        }
     }
 
     /**
      * Creates a violation record mapping from a cursor reference.
      *
      * @param cursor The cursor created from a query.
+     * @param indices The column indices of the cursor.
      * @return A new violation record that holds the fetched data.
      */
-    private ViolationRecord bindCursorToViolation(Cursor cursor) {
+    private ViolationRecord bindCursorToViolation(Cursor cursor, ColumnIndices indices) {
         return new ViolationRecord(
-                cursor.getLong(cursor.getColumnIndex(ViolationRecordColumns._ID)),
-                cursor.getDouble(cursor.getColumnIndex(ViolationRecordColumns.LONGITUDE)),
-                cursor.getDouble(cursor.getColumnIndex(ViolationRecordColumns.LATITUDE)),
-                cursor.getFloat(cursor.getColumnIndex(ViolationRecordColumns.SPEED)),
-                cursor.getLong(cursor.getColumnIndex(ViolationRecordColumns.TIMESTAMP))
+                cursor.getLong(indices.id),
+                ViolationRecordColumns.decodeCoordinate(cursor.getLong(indices.longitude)),
+                ViolationRecordColumns.decodeCoordinate(cursor.getLong(indices.latitude)),
+                ViolationRecordColumns.decodeSpeed(cursor.getLong(indices.speed)),
+                ViolationRecordColumns.decodeTime(cursor.getLong(indices.timestamp))
         );
     }
 
+    /**
+     * Configures every new connection before it is used.
+     *
+     * @param db The database reference.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Let readers run alongside the violation writer.
+        db.enableWriteAheadLogging();
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+    }
+
+    /**
+     * Counts every opened connection.
+     *
+     * @param db The database reference.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        this.openCount.incrementAndGet();
+
+        if (!db.isReadOnly()) {
+            // Trips left open when the process was killed are closed at their last stored activity.
+            Cursor cursor = db.rawQuery(TripColumns.SELECT_ABANDONED, null);
+
+            while (cursor.moveToNext()) {
+                long tripId = cursor.getLong(0);
+                db.execSQL(TripColumns.CLOSE_ABANDONED, new Object[]{this.readTrackLength(db, tripId), tripId});
+            }
+
+            cursor.close();
+
+            // Drop violations queued by a build that had a sync endpoint.
+            if (!this.syncEnabled) {
+                db.execSQL(OutboxColumns.DELETE_ALL);
+            }
+        }
+    }
+
     /**
      * The list of actions to execute when the database must be created.
      *
@@ -146,13 +926,19 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL("CREATE TABLE " + ViolationRecordColumns.TABLE_NAME + "(" +
-                ViolationRecordColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                ViolationRecordColumns.LONGITUDE + " DOUBLE, " +
-                ViolationRecordColumns.LATITUDE + " DOUBLE, " +
-                ViolationRecordColumns.SPEED + " FLOAT, " +
-                ViolationRecordColumns.TIMESTAMP + " LONG)"
-        );
+        db.execSQL(ViolationRecordColumns.CREATE_TABLE);
+
+        for (String statement : ViolationRecordColumns.CREATE_INDICES) {
+            db.execSQL(statement);
+        }
+
+        db.execSQL(ViolationRecordColumns.CREATE_TRIP_INDEX);
+        db.execSQL(OutboxColumns.CREATE_TABLE);
+        db.execSQL(TripColumns.CREATE_TABLE);
+        db.execSQL(TrackPointColumns.CREATE_TABLE);
+        db.execSQL(TrackPointColumns.CREATE_INDEX);
+        db.execSQL(HotspotColumns.CREATE_TABLE);
+        db.execSQL(HotspotColumns.CREATE_INDEX);
     }
 
     /**
@@ -162,8 +948,55 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL("DROP TABLE IF EXISTS " + ViolationRecordColumns.TABLE_NAME);
-        onCreate(db);
+        // The violation indices of versions 2 and 4 are created by the version 6 rebuild.
+        if (oldVersion < 3) {
+            // Version 3 adds the sync outbox. Violations stored before it are not uploaded.
+            db.execSQL(OutboxColumns.CREATE_TABLE);
+        }
+
+        if (oldVersion < 4) {
+            // Version 4 adds trips. Violations stored before it do not belong to any trip.
+            db.execSQL("ALTER TABLE " + ViolationRecordColumns.TABLE_NAME +
+                    " ADD COLUMN " + ViolationRecordColumns.TRIP_ID + " INTEGER");
+            db.execSQL(TripColumns.CREATE_TABLE);
+        }
+
+        if (oldVersion < 5) {
+            // Version 5 adds the routes of trips.
+            db.execSQL(TrackPointColumns.CREATE_TABLE);
+            db.execSQL(TrackPointColumns.CREATE_INDEX);
+        }
+
+        if (oldVersion < 6) {
+            // Version 6 stores violations in fixed point integers, in a table rebuilt with the same IDs.
+            for (String statement : ViolationRecordColumns.MIGRATE_TO_FIXED_POINT) {
+                db.execSQL(statement);
+            }
+
+            for (String statement : ViolationRecordColumns.CREATE_INDICES) {
+                db.execSQL(statement);
+            }
+
+            db.execSQL(ViolationRecordColumns.CREATE_TRIP_INDEX);
+        }
+
+        if (oldVersion < 7) {
+            // Version 7 adds hotspots, built once from the violations stored before it.
+            db.execSQL(HotspotColumns.CREATE_TABLE);
+            db.execSQL(HotspotColumns.CREATE_INDEX);
+
+            SQLiteStatement update = db.compileStatement(HotspotColumns.UPDATE);
+            SQLiteStatement insert = db.compileStatement(HotspotColumns.INSERT);
+            Cursor cursor = db.rawQuery(HotspotColumns.SELECT_VIOLATIONS, null);
+
+            while (cursor.moveToNext()) {
+                addToHotspots(update, insert, cursor.getLong(0), cursor.getLong(1), cursor.getLong(2), cursor.getLong(3));
+            }
+
+            cursor.close();
+            update.close();
+            insert.close();
+        }
     }
 
     /**
@@ -175,13 +1008,18 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        db.execSQL("DROP TABLE IF EXISTS " + ViolationRecordColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + OutboxColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + TripColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + TrackPointColumns.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + HotspotColumns.TABLE_NAME);
+        onCreate(db);
     }
 
     /**
      * A model that represents all violation records on the database.
      */
-    public final class ViolationRecord {
+    public static final class ViolationRecord {
         /**
          * The numerical ID of the violation in the database.
          */
@@ -270,32 +1108,289 @@ public final class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * A class that holds violation column names, used in the database.
+     * A model that represents the summary of a finished trip.
+     */
+    public static final class TripRecord {
+        /**
+         * The numerical ID of the trip in the database.
+         */
+        private final long id;
+
+        /**
+         * The start time of the trip in milliseconds.
+         */
+        private final long startTime;
+
+        /**
+         * The end time of the trip in milliseconds.
+         */
+        private final long endTime;
+
+        /**
+         * The distance covered in the trip, in meters.
+         */
+        private final double distance;
+
+        /**
+         * The duration of the trip in milliseconds.
+         */
+        private final long duration;
+
+        /**
+         * The number of violations recorded during the trip.
+         */
+        private final int violationCount;
+
+        /**
+         * Default constructor.
+         *
+         * @param id The numerical ID of the trip in the database.
+         * @param startTime The start time of the trip in milliseconds.
+         * @param endTime The end time of the trip in milliseconds.
+         * @param distance The distance covered in the trip, in meters.
+         * @param duration The duration of the trip in milliseconds.
+         * @param violationCount The number of violations recorded during the trip.
+         */
+        public TripRecord(long id, long startTime, long endTime, double distance, long duration, int violationCount) {
+            this.id = id;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.distance = distance;
+            this.duration = duration;
+            this.violationCount = violationCount;
+        }
+
+        /**
+         * Gets the numerical ID of the trip in the database.
+         *
+         * @return The numerical ID of the trip in the database.
+         */
+        public long getId() {
+            return this.id;
+        }
+
+        /**
+         * Gets the start time of the trip.
+         *
+         * @return The start time in milliseconds.
+         */
+        public long getStartTime() {
+            return this.startTime;
+        }
+
+        /**
+         * Gets the end time of the trip.
+         *
+         * @return The end time in milliseconds.
+         */
+        public long getEndTime() {
+            return this.endTime;
+        }
+
+        /**
+         * Gets the distance covered in the trip.
+         *
+         * @return The distance in meters.
+         */
+        public double getDistance() {
+            return this.distance;
+        }
+
+        /**
+         * Gets the duration of the trip.
+         *
+         * @return The duration in milliseconds.
+         */
+        public long getDuration() {
+            return this.duration;
+        }
+
+        /**
+         * Gets the number of violations recorded during the trip.
+         *
+         * @return The violation count.
+         */
+        public int getViolationCount() {
+            return this.violationCount;
+        }
+    }
+
+    /**
+     * A model that represents a hotspot cell with repeated violations.
+     */
+    public static final class HotspotRecord {
+        /**
+         * The geohash of the cell.
+         */
+        private final String geohash;
+
+        /**
+         * The latitude of the cell center.
+         */
+        private final double latitude;
+
+        /**
+         * The longitude of the cell center.
+         */
+        private final double longitude;
+
+        /**
+         * The number of violations in the cell.
+         */
+        private final int count;
+
+        /**
+         * The decayed score of the cell, where a violation today counts as one.
+         */
+        private final double score;
+
+        /**
+         * The highest violation speed in the cell, in m/s.
+         */
+        private final float peakSpeed;
+
+        /**
+         * The time of the latest violation in the cell, in milliseconds.
+         */
+        private final long lastTime;
+
+        /**
+         * Default constructor.
+         *
+         * @param geohash The geohash of the cell.
+         * @param latitude The latitude of the cell center.
+         * @param longitude The longitude of the cell center.
+         * @param count The number of violations in the cell.
+         * @param score The decayed score of the cell.
+         * @param peakSpeed The highest violation speed in the cell, in m/s.
+         * @param lastTime The time of the latest violation in the cell, in milliseconds.
+         */
+        public HotspotRecord(String geohash, double latitude, double longitude, int count, double score, float peakSpeed, long lastTime) {
+            this.geohash = geohash;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.count = count;
+            this.score = score;
+            this.peakSpeed = peakSpeed;
+            this.lastTime = lastTime;
+        }
+
+        /**
+         * Gets the geohash of the cell.
+         *
+         * @return The geohash.
+         */
+        public String getGeohash() {
+            return this.geohash;
+        }
+
+        /**
+         * Gets the latitude of the cell center.
+         *
+         * @return The latitude.
+         */
+        public double getLatitude() {
+            return this.latitude;
+        }
+
+        /**
+         * Gets the longitude of the cell center.
+         *
+         * @return The longitude.
+         */
+        public double getLongitude() {
+            return this.longitude;
+        }
+
+        /**
+         * Gets the number of violations in the cell.
+         *
+         * @return The violation count.
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the decayed score of the cell.
+         *
+         * @return The score, where a violation today counts as one.
+         */
+        public double getScore() {
+            return this.score;
+        }
+
+        /**
+         * Gets the highest violation speed in the cell.
+         *
+         * @return The speed in m/s.
+         */
+        public float getPeakSpeed() {
+            return this.peakSpeed;
+        }
+
+        /**
+         * Gets the time of the latest violation in the cell.
+         *
+         * @return The time in milliseconds.
+         */
+        public long getLastTime() {
+            return this.lastTime;
+        }
+    }
+
+    /**
+     * A listener notified every time a violation is stored.
+     */
+    public interface ViolationListener {
+        /**
+         * Called on a background thread after a violation was inserted.
+         *
+         * @param record The stored violation.
+         */
+        void onViolationAdded(ViolationRecord record);
+    }
+
+    /**
+     * The column indices of a violation cursor, resolved once per query.
      */
-    private static class ViolationRecordColumns implements BaseColumns {
+    private static final class ColumnIndices {
+        /**
+         * The index of the ID column.
+         */
+        final int id;
+
         /**
-         * The name of the table that holds all violations.
+         * The index of the longitude column.
          */
-        public static final String TABLE_NAME = "violations";
+        final int longitude;
 
         /**
-         * The longitude column name.
+         * The index of the latitude column.
          */
-        public static final String LONGITUDE = "longitude";
+        final int latitude;
 
         /**
-         * The latitude column name.
+         * The index of the speed column.
          */
-        public static final String LATITUDE = "latitude";
+        final int speed;
 
         /**
-         * The speed column name.
+         * The index of the timestamp column.
          */
-        public static final String SPEED = "speed";
+        final int timestamp;
 
         /**
-         * The timestamp column name.
+         * Default constructor.
+         *
+         * @param cursor The cursor created from a query.
          */
-        public static final String TIMESTAMP = "timestamp";
+        ColumnIndices(Cursor cursor) {
+            this.id = cursor.getColumnIndex(ViolationRecordColumns._ID);
+            this.longitude = cursor.getColumnIndex(ViolationRecordColumns.LONGITUDE);
+            this.latitude = cursor.getColumnIndex(ViolationRecordColumns.LATITUDE);
+            this.speed = cursor.getColumnIndex(ViolationRecordColumns.SPEED);
+            this.timestamp = cursor.getColumnIndex(ViolationRecordColumns.TIMESTAMP);
+        }
     }
 }
@@ -0,0 +1,91 @@
+package com.papei.thanos.speedometer;
+
+import android.location.Location;
+
+/**
+ * A location fix kept in primitive fields. Location sources reuse one instance for
+ * every delivery, so a fix is only valid during the callback that receives it and
+ * must be copied to be kept.
+ */
+public final class Fix {
+    /**
+     * The elapsed realtime of the fix in nanoseconds.
+     */
+    public long elapsedRealtimeNanos;
+
+    /**
+     * The wall clock time of the fix in milliseconds.
+     */
+    public long time;
+
+    /**
+     * The latitude in degrees.
+     */
+    public double latitude;
+
+    /**
+     * The longitude in degrees.
+     */
+    public double longitude;
+
+    /**
+     * The speed in m/s, measured by the source if hasSpeed is set, otherwise derived
+     * from the previous fix once delivered to a monitor callback.
+     */
+    public float speed;
+
+    /**
+     * Whether the source measured a speed.
+     */
+    public boolean hasSpeed;
+
+    /**
+     * The horizontal accuracy in meters.
+     */
+    public float accuracy;
+
+    /**
+     * Overwrites this fix with the values of a platform location.
+     *
+     * @param location The platform location.
+     * @return This fix.
+     */
+    public Fix set(Location location) {
+        this.elapsedRealtimeNanos = location.getElapsedRealtimeNanos();
+        this.time = location.getTime();
+        this.latitude = location.getLatitude();
+        this.longitude = location.getLongitude();
+        this.speed = location.getSpeed();
+        this.hasSpeed = location.hasSpeed();
+        this.accuracy = location.getAccuracy();
+
+        return this;
+    }
+
+    /**
+     * Overwrites this fix with the values of another fix.
+     *
+     * @param fix The fix to copy.
+     * @return This fix.
+     */
+    public Fix set(Fix fix) {
+        this.elapsedRealtimeNanos = fix.elapsedRealtimeNanos;
+        this.time = fix.time;
+        this.latitude = fix.latitude;
+        this.longitude = fix.longitude;
+        this.speed = fix.speed;
+        this.hasSpeed = fix.hasSpeed;
+        this.accuracy = fix.accuracy;
+
+        return this;
+    }
+
+    /**
+     * Gets the elapsed realtime of the fix in milliseconds.
+     *
+     * @return The elapsed realtime in milliseconds.
+     */
+    public long getElapsedRealtimeMillis() {
+        return this.elapsedRealtimeNanos / 1_000_000;
+    }
+}
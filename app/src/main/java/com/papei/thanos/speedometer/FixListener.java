@@ -0,0 +1,20 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Receives fixes from a location source.
+ */
+public interface FixListener {
+    /**
+     * Called with every new fix. The fix is reused by the source after this call returns.
+     *
+     * @param fix The new fix.
+     */
+    void onFix(Fix fix);
+
+    /**
+     * Called when the source starts or stops being able to deliver fixes.
+     *
+     * @param available Whether fixes are available.
+     */
+    void onAvailabilityChanged(boolean available);
+}
@@ -0,0 +1,410 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An always-on recorder of the most recent location fixes and pipeline events, kept in
+ * fixed-size primitive arrays. When a violation is stored, the fixes and events around it
+ * are written to a small binary file named after the violation ID.
+ */
+public final class FlightRecorder {
+    /**
+     * The entry kind of a location fix.
+     */
+    public static final byte KIND_FIX = 0;
+
+    /**
+     * The event recorded when the speedometer starts.
+     */
+    public static final byte EVENT_START = 1;
+
+    /**
+     * The event recorded when the speedometer stops.
+     */
+    public static final byte EVENT_STOP = 2;
+
+    /**
+     * The event recorded when the device location becomes unavailable.
+     */
+    public static final byte EVENT_LOCATION_DISABLED = 3;
+
+    /**
+     * The event recorded when a violation is detected.
+     */
+    public static final byte EVENT_VIOLATION = 4;
+
+    /**
+     * The event recorded when the violation alert is played.
+     */
+    public static final byte EVENT_ALERT = 5;
+
+    /**
+     * The event recorded when a pre alert is played, before the limit is exceeded.
+     */
+    public static final byte EVENT_PRE_ALERT = 6;
+
+    /**
+     * The magic number at the start of every snapshot file.
+     */
+    static final int MAGIC = 0x464c5431;
+
+    /**
+     * The version of the snapshot file format.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The number of entries kept, about 15 minutes of fixes at two per second.
+     */
+    static final int CAPACITY = 2048;
+
+    /**
+     * The time before a violation that is written to its snapshot.
+     */
+    static final long WINDOW_BEFORE_MILLIS = 60_000;
+
+    /**
+     * The time after a violation that is written to its snapshot.
+     */
+    static final long WINDOW_AFTER_MILLIS = 15_000;
+
+    /**
+     * The number of snapshot files kept, about a megabyte of the most recent violations.
+     */
+    static final int MAX_SNAPSHOTS = 200;
+
+    /**
+     * The recorder shared by the whole application.
+     */
+    private static FlightRecorder instance;
+
+    /**
+     * The kind of every entry.
+     */
+    private final byte[] kinds = new byte[CAPACITY];
+
+    /**
+     * The elapsed realtime of every entry in milliseconds.
+     */
+    private final long[] times = new long[CAPACITY];
+
+    /**
+     * The wall clock time of every entry in milliseconds.
+     */
+    private final long[] wallTimes = new long[CAPACITY];
+
+    /**
+     * The latitude of every fix.
+     */
+    private final double[] latitudes = new double[CAPACITY];
+
+    /**
+     * The longitude of every fix.
+     */
+    private final double[] longitudes = new double[CAPACITY];
+
+    /**
+     * The speed of every fix in m/s.
+     */
+    private final float[] speeds = new float[CAPACITY];
+
+    /**
+     * The horizontal accuracy of every fix in meters.
+     */
+    private final float[] accuracies = new float[CAPACITY];
+
+    /**
+     * The directory that holds the snapshot files.
+     */
+    private final File directory;
+
+    /**
+     * The executor that writes the snapshot files.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The total number of entries ever recorded, the next entry goes to this position modulo the capacity.
+     */
+    private long written = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param directory The directory that holds the snapshot files.
+     * @param executor The executor that writes the snapshot files.
+     */
+    FlightRecorder(File directory, ScheduledExecutorService executor) {
+        this.directory = directory;
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the recorder shared by the whole application.
+     *
+     * @param context The current context.
+     * @return The shared flight recorder.
+     */
+    public static synchronized FlightRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new FlightRecorder(
+                    new File(context.getApplicationContext().getFilesDir(), "flight"),
+                    Executors.newSingleThreadScheduledExecutor());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Records a location fix.
+     *
+     * @param time The elapsed realtime of the fix in milliseconds.
+     * @param wallTime The wall clock time of the fix in milliseconds.
+     * @param latitude The latitude of the fix.
+     * @param longitude The longitude of the fix.
+     * @param speed The speed of the fix in m/s.
+     * @param accuracy The horizontal accuracy of the fix in meters.
+     */
+    public synchronized void recordFix(long time, long wallTime, double latitude, double longitude,
+                                       float speed, float accuracy) {
+        int index = (int) (this.written++ % CAPACITY);
+
+        this.kinds[index] = KIND_FIX;
+        this.times[index] = time;
+        this.wallTimes[index] = wallTime;
+        this.latitudes[index] = latitude;
+        this.longitudes[index] = longitude;
+        this.speeds[index] = speed;
+        this.accuracies[index] = accuracy;
+    }
+
+    /**
+     * Records a pipeline event.
+     *
+     * @param event The event kind.
+     * @param time The elapsed realtime of the event in milliseconds.
+     * @param wallTime The wall clock time of the event in milliseconds.
+     */
+    public synchronized void recordEvent(byte event, long time, long wallTime) {
+        int index = (int) (this.written++ % CAPACITY);
+
+        this.kinds[index] = event;
+        this.times[index] = time;
+        this.wallTimes[index] = wallTime;
+        this.latitudes[index] = Double.NaN;
+        this.longitudes[index] = Double.NaN;
+        this.speeds[index] = Float.NaN;
+        this.accuracies[index] = Float.NaN;
+    }
+
+    /**
+     * Writes the entries around a violation to its snapshot file, once the
+     * time after the violation has been recorded too.
+     *
+     * @param violationId The ID of the stored violation.
+     * @param time The elapsed realtime when the violation was detected, in milliseconds.
+     * @param now The current elapsed realtime in milliseconds.
+     */
+    public void snapshot(long violationId, long time, long now) {
+        long delay = Math.max(0, time + WINDOW_AFTER_MILLIS - now);
+
+        this.executor.schedule(() -> {
+            try {
+                this.write(violationId, time);
+            } catch (IOException e) {
+                // A missing snapshot only removes the context of this violation.
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the snapshot file of a violation.
+     *
+     * @param violationId The violation ID.
+     * @return The snapshot file, which may not exist.
+     */
+    public File getSnapshotFile(long violationId) {
+        return new File(this.directory, violationId + ".bin");
+    }
+
+    /**
+     * Writes the snapshot file of a violation from the entries in the ring.
+     *
+     * @param violationId The violation ID.
+     * @param time The elapsed realtime when the violation was detected, in milliseconds.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(long violationId, long time) throws IOException {
+        Snapshot snapshot = this.copy(time - WINDOW_BEFORE_MILLIS, time + WINDOW_AFTER_MILLIS);
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Cannot create " + this.directory);
+        }
+
+        // Write to a temporary file first, so a snapshot is never left half written.
+        File file = this.getSnapshotFile(violationId);
+        File temporary = new File(this.directory, violationId + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(violationId);
+            out.writeLong(time);
+            out.writeInt(snapshot.count);
+
+            for (int i = 0; i < snapshot.count; i++) {
+                out.writeByte(snapshot.kinds[i]);
+                out.writeLong(snapshot.times[i]);
+                out.writeLong(snapshot.wallTimes[i]);
+                out.writeDouble(snapshot.latitudes[i]);
+                out.writeDouble(snapshot.longitudes[i]);
+                out.writeFloat(snapshot.speeds[i]);
+                out.writeFloat(snapshot.accuracies[i]);
+            }
+        }
+
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot rename " + temporary);
+        }
+
+        this.prune();
+    }
+
+    /**
+     * Deletes the oldest snapshot files beyond the newest {@link #MAX_SNAPSHOTS}.
+     */
+    private void prune() {
+        File[] files = this.directory.listFiles((directory, name) -> name.endsWith(".bin"));
+
+        if (files == null || files.length <= MAX_SNAPSHOTS) {
+            return;
+        }
+
+        // Violation IDs only grow, so the lowest IDs are the oldest snapshots.
+        long[] ids = new long[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+
+            try {
+                ids[i] = Long.parseLong(name.substring(0, name.length() - ".bin".length()));
+            } catch (NumberFormatException e) {
+                // Not a snapshot, so never deleted.
+                ids[i] = Long.MAX_VALUE;
+            }
+        }
+
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        long newestDeleted = sorted[files.length - MAX_SNAPSHOTS - 1];
+
+        for (int i = 0; i < files.length; i++) {
+            if (ids[i] <= newestDeleted) {
+                // A file left behind is retried after the next snapshot.
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Copies the entries of a time range out of the ring, oldest first.
+     *
+     * @param from The earliest elapsed realtime, inclusive.
+     * @param to The latest elapsed realtime, inclusive.
+     * @return The copied entries.
+     */
+    private synchronized Snapshot copy(long from, long to) {
+        long oldest = Math.max(0, this.written - CAPACITY);
+        Snapshot snapshot = new Snapshot((int) (this.written - oldest));
+
+        for (long position = oldest; position < this.written; position++) {
+            int index = (int) (position % CAPACITY);
+
+            if (this.times[index] < from || this.times[index] > to) {
+                continue;
+            }
+
+            int i = snapshot.count++;
+            snapshot.kinds[i] = this.kinds[index];
+            snapshot.times[i] = this.times[index];
+            snapshot.wallTimes[i] = this.wallTimes[index];
+            snapshot.latitudes[i] = this.latitudes[index];
+            snapshot.longitudes[i] = this.longitudes[index];
+            snapshot.speeds[i] = this.speeds[index];
+            snapshot.accuracies[i] = this.accuracies[index];
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * The entries copied out of the ring for a snapshot.
+     */
+    private static final class Snapshot {
+        /**
+         * The kind of every entry.
+         */
+        final byte[] kinds;
+
+        /**
+         * The elapsed realtime of every entry in milliseconds.
+         */
+        final long[] times;
+
+        /**
+         * The wall clock time of every entry in milliseconds.
+         */
+        final long[] wallTimes;
+
+        /**
+         * The latitude of every fix.
+         */
+        final double[] latitudes;
+
+        /**
+         * The longitude of every fix.
+         */
+        final double[] longitudes;
+
+        /**
+         * The speed of every fix in m/s.
+         */
+        final float[] speeds;
+
+        /**
+         * The horizontal accuracy of every fix in meters.
+         */
+        final float[] accuracies;
+
+        /**
+         * The number of copied entries.
+         */
+        int count = 0;
+
+        /**
+         * Default constructor.
+         *
+         * @param capacity The maximum number of entries.
+         */
+        Snapshot(int capacity) {
+            this.kinds = new byte[capacity];
+            this.times = new long[capacity];
+            this.wallTimes = new long[capacity];
+            this.latitudes = new double[capacity];
+            this.longitudes = new double[capacity];
+            this.speeds = new float[capacity];
+            this.accuracies = new float[capacity];
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.os.Looper;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationAvailability;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.LocationSettingsRequest;
+
+import java.util.function.Consumer;
+
+/**
+ * Delivers fixes through Google Play Location services.
+ */
+public final class FusedLocationSource extends LocationCallback implements LocationSource {
+    /**
+     * The current context.
+     */
+    private final Context context;
+
+    /**
+     * The Google Play Location client reference.
+     */
+    private final FusedLocationProviderClient client;
+
+    /**
+     * The request settings used to fetch new locations.
+     */
+    private final LocationRequest request;
+
+    /**
+     * The fix reused for every delivery.
+     */
+    private final Fix fix = new Fix();
+
+    /**
+     * The listener that receives the fixes, or null if stopped.
+     */
+    private FixListener listener;
+
+    /**
+     * Default constructor.
+     *
+     * @param context The current context.
+     * @param updateInterval The requested time between fixes, in milliseconds.
+     */
+    public FusedLocationSource(Context context, long updateInterval) {
+        this.context = context;
+        this.client = LocationServices.getFusedLocationProviderClient(context);
+
+        this.request = new LocationRequest();
+        this.request.setMaxWaitTime(updateInterval);
+        this.request.setInterval(updateInterval);
+        this.request.setFastestInterval(updateInterval);
+        this.request.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    }
+
+    @Override
+    public String getName() {
+        return "fused";
+    }
+
+    @Override
+    public long getUpdateInterval() {
+        return this.request.getInterval();
+    }
+
+    @Override
+    public void checkSettings(Runnable onSatisfied, Runnable onUnavailable) {
+        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
+        builder.addLocationRequest(this.request);
+
+        LocationServices.getSettingsClient(this.context)
+                .checkLocationSettings(builder.build())
+                .addOnSuccessListener(response -> onSatisfied.run())
+                .addOnFailureListener(e -> onUnavailable.run());
+    }
+
+    @Override
+    public void requestLastKnownFix(Consumer<Fix> consumer) {
+        this.client.getLastLocation().addOnSuccessListener(location -> {
+            if (location != null) {
+                consumer.accept(new Fix().set(location));
+            }
+        });
+    }
+
+    @Override
+    public void start(FixListener listener, Looper looper) {
+        this.listener = listener;
+        this.client.requestLocationUpdates(this.request, this, looper);
+    }
+
+    @Override
+    public void stop() {
+        this.client.removeLocationUpdates(this);
+        this.listener = null;
+    }
+
+    @Override
+    public void onLocationAvailability(LocationAvailability status) {
+        FixListener listener = this.listener;
+
+        if (listener != null) {
+            listener.onAvailabilityChanged(status.isLocationAvailable());
+        }
+    }
+
+    @Override
+    public void onLocationResult(LocationResult result) {
+        FixListener listener = this.listener;
+
+        if (listener != null && result != null) {
+            listener.onFix(this.fix.set(result.getLastLocation()));
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.papei.thanos.speedometer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A list of named places in a static k-d tree, for offline reverse geocoding. The places are
+ * mapped onto the unit sphere, so the nearest place by straight line distance is also the
+ * nearest by great circle distance, at any latitude and across the antimeridian. The tree is
+ * implicit in the order of the primitive arrays: every range has its splitting place in the
+ * middle, the places below it on the splitting axis before it and the rest after it.
+ */
+public final class Gazetteer {
+    /**
+     * The name of every place, in tree order.
+     */
+    private final String[] names;
+
+    /**
+     * The latitude of every place, in tree order.
+     */
+    private final double[] latitudes;
+
+    /**
+     * The longitude of every place, in tree order.
+     */
+    private final double[] longitudes;
+
+    /**
+     * The coordinates of every place on the unit sphere, in tree order.
+     */
+    private final double[][] points;
+
+    /**
+     * The number of places.
+     */
+    private final int count;
+
+    /**
+     * Default constructor, which builds the tree by reordering the given arrays.
+     *
+     * @param names The name of every place.
+     * @param latitudes The latitude of every place.
+     * @param longitudes The longitude of every place.
+     * @param count The number of places.
+     */
+    public Gazetteer(String[] names, double[] latitudes, double[] longitudes, int count) {
+        this.names = names;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.count = count;
+        this.points = new double[3][count];
+
+        for (int i = 0; i < count; i++) {
+            toPoint(latitudes[i], longitudes[i], this.points, i);
+        }
+
+        this.build(0, count, 0);
+    }
+
+    /**
+     * Reads a gazetteer with one place per line, as name, latitude and longitude separated by
+     * commas. Empty lines and lines starting with # are skipped.
+     *
+     * @param reader The gazetteer text.
+     * @return The gazetteer.
+     * @throws IOException If the text cannot be read or a line is malformed.
+     */
+    public static Gazetteer read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String[] names = new String[256];
+        double[] latitudes = new double[256];
+        double[] longitudes = new double[256];
+        int count = 0;
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            // Split from the end, so names may contain commas.
+            int second = line.lastIndexOf(',');
+            int first = second > 0 ? line.lastIndexOf(',', second - 1) : -1;
+
+            if (first <= 0) {
+                throw new IOException("Malformed gazetteer line: " + line);
+            }
+
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                latitudes = Arrays.copyOf(latitudes, count * 2);
+                longitudes = Arrays.copyOf(longitudes, count * 2);
+            }
+
+            try {
+                latitudes[count] = Double.parseDouble(line.substring(first + 1, second).trim());
+                longitudes[count] = Double.parseDouble(line.substring(second + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed gazetteer line: " + line, e);
+            }
+
+            names[count] = line.substring(0, first).trim();
+            count++;
+        }
+
+        return new Gazetteer(names, latitudes, longitudes, count);
+    }
+
+    /**
+     * Finds the place nearest to a location.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The index of the nearest place, or -1 if the gazetteer is empty.
+     */
+    public int nearest(double latitude, double longitude) {
+        if (this.count == 0) {
+            return -1;
+        }
+
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        double x = Math.cos(phi) * Math.cos(lambda);
+        double y = Math.cos(phi) * Math.sin(lambda);
+        double z = Math.sin(phi);
+
+        return this.search(0, this.count, 0, x, y, z, -1);
+    }
+
+    /**
+     * Gets the number of places.
+     *
+     * @return The place count.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the name of a place.
+     *
+     * @param index The place index.
+     * @return The name.
+     */
+    public String getName(int index) {
+        return this.names[index];
+    }
+
+    /**
+     * Gets the latitude of a place.
+     *
+     * @param index The place index.
+     * @return The latitude.
+     */
+    public double getLatitude(int index) {
+        return this.latitudes[index];
+    }
+
+    /**
+     * Gets the longitude of a place.
+     *
+     * @param index The place index.
+     * @return The longitude.
+     */
+    public double getLongitude(int index) {
+        return this.longitudes[index];
+    }
+
+    /**
+     * Searches a subtree for a place nearer than the best one so far.
+     *
+     * @return The index of the nearest place found.
+     */
+    private int search(int from, int to, int axis, double x, double y, double z, int best) {
+        if (from >= to) {
+            return best;
+        }
+
+        int middle = (from + to) >>> 1;
+
+        if (best == -1 || this.distance(middle, x, y, z) < this.distance(best, x, y, z)) {
+            best = middle;
+        }
+
+        double split = this.points[axis][middle] - (axis == 0 ? x : axis == 1 ? y : z);
+        int next = (axis + 1) % 3;
+
+        // Visit the side of the location first, then the other side only if it can be nearer.
+        if (split > 0) {
+            best = this.search(from, middle, next, x, y, z, best);
+
+            if (split * split < this.distance(best, x, y, z)) {
+                best = this.search(middle + 1, to, next, x, y, z, best);
+            }
+        } else {
+            best = this.search(middle + 1, to, next, x, y, z, best);
+
+            if (split * split < this.distance(best, x, y, z)) {
+                best = this.search(from, middle, next, x, y, z, best);
+            }
+        }
+
+        return best;
+    }
+
+    private double distance(int index, double x, double y, double z) {
+        double dx = this.points[0][index] - x;
+        double dy = this.points[1][index] - y;
+        double dz = this.points[2][index] - z;
+
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Arranges a range into a subtree, with its median place on the axis in the middle.
+     */
+    private void build(int from, int to, int axis) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        this.select(from, to - 1, middle, this.points[axis]);
+
+        int next = (axis + 1) % 3;
+        this.build(from, middle, next);
+        this.build(middle + 1, to, next);
+    }
+
+    /**
+     * Moves the k-th smallest place of a range on an axis into position k, with the smaller
+     * places before it and the larger ones after it.
+     */
+    private void select(int left, int right, int k, double[] keys) {
+        while (left < right) {
+            double pivot = keys[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+
+                while (keys[j] > pivot) {
+                    j--;
+                }
+
+                if (i <= j) {
+                    this.swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        String name = this.names[i];
+        this.names[i] = this.names[j];
+        this.names[j] = name;
+
+        double latitude = this.latitudes[i];
+        this.latitudes[i] = this.latitudes[j];
+        this.latitudes[j] = latitude;
+
+        double longitude = this.longitudes[i];
+        this.longitudes[i] = this.longitudes[j];
+        this.longitudes[j] = longitude;
+
+        for (double[] axis : this.points) {
+            double value = axis[i];
+            axis[i] = axis[j];
+            axis[j] = value;
+        }
+    }
+
+    private static void toPoint(double latitude, double longitude, double[][] points, int index) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+
+        points[0][index] = Math.cos(phi) * Math.cos(lambda);
+        points[1][index] = Math.cos(phi) * Math.sin(lambda);
+        points[2][index] = Math.sin(phi);
+    }
+}
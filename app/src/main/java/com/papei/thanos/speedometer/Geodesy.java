@@ -0,0 +1,181 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Distance, bearing and bounding box math on a spherical earth, over primitive values and
+ * arrays so that nothing is allocated per call. The spherical model itself differs from the
+ * WGS84 ellipsoid by up to 0.5%, which is far below the accuracy of a location fix.
+ */
+public final class Geodesy {
+    /**
+     * The mean radius of the earth in meters.
+     */
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    /**
+     * The highest relative error of the equirectangular distance against the haversine
+     * distance, for points up to 10 km apart below 70 degrees of latitude.
+     */
+    public static final double EQUIRECTANGULAR_ERROR = 1e-5;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private Geodesy() {
+        //
+    }
+
+    /**
+     * Computes the great circle distance between two points with the haversine formula,
+     * which is accurate at every distance.
+     *
+     * @param lat1 The latitude of the first point.
+     * @param lon1 The longitude of the first point.
+     * @param lat2 The latitude of the second point.
+     * @param lon2 The longitude of the second point.
+     * @return The distance in meters.
+     */
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double sinLat = Math.sin((phi2 - phi1) / 2);
+        double sinLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinLat * sinLat + Math.cos(phi1) * Math.cos(phi2) * sinLon * sinLon;
+
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Computes the distance between two nearby points on a flat projection around their mean
+     * latitude. It needs a single cosine instead of five trigonometric calls, and stays within
+     * {@link #EQUIRECTANGULAR_ERROR} of the haversine distance for the distances between
+     * consecutive fixes.
+     *
+     * @param lat1 The latitude of the first point.
+     * @param lon1 The longitude of the first point.
+     * @param lat2 The latitude of the second point.
+     * @param lon2 The longitude of the second point.
+     * @return The distance in meters.
+     */
+    public static double equirectangular(double lat1, double lon1, double lat2, double lon2) {
+        double x = Math.toRadians(wrapLongitude(lon2 - lon1)) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * Computes the initial bearing of the great circle from one point to another.
+     *
+     * @param lat1 The latitude of the start point.
+     * @param lon1 The longitude of the start point.
+     * @param lat2 The latitude of the end point.
+     * @param lon2 The longitude of the end point.
+     * @return The bearing in degrees clockwise from north, from 0 up to 360.
+     */
+    public static double bearing(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double lambda = Math.toRadians(lon2 - lon1);
+
+        double y = Math.sin(lambda) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(lambda);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    /**
+     * Computes the smallest box that contains every point within a distance of a center.
+     * Near the poles the box covers every longitude. Boxes that cross the antimeridian are
+     * clamped to it, so they must not be used for exact queries there.
+     *
+     * @param latitude The latitude of the center.
+     * @param longitude The longitude of the center.
+     * @param radius The distance from the center in meters.
+     * @param box The output box as south, west, north and east, in degrees.
+     */
+    public static void boundingBox(double latitude, double longitude, double radius, double[] box) {
+        double angle = radius / EARTH_RADIUS_METERS;
+        double deltaLatitude = Math.toDegrees(angle);
+        double south = latitude - deltaLatitude;
+        double north = latitude + deltaLatitude;
+
+        box[0] = Math.max(-90, south);
+        box[2] = Math.min(90, north);
+
+        if (south <= -90 || north >= 90) {
+            // The circle contains a pole.
+            box[1] = -180;
+            box[3] = 180;
+            return;
+        }
+
+        double deltaLongitude = Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(Math.toRadians(latitude))));
+        box[1] = Math.max(-180, longitude - deltaLongitude);
+        box[3] = Math.min(180, longitude + deltaLongitude);
+    }
+
+    /**
+     * Computes the length of a path.
+     *
+     * @param latitudes The latitude of every vertex.
+     * @param longitudes The longitude of every vertex.
+     * @param count The number of vertices.
+     * @return The length in meters.
+     */
+    public static double pathLength(double[] latitudes, double[] longitudes, int count) {
+        double length = 0;
+
+        for (int i = 1; i < count; i++) {
+            length += haversine(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+        }
+
+        return length;
+    }
+
+    /**
+     * Finds the point nearest to a location, using the equirectangular distance.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param latitudes The latitude of every point.
+     * @param longitudes The longitude of every point.
+     * @param count The number of points.
+     * @return The index of the nearest point, or -1 if there are none.
+     */
+    public static int nearest(double latitude, double longitude, double[] latitudes, double[] longitudes, int count) {
+        // The cosine is the same for every point, and the square root does not change the order.
+        double scale = Math.cos(Math.toRadians(latitude));
+        int nearest = -1;
+        double nearestDistance = Double.POSITIVE_INFINITY;
+
+        for (int i = 0; i < count; i++) {
+            double x = wrapLongitude(longitudes[i] - longitude) * scale;
+            double y = latitudes[i] - latitude;
+            double distance = x * x + y * y;
+
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Wraps a longitude difference into the range from -180 to 180 degrees.
+     *
+     * @param degrees The longitude difference.
+     * @return The wrapped difference.
+     */
+    private static double wrapLongitude(double degrees) {
+        if (degrees > 180) {
+            return degrees - 360;
+        } else if (degrees < -180) {
+            return degrees + 360;
+        }
+
+        return degrees;
+    }
+}
@@ -0,0 +1,125 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Geohash cells kept as interleaved bits in a long, five bits per geohash character. Every
+ * cell of a precision is split into 32 cells of the next one, so one location belongs to a
+ * nested cell at every precision.
+ */
+public final class Geohash {
+    /**
+     * The highest supported precision, in geohash characters.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * The geohash alphabet.
+     */
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * This class should not be instantiated.
+     */
+    private Geohash() {
+        //
+    }
+
+    /**
+     * Computes the cell that contains a location.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @param precision The precision in geohash characters, up to {@link #MAX_PRECISION}.
+     * @return The cell bits, the longitude taking the first bit.
+     */
+    public static long encode(double latitude, double longitude, int precision) {
+        double south = -90;
+        double north = 90;
+        double west = -180;
+        double east = 180;
+        long hash = 0;
+
+        for (int bit = 0; bit < precision * 5; bit++) {
+            hash <<= 1;
+
+            if (bit % 2 == 0) {
+                double middle = (west + east) / 2;
+
+                if (longitude >= middle) {
+                    hash |= 1;
+                    west = middle;
+                } else {
+                    east = middle;
+                }
+            } else {
+                double middle = (south + north) / 2;
+
+                if (latitude >= middle) {
+                    hash |= 1;
+                    south = middle;
+                } else {
+                    north = middle;
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Computes the center of a cell.
+     *
+     * @param hash The cell bits.
+     * @param precision The precision in geohash characters.
+     * @param center The output latitude and longitude of the center.
+     */
+    public static void decodeCenter(long hash, int precision, double[] center) {
+        double south = -90;
+        double north = 90;
+        double west = -180;
+        double east = 180;
+        int bits = precision * 5;
+
+        for (int bit = 0; bit < bits; bit++) {
+            boolean set = ((hash >>> (bits - 1 - bit)) & 1) != 0;
+
+            if (bit % 2 == 0) {
+                double middle = (west + east) / 2;
+
+                if (set) {
+                    west = middle;
+                } else {
+                    east = middle;
+                }
+            } else {
+                double middle = (south + north) / 2;
+
+                if (set) {
+                    south = middle;
+                } else {
+                    north = middle;
+                }
+            }
+        }
+
+        center[0] = (south + north) / 2;
+        center[1] = (west + east) / 2;
+    }
+
+    /**
+     * Converts a cell to its geohash text.
+     *
+     * @param hash The cell bits.
+     * @param precision The precision in geohash characters.
+     * @return The geohash text.
+     */
+    public static String toString(long hash, int precision) {
+        char[] text = new char[precision];
+
+        for (int i = precision - 1; i >= 0; i--) {
+            text[i] = BASE32[(int) (hash & 31)];
+            hash >>>= 5;
+        }
+
+        return new String(text);
+    }
+}
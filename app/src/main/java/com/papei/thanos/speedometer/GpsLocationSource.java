@@ -0,0 +1,120 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+
+import java.util.function.Consumer;
+
+/**
+ * Delivers fixes straight from the GPS provider of the platform location manager.
+ * Works without Play services and avoids the batching of the fused provider.
+ */
+public final class GpsLocationSource implements LocationSource, LocationListener {
+    /**
+     * The requested time between fixes in milliseconds, by default the usual rate of GNSS receivers.
+     */
+    private final long updateInterval;
+
+    /**
+     * The platform location manager.
+     */
+    private final LocationManager manager;
+
+    /**
+     * The fix reused for every delivery.
+     */
+    private final Fix fix = new Fix();
+
+    /**
+     * The listener that receives the fixes, or null if stopped.
+     */
+    private FixListener listener;
+
+    /**
+     * Default constructor.
+     *
+     * @param context The current context.
+     * @param updateInterval The requested time between fixes, in milliseconds.
+     */
+    public GpsLocationSource(Context context, long updateInterval) {
+        this.updateInterval = updateInterval;
+        this.manager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+    }
+
+    @Override
+    public String getName() {
+        return "gps";
+    }
+
+    @Override
+    public long getUpdateInterval() {
+        return this.updateInterval;
+    }
+
+    @Override
+    public void checkSettings(Runnable onSatisfied, Runnable onUnavailable) {
+        if (this.manager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
+            onSatisfied.run();
+        } else {
+            onUnavailable.run();
+        }
+    }
+
+    @Override
+    public void requestLastKnownFix(Consumer<Fix> consumer) {
+        Location location = this.manager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
+
+        if (location != null) {
+            consumer.accept(new Fix().set(location));
+        }
+    }
+
+    @Override
+    public void start(FixListener listener, Looper looper) {
+        this.listener = listener;
+        this.manager.requestLocationUpdates(LocationManager.GPS_PROVIDER, this.updateInterval, 0, this, looper);
+    }
+
+    @Override
+    public void stop() {
+        this.manager.removeUpdates(this);
+        this.listener = null;
+    }
+
+    @Override
+    public void onLocationChanged(Location location) {
+        FixListener listener = this.listener;
+
+        if (listener != null) {
+            listener.onFix(this.fix.set(location));
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onStatusChanged(String provider, int status, Bundle extras) {
+        //
+    }
+
+    @Override
+    public void onProviderEnabled(String provider) {
+        FixListener listener = this.listener;
+
+        if (listener != null) {
+            listener.onAvailabilityChanged(true);
+        }
+    }
+
+    @Override
+    public void onProviderDisabled(String provider) {
+        FixListener listener = this.listener;
+
+        if (listener != null) {
+            listener.onAvailabilityChanged(false);
+        }
+    }
+}
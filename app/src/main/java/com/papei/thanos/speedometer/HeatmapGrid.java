@@ -0,0 +1,177 @@
+package com.papei.thanos.speedometer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Bins violation positions into density grids, one grid per map zoom level.
+ * Every grid is split into map tiles, and every tile into square cells.
+ */
+public final class HeatmapGrid {
+    /**
+     * The lowest zoom level that has a density grid.
+     */
+    public static final int MIN_ZOOM = 2;
+
+    /**
+     * The highest zoom level that has a density grid.
+     */
+    public static final int MAX_ZOOM = 16;
+
+    /**
+     * The number of cells along each side of a tile.
+     */
+    public static final int CELLS_PER_SIDE = 16;
+
+    /**
+     * The highest latitude that can be projected on the map.
+     */
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * The tile bins of every zoom level, keyed by tile key.
+     */
+    private Map<Long, int[]>[] grids = createGrids();
+
+    /**
+     * Rebuilds all density grids from scratch, binning every zoom level in parallel.
+     *
+     * @param latitudes The latitudes of all violations.
+     * @param longitudes The longitudes of all violations.
+     * @param count The number of violations in the arrays.
+     */
+    public void build(double[] latitudes, double[] longitudes, int count) {
+        Map<Long, int[]>[] result = createGrids();
+
+        IntStream.rangeClosed(MIN_ZOOM, MAX_ZOOM).parallel().forEach(zoom -> {
+            Map<Long, int[]> tiles = result[zoom - MIN_ZOOM];
+
+            for (int i = 0; i < count; i++) {
+                bin(tiles, zoom, latitudes[i], longitudes[i]);
+            }
+        });
+
+        synchronized (this) {
+            this.grids = result;
+        }
+    }
+
+    /**
+     * Adds a single violation to every density grid.
+     *
+     * @param latitude The latitude of the violation.
+     * @param longitude The longitude of the violation.
+     * @return The keys of the tiles that changed, one per zoom level.
+     */
+    public synchronized long[] add(double latitude, double longitude) {
+        long[] changed = new long[MAX_ZOOM - MIN_ZOOM + 1];
+
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            changed[zoom - MIN_ZOOM] = bin(this.grids[zoom - MIN_ZOOM], zoom, latitude, longitude);
+        }
+
+        return changed;
+    }
+
+    /**
+     * Copies the cell counts of a tile.
+     *
+     * @param zoom The zoom level of the tile.
+     * @param x The horizontal index of the tile.
+     * @param y The vertical index of the tile.
+     * @return The cell counts in row order, or null if the tile is empty.
+     */
+    public synchronized int[] copyTile(int zoom, int x, int y) {
+        if (zoom < MIN_ZOOM || zoom > MAX_ZOOM) {
+            return null;
+        }
+
+        int[] bins = this.grids[zoom - MIN_ZOOM].get(tileKey(zoom, x, y));
+        return bins != null ? bins.clone() : null;
+    }
+
+    /**
+     * Creates the key of a tile.
+     *
+     * @param zoom The zoom level of the tile.
+     * @param x The horizontal index of the tile.
+     * @param y The vertical index of the tile.
+     * @return The tile key.
+     */
+    public static long tileKey(int zoom, int x, int y) {
+        return ((long) zoom << 48) | ((long) x << 24) | y;
+    }
+
+    /**
+     * Gets the zoom level of a tile key.
+     *
+     * @param key The tile key.
+     * @return The zoom level.
+     */
+    public static int tileZoom(long key) {
+        return (int) (key >>> 48);
+    }
+
+    /**
+     * Gets the horizontal index of a tile key.
+     *
+     * @param key The tile key.
+     * @return The horizontal tile index.
+     */
+    public static int tileX(long key) {
+        return (int) ((key >>> 24) & 0xFFFFFF);
+    }
+
+    /**
+     * Gets the vertical index of a tile key.
+     *
+     * @param key The tile key.
+     * @return The vertical tile index.
+     */
+    public static int tileY(long key) {
+        return (int) (key & 0xFFFFFF);
+    }
+
+    /**
+     * Increments the cell of a position in a zoom level grid.
+     *
+     * @return The key of the tile that holds the cell.
+     */
+    private static long bin(Map<Long, int[]> tiles, int zoom, double latitude, double longitude) {
+        long cells = (long) CELLS_PER_SIDE << zoom;
+
+        // Project the position with Web Mercator, the projection of the map tiles.
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(clamped));
+        double mercatorX = (longitude + 180) / 360;
+        double mercatorY = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+
+        long cellX = Math.max(0, Math.min(cells - 1, (long) (mercatorX * cells)));
+        long cellY = Math.max(0, Math.min(cells - 1, (long) (mercatorY * cells)));
+
+        long key = tileKey(zoom, (int) (cellX / CELLS_PER_SIDE), (int) (cellY / CELLS_PER_SIDE));
+        int[] bins = tiles.get(key);
+
+        if (bins == null) {
+            bins = new int[CELLS_PER_SIDE * CELLS_PER_SIDE];
+            tiles.put(key, bins);
+        }
+
+        bins[(int) (cellY % CELLS_PER_SIDE) * CELLS_PER_SIDE + (int) (cellX % CELLS_PER_SIDE)]++;
+
+        return key;
+    }
+
+    private static Map<Long, int[]>[] createGrids() {
+        // Generic arrays cannot be created, and this one only ever holds maps of tile bins.
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Map<Long, int[]>[] grids = new Map[MAX_ZOOM - MIN_ZOOM + 1];
+
+        for (int i = 0; i < grids.length; i++) {
+            grids[i] = new HashMap<>();
+        }
+
+        return grids;
+    }
+}
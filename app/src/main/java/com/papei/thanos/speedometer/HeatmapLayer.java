@@ -0,0 +1,220 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the violation heatmap alive for the whole process and updates it
+ * incrementally as new violations are stored.
+ */
+public final class HeatmapLayer implements DatabaseHelper.ViolationListener {
+    /**
+     * The single instance of the layer.
+     */
+    private static HeatmapLayer instance;
+
+    /**
+     * The density grid of all violations.
+     */
+    private final HeatmapGrid grid = new HeatmapGrid();
+
+    /**
+     * The tile provider that renders the grid.
+     */
+    private final HeatmapTileProvider tileProvider;
+
+    /**
+     * The file that holds the highest violation ID and the number of violations included in
+     * the disk cache. IDs start over once the database is cleared, so the ID alone is not enough.
+     */
+    private final File stampFile;
+
+    /**
+     * The listeners notified when rendered tiles become stale.
+     */
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The thread that builds and updates the grid and its tile files, so no file work runs
+     * on the database writer thread.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The violations stored while the grid was being built.
+     */
+    private final List<DatabaseHelper.ViolationRecord> pendingRecords = new ArrayList<>();
+
+    /**
+     * The future that completes once the grid has been built.
+     */
+    private CompletableFuture<Void> ready;
+
+    /**
+     * Whether the grid has been built and accepts incremental updates.
+     */
+    private boolean built = false;
+
+    /**
+     * The highest violation ID included in the grid.
+     */
+    private long highestId = 0;
+
+    /**
+     * The number of violations included in the grid.
+     */
+    private int count = 0;
+
+    /**
+     * This class should be accessed through the shared instance.
+     *
+     * @param context The application context.
+     */
+    private HeatmapLayer(Context context) {
+        File directory = new File(context.getCacheDir(), "heatmap");
+        this.tileProvider = new HeatmapTileProvider(this.grid, directory);
+        this.stampFile = new File(context.getCacheDir(), "heatmap.stamp");
+
+        DatabaseHelper.getInstance(context).addViolationListener(this);
+    }
+
+    /**
+     * Gets the shared heatmap layer.
+     *
+     * @param context The current context.
+     * @return The heatmap layer instance.
+     */
+    public static synchronized HeatmapLayer getInstance(Context context) {
+        if (instance == null) {
+            instance = new HeatmapLayer(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Builds the grid from the database the first time it is called.
+     *
+     * @param dbHelper The database helper used to read violations.
+     * @return A completable future that completes once the grid is ready.
+     */
+    public synchronized CompletableFuture<Void> load(DatabaseHelper dbHelper) {
+        if (this.ready == null) {
+            this.ready = dbHelper.getViolationPositions().thenAcceptAsync(this::build, this.executor);
+        }
+
+        return this.ready;
+    }
+
+    /**
+     * Gets the tile provider that renders the heatmap.
+     *
+     * @return The heatmap tile provider.
+     */
+    public HeatmapTileProvider getTileProvider() {
+        return this.tileProvider;
+    }
+
+    /**
+     * Registers a listener that is called on a background thread when tiles become stale.
+     *
+     * @param listener The change listener.
+     */
+    public void addChangeListener(Runnable listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a change listener.
+     *
+     * @param listener The change listener.
+     */
+    public void removeChangeListener(Runnable listener) {
+        this.changeListeners.remove(listener);
+    }
+
+    @Override
+    public void onViolationAdded(DatabaseHelper.ViolationRecord record) {
+        // Called on the database writer thread, so hand the tile and stamp files to the layer thread.
+        this.executor.execute(() -> {
+            synchronized (this) {
+                if (!this.built) {
+                    // Apply it once the grid is built, unless the build already includes it.
+                    this.pendingRecords.add(record);
+                    return;
+                }
+
+                this.apply(record);
+            }
+
+            for (Runnable listener : this.changeListeners) {
+                listener.run();
+            }
+        });
+    }
+
+    private void build(ViolationPositions positions) {
+        this.grid.build(positions.getLatitudes(), positions.getLongitudes(), positions.getCount());
+        long highest = positions.getHighestId();
+
+        synchronized (this) {
+            this.highestId = highest;
+            this.count = positions.getCount();
+
+            // Tiles on disk were rendered from a different set of violations.
+            if (!this.createStamp().equals(this.readStamp())) {
+                this.tileProvider.invalidateAll();
+            }
+
+            this.writeStamp();
+
+            for (DatabaseHelper.ViolationRecord record : this.pendingRecords) {
+                if (record.getId() > highest) {
+                    this.apply(record);
+                }
+            }
+
+            this.pendingRecords.clear();
+            this.built = true;
+        }
+    }
+
+    private void apply(DatabaseHelper.ViolationRecord record) {
+        long[] changed = this.grid.add(record.getLatitude(), record.getLongitude());
+        this.tileProvider.invalidate(changed);
+
+        this.highestId = Math.max(this.highestId, record.getId());
+        this.count++;
+        this.writeStamp();
+    }
+
+    private String createStamp() {
+        return this.highestId + " " + this.count;
+    }
+
+    private String readStamp() {
+        try {
+            return new String(Files.readAllBytes(this.stampFile.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeStamp() {
+        try {
+            Files.write(this.stampFile.toPath(), this.createStamp().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Without a stamp the disk cache is simply rebuilt on the next start.
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.papei.thanos.speedometer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders heatmap tiles from a density grid, backed by a memory and a disk tile cache.
+ */
+public final class HeatmapTileProvider implements TileProvider {
+    /**
+     * The width and height of a tile in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The number of violations in a cell that renders at full intensity.
+     */
+    private static final int SATURATION = 20;
+
+    /**
+     * The maximum size of the memory cache in bytes.
+     */
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The density grid rendered by this provider.
+     */
+    private final HeatmapGrid grid;
+
+    /**
+     * The directory that holds the cached tile images.
+     */
+    private final File cacheDirectory;
+
+    /**
+     * Incremented on every invalidation, so tiles read or rendered meanwhile are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The lock that makes caching a tile atomic with the generation check and with invalidation.
+     */
+    private final Object cacheLock = new Object();
+
+    /**
+     * The rendered tile images, keyed by tile key.
+     */
+    private final LruCache<Long, byte[]> memoryCache = new LruCache<Long, byte[]>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Long key, byte[] value) {
+            return value.length;
+        }
+    };
+
+    /**
+     * Default constructor.
+     *
+     * @param grid The density grid rendered by this provider.
+     * @param cacheDirectory The directory that holds the cached tile images.
+     */
+    public HeatmapTileProvider(HeatmapGrid grid, File cacheDirectory) {
+        this.grid = grid;
+        this.cacheDirectory = cacheDirectory;
+        this.cacheDirectory.mkdirs();
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        if (zoom < HeatmapGrid.MIN_ZOOM || zoom > HeatmapGrid.MAX_ZOOM) {
+            return NO_TILE;
+        }
+
+        long key = HeatmapGrid.tileKey(zoom, x, y);
+
+        // Serve the tile from memory first, then from disk.
+        byte[] image = this.memoryCache.get(key);
+
+        if (image != null) {
+            return new Tile(TILE_SIZE, TILE_SIZE, image);
+        }
+
+        long readGeneration = this.generation.get();
+        boolean rendered = false;
+        image = this.readTile(key);
+
+        if (image == null) {
+            // Nothing is cached, so render the tile from the grid.
+            int[] bins = this.grid.copyTile(zoom, x, y);
+
+            if (bins == null) {
+                return NO_TILE;
+            }
+
+            image = render(bins);
+            rendered = true;
+        }
+
+        synchronized (this.cacheLock) {
+            // If the grid changed since the tile was read or rendered, it may already be stale.
+            if (readGeneration == this.generation.get()) {
+                if (rendered) {
+                    this.writeTile(key, image);
+                }
+
+                this.memoryCache.put(key, image);
+            }
+        }
+
+        return new Tile(TILE_SIZE, TILE_SIZE, image);
+    }
+
+    /**
+     * Removes changed tiles from both caches, so they are rendered again.
+     *
+     * @param keys The keys of the changed tiles.
+     */
+    public void invalidate(long[] keys) {
+        synchronized (this.cacheLock) {
+            this.generation.incrementAndGet();
+
+            for (long key : keys) {
+                this.memoryCache.remove(key);
+                this.tileFile(key).delete();
+            }
+        }
+    }
+
+    /**
+     * Removes all tiles from both caches.
+     */
+    public void invalidateAll() {
+        synchronized (this.cacheLock) {
+            this.generation.incrementAndGet();
+            this.memoryCache.evictAll();
+
+            File[] files = this.cacheDirectory.listFiles();
+
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private byte[] readTile(long key) {
+        File file = this.tileFile(key);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeTile(long key, byte[] image) {
+        try {
+            Files.write(this.tileFile(key).toPath(), image);
+        } catch (IOException e) {
+            // The disk cache is optional, the tile is rendered again next time.
+        }
+    }
+
+    private File tileFile(long key) {
+        String name = HeatmapGrid.tileZoom(key) + "_" + HeatmapGrid.tileX(key) + "_" + HeatmapGrid.tileY(key) + ".png";
+        return new File(this.cacheDirectory, name);
+    }
+
+    private static byte[] render(int[] bins) {
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+
+        int cellSize = TILE_SIZE / HeatmapGrid.CELLS_PER_SIDE;
+        double scale = Math.log1p(SATURATION);
+
+        for (int row = 0; row < HeatmapGrid.CELLS_PER_SIDE; row++) {
+            for (int column = 0; column < HeatmapGrid.CELLS_PER_SIDE; column++) {
+                int count = bins[row * HeatmapGrid.CELLS_PER_SIDE + column];
+
+                if (count == 0) {
+                    continue;
+                }
+
+                // Blend from yellow to red on a logarithmic scale of the cell density.
+                float intensity = (float) Math.min(1, Math.log1p(count) / scale);
+                int green = (int) (220 * (1 - intensity));
+                int alpha = (int) (90 + 130 * intensity);
+
+                paint.setColor(Color.argb(alpha, 255, green, 0));
+                canvas.drawRect(
+                        column * cellSize,
+                        row * cellSize,
+                        (column + 1) * cellSize,
+                        (row + 1) * cellSize,
+                        paint);
+            }
+        }
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+        bitmap.recycle();
+
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,162 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * A class that holds hotspot column names and schema statements, used in the database.
+ * Every violation is counted in the geohash cell that contains it at each hotspot level, as
+ * it is inserted, so the places with repeated violations are read from the cells alone.
+ *
+ * <p>Scores decay with a half life, using forward decay: a violation adds a weight that
+ * grows exponentially with its time, instead of every older score shrinking. The stored
+ * scores never need to be rewritten, and their order is the order of the decayed scores at
+ * any moment, so the top hotspots are read in index order.</p>
+ */
+final class HotspotColumns {
+    /**
+     * The name of the table that holds all hotspot cells.
+     */
+    public static final String TABLE_NAME = "hotspots";
+
+    /**
+     * The level column name, the geohash precision of the cell.
+     */
+    public static final String LEVEL = "level";
+
+    /**
+     * The cell column name, the geohash bits of the cell.
+     */
+    public static final String CELL = "cell";
+
+    /**
+     * The latitude column name of the cell center, in degrees times 10^7.
+     */
+    public static final String LATITUDE = "latitude_e7";
+
+    /**
+     * The longitude column name of the cell center, in degrees times 10^7.
+     */
+    public static final String LONGITUDE = "longitude_e7";
+
+    /**
+     * The violation count column name.
+     */
+    public static final String COUNT = "violation_count";
+
+    /**
+     * The forward decayed score column name.
+     */
+    public static final String SCORE = "score";
+
+    /**
+     * The peak speed column name, in hundredths of km/h.
+     */
+    public static final String PEAK_SPEED = "peak_speed_centi_kmh";
+
+    /**
+     * The time column name of the latest violation, in seconds.
+     */
+    public static final String LAST_TIME = "last_time_s";
+
+    /**
+     * The index used for the top cells of a level.
+     */
+    public static final String INDEX_SCORE = "idx_hotspots_score";
+
+    /**
+     * The geohash precisions of the hotspot levels, about 5 km, 1.2 km and 150 m wide.
+     */
+    public static final int[] LEVELS = {5, 6, 7};
+
+    /**
+     * The time after which the weight of a violation halves, in seconds.
+     */
+    static final double HALF_LIFE_SECONDS = 30 * 86_400;
+
+    /**
+     * The time where a violation weighs exactly one, 2020-01-01 in seconds. The weights stay
+     * within the range of a double for about 80 years after it.
+     */
+    static final long EPOCH_SECONDS = 1_577_836_800L;
+
+    /**
+     * The statement that creates the hotspots table.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
+            LEVEL + " INTEGER NOT NULL, " +
+            CELL + " INTEGER NOT NULL, " +
+            LATITUDE + " INTEGER NOT NULL, " +
+            LONGITUDE + " INTEGER NOT NULL, " +
+            COUNT + " INTEGER NOT NULL, " +
+            SCORE + " DOUBLE NOT NULL, " +
+            PEAK_SPEED + " INTEGER NOT NULL, " +
+            LAST_TIME + " INTEGER NOT NULL, " +
+            "PRIMARY KEY(" + LEVEL + ", " + CELL + ")) WITHOUT ROWID";
+
+    /**
+     * The statement that creates the index of the scores of every level.
+     */
+    public static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_SCORE + " ON " + TABLE_NAME + "(" + LEVEL + ", " + SCORE + ")";
+
+    /**
+     * The statement that adds a violation to an existing cell.
+     */
+    public static final String UPDATE = "UPDATE " + TABLE_NAME + " SET " +
+            COUNT + " = " + COUNT + " + 1, " +
+            SCORE + " = " + SCORE + " + ?, " +
+            PEAK_SPEED + " = MAX(" + PEAK_SPEED + ", ?), " +
+            LAST_TIME + " = MAX(" + LAST_TIME + ", ?)" +
+            " WHERE " + LEVEL + " = ? AND " + CELL + " = ?";
+
+    /**
+     * The statement that inserts a cell with its first violation.
+     */
+    public static final String INSERT = "INSERT INTO " + TABLE_NAME + "(" +
+            LEVEL + ", " + CELL + ", " + LATITUDE + ", " + LONGITUDE + ", " +
+            COUNT + ", " + SCORE + ", " + PEAK_SPEED + ", " + LAST_TIME + ") VALUES (?, ?, ?, ?, 1, ?, ?, ?)";
+
+    /**
+     * The query that reads the top cells of a level within a box that are active since a time,
+     * meaning their latest violation is that recent. The cells are still ranked by their whole
+     * decayed score, and their count covers all time.
+     */
+    public static final String SELECT_TOP = "SELECT * FROM " + TABLE_NAME +
+            " WHERE " + LEVEL + " = ? AND " + LAST_TIME + " >= ?" +
+            " AND " + LATITUDE + " BETWEEN ? AND ? AND " + LONGITUDE + " BETWEEN ? AND ?" +
+            " ORDER BY " + SCORE + " DESC LIMIT ?";
+
+    /**
+     * The query that reads every violation, to build the cells of violations stored before hotspots.
+     */
+    public static final String SELECT_VIOLATIONS = "SELECT " + ViolationRecordColumns.LATITUDE + ", " +
+            ViolationRecordColumns.LONGITUDE + ", " + ViolationRecordColumns.SPEED + ", " +
+            ViolationRecordColumns.TIMESTAMP + " FROM " + ViolationRecordColumns.TABLE_NAME;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private HotspotColumns() {
+        //
+    }
+
+    /**
+     * Computes the forward decayed weight of a violation.
+     *
+     * @param seconds The time of the violation in seconds.
+     * @return The weight.
+     */
+    public static double weight(long seconds) {
+        return Math.pow(2, (seconds - EPOCH_SECONDS) / HALF_LIFE_SECONDS);
+    }
+
+    /**
+     * Converts a stored score to the decayed score at a time, where a violation at that time
+     * counts as one.
+     *
+     * @param score The stored score.
+     * @param seconds The time of the decayed score in seconds.
+     * @return The decayed score.
+     */
+    public static double decay(double score, long seconds) {
+        return score / weight(seconds);
+    }
+}
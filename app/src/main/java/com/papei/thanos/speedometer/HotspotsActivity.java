@@ -0,0 +1,161 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The activity that ranks the places with repeated violations.
+ */
+public class HotspotsActivity extends AppCompatActivity {
+    /**
+     * The hotspot level shown, cells about 1.2 km wide.
+     */
+    private static final int LEVEL = 6;
+
+    /**
+     * The number of hotspots shown.
+     */
+    private static final int LIMIT = 20;
+
+    /**
+     * The hotspots list view reference.
+     */
+    private ListView hotspotsListView;
+
+    /**
+     * The hotspot labels adapter reference.
+     */
+    private ArrayAdapter<String> hotspotsAdapter;
+
+    /**
+     * The hotspots currently shown, in list order.
+     */
+    private final List<DatabaseHelper.HotspotRecord> hotspots = new ArrayList<>();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_hotspots);
+
+        this.hotspotsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        this.hotspotsListView = findViewById(R.id.hotspotsListView);
+        this.hotspotsListView.setAdapter(this.hotspotsAdapter);
+
+        // Open the map at the center of the clicked hotspot.
+        this.hotspotsListView.setOnItemClickListener((parent, view, position, id) -> {
+            DatabaseHelper.HotspotRecord record = this.hotspots.get(position);
+
+            Intent intent = new Intent(this, MapActivity.class);
+            intent.putExtra("longitude", record.getLongitude());
+            intent.putExtra("latitude", record.getLatitude());
+            startActivity(intent);
+        });
+
+        // Start loading the gazetteer while the hotspots are fetched.
+        ReverseGeocoder.getInstance(this);
+
+        showHotspots(0, R.string.all_time_detailed);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+
+        // Add the standard menu and the extra sorting menu.
+        inflater.inflate(R.menu.menu_sorting, menu);
+        inflater.inflate(R.menu.menu_options, menu);
+
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.sort_as) {
+            // When the sorting option is clicked, display the time window dialog.
+            viewWindowDialog();
+
+            return true;
+        } else {
+            return Utilities.handleNavigation(this, item.getItemId());
+        }
+    }
+
+    private void viewWindowDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+
+        builder.setTitle(R.string.sort_by);
+
+        builder.setItems(new String[]{
+                getString(R.string.active_last_month),
+                getString(R.string.all_time)
+        }, (dialog, which) -> {
+            if (which == 0) {
+                showHotspots(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30), R.string.active_last_month_hotspots);
+            } else {
+                showHotspots(0, R.string.all_time_detailed);
+            }
+        });
+
+        builder.show();
+    }
+
+    private void showHotspots(long activeSince, int subtitle) {
+        DatabaseHelper.getInstance(this).getHotspots(LEVEL, null, activeSince, LIMIT).thenAcceptAsync(
+                list -> {
+                    // Fetch the top cells asynchronously and then populate the list view.
+
+                    getSupportActionBar().setSubtitle(subtitle);
+
+                    this.hotspots.clear();
+                    this.hotspots.addAll(list);
+                    this.hotspotsAdapter.clear();
+
+                    for (int i = 0; i < list.size(); i++) {
+                        this.hotspotsAdapter.add(this.label(i, list.get(i), null));
+                    }
+
+                    this.hotspotsAdapter.notifyDataSetChanged();
+                    this.resolvePlaces(list);
+                }, getMainExecutor());
+    }
+
+    private void resolvePlaces(List<DatabaseHelper.HotspotRecord> list) {
+        ReverseGeocoder geocoder = ReverseGeocoder.getInstance(this);
+
+        for (int i = 0; i < list.size(); i++) {
+            int position = i;
+            DatabaseHelper.HotspotRecord record = list.get(i);
+
+            geocoder.lookup(record.getLatitude(), record.getLongitude()).thenAcceptAsync(place -> {
+                // Skip the name if the list was reloaded in the meantime.
+                if (place == null || position >= this.hotspots.size() || this.hotspots.get(position) != record) {
+                    return;
+                }
+
+                this.hotspotsAdapter.remove(this.hotspotsAdapter.getItem(position));
+                this.hotspotsAdapter.insert(this.label(position, record, place), position);
+            }, getMainExecutor());
+        }
+    }
+
+    private String label(int position, DatabaseHelper.HotspotRecord record, String place) {
+        return getString(R.string.hotspot_label,
+                position + 1,
+                place != null ? place : record.getGeohash(),
+                record.getCount(),
+                Utilities.formatSpeed(this, record.getPeakSpeed()));
+    }
+}
@@ -0,0 +1,66 @@
+package com.papei.thanos.speedometer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Sends upload batches as HTTP POST requests.
+ */
+public final class HttpSyncTransport implements SyncTransport {
+    /**
+     * The timeout of connecting and reading a response.
+     */
+    private static final int TIMEOUT_MILLIS = 15_000;
+
+    /**
+     * The endpoint that receives the batches.
+     */
+    private final URL endpoint;
+
+    /**
+     * Default constructor.
+     *
+     * @param endpoint The endpoint that receives the batches.
+     */
+    public HttpSyncTransport(URL endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    @Override
+    public int send(String idempotencyKey, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) this.endpoint.openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        connection.setRequestProperty("Idempotency-Key", idempotencyKey);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+
+        int status = connection.getResponseCode();
+
+        // Drain the response instead of disconnecting, so the connection is kept alive for the next batch.
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+
+        if (in != null) {
+            try (InputStream response = in) {
+                byte[] buffer = new byte[1024];
+
+                while (response.read(buffer) != -1) {
+                    //
+                }
+            }
+        }
+
+        return status;
+    }
+}
@@ -2,62 +2,152 @@ package com.papei.thanos.speedometer;
 
 import android.content.Context;
 import android.os.Looper;
+import android.os.SystemClock;
 
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationAvailability;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationRequest;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
-import com.google.android.gms.location.LocationSettingsRequest;
-import com.google.android.gms.location.LocationSettingsResponse;
-import com.google.android.gms.location.SettingsClient;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.android.gms.tasks.Task;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.GoogleApiAvailability;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
- * Establishes a continuous location listener through Google Play Location services.
+ * Establishes a continuous location listener through a pluggable location source.
  */
 public final class LocationMonitor {
     /**
-     * The current context.
+     * The callback called when a new location is fetched.
      */
-    private final Context context;
+    private final CustomCallback callback;
 
     /**
-     * The callback called when a new location is fetched.
+     * The source that delivers the location fixes.
      */
-    private final CustomCallback callback;
+    private LocationSource source;
 
     /**
-     * The Google Play Location client reference.
+     * The preferences the source was created from, or null if the source was given.
      */
-    private final FusedLocationProviderClient client;
+    private SpeedPreferences.Snapshot settings;
 
     /**
-     * The request settings used to fetch new locations.
+     * The location session shared between monitors.
      */
-    private final LocationRequest request;
+    private final LocationSession session;
 
     /**
-     * Default constructor.
+     * Creates a monitor on the location source selected in the preferences.
      *
      * @param context  The current context.
      * @param callback The callback called when a new location is fetched.
      */
     public LocationMonitor(Context context, CustomCallback callback) {
-        this.context = context;
+        this(context, SpeedPreferences.getInstance(context).getSnapshot(), callback);
+    }
+
+    /**
+     * Creates a monitor on the location source selected in the given preferences.
+     *
+     * @param context  The current context.
+     * @param settings The preferences to create the source from.
+     * @param callback The callback called when a new location is fetched.
+     */
+    private LocationMonitor(Context context, SpeedPreferences.Snapshot settings, CustomCallback callback) {
+        this(createSource(context, settings), callback);
+        this.settings = settings;
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param source   The source that delivers the location fixes.
+     * @param callback The callback called when a new location is fetched.
+     */
+    public LocationMonitor(LocationSource source, CustomCallback callback) {
+        this.source = source;
         this.callback = callback;
-        this.client = LocationServices.getFusedLocationProviderClient(this.context);
+        this.session = LocationSession.getInstance();
+    }
+
+    /**
+     * Creates the location source selected in the preferences. The fused provider is used
+     * by default, and the GPS provider on devices without Play services.
+     *
+     * @param context The current context.
+     * @return The selected location source.
+     */
+    public static LocationSource createSource(Context context) {
+        return createSource(context, SpeedPreferences.getInstance(context).getSnapshot());
+    }
+
+    /**
+     * Creates the location source selected in the given preferences.
+     *
+     * @param context  The current context.
+     * @param settings The preferences to create the source from.
+     * @return The selected location source.
+     */
+    private static LocationSource createSource(Context context, SpeedPreferences.Snapshot settings) {
+        switch (settings.locationSource) {
+            case SpeedPreferences.SOURCE_GPS:
+                return new GpsLocationSource(context, settings.gpsInterval);
+            case SpeedPreferences.SOURCE_REPLAY:
+                try {
+                    return ReplayLocationSource.fromFile(new File(context.getFilesDir(), "replay.bin"));
+                } catch (IOException e) {
+                    // Without a readable recording, fall back to a live source.
+                    break;
+                }
+            default:
+                break;
+        }
+
+        int status = GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(context);
+
+        return status == ConnectionResult.SUCCESS
+                ? new FusedLocationSource(context, settings.fusedInterval)
+                : new GpsLocationSource(context, settings.gpsInterval);
+    }
+
+    /**
+     * Creates the location source again if its selection or update intervals changed in the
+     * preferences since it was created.
+     *
+     * @param context  The current context.
+     * @param settings The current preferences.
+     */
+    public void updateSource(Context context, SpeedPreferences.Snapshot settings) {
+        if (this.settings == null
+                || (this.settings.locationSource.equals(settings.locationSource)
+                && this.settings.fusedInterval == settings.fusedInterval
+                && this.settings.gpsInterval == settings.gpsInterval)) {
+            return;
+        }
+
+        // Release the old source in case a previous start is still requesting updates.
+        this.source.stop();
+        this.source = createSource(context, settings);
+        this.settings = settings;
+
+        // The new source has not verified the location settings for its own request yet.
+        this.session.invalidateSettings();
+    }
+
+    /**
+     * Gets the name of the location source.
+     *
+     * @return The source name.
+     */
+    public String getSourceName() {
+        return this.source.getName();
+    }
 
-        this.request = new LocationRequest();
-        this.request.setMaxWaitTime(500);
-        this.request.setInterval(500);
-        this.request.setFastestInterval(500);
-        this.request.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+    /**
+     * Gets the requested time between location updates.
+     *
+     * @return The update interval in milliseconds.
+     */
+    public long getUpdateInterval() {
+        return this.source.getUpdateInterval();
     }
 
     /**
@@ -67,14 +157,24 @@ public final class LocationMonitor {
      * @param errorSignal The error signal callback is called when the location setting is unavailable.
      */
     public void start(StartSignal startSignal, ErrorSignal errorSignal) {
-        LocationSettingsRequest.Builder builder = new LocationSettingsRequest.Builder();
-        builder.addLocationRequest(this.request);
+        // Start measuring the time until the first speed is displayed.
+        this.callback.begin();
 
-        SettingsClient client = LocationServices.getSettingsClient(this.context);
-        Task<LocationSettingsResponse> task = client.checkLocationSettings(builder.build());
+        // Show a recent fix right away, while live updates are warming up.
+        this.deliverLastKnownFix();
+
+        if (this.session.isSettingsSatisfied()) {
+            // The settings were already verified and nothing has invalidated them since.
+            this.requestUpdates(startSignal);
+            return;
+        }
 
-        task.addOnSuccessListener(new SuccessListener(startSignal));
-        task.addOnFailureListener(new FailureListener(errorSignal));
+        this.source.checkSettings(
+                () -> {
+                    this.session.markSettingsSatisfied();
+                    this.requestUpdates(startSignal);
+                },
+                errorSignal::handle);
     }
 
     /**
@@ -83,37 +183,170 @@ public final class LocationMonitor {
      * @param stopSignal The stop signal is called when the location listener is closed.
      */
     public void stop(StopSignal stopSignal) {
-        this.client.removeLocationUpdates(this.callback);
+        this.source.stop();
+        this.callback.end();
         stopSignal.handle();
     }
 
+    /**
+     * Registers the callback for location updates.
+     *
+     * @param startSignal The start signal callback is called once the listener has opened.
+     */
+    private void requestUpdates(StartSignal startSignal) {
+        this.source.start(this.callback, Looper.getMainLooper());
+        startSignal.handle();
+    }
+
+    /**
+     * Hands the last known fix to the callback if it is recent enough.
+     */
+    private void deliverLastKnownFix() {
+        Fix cached = this.session.getFreshFix();
+
+        if (cached != null) {
+            this.callback.deliverLastKnown(cached);
+            return;
+        }
+
+        // Fall back to the last fix known to the source.
+        this.source.requestLastKnownFix(fix -> {
+            if (LocationSession.isFresh(fix)) {
+                this.callback.deliverLastKnown(fix);
+            }
+        });
+    }
+
     /**
      * A custom callback used every time a new location is fetched.
      */
-    public abstract static class CustomCallback extends LocationCallback {
+    public abstract static class CustomCallback implements FixListener {
         /**
-         * Called every time a new location result is available.
+         * The elapsed realtime when the monitor was started.
+         */
+        private long startTime;
+
+        /**
+         * Whether the monitor is started and results should be delivered.
+         */
+        private volatile boolean active = false;
+
+        /**
+         * The elapsed realtime of the previous fix, or 0 if none in this session.
+         */
+        private long lastFixTime;
+
+        /**
+         * Whether no speed has been displayed since the monitor was started.
+         */
+        private boolean awaitingFirstSpeed = false;
+
+        /**
+         * Derives the speed of fixes that arrive without one.
+         */
+        private final SpeedEstimator speedEstimator = new SpeedEstimator();
+
+        /**
+         * Called every time a new fix is available. The fix is only valid during this call.
          *
-         * @param result The location result that holds data.
+         * @param fix The new location fix.
          */
-        public abstract void onLocationReceived(LocationResult result);
+        public abstract void onFixReceived(Fix fix);
 
         /**
          * Called when location becomes unavailable.
          */
         public abstract void onLocationDisabled();
 
+        /**
+         * Called with a recent cached fix, before live updates are available.
+         *
+         * @param fix The last known fix.
+         */
+        public void onLastKnownFix(Fix fix) {
+            //
+        }
+
         @Override
-        public void onLocationAvailability(LocationAvailability status) {
-            if (!status.isLocationAvailable()) {
+        public void onAvailabilityChanged(boolean available) {
+            if (!available) {
+                // The cached settings result can no longer be trusted.
+                LocationSession.getInstance().invalidateSettings();
                 this.onLocationDisabled();
             }
         }
 
         @Override
-        public void onLocationResult(LocationResult result) {
-            if (result != null) {
-                this.onLocationReceived(result);
+        public void onFix(Fix fix) {
+            PerformanceMetrics metrics = PerformanceMetrics.getInstance();
+
+            if (!this.active) {
+                // Fixes can still arrive after stopping, while the updates are being removed.
+                metrics.increment(PerformanceMetrics.CALLBACKS_DROPPED);
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            metrics.increment(PerformanceMetrics.FIXES_RECEIVED);
+
+            // Measure how long the source took to hand the fix over, to compare sources.
+            metrics.recordLatency(PerformanceMetrics.FIX_DELIVERY_LATENCY, now - fix.getElapsedRealtimeMillis());
+
+            if (this.lastFixTime != 0) {
+                metrics.recordLatency(PerformanceMetrics.FIX_INTERVAL, now - this.lastFixTime);
+            }
+
+            this.lastFixTime = now;
+
+            // Sources without a speed report 0 m/s, so derive it from the previous fix instead.
+            this.speedEstimator.apply(fix);
+
+            LocationSession.getInstance().updateLastFix(fix);
+            this.onFixReceived(fix);
+            this.markFirstSpeed();
+        }
+
+        /**
+         * Marks the start of a new monitoring session.
+         */
+        void begin() {
+            this.startTime = SystemClock.elapsedRealtime();
+            this.awaitingFirstSpeed = true;
+            this.lastFixTime = 0;
+            this.speedEstimator.reset();
+            this.active = true;
+        }
+
+        /**
+         * Marks the end of the current monitoring session.
+         */
+        void end() {
+            this.awaitingFirstSpeed = false;
+            this.active = false;
+        }
+
+        /**
+         * Delivers a cached fix, unless a speed was already displayed.
+         *
+         * @param fix The last known fix.
+         */
+        void deliverLastKnown(Fix fix) {
+            if (this.awaitingFirstSpeed) {
+                this.onLastKnownFix(fix);
+                this.markFirstSpeed();
+            }
+        }
+
+        /**
+         * Records the time to first speed once per monitoring session.
+         */
+        private void markFirstSpeed() {
+            if (this.awaitingFirstSpeed) {
+                this.awaitingFirstSpeed = false;
+
+                PerformanceMetrics.getInstance().recordLatency(
+                        PerformanceMetrics.TIME_TO_FIRST_SPEED,
+                        SystemClock.elapsedRealtime() - this.startTime);
             }
         }
     }
@@ -145,53 +378,4 @@ public final class LocationMonitor {
     public interface ErrorSignal extends Signal {
         //
     }
-
-    /**
-     * A listener for successful location setting requests.
-     */
-    public final class SuccessListener implements OnSuccessListener<LocationSettingsResponse> {
-        /**
-         * The start signal reference used as a callback.
-         */
-        private final StartSignal startSignal;
-
-        /**
-         * Default constructor.
-         *
-         * @param startSignal The start signal reference used as a callback.
-         */
-        public SuccessListener(StartSignal startSignal) {
-            this.startSignal = startSignal;
-        }
-
-        @Override
-        public void onSuccess(LocationSettingsResponse locationSettingsResponse) {
-            client.requestLocationUpdates(request, callback, Looper.getMainLooper());
-            this.startSignal.handle();
-        }
-    }
-
-    /**
-     * A listener for failed location setting requests.
-     */
-    public final class FailureListener implements OnFailureListener {
-        /**
-         * The error signal reference used as a callback.
-         */
-        private final ErrorSignal errorSignal;
-
-        /**
-         * Default constructor.
-         *
-         * @param errorSignal The error signal reference used as a callback.
-         */
-        public FailureListener(ErrorSignal errorSignal) {
-            this.errorSignal = errorSignal;
-        }
-
-        @Override
-        public void onFailure(@NonNull Exception e) {
-            this.errorSignal.handle();
-        }
-    }
 }
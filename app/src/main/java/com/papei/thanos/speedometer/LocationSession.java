@@ -0,0 +1,103 @@
+package com.papei.thanos.speedometer;
+
+import android.os.SystemClock;
+
+/**
+ * Holds location state that outlives activities, so that resuming the
+ * speedometer does not have to start from a cold location session.
+ */
+public final class LocationSession {
+    /**
+     * The maximum age of a cached fix that can still be displayed on resume.
+     */
+    private static final long MAX_FIX_AGE_MILLIS = 10_000;
+
+    /**
+     * The single instance of the session.
+     */
+    private static final LocationSession INSTANCE = new LocationSession();
+
+    /**
+     * Whether the location settings were verified and have not been invalidated since.
+     */
+    private volatile boolean settingsSatisfied = false;
+
+    /**
+     * A copy of the last location fix received by any monitor.
+     */
+    private final Fix lastFix = new Fix();
+
+    /**
+     * Whether a fix was ever received.
+     */
+    private boolean hasLastFix = false;
+
+    /**
+     * This class should be accessed through the shared instance.
+     */
+    private LocationSession() {
+        //
+    }
+
+    /**
+     * Gets the shared location session.
+     *
+     * @return The location session instance.
+     */
+    public static LocationSession getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks whether the cached location settings result can be reused.
+     *
+     * @return Whether the settings check can be skipped.
+     */
+    public boolean isSettingsSatisfied() {
+        return this.settingsSatisfied;
+    }
+
+    /**
+     * Caches a successful location settings check.
+     */
+    public void markSettingsSatisfied() {
+        this.settingsSatisfied = true;
+    }
+
+    /**
+     * Drops the cached settings result, so the next start checks them again.
+     */
+    public void invalidateSettings() {
+        this.settingsSatisfied = false;
+    }
+
+    /**
+     * Stores a copy of the most recent location fix.
+     *
+     * @param fix The location fix.
+     */
+    public synchronized void updateLastFix(Fix fix) {
+        this.lastFix.set(fix);
+        this.hasLastFix = true;
+    }
+
+    /**
+     * Gets a copy of the last location fix if it is recent enough to be displayed.
+     *
+     * @return The last fix, or null if there is none or it is stale.
+     */
+    public synchronized Fix getFreshFix() {
+        return this.hasLastFix && isFresh(this.lastFix) ? new Fix().set(this.lastFix) : null;
+    }
+
+    /**
+     * Checks whether a location fix is recent enough to be displayed.
+     *
+     * @param fix The location fix.
+     * @return Whether the fix is fresh.
+     */
+    public static boolean isFresh(Fix fix) {
+        long age = SystemClock.elapsedRealtimeNanos() - fix.elapsedRealtimeNanos;
+        return age <= MAX_FIX_AGE_MILLIS * 1_000_000L;
+    }
+}
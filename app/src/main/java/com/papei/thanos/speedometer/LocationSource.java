@@ -0,0 +1,53 @@
+package com.papei.thanos.speedometer;
+
+import android.os.Looper;
+
+import java.util.function.Consumer;
+
+/**
+ * A provider of location fixes, so the speedometer can run on Play services, on the raw
+ * GPS provider, or on a recorded trip.
+ */
+public interface LocationSource {
+    /**
+     * Gets a short name of the source, used in diagnostics.
+     *
+     * @return The source name.
+     */
+    String getName();
+
+    /**
+     * Gets the requested time between fixes.
+     *
+     * @return The update interval in milliseconds.
+     */
+    long getUpdateInterval();
+
+    /**
+     * Checks whether the device settings allow this source to deliver fixes.
+     *
+     * @param onSatisfied Called when the settings are satisfied.
+     * @param onUnavailable Called when the settings prevent location updates.
+     */
+    void checkSettings(Runnable onSatisfied, Runnable onUnavailable);
+
+    /**
+     * Delivers the last fix known to the source, if any, once it is available.
+     *
+     * @param consumer The consumer that receives the last known fix.
+     */
+    void requestLastKnownFix(Consumer<Fix> consumer);
+
+    /**
+     * Starts delivering fixes.
+     *
+     * @param listener The listener that receives the fixes.
+     * @param looper The looper of the thread that receives the fixes.
+     */
+    void start(FixListener listener, Looper looper);
+
+    /**
+     * Stops delivering fixes.
+     */
+    void stop();
+}
@@ -4,11 +4,9 @@ import android.Manifest;
 import android.app.AlertDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.location.Location;
-import android.media.MediaPlayer;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.speech.RecognizerIntent;
-import android.speech.tts.TextToSpeech;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -22,45 +20,81 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 
-import com.google.android.gms.location.LocationResult;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The main application activity for the speedometer and voice commands.
  */
 public class MainActivity extends AppCompatActivity {
     /**
-     * The location monitor reference.
+     * The startup pipeline that creates and traces the components of this activity.
      */
-    private LocationMonitor locationMonitor;
+    private StartupPipeline startupPipeline;
+
+    /**
+     * The location monitor reference, created once the speedometer is enabled.
+     */
+    private StartupPipeline.Deferred<LocationMonitor> locationMonitor;
 
     /**
      * The speed preferences reference.
      */
-    private SpeedPreferences speedPreferences;
+    private StartupPipeline.Deferred<SpeedPreferences> speedPreferences;
 
     /**
      * The database helper reference.
      */
-    private DatabaseHelper dbHelper;
+    private StartupPipeline.Deferred<DatabaseHelper> dbHelper;
+
+    /**
+     * The alert dispatcher that plays sounds and speech.
+     */
+    private StartupPipeline.Deferred<AlertDispatcher> alertDispatcher;
+
+    /**
+     * The uploader of violations to the fleet backend, which holds null if sync is not configured.
+     */
+    private StartupPipeline.Deferred<SyncUploader> syncUploader;
+
+    /**
+     * The rolling speed statistics shown under the speed.
+     */
+    private StartupPipeline.Deferred<SpeedStatisticsTracker> statisticsTracker;
 
     /**
-     * The text to speech reference.
+     * The flight recorder that keeps the recent fixes around violations.
      */
-    private TextToSpeech tts;
+    private FlightRecorder flightRecorder;
 
     /**
-     * The media player for the beep sound.
+     * The segmenter that splits the location fixes into trips.
      */
-    private MediaPlayer mediaPlayer;
+    private TripSegmenter tripSegmenter;
 
     /**
-     * The speed text view reference.
+     * The predictor of pre alerts, or null when they are disabled.
      */
-    private TextView speedTextView;
+    private OverLimitPredictor overLimitPredictor;
+
+    /**
+     * The recorder of the route of the trip in progress.
+     */
+    private TrackRecorder trackRecorder;
+
+    /**
+     * The in-app voice command session, created on the first voice button click.
+     */
+    private VoiceCommandSession voiceCommandSession;
+
+    /**
+     * The renderer that shows the speed at most once per display frame.
+     */
+    private SpeedRenderer speedRenderer;
 
     /**
      * The toggle button reference.
@@ -72,6 +106,11 @@ public class MainActivity extends AppCompatActivity {
      */
     private boolean enabled = false;
 
+    /**
+     * Whether the speedometer is waiting for its components before opening.
+     */
+    private boolean starting = false;
+
     /**
      * The timestamp of the last violation.
      */
@@ -79,57 +118,164 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        this.startupPipeline = new StartupPipeline(getMainExecutor());
+        long begin = this.startupPipeline.begin();
+
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         getSupportActionBar().setSubtitle(R.string.home);
 
-        // Get a new location monitor object once we set it up.
-        this.locationMonitor = this.setupLocationMonitor();
+        // Create the location monitor only once the speedometer is enabled.
+        this.locationMonitor = this.startupPipeline.defer(
+                "location_monitor", this::setupLocationMonitor);
 
         // Create a new preferences instance for this context.
-        this.speedPreferences = new SpeedPreferences(this);
+        this.speedPreferences = this.startupPipeline.defer(
+                "speed_preferences", () -> SpeedPreferences.getInstance(this));
+
+        // Get the database helper shared by the whole application and open its connection.
+        this.dbHelper = this.startupPipeline.defer("database", () -> {
+            DatabaseHelper helper = DatabaseHelper.getInstance(this);
+            helper.getWritableDatabase();
+
+            return helper;
+        });
+
+        // Upload the queued violations to the fleet backend, if one is configured.
+        this.syncUploader = this.startupPipeline.defer(
+                "sync_uploader", () -> SyncUploader.getInstance(this));
 
-        // Get the speed limit field reference.
-        this.dbHelper = new DatabaseHelper(this);
+        // Preload the alert sounds and text to speech.
+        this.alertDispatcher = this.startupPipeline.defer(
+                "alert_dispatcher", () -> new AlertDispatcher(this));
 
-        // Setup text to speech locale.
-        this.tts = new TextToSpeech(this, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                this.tts.setLanguage(Locale.US);
+        // Get the flight recorder shared by the whole application.
+        this.flightRecorder = FlightRecorder.getInstance(this);
+
+        // Store the route of every trip in chunks.
+        this.trackRecorder = new TrackRecorder(this.dbHelper::require);
+
+        // Split the fixes into trips, storing every trip as it starts and ends.
+        this.tripSegmenter = new TripSegmenter(new TripSegmenter.Listener() {
+            @Override
+            public void onTripStarted(long startTime) {
+                dbHelper.require().startTrip(startTime);
+            }
+
+            @Override
+            public void onTripEnded(long startTime, long endTime, double distance) {
+                trackRecorder.flush();
+                dbHelper.require().finishTrip(endTime, distance);
             }
         });
 
-        // Create a new media player for the beep sound.
-        this.mediaPlayer = MediaPlayer.create(this, R.raw.beep);
+        // Render the speed text once per display frame, only when it changes.
+        this.speedRenderer = new SpeedRenderer(findViewById(R.id.speedText), false);
 
-        // Get the speed text view reference.
-        this.speedTextView = findViewById(R.id.speedText);
+        // Compute the rolling speed statistics on their own thread.
+        TextView statisticsTextView = findViewById(R.id.statisticsText);
+        this.statisticsTracker = this.startupPipeline.defer(
+                "speed_statistics", () -> new SpeedStatisticsTracker(this, statisticsTextView));
 
         // Get the toggle button reference.
         this.toggleButton = findViewById(R.id.toggleButton);
 
         // Set the speed text as zero.
-        this.speedTextView.setText(Utilities.formatSpeed(this, 0));
+        this.speedRenderer.setSpeed(0);
 
         // Check if the user has the granted location usage permission.
         this.checkLocationPermission();
+
+        this.startupPipeline.end("activity_create", begin);
+
+        // Initialize the remaining components in parallel once the first frame is shown.
+        this.startupPipeline.runAfterFirstDraw(getWindow().getDecorView(), () -> CompletableFuture.allOf(
+                this.speedPreferences.startAsync(),
+                this.dbHelper.startAsync(),
+                this.alertDispatcher.startAsync(),
+                this.statisticsTracker.startAsync(),
+                this.syncUploader.startAsync()
+        ).thenRun(() -> this.startupPipeline.writeReport(this)));
     }
 
     @Override
     protected void onPause() {
         super.onPause();
 
-        // Disable the speedometer if paused.
-        this.disable();
+        // Disable the speedometer if paused, but keep the trip open. Opening another screen
+        // does not end it, while a pause longer than a stop ends it at its last fix.
+        this.disable(false);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
-        // Close the database connection.
-        this.dbHelper.close();
+        // Release the alert sounds and text to speech.
+        this.alertDispatcher.ifStarted(AlertDispatcher::release);
+
+        // Stop the speed statistics thread.
+        this.statisticsTracker.ifStarted(SpeedStatisticsTracker::release);
+
+        if (this.voiceCommandSession != null) {
+            this.voiceCommandSession.destroy();
+        }
+
+        // The trip cannot be continued without this activity, so end it at its last fix.
+        this.tripSegmenter.finish();
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+
+        // Print a performance snapshot for "adb shell dumpsys activity", without waiting
+        // for components that are not initialized yet.
+        String inner = prefix + "  ";
+
+        writer.print(prefix);
+        writer.println("Speedometer pipeline:");
+        writer.print(inner);
+        writer.print("enabled=");
+        writer.println(this.enabled);
+
+        LocationMonitor monitor = this.locationMonitor.peek();
+
+        if (monitor != null) {
+            writer.print(inner);
+            writer.print("locationSource=");
+            writer.print(monitor.getSourceName());
+            writer.print(" updateIntervalMs=");
+            writer.println(monitor.getUpdateInterval());
+        }
+
+        long fixInterval = PerformanceMetrics.getInstance().getLatencyPercentile(PerformanceMetrics.FIX_INTERVAL, 50);
+
+        if (fixInterval > 0) {
+            writer.print(inner);
+            writer.print("fixesPerSecond=");
+            writer.println(String.format(Locale.US, "%.2f", 1000.0 / fixInterval));
+        }
+
+        DatabaseHelper helper = this.dbHelper.peek();
+
+        if (helper != null) {
+            writer.print(inner);
+            writer.print("pendingDbWrites=");
+            writer.print(helper.getPendingWriteCount());
+            writer.print(" pendingDbReads=");
+            writer.println(helper.getPendingReadCount());
+            writer.print(inner);
+            writer.print("queryCacheHits=");
+            writer.print(helper.getCacheHitCount());
+            writer.print(" queryCacheMisses=");
+            writer.print(helper.getCacheMissCount());
+            writer.print(" statementReuses=");
+            writer.println(helper.getStatementReuseCount());
+        }
+
+        PerformanceMetrics.getInstance().dump(inner, writer);
     }
 
     @Override
@@ -150,123 +296,234 @@ public class MainActivity extends AppCompatActivity {
     private LocationMonitor setupLocationMonitor() {
         return new LocationMonitor(this, new LocationMonitor.CustomCallback() {
             @Override
-            public void onLocationReceived(LocationResult result) {
+            public void onFixReceived(Fix fix) {
                 // When a new location is received, handle speed accordingly.
 
-                Location location = result.getLastLocation();
-
-                float speed = location.getSpeed();
+                float speed = fix.speed;
                 float kmSpeed = Utilities.speedToKm(speed);
 
                 // Update the speed text to the current km/h speed.
-                speedTextView.setText(
-                        Utilities.formatSpeed(getApplicationContext(), kmSpeed)
-                );
+                speedRenderer.setSpeed(kmSpeed);
 
-                float limit = speedPreferences.getSpeedLimit();
+                // Keep the fix in the flight recorder, for the context of later violations.
+                flightRecorder.recordFix(fix.getElapsedRealtimeMillis(), fix.time,
+                        fix.latitude, fix.longitude, speed, fix.accuracy);
 
-                // Check if 10 seconds have passed since the last violation.
+                // Read the settings once, as plain fields of an immutable snapshot.
+                SpeedPreferences.Snapshot settings = speedPreferences.require().getSnapshot();
+                float limit = settings.speedLimit;
+
+                // Hand the fix to the speed statistics thread.
+                statisticsTracker.require().addFix(kmSpeed, limit);
+
+                // Update the current trip before any violation is stored, so the violation belongs to it.
+                tripSegmenter.add(fix.time, fix.latitude, fix.longitude);
+
+                if (tripSegmenter.isInTrip()) {
+                    trackRecorder.add(fix.time, fix.latitude, fix.longitude);
+                }
+
+                // Check if the throttle window, 10 seconds by default, has passed since the last violation.
                 // We do this so we can prevent the app from spamming violations.
-                boolean threshold = System.currentTimeMillis() - lastViolation >= TimeUnit.SECONDS.toMillis(10);
+                boolean threshold = System.currentTimeMillis() - lastViolation >= settings.violationThrottle;
+
+                // Warn ahead of a violation while accelerating towards the limit.
+                if (overLimitPredictor != null
+                        && overLimitPredictor.update(fix.elapsedRealtimeNanos, kmSpeed, limit)) {
+                    alertDispatcher.require().dispatchPreAlert();
+                }
 
                 if (kmSpeed >= limit && threshold) {
                     // Store the violation in the database.
-                    double longitude = location.getLongitude();
-                    double latitude = location.getLatitude();
-                    dbHelper.addViolation(longitude, latitude, speed);
-
-                    // Play the beep sound.
-                    mediaPlayer.start();
-
-                    // Show a toast and echo a text to speech message.
-                    Toast.makeText(
-                            getApplicationContext(),
-                            R.string.speed_violation,
-                            Toast.LENGTH_SHORT).show();
-
-                    tts.speak(
-                            getString(R.string.speed_violation),
-                            TextToSpeech.QUEUE_ADD,
-                            null,
-                            "speed_violation"
-                    );
+                    double longitude = fix.longitude;
+                    double latitude = fix.latitude;
+                    long detectionTime = SystemClock.elapsedRealtime();
+                    PerformanceMetrics.getInstance().increment(PerformanceMetrics.VIOLATIONS_DETECTED);
+                    flightRecorder.recordEvent(FlightRecorder.EVENT_VIOLATION, detectionTime, System.currentTimeMillis());
+
+                    // Link the recorded fixes around the violation to its ID once stored.
+                    dbHelper.require().addViolation(longitude, latitude, speed).thenAccept(id -> {
+                        if (id != -1) {
+                            flightRecorder.snapshot(id, detectionTime, SystemClock.elapsedRealtime());
+                        }
+                    });
+
+                    // Hand the beep, toast and text to speech message to the dispatcher.
+                    alertDispatcher.require().dispatchViolation(SystemClock.elapsedRealtimeNanos());
 
                     // Update the last violation timestamp to prevent spamming.
                     lastViolation = System.currentTimeMillis();
                 }
             }
 
+            @Override
+            public void onLastKnownFix(Fix fix) {
+                // Show the cached speed until the first live update arrives.
+                float kmSpeed = Utilities.speedToKm(fix.speed);
+
+                speedRenderer.setSpeed(kmSpeed);
+            }
+
             @Override
             public void onLocationDisabled() {
                 // When the location becomes unavailable then stop and show a message.
+                flightRecorder.recordEvent(FlightRecorder.EVENT_LOCATION_DISABLED,
+                        SystemClock.elapsedRealtime(), System.currentTimeMillis());
 
                 showNoLocationDialog();
-                disable();
+                disable(true);
             }
         });
     }
 
     private void enable() {
-        this.locationMonitor.start(
+        if (this.starting) {
+            return;
+        }
+
+        this.starting = true;
+
+        // Open the location listener only once every component used by its callbacks is ready,
+        // so the location updates never wait for them on the main thread.
+        CompletableFuture.allOf(
+                this.locationMonitor.startAsync(),
+                this.speedPreferences.startAsync(),
+                this.dbHelper.startAsync(),
+                this.alertDispatcher.startAsync(),
+                this.statisticsTracker.startAsync()
+        ).thenRunAsync(this::startLocationMonitor, getMainExecutor());
+    }
+
+    private void startLocationMonitor() {
+        if (!this.starting) {
+            // The speedometer was disabled while its components were starting.
+            return;
+        }
+
+        this.starting = false;
+
+        // Read the pre alert horizon and location source again, since they may have changed in the preferences.
+        SpeedPreferences.Snapshot settings = this.speedPreferences.require().getSnapshot();
+        this.overLimitPredictor = settings.createPredictor();
+
+        LocationMonitor monitor = this.locationMonitor.require();
+        monitor.updateSource(this, settings);
+
+        monitor.start(
                 () -> {
-                    mediaPlayer.start();
+                    alertDispatcher.require().playBeep();
+                    statisticsTracker.require().start();
+                    flightRecorder.recordEvent(FlightRecorder.EVENT_START,
+                            SystemClock.elapsedRealtime(), System.currentTimeMillis());
                     toggleButton.setText(R.string.stop_button);
                     enabled = true;
                 },
                 () -> {
+                    // Do not leave the last speed on screen when the location settings fail.
+                    speedRenderer.setSpeed(0);
                     showNoLocationDialog();
                 });
     }
 
-    private void disable() {
-        this.locationMonitor.stop(
+    private void disable(boolean finishTrip) {
+        this.starting = false;
+        this.statisticsTracker.ifStarted(SpeedStatisticsTracker::stop);
+
+        this.locationMonitor.ifStarted(monitor -> monitor.stop(
                 () -> {
-                    this.speedTextView.setText(Utilities.formatSpeed(this, 0));
+                    this.flightRecorder.recordEvent(FlightRecorder.EVENT_STOP,
+                            SystemClock.elapsedRealtime(), System.currentTimeMillis());
+
+                    if (finishTrip) {
+                        this.tripSegmenter.finish();
+                    } else {
+                        // Store the route so far, in case the process is killed while paused.
+                        this.trackRecorder.flush();
+                    }
+
+                    this.speedRenderer.setSpeed(0);
                     toggleButton.setText(R.string.start_button);
                     enabled = false;
-                });
+                }));
     }
 
     public void onButtonClick(View view) {
         if (this.enabled) {
-            this.disable();
+            this.disable(true);
         } else {
             this.enable();
         }
     }
 
     public void onVoiceButtonClick(View view) {
-        // When the voice button is clicked, send a new intent for speech to text.
+        if (!VoiceCommandSession.isAvailable(this)) {
+            // Without in-app recognition, send a new intent for speech to text.
+
+            Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+            intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+            intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 5);
+            startActivityForResult(intent, 0);
+            return;
+        }
+
+        boolean hasPermission = ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
 
-        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-        startActivityForResult(intent, 0);
+        if (hasPermission) {
+            this.startVoiceCommandSession();
+        } else {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, 1);
+        }
+    }
+
+    private void startVoiceCommandSession() {
+        // Listen in the app, so a command fires as soon as the partial results agree on it.
+
+        if (this.voiceCommandSession == null) {
+            this.voiceCommandSession = new VoiceCommandSession(this, CommandMatcher.createDefault(),
+                    new VoiceCommandSession.Callback() {
+                        @Override
+                        public void onCommand(CommandMatcher.Command command) {
+                            Utilities.handleCommand(MainActivity.this, command);
+                        }
+
+                        @Override
+                        public void onUnrecognized() {
+                            showUnrecognizedCommand();
+                        }
+                    });
+        }
+
+        this.voiceCommandSession.start();
+    }
+
+    private void showUnrecognizedCommand() {
+        // If the speech text cannot be mapped to an action,
+        // show a toast and echo a text to speech message.
+
+        Toast.makeText(
+                getApplicationContext(),
+                R.string.unrecognized_command,
+                Toast.LENGTH_SHORT).show();
+
+        // Speak once the text to speech is ready, without waiting for it on the main thread.
+        String message = getString(R.string.unrecognized_command);
+
+        this.alertDispatcher.startAsync().thenAcceptAsync(
+                dispatcher -> dispatcher.speak(message, "unrecognized_command"),
+                getMainExecutor());
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         if (requestCode == 0 && resultCode == RESULT_OK) {
-            // When speech to text sends us a new result, iterate through the parsed speech text
-            // and decide if one of the options can be mapped to an action.
+            // When speech to text sends us new results, pick the best hypothesis
+            // that can be mapped to an action.
 
             List<String> results = data.getStringArrayListExtra(RecognizerIntent.EXTRA_RESULTS);
-            boolean recognized = Utilities.handleTextFromSpeech(this, results.get(0));
-
-            if (!recognized) {
-                // If the speech text cannot be mapped to an action,
-                // show a toast and echo a text to speech message.
-
-                Toast.makeText(
-                        getApplicationContext(),
-                        R.string.unrecognized_command,
-                        Toast.LENGTH_SHORT).show();
-
-                tts.speak(
-                        getString(R.string.unrecognized_command),
-                        TextToSpeech.QUEUE_ADD,
-                        null,
-                        "unrecognized_command"
-                );
+            CommandMatcher.Command command = CommandMatcher.createDefault().matchBest(results);
+
+            if (command == null || !Utilities.handleCommand(this, command)) {
+                this.showUnrecognizedCommand();
             }
         }
 
@@ -285,7 +542,13 @@ public class MainActivity extends AppCompatActivity {
 
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
-        if (requestCode == 0 && grantResults[0] == PackageManager.PERMISSION_DENIED) {
+        if (requestCode == 1) {
+            // Start listening once the microphone permission was granted.
+
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                this.startVoiceCommandSession();
+            }
+        } else if (requestCode == 0 && grantResults[0] == PackageManager.PERMISSION_DENIED) {
             // If fine location permission was denied, then disable
             // the speedometer button and show a message.
 
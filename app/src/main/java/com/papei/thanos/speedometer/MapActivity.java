@@ -2,6 +2,7 @@ package com.papei.thanos.speedometer;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -13,10 +14,33 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MapActivity extends AppCompatActivity implements OnMapReadyCallback {
+    /**
+     * The file name of the marker and camera snapshot, in the cache directory.
+     */
+    private static final String SNAPSHOT_NAME = "map_snapshot.bin";
+
+    /**
+     * The thread that loads and saves the snapshot, so a save always finishes before the next load.
+     */
+    private static final ExecutorService snapshotExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * The google maps reference.
      */
@@ -27,15 +51,87 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
      */
     private DatabaseHelper dbHelper;
 
+    /**
+     * The shared violation heatmap.
+     */
+    private HeatmapLayer heatmapLayer;
+
+    /**
+     * The map overlay that displays the heatmap tiles.
+     */
+    private TileOverlay heatmapOverlay;
+
+    /**
+     * The levels of detail of the shown trip route, or null if no route is shown.
+     */
+    private TrackLevels routeLevels;
+
+    /**
+     * The map polyline that draws the trip route.
+     */
+    private Polyline routePolyline;
+
+    /**
+     * The zoom level of the route points currently drawn, or -1 if none.
+     */
+    private int routeLevel = -1;
+
+    /**
+     * The route points of every zoom level, converted once when first drawn.
+     */
+    private final List<List<LatLng>> routePoints = new ArrayList<>();
+
+    /**
+     * The snapshot file.
+     */
+    private File snapshotFile;
+
+    /**
+     * The snapshot of the markers on the map, loaded while the map is starting.
+     */
+    private CompletableFuture<MapSnapshot> snapshot;
+
+    /**
+     * The uptime when the activity was created.
+     */
+    private long createTime;
+
+    /**
+     * Whether the first marker has been shown.
+     */
+    private boolean markerShown = false;
+
+    /**
+     * Reloads the heatmap tiles shown on the map when new violations are stored.
+     */
+    private final Runnable heatmapChangeListener = () -> runOnUiThread(() -> {
+        if (this.heatmapOverlay != null) {
+            this.heatmapOverlay.clearTileCache();
+        }
+    });
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        this.createTime = SystemClock.elapsedRealtime();
         setContentView(R.layout.activity_map);
 
         getSupportActionBar().setSubtitle(R.string.map);
 
-        // Create a new connection with the database through the helper.
-        this.dbHelper = new DatabaseHelper(this);
+        // Get the database helper shared by the whole application.
+        this.dbHelper = DatabaseHelper.getInstance(this);
+
+        // Start building the heatmap while the map is loading.
+        this.heatmapLayer = HeatmapLayer.getInstance(this);
+        this.heatmapLayer.load(this.dbHelper);
+        this.heatmapLayer.addChangeListener(this.heatmapChangeListener);
+
+        // Read the markers of the last visit while the map is loading.
+        this.snapshotFile = new File(getCacheDir(), SNAPSHOT_NAME);
+        this.snapshot = CompletableFuture.supplyAsync(() -> {
+            MapSnapshot snapshot = MapSnapshot.load(this.snapshotFile);
+            return snapshot != null ? snapshot : new MapSnapshot(0);
+        }, snapshotExecutor);
 
         // Obtain the SupportMapFragment and get notified when the map is ready to be used.
         SupportMapFragment mapFragment = (SupportMapFragment) getSupportFragmentManager().findFragmentById(R.id.map);
@@ -57,12 +153,34 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         return Utilities.handleNavigation(this, item.getItemId());
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        if (this.googleMap == null || !this.snapshot.isDone() || this.snapshot.isCompletedExceptionally()) {
+            return;
+        }
+
+        // Save the markers and the camera, so the next visit can show them right away.
+        MapSnapshot snapshot = this.snapshot.join();
+        CameraPosition camera = this.googleMap.getCameraPosition();
+        snapshot.setCamera(camera.target.latitude, camera.target.longitude, camera.zoom);
+
+        snapshotExecutor.execute(() -> {
+            try {
+                snapshot.save(this.snapshotFile);
+            } catch (IOException e) {
+                // The snapshot is only a cache, the next visit reads the violations instead.
+            }
+        });
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
-        // Close the database connection.
-        this.dbHelper.close();
+        // Stop listening for heatmap changes.
+        this.heatmapLayer.removeChangeListener(this.heatmapChangeListener);
     }
 
     /**
@@ -79,21 +197,38 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
         // Update the map reference when it's ready.
         this.googleMap = googleMap;
 
-        this.dbHelper.getViolations().thenAcceptAsync(list -> {
-            // Fetch all violations asynchronously, then populate the map with markers.
+        this.heatmapLayer.load(this.dbHelper).thenRunAsync(() -> {
+            // Show the heatmap tiles once the density grid is ready.
+            this.heatmapOverlay = this.googleMap.addTileOverlay(new TileOverlayOptions()
+                    .tileProvider(this.heatmapLayer.getTileProvider())
+                    .fadeIn(false));
+        }, getMainExecutor());
+
+        // Draw the route of the requested trip, or of the latest trip, under the violation markers.
+        long tripId = getIntent().getLongExtra("trip_id", -1);
+        CompletableFuture<Long> trip = tripId != -1
+                ? CompletableFuture.completedFuture(tripId)
+                : this.dbHelper.getLatestTripId();
+
+        trip.thenCompose(id -> id == -1
+                ? CompletableFuture.<TrackLevels>completedFuture(null)
+                : this.dbHelper.getTrack(id)
+        ).thenAcceptAsync(this::showRoute, getMainExecutor());
 
-            for (DatabaseHelper.ViolationRecord record : list) {
-                LatLng position = new LatLng(record.getLatitude(), record.getLongitude());
-                String title = "Violation " + record.getId() + ": " + Utilities.formatSpeed(this, record.getSpeed());
-                this.googleMap.addMarker(new MarkerOptions().position(position).title(title));
+        // Swap the level of detail of the route once the camera settles.
+        this.googleMap.setOnCameraIdleListener(this::updateRouteLevel);
+
+        this.snapshot.thenAcceptAsync(snapshot -> {
+            // Show the markers of the last visit right away, whatever the number of violations.
+            for (int i = 0; i < snapshot.getCount(); i++) {
+                this.addMarker(snapshot.getId(i), snapshot.getLatitude(i), snapshot.getLongitude(i), snapshot.getSpeed(i));
             }
 
             // If we receive an intent, check if the longitude and latitude extras are set.
             Intent intent = getIntent();
-            boolean hasLongitude = intent.hasExtra("longitude");
-            boolean hasLatitude = intent.hasExtra("latitude");
+            boolean hasPosition = intent.hasExtra("longitude") && intent.hasExtra("latitude");
 
-            if (hasLongitude && hasLatitude) {
+            if (hasPosition) {
                 // If that's the case, we should zoom on a specific marker on the map.
 
                 LatLng position = new LatLng(
@@ -103,18 +238,94 @@ public class MapActivity extends AppCompatActivity implements OnMapReadyCallback
                 this.googleMap.animateCamera(
                         CameraUpdateFactory.newLatLngZoom(position, 15)
                 );
-            } else {
-                // If the extras are missing, then we zoom on the last marker on the map.
+            } else if (snapshot.hasCamera()) {
+                // Otherwise, continue from where the last visit left the camera.
 
-                DatabaseHelper.ViolationRecord record = list.get(list.size() - 1);
-                LatLng position = new LatLng(record.getLatitude(), record.getLongitude());
+                LatLng position = new LatLng(snapshot.getCameraLatitude(), snapshot.getCameraLongitude());
 
-                this.googleMap.animateCamera(
-                        CameraUpdateFactory.newLatLngZoom(position, 15)
+                this.googleMap.moveCamera(
+                        CameraUpdateFactory.newLatLngZoom(position, snapshot.getCameraZoom())
                 );
+            }
 
+            // Then only fetch the violations stored since the snapshot, as many as it keeps.
+            this.dbHelper.getViolationsAfter(snapshot.getHighWaterId(), MapSnapshot.MAX_MARKERS).thenAcceptAsync(list -> {
+                for (DatabaseHelper.ViolationRecord record : list) {
+                    if (snapshot.add(record.getId(), record.getLatitude(), record.getLongitude(), record.getSpeed())) {
+                        this.addMarker(record.getId(), record.getLatitude(), record.getLongitude(), record.getSpeed());
+                    }
+                }
 
-            }
+                if (!hasPosition && !snapshot.hasCamera() && snapshot.getCount() > 0) {
+                    // On the first visit, zoom on the last marker on the map.
+
+                    int last = snapshot.getCount() - 1;
+                    LatLng position = new LatLng(snapshot.getLatitude(last), snapshot.getLongitude(last));
+
+                    this.googleMap.animateCamera(
+                            CameraUpdateFactory.newLatLngZoom(position, 15)
+                    );
+                }
+            }, getMainExecutor());
         }, getMainExecutor());
     }
+
+    private void addMarker(long id, double latitude, double longitude, float speed) {
+        LatLng position = new LatLng(latitude, longitude);
+        String title = "Violation " + id + ": " + Utilities.formatSpeed(this, speed);
+        this.googleMap.addMarker(new MarkerOptions().position(position).title(title));
+
+        if (!this.markerShown) {
+            // Measure until the first marker, whether it came from the snapshot or the database.
+            this.markerShown = true;
+            PerformanceMetrics.getInstance().recordLatency(
+                    PerformanceMetrics.MAP_FIRST_MARKER, SystemClock.elapsedRealtime() - this.createTime);
+        }
+    }
+
+    private void showRoute(TrackLevels levels) {
+        if (levels == null || levels.getCount() < 2) {
+            return;
+        }
+
+        this.routeLevels = levels;
+        this.routePolyline = this.googleMap.addPolyline(new PolylineOptions()
+                .width(8)
+                .color(getColor(R.color.colorPrimary)));
+
+        for (int zoom = TrackLevels.MIN_ZOOM; zoom <= TrackLevels.MAX_ZOOM; zoom++) {
+            this.routePoints.add(null);
+        }
+
+        this.updateRouteLevel();
+    }
+
+    private void updateRouteLevel() {
+        if (this.routeLevels == null) {
+            return;
+        }
+
+        int level = TrackLevels.levelFor(this.googleMap.getCameraPosition().zoom);
+
+        if (level == this.routeLevel) {
+            // The drawn points already match this zoom.
+            return;
+        }
+
+        List<LatLng> points = this.routePoints.get(level - TrackLevels.MIN_ZOOM);
+
+        if (points == null) {
+            int[] indices = this.routeLevels.getLevel(level);
+            points = new ArrayList<>(indices.length);
+
+            for (int index : indices) {
+                points.add(new LatLng(this.routeLevels.getLatitude(index), this.routeLevels.getLongitude(index)));
+            }
+
+            this.routePoints.set(level - TrackLevels.MIN_ZOOM, points);
+        }
+
+        this.routeLevel = level;
+        this.routePolyline.setPoints(points);
+    }
 }
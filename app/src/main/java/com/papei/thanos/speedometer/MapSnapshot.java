@@ -0,0 +1,360 @@
+package com.papei.thanos.speedometer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The markers and camera position last shown on the map, kept in primitive arrays and
+ * saved to a small binary file. The map shows the snapshot right away on the next start,
+ * and only reads the violations stored after its highest ID from the database.
+ */
+public final class MapSnapshot {
+    /**
+     * The magic number at the start of every snapshot file.
+     */
+    static final int MAGIC = 0x4d415053;
+
+    /**
+     * The version of the snapshot file format.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The number of markers kept, the newest ones. Older violations still show in the heatmap.
+     */
+    static final int MAX_MARKERS = 500;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    private static final int HEADER_BYTES = 39;
+
+    /**
+     * The size of every marker in the file in bytes.
+     */
+    private static final int MARKER_BYTES = 28;
+
+    /**
+     * The ID of every marker.
+     */
+    private long[] ids;
+
+    /**
+     * The latitude of every marker.
+     */
+    private double[] latitudes;
+
+    /**
+     * The longitude of every marker.
+     */
+    private double[] longitudes;
+
+    /**
+     * The speed of every marker in m/s.
+     */
+    private float[] speeds;
+
+    /**
+     * The number of markers.
+     */
+    private int count = 0;
+
+    /**
+     * The highest violation ID in the snapshot, every later violation is missing from it.
+     */
+    private long highWaterId = 0;
+
+    /**
+     * Whether a camera position has been saved.
+     */
+    private boolean hasCamera = false;
+
+    /**
+     * The latitude of the camera target.
+     */
+    private double cameraLatitude;
+
+    /**
+     * The longitude of the camera target.
+     */
+    private double cameraLongitude;
+
+    /**
+     * The camera zoom.
+     */
+    private float cameraZoom;
+
+    /**
+     * Default constructor.
+     *
+     * @param capacity The initial marker capacity.
+     */
+    public MapSnapshot(int capacity) {
+        capacity = Math.max(16, Math.min(capacity, MAX_MARKERS));
+
+        this.ids = new long[capacity];
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+        this.speeds = new float[capacity];
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot, or null if the file is missing or unreadable.
+     */
+    public static MapSnapshot load(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in, file.length());
+        } catch (IOException e) {
+            // Without a snapshot, the map falls back to reading every violation.
+            return null;
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream.
+     *
+     * @param in The snapshot stream.
+     * @param length The length of the stream in bytes.
+     * @return The snapshot.
+     * @throws IOException If the stream is not a valid snapshot.
+     */
+    static MapSnapshot read(InputStream in, long length) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC || data.readShort() != FORMAT_VERSION) {
+            throw new IOException("Not a map snapshot");
+        }
+
+        int count = data.readInt();
+
+        // Never trust the count of a damaged file with the size of the arrays.
+        if (count < 0 || count > MAX_MARKERS || count > (length - HEADER_BYTES) / MARKER_BYTES) {
+            throw new IOException("Invalid marker count " + count);
+        }
+
+        MapSnapshot snapshot = new MapSnapshot(count);
+
+        snapshot.highWaterId = data.readLong();
+        snapshot.hasCamera = data.readBoolean();
+        snapshot.cameraLatitude = data.readDouble();
+        snapshot.cameraLongitude = data.readDouble();
+        snapshot.cameraZoom = data.readFloat();
+
+        for (int i = 0; i < count; i++) {
+            snapshot.ids[i] = data.readLong();
+            snapshot.latitudes[i] = data.readDouble();
+            snapshot.longitudes[i] = data.readDouble();
+            snapshot.speeds[i] = data.readFloat();
+        }
+
+        snapshot.count = count;
+
+        return snapshot;
+    }
+
+    /**
+     * Saves the snapshot to a file, replacing it atomically.
+     *
+     * @param file The snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(File file) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            this.write(out);
+        }
+
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot rename " + temporary);
+        }
+    }
+
+    /**
+     * Writes the snapshot to a stream.
+     *
+     * @param out The output stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    synchronized void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeInt(this.count);
+        data.writeLong(this.highWaterId);
+        data.writeBoolean(this.hasCamera);
+        data.writeDouble(this.cameraLatitude);
+        data.writeDouble(this.cameraLongitude);
+        data.writeFloat(this.cameraZoom);
+
+        for (int i = 0; i < this.count; i++) {
+            data.writeLong(this.ids[i]);
+            data.writeDouble(this.latitudes[i]);
+            data.writeDouble(this.longitudes[i]);
+            data.writeFloat(this.speeds[i]);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Adds a marker, unless the snapshot already holds its violation. Once the snapshot
+     * is full, the oldest marker is dropped.
+     *
+     * @param id The violation ID.
+     * @param latitude The latitude of the violation.
+     * @param longitude The longitude of the violation.
+     * @param speed The speed of the violation in m/s.
+     * @return Whether the marker was added.
+     */
+    public synchronized boolean add(long id, double latitude, double longitude, float speed) {
+        if (id <= this.highWaterId) {
+            return false;
+        }
+
+        if (this.count == MAX_MARKERS) {
+            // Shift out the oldest marker.
+            System.arraycopy(this.ids, 1, this.ids, 0, this.count - 1);
+            System.arraycopy(this.latitudes, 1, this.latitudes, 0, this.count - 1);
+            System.arraycopy(this.longitudes, 1, this.longitudes, 0, this.count - 1);
+            System.arraycopy(this.speeds, 1, this.speeds, 0, this.count - 1);
+            this.count--;
+        } else if (this.count == this.ids.length) {
+            int capacity = Math.min(this.count * 2, MAX_MARKERS);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+            this.speeds = Arrays.copyOf(this.speeds, capacity);
+        }
+
+        this.ids[this.count] = id;
+        this.latitudes[this.count] = latitude;
+        this.longitudes[this.count] = longitude;
+        this.speeds[this.count] = speed;
+        this.count++;
+        this.highWaterId = id;
+
+        return true;
+    }
+
+    /**
+     * Saves the camera position.
+     *
+     * @param latitude The latitude of the camera target.
+     * @param longitude The longitude of the camera target.
+     * @param zoom The camera zoom.
+     */
+    public synchronized void setCamera(double latitude, double longitude, float zoom) {
+        this.hasCamera = true;
+        this.cameraLatitude = latitude;
+        this.cameraLongitude = longitude;
+        this.cameraZoom = zoom;
+    }
+
+    /**
+     * Gets the number of markers.
+     *
+     * @return The marker count.
+     */
+    public synchronized int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the highest violation ID in the snapshot.
+     *
+     * @return The high water ID, or 0 if the snapshot is empty.
+     */
+    public synchronized long getHighWaterId() {
+        return this.highWaterId;
+    }
+
+    /**
+     * Gets the violation ID of a marker.
+     *
+     * @param index The marker index.
+     * @return The violation ID.
+     */
+    public synchronized long getId(int index) {
+        return this.ids[index];
+    }
+
+    /**
+     * Gets the latitude of a marker.
+     *
+     * @param index The marker index.
+     * @return The latitude.
+     */
+    public synchronized double getLatitude(int index) {
+        return this.latitudes[index];
+    }
+
+    /**
+     * Gets the longitude of a marker.
+     *
+     * @param index The marker index.
+     * @return The longitude.
+     */
+    public synchronized double getLongitude(int index) {
+        return this.longitudes[index];
+    }
+
+    /**
+     * Gets the speed of a marker.
+     *
+     * @param index The marker index.
+     * @return The speed in m/s.
+     */
+    public synchronized float getSpeed(int index) {
+        return this.speeds[index];
+    }
+
+    /**
+     * Checks whether a camera position has been saved.
+     *
+     * @return Whether the camera position is available.
+     */
+    public synchronized boolean hasCamera() {
+        return this.hasCamera;
+    }
+
+    /**
+     * Gets the latitude of the camera target.
+     *
+     * @return The latitude.
+     */
+    public synchronized double getCameraLatitude() {
+        return this.cameraLatitude;
+    }
+
+    /**
+     * Gets the longitude of the camera target.
+     *
+     * @return The longitude.
+     */
+    public synchronized double getCameraLongitude() {
+        return this.cameraLongitude;
+    }
+
+    /**
+     * Gets the camera zoom.
+     *
+     * @return The zoom.
+     */
+    public synchronized float getCameraZoom() {
+        return this.cameraZoom;
+    }
+}
@@ -0,0 +1,59 @@
+package com.papei.thanos.speedometer;
+
+import android.provider.BaseColumns;
+
+/**
+ * A class that holds the sync outbox column names and schema statements, used in the database.
+ * Every stored violation gets an outbox row in the same transaction, which is deleted once
+ * the violation has been uploaded. The lowest remaining row ID is the resumable sync cursor.
+ */
+final class OutboxColumns implements BaseColumns {
+    /**
+     * The name of the table that holds violations waiting for upload.
+     */
+    public static final String TABLE_NAME = "outbox";
+
+    /**
+     * The ID of the queued violation.
+     */
+    public static final String VIOLATION_ID = "violation_id";
+
+    /**
+     * The statement that creates the outbox table.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
+            _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            VIOLATION_ID + " INTEGER NOT NULL)";
+
+    /**
+     * The statement that queues a violation.
+     */
+    public static final String INSERT = "INSERT INTO " + TABLE_NAME + "(" + VIOLATION_ID + ") VALUES (?)";
+
+    /**
+     * The query that reads the oldest queued violations, with a row limit argument.
+     */
+    public static final String SELECT_PENDING = "SELECT o." + _ID + ", v." + ViolationRecordColumns._ID + ", " +
+            "v." + ViolationRecordColumns.LONGITUDE + ", v." + ViolationRecordColumns.LATITUDE + ", " +
+            "v." + ViolationRecordColumns.SPEED + ", v." + ViolationRecordColumns.TIMESTAMP +
+            " FROM " + TABLE_NAME + " o JOIN " + ViolationRecordColumns.TABLE_NAME + " v" +
+            " ON v." + ViolationRecordColumns._ID + " = o." + VIOLATION_ID +
+            " ORDER BY o." + _ID + " LIMIT ?";
+
+    /**
+     * The statement that removes uploaded violations up to an outbox row ID.
+     */
+    public static final String DELETE_UP_TO = "DELETE FROM " + TABLE_NAME + " WHERE " + _ID + " <= ?";
+
+    /**
+     * The statement that removes every queued violation, used when sync is disabled.
+     */
+    public static final String DELETE_ALL = "DELETE FROM " + TABLE_NAME;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private OutboxColumns() {
+        //
+    }
+}
@@ -0,0 +1,174 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Predicts that the speed limit is about to be exceeded, so the driver is warned before the
+ * violation instead of after it. The speed and acceleration are tracked with an alpha beta
+ * filter over the fixes, which keeps a few fields instead of a window of fixes.
+ *
+ * <p>A pre alert fires once when the speed projected over the horizon reaches the limit, and
+ * is armed again only after the projection falls clearly below the limit. It is separate from
+ * the recorded violations, which still need the measured speed to exceed the limit.</p>
+ */
+public final class OverLimitPredictor {
+    /**
+     * The default share of the speed residual that corrects the speed estimate.
+     */
+    static final float ALPHA = 0.5f;
+
+    /**
+     * The default share of the speed residual that corrects the acceleration estimate.
+     */
+    static final float BETA = 0.1f;
+
+    /**
+     * The default lowest acceleration that is projected, in km/h per second, so noise at a
+     * steady speed just below the limit does not raise alerts.
+     */
+    static final float MIN_ACCELERATION = 1f;
+
+    /**
+     * The margin below the limit that the projected speed must fall under before another
+     * pre alert, in km/h.
+     */
+    static final float REARM_MARGIN = 2f;
+
+    /**
+     * The longest time between two fixes that are filtered together. After a longer gap the
+     * filter starts over from the new fix.
+     */
+    static final long MAX_INTERVAL_NANOS = 5_000_000_000L;
+
+    /**
+     * The time the speed is projected ahead, in seconds.
+     */
+    private final float horizon;
+
+    /**
+     * The share of the speed residual that corrects the speed estimate.
+     */
+    private final float alpha;
+
+    /**
+     * The share of the speed residual that corrects the acceleration estimate.
+     */
+    private final float beta;
+
+    /**
+     * The lowest acceleration that is projected, in km/h per second.
+     */
+    private final float minAcceleration;
+
+    /**
+     * Whether the filter has a fix.
+     */
+    private boolean hasFix = false;
+
+    /**
+     * The elapsed realtime of the last fix in nanoseconds.
+     */
+    private long lastNanos;
+
+    /**
+     * The filtered speed in km/h.
+     */
+    private float speed;
+
+    /**
+     * The filtered acceleration in km/h per second.
+     */
+    private float acceleration;
+
+    /**
+     * Whether a pre alert may fire.
+     */
+    private boolean armed = true;
+
+    /**
+     * Creates a predictor with the default filter settings.
+     *
+     * @param horizonMillis The time the speed is projected ahead, in milliseconds.
+     */
+    public OverLimitPredictor(long horizonMillis) {
+        this(horizonMillis, ALPHA, BETA, MIN_ACCELERATION);
+    }
+
+    /**
+     * Default constructor.
+     *
+     * @param horizonMillis The time the speed is projected ahead, in milliseconds.
+     * @param alpha The share of the speed residual that corrects the speed estimate.
+     * @param beta The share of the speed residual that corrects the acceleration estimate.
+     * @param minAcceleration The lowest acceleration that is projected, in km/h per second.
+     */
+    public OverLimitPredictor(long horizonMillis, float alpha, float beta, float minAcceleration) {
+        this.horizon = horizonMillis / 1000f;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.minAcceleration = minAcceleration;
+    }
+
+    /**
+     * Adds a fix and checks whether the limit is about to be exceeded.
+     *
+     * @param elapsedRealtimeNanos The elapsed realtime of the fix in nanoseconds.
+     * @param kmSpeed The measured speed in km/h.
+     * @param limit The speed limit in km/h.
+     * @return True if a pre alert should be played for this fix.
+     */
+    public boolean update(long elapsedRealtimeNanos, float kmSpeed, float limit) {
+        long interval = elapsedRealtimeNanos - this.lastNanos;
+
+        if (!this.hasFix || interval <= 0 || interval > MAX_INTERVAL_NANOS) {
+            // Start over, without a known acceleration.
+            this.hasFix = true;
+            this.speed = kmSpeed;
+            this.acceleration = 0;
+        } else {
+            float seconds = interval / 1e9f;
+
+            // Predict the speed of this fix, then correct both estimates by the residual.
+            float predicted = this.speed + this.acceleration * seconds;
+            float residual = kmSpeed - predicted;
+
+            this.speed = predicted + this.alpha * residual;
+            this.acceleration += this.beta * residual / seconds;
+        }
+
+        this.lastNanos = elapsedRealtimeNanos;
+
+        float projected = this.getProjectedSpeed();
+
+        if (projected < limit - REARM_MARGIN) {
+            this.armed = true;
+        }
+
+        // The violation check covers fixes that are already over the limit.
+        if (!this.armed || kmSpeed >= limit || projected < limit) {
+            return false;
+        }
+
+        this.armed = false;
+
+        return true;
+    }
+
+    /**
+     * Gets the speed projected over the horizon, counting only a clear acceleration.
+     *
+     * @return The projected speed in km/h.
+     */
+    public float getProjectedSpeed() {
+        float acceleration = this.acceleration >= this.minAcceleration ? this.acceleration : 0;
+
+        return this.speed + acceleration * this.horizon;
+    }
+
+    /**
+     * Gets the filtered acceleration.
+     *
+     * @return The acceleration in km/h per second.
+     */
+    public float getAcceleration() {
+        return this.acceleration;
+    }
+}
@@ -0,0 +1,284 @@
+package com.papei.thanos.speedometer;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A process-wide registry of latency samples and event counters used to track app performance.
+ */
+public final class PerformanceMetrics {
+    /**
+     * The time from enabling the speedometer until the first speed is displayed.
+     */
+    public static final String TIME_TO_FIRST_SPEED = "time_to_first_speed";
+
+    /**
+     * The time from detecting a violation until the alert sound starts.
+     */
+    public static final String ALERT_LATENCY = "alert_latency";
+
+    /**
+     * The time from the user starting to speak until a voice command fires.
+     */
+    public static final String VOICE_COMMAND_LATENCY = "voice_command_latency";
+
+    /**
+     * The time from opening the map until the first violation markers are shown.
+     */
+    public static final String MAP_FIRST_MARKER = "map_first_marker";
+
+    /**
+     * The time to compute the reports over the whole violation history.
+     */
+    public static final String REPORT_LATENCY = "report_latency";
+
+    /**
+     * The time from a location fix being measured until the app receives it.
+     */
+    public static final String FIX_DELIVERY_LATENCY = "fix_delivery_latency";
+
+    /**
+     * The time between two consecutive location fixes.
+     */
+    public static final String FIX_INTERVAL = "fix_interval";
+
+    /**
+     * The number of location fixes received.
+     */
+    public static final String FIXES_RECEIVED = "fixes_received";
+
+    /**
+     * The number of location callbacks ignored, because they were empty or arrived after stopping.
+     */
+    public static final String CALLBACKS_DROPPED = "callbacks_dropped";
+
+    /**
+     * The number of violations detected.
+     */
+    public static final String VIOLATIONS_DETECTED = "violations_detected";
+
+    /**
+     * The number of violations stored in the database.
+     */
+    public static final String VIOLATIONS_PERSISTED = "violations_persisted";
+
+    /**
+     * The number of violation alerts merged into an already queued alert.
+     */
+    public static final String ALERTS_COALESCED = "alerts_coalesced";
+
+    /**
+     * The number of pre alerts played before the speed limit was exceeded.
+     */
+    public static final String PRE_ALERTS = "pre_alerts";
+
+    /**
+     * The number of violation batches uploaded to the fleet backend.
+     */
+    public static final String SYNC_BATCHES_SENT = "sync_batches_sent";
+
+    /**
+     * The number of failed violation batch uploads.
+     */
+    public static final String SYNC_FAILURES = "sync_failures";
+
+    /**
+     * The number of violation batches dropped because the backend rejected them for good.
+     */
+    public static final String SYNC_BATCHES_DROPPED = "sync_batches_dropped";
+
+    /**
+     * The number of samples kept for every metric.
+     */
+    private static final int SAMPLE_CAPACITY = 128;
+
+    /**
+     * The single instance of the registry.
+     */
+    private static final PerformanceMetrics INSTANCE = new PerformanceMetrics();
+
+    /**
+     * The latency samples of every metric, keyed by name.
+     */
+    private final Map<String, LatencySamples> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * The event counters, keyed by name.
+     */
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * This class should be accessed through the shared instance.
+     */
+    private PerformanceMetrics() {
+        //
+    }
+
+    /**
+     * Gets the shared metrics registry.
+     *
+     * @return The metrics registry instance.
+     */
+    public static PerformanceMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a new latency sample for a metric.
+     *
+     * @param name The name of the metric.
+     * @param millis The measured latency in milliseconds.
+     */
+    public void recordLatency(String name, long millis) {
+        this.latencies.computeIfAbsent(name, key -> new LatencySamples()).add(millis);
+    }
+
+    /**
+     * Gets the most recent latency sample of a metric.
+     *
+     * @param name The name of the metric.
+     * @return The last sample in milliseconds, or -1 if nothing was recorded.
+     */
+    public long getLastLatency(String name) {
+        LatencySamples samples = this.latencies.get(name);
+        return samples != null ? samples.last() : -1;
+    }
+
+    /**
+     * Gets a percentile over the recent latency samples of a metric.
+     *
+     * @param name The name of the metric.
+     * @param percentile The percentile between 0 and 100.
+     * @return The percentile in milliseconds, or -1 if nothing was recorded.
+     */
+    public long getLatencyPercentile(String name, int percentile) {
+        LatencySamples samples = this.latencies.get(name);
+        return samples != null ? samples.percentile(percentile) : -1;
+    }
+
+    /**
+     * Increments an event counter. Cheap enough to call on every location fix.
+     *
+     * @param name The name of the counter.
+     */
+    public void increment(String name) {
+        LongAdder counter = this.counters.get(name);
+
+        if (counter == null) {
+            counter = this.counters.computeIfAbsent(name, key -> new LongAdder());
+        }
+
+        counter.increment();
+    }
+
+    /**
+     * Gets the value of an event counter.
+     *
+     * @param name The name of the counter.
+     * @return The number of counted events.
+     */
+    public long getCount(String name) {
+        LongAdder counter = this.counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Prints every counter and latency metric, sorted by name.
+     *
+     * @param prefix The prefix of every line.
+     * @param writer The writer to print to.
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(this.counters).entrySet()) {
+            writer.print(prefix);
+            writer.print(entry.getKey());
+            writer.print('=');
+            writer.println(entry.getValue().sum());
+        }
+
+        for (Map.Entry<String, LatencySamples> entry : new TreeMap<>(this.latencies).entrySet()) {
+            LatencySamples samples = entry.getValue();
+
+            writer.print(prefix);
+            writer.print(entry.getKey());
+            writer.print(": count=");
+            writer.print(samples.count());
+            writer.print(" last=");
+            writer.print(samples.last());
+            writer.print("ms p50=");
+            writer.print(samples.percentile(50));
+            writer.print("ms p90=");
+            writer.print(samples.percentile(90));
+            writer.print("ms p99=");
+            writer.print(samples.percentile(99));
+            writer.println("ms");
+        }
+    }
+
+    /**
+     * A fixed-size ring of latency samples.
+     */
+    private static final class LatencySamples {
+        /**
+         * The stored samples in milliseconds.
+         */
+        private final long[] values = new long[SAMPLE_CAPACITY];
+
+        /**
+         * The total number of samples ever added.
+         */
+        private long count;
+
+        /**
+         * Adds a sample, overwriting the oldest one when full.
+         *
+         * @param millis The sample in milliseconds.
+         */
+        synchronized void add(long millis) {
+            this.values[(int) (this.count % SAMPLE_CAPACITY)] = millis;
+            this.count++;
+        }
+
+        /**
+         * Gets the total number of samples ever added.
+         *
+         * @return The sample count.
+         */
+        synchronized long count() {
+            return this.count;
+        }
+
+        /**
+         * Gets the most recent sample.
+         *
+         * @return The last sample in milliseconds, or -1 if empty.
+         */
+        synchronized long last() {
+            return this.count == 0 ? -1 : this.values[(int) ((this.count - 1) % SAMPLE_CAPACITY)];
+        }
+
+        /**
+         * Computes a percentile over the stored samples.
+         *
+         * @param percentile The percentile between 0 and 100.
+         * @return The percentile in milliseconds, or -1 if empty.
+         */
+        synchronized long percentile(int percentile) {
+            int size = (int) Math.min(this.count, SAMPLE_CAPACITY);
+
+            if (size == 0) {
+                return -1;
+            }
+
+            long[] sorted = Arrays.copyOf(this.values, size);
+            Arrays.sort(sorted);
+
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.max(0, Math.min(size - 1, index))];
+        }
+    }
+}
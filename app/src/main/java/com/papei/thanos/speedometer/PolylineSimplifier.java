@@ -0,0 +1,138 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Douglas-Peucker simplification over primitive coordinate arrays. Instead of simplifying
+ * once per tolerance, a single pass ranks every vertex by the largest tolerance at which it
+ * survives, so the simplified polyline of any tolerance is a linear filter over the ranks,
+ * and the levels of detail nest inside each other.
+ */
+public final class PolylineSimplifier {
+    /**
+     * This class should not be instantiated.
+     */
+    private PolylineSimplifier() {
+        //
+    }
+
+    /**
+     * Ranks every vertex of a polyline. A vertex is part of the Douglas-Peucker simplification
+     * with a tolerance if and only if its rank is at least that tolerance. The end points are
+     * always kept and get an infinite rank.
+     *
+     * @param xs The x coordinate of every vertex.
+     * @param ys The y coordinate of every vertex.
+     * @param count The number of vertices.
+     * @param ranks The output rank of every vertex, in the units of the coordinates.
+     */
+    public static void rank(double[] xs, double[] ys, int count, double[] ranks) {
+        if (count == 0) {
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            ranks[i] = 0;
+        }
+
+        ranks[0] = Double.POSITIVE_INFINITY;
+        ranks[count - 1] = Double.POSITIVE_INFINITY;
+
+        // The pending segments never overlap, so there are fewer of them than vertices.
+        int[] firsts = new int[count];
+        int[] lasts = new int[count];
+        double[] limits = new double[count];
+        int top = 0;
+
+        firsts[top] = 0;
+        lasts[top] = count - 1;
+        limits[top] = Double.POSITIVE_INFINITY;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int first = firsts[top];
+            int last = lasts[top];
+            double limit = limits[top];
+
+            if (last - first < 2) {
+                continue;
+            }
+
+            int farthest = -1;
+            double farthestDistance = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                double distance = segmentDistanceSquared(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            // A vertex can never outlive the split that made it a candidate.
+            double rank = Math.min(Math.sqrt(farthestDistance), limit);
+            ranks[farthest] = rank;
+
+            firsts[top] = first;
+            lasts[top] = farthest;
+            limits[top] = rank;
+            top++;
+
+            firsts[top] = farthest;
+            lasts[top] = last;
+            limits[top] = rank;
+            top++;
+        }
+    }
+
+    /**
+     * Selects the vertices that are kept at a tolerance.
+     *
+     * @param ranks The rank of every vertex.
+     * @param count The number of vertices.
+     * @param tolerance The largest distance of a removed vertex from the simplified polyline.
+     * @param indices The output indices of the kept vertices, in order.
+     * @return The number of kept vertices.
+     */
+    public static int select(double[] ranks, int count, double tolerance, int[] indices) {
+        int kept = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (ranks[i] >= tolerance) {
+                indices[kept++] = i;
+            }
+        }
+
+        return kept;
+    }
+
+    /**
+     * Computes the squared distance of a point from a line segment.
+     *
+     * @param x The x coordinate of the point.
+     * @param y The y coordinate of the point.
+     * @param x1 The x coordinate of the segment start.
+     * @param y1 The y coordinate of the segment start.
+     * @param x2 The x coordinate of the segment end.
+     * @param y2 The y coordinate of the segment end.
+     * @return The squared distance.
+     */
+    static double segmentDistanceSquared(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length = dx * dx + dy * dy;
+
+        if (length > 0) {
+            // Project onto the segment and clamp to its ends.
+            double t = ((x - x1) * dx + (y - y1) * dy) / length;
+            t = Math.max(0, Math.min(1, t));
+            x1 += t * dx;
+            y1 += t * dy;
+        }
+
+        double ex = x - x1;
+        double ey = y - y1;
+
+        return ex * ex + ey * ey;
+    }
+}
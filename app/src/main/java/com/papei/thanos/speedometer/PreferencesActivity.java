@@ -5,7 +5,9 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.Spinner;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -15,6 +17,15 @@ import androidx.appcompat.app.AppCompatActivity;
  * The activity that allows the user to change app preferences.
  */
 public class PreferencesActivity extends AppCompatActivity {
+    /**
+     * The location source names, in the order of the location source entries.
+     */
+    private static final String[] LOCATION_SOURCES = {
+            SpeedPreferences.SOURCE_AUTO,
+            SpeedPreferences.SOURCE_GPS,
+            SpeedPreferences.SOURCE_REPLAY
+    };
+
     /**
      * The speed preferences reference.
      */
@@ -25,6 +36,16 @@ public class PreferencesActivity extends AppCompatActivity {
      */
     private EditText speedLimitText;
 
+    /**
+     * The pre alert horizon field reference.
+     */
+    private EditText alertHorizonText;
+
+    /**
+     * The location source selector reference.
+     */
+    private Spinner locationSourceSpinner;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -32,11 +53,19 @@ public class PreferencesActivity extends AppCompatActivity {
 
         getSupportActionBar().setSubtitle(R.string.preferences);
 
-        // Create a new preferences instance for this context.
-        this.speedPreferences = new SpeedPreferences(this);
+        // Get the preferences shared by the whole application.
+        this.speedPreferences = SpeedPreferences.getInstance(this);
 
         // Get the speed limit field reference.
         this.speedLimitText = findViewById(R.id.speedLimitText);
+        this.alertHorizonText = findViewById(R.id.alertHorizonText);
+
+        // Fill the location source selector with the supported sources.
+        this.locationSourceSpinner = findViewById(R.id.locationSourceSpinner);
+        ArrayAdapter<CharSequence> sources = ArrayAdapter.createFromResource(
+                this, R.array.location_sources, android.R.layout.simple_spinner_item);
+        sources.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        this.locationSourceSpinner.setAdapter(sources);
 
         // Update the current speed limit with the saved value.
         this.updateSpeedLimitText();
@@ -46,14 +75,25 @@ public class PreferencesActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
 
-        // Update the current speed limit with the saved value
-        // in case it was changed from a duplicate activity.
+        // Update the fields from the current settings snapshot
+        // in case they were changed from a duplicate activity.
         this.updateSpeedLimitText();
     }
 
     private void updateSpeedLimitText() {
-        String speed = Float.toString(this.speedPreferences.getSpeedLimit());
+        SpeedPreferences.Snapshot settings = this.speedPreferences.getSnapshot();
+
+        String speed = Float.toString(settings.speedLimit);
         this.speedLimitText.setText(speed);
+
+        String horizon = Float.toString(settings.alertHorizon / 1000f);
+        this.alertHorizonText.setText(horizon);
+
+        for (int i = 0; i < LOCATION_SOURCES.length; i++) {
+            if (LOCATION_SOURCES[i].equals(settings.locationSource)) {
+                this.locationSourceSpinner.setSelection(i);
+            }
+        }
     }
 
     @Override
@@ -72,13 +112,32 @@ public class PreferencesActivity extends AppCompatActivity {
     }
 
     public void onButtonClick(View view) {
+        SpeedPreferences.Snapshot settings = this.speedPreferences.getSnapshot();
         float speed = Float.parseFloat(this.speedLimitText.getText().toString());
 
-        if (speed != this.speedPreferences.getSpeedLimit()) {
+        if (speed != settings.speedLimit) {
             // If the value has changed, update the speed limit.
 
             this.speedPreferences.setSpeedLimit(speed);
             Toast.makeText(this, R.string.speed_limit_updated, Toast.LENGTH_LONG).show();
         }
+
+        long horizon = Math.round(Float.parseFloat(this.alertHorizonText.getText().toString()) * 1000);
+
+        if (horizon >= 0 && horizon != settings.alertHorizon) {
+            // If the value has changed, update the pre alert horizon.
+
+            this.speedPreferences.setAlertHorizon(horizon);
+            Toast.makeText(this, R.string.alert_horizon_updated, Toast.LENGTH_LONG).show();
+        }
+
+        String source = LOCATION_SOURCES[this.locationSourceSpinner.getSelectedItemPosition()];
+
+        if (!source.equals(settings.locationSource)) {
+            // If the value has changed, update the location source.
+
+            this.speedPreferences.setLocationSource(source);
+            Toast.makeText(this, R.string.location_source_updated, Toast.LENGTH_LONG).show();
+        }
     }
 }
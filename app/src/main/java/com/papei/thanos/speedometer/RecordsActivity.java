@@ -1,10 +1,12 @@
 package com.papei.thanos.speedometer;
 
+import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.widget.ArrayAdapter;
 import android.widget.ListView;
 import android.widget.Toast;
 
@@ -13,7 +15,9 @@ import androidx.annotation.RequiresApi;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The activity that holds all violation records.
@@ -34,6 +38,16 @@ public class RecordsActivity extends AppCompatActivity {
      */
     private ViolationsAdapter violationsAdapter;
 
+    /**
+     * The trip summaries adapter reference.
+     */
+    private ArrayAdapter<String> tripsAdapter;
+
+    /**
+     * The trips currently shown, in list order.
+     */
+    private final List<DatabaseHelper.TripRecord> trips = new ArrayList<>();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -42,19 +56,24 @@ public class RecordsActivity extends AppCompatActivity {
         // Grab the violation list view reference by ID.
         this.violationsListView = findViewById(R.id.violationsListView);
 
-        // Create a new connection with the database through the helper.
-        this.dbHelper = new DatabaseHelper(this);
+        // Open the map with the route of a clicked trip. Violation rows handle their own clicks.
+        this.tripsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+        this.violationsListView.setOnItemClickListener((parent, view, position, id) -> {
+            if (this.violationsListView.getAdapter() == this.tripsAdapter) {
+                Intent intent = new Intent(this, MapActivity.class);
+                intent.putExtra("trip_id", this.trips.get(position).getId());
+                startActivity(intent);
+            }
+        });
 
-        // Display all records with all time sorting.
-        sortByAllTime();
-    }
+        // Get the database helper shared by the whole application.
+        this.dbHelper = DatabaseHelper.getInstance(this);
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
+        // Start loading the gazetteer while the violations are fetched.
+        ReverseGeocoder.getInstance(this);
 
-        // Close the database connection.
-        this.dbHelper.close();
+        // Display all records with all time sorting.
+        sortByAllTime();
     }
 
     @Override
@@ -87,7 +106,10 @@ public class RecordsActivity extends AppCompatActivity {
 
         builder.setItems(new String[]{
                 getString(R.string.last_week),
-                getString(R.string.all_time)
+                getString(R.string.all_time),
+                getString(R.string.highest_speed),
+                getString(R.string.oldest_first),
+                getString(R.string.trips)
         }, (dialog, which) -> {
             switch (which) {
                 case 0:
@@ -98,6 +120,22 @@ public class RecordsActivity extends AppCompatActivity {
                     sortByAllTime();
                     Toast.makeText(getApplicationContext(), R.string.all_time_message, Toast.LENGTH_SHORT).show();
                     break;
+                case 2:
+                    sortByQuery(
+                            new ViolationQuery.Builder().orderBy(ViolationQuery.Order.SPEED, true).build(),
+                            R.string.highest_speed_detailed);
+                    Toast.makeText(getApplicationContext(), R.string.highest_speed_message, Toast.LENGTH_SHORT).show();
+                    break;
+                case 3:
+                    sortByQuery(
+                            new ViolationQuery.Builder().orderBy(ViolationQuery.Order.TIME, false).build(),
+                            R.string.oldest_first_detailed);
+                    Toast.makeText(getApplicationContext(), R.string.oldest_first_message, Toast.LENGTH_SHORT).show();
+                    break;
+                case 4:
+                    showTrips();
+                    Toast.makeText(getApplicationContext(), R.string.trips_message, Toast.LENGTH_SHORT).show();
+                    break;
             }
         });
 
@@ -125,6 +163,39 @@ public class RecordsActivity extends AppCompatActivity {
                 }, getMainExecutor());
     }
 
+    private void sortByQuery(ViolationQuery query, int subtitle) {
+        this.dbHelper.getViolations(query).thenAcceptAsync(
+                list -> {
+                    // Fetch the filtered and sorted records asynchronously and then populate the list view.
+
+                    getSupportActionBar().setSubtitle(subtitle);
+                    this.updateListViewData(list);
+                }, getMainExecutor());
+    }
+
+    private void showTrips() {
+        this.dbHelper.getTrips().thenAcceptAsync(
+                list -> {
+                    // Fetch the trip summaries asynchronously and then populate the list view.
+
+                    getSupportActionBar().setSubtitle(R.string.trips_detailed);
+
+                    this.trips.clear();
+                    this.trips.addAll(list);
+                    this.tripsAdapter.clear();
+
+                    for (DatabaseHelper.TripRecord trip : list) {
+                        this.tripsAdapter.add(getString(R.string.trip_label,
+                                Utilities.formatTimestamp(trip.getStartTime()),
+                                trip.getDistance() / 1000,
+                                TimeUnit.MILLISECONDS.toMinutes(trip.getDuration()),
+                                trip.getViolationCount()));
+                    }
+
+                    this.violationsListView.setAdapter(this.tripsAdapter);
+                }, getMainExecutor());
+    }
+
     private void updateListViewData(List<DatabaseHelper.ViolationRecord> list) {
         // If the adapter doesn't exist create a new one,
         // otherwise reset the existing adapter and notify for changes.
@@ -136,6 +207,11 @@ public class RecordsActivity extends AppCompatActivity {
             this.violationsAdapter.clear();
             this.violationsAdapter.addAll(list);
             this.violationsAdapter.notifyDataSetChanged();
+
+            // Switch back from the trips list.
+            if (this.violationsListView.getAdapter() != this.violationsAdapter) {
+                this.violationsListView.setAdapter(this.violationsAdapter);
+            }
         }
     }
 }
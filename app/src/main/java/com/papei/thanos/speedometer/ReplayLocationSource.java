@@ -0,0 +1,252 @@
+package com.papei.thanos.speedometer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Replays the fixes of a flight recorder snapshot file with their original timing,
+ * so trips can be reproduced on a desk or in JVM tests.
+ */
+public final class ReplayLocationSource implements LocationSource {
+    /**
+     * The number of recorded fixes.
+     */
+    private final int count;
+
+    /**
+     * The elapsed realtime of every fix relative to the first one, in milliseconds.
+     */
+    private final long[] offsets;
+
+    /**
+     * The latitude of every fix.
+     */
+    private final double[] latitudes;
+
+    /**
+     * The longitude of every fix.
+     */
+    private final double[] longitudes;
+
+    /**
+     * The speed of every fix in m/s.
+     */
+    private final float[] speeds;
+
+    /**
+     * The horizontal accuracy of every fix in meters.
+     */
+    private final float[] accuracies;
+
+    /**
+     * The fix reused for every delivery.
+     */
+    private final Fix fix = new Fix();
+
+    /**
+     * The task that delivers the next fix.
+     */
+    private final Runnable deliverNext = this::deliverNext;
+
+    /**
+     * The handler of the receiving thread, or null if stopped.
+     */
+    private Handler handler;
+
+    /**
+     * The listener that receives the fixes, or null if stopped.
+     */
+    private FixListener listener;
+
+    /**
+     * The index of the next fix.
+     */
+    private int next;
+
+    /**
+     * The elapsed realtime of the first delivered fix in nanoseconds.
+     */
+    private long startNanos;
+
+    /**
+     * The wall clock time of the first delivered fix in milliseconds.
+     */
+    private long startTime;
+
+    /**
+     * The uptime when the first fix was delivered, used to schedule the next ones.
+     */
+    private long startUptime;
+
+    /**
+     * Default constructor.
+     *
+     * @param in The stream of a flight recorder snapshot.
+     * @throws IOException If the stream is not a valid snapshot.
+     */
+    public ReplayLocationSource(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != FlightRecorder.MAGIC || data.readShort() != FlightRecorder.FORMAT_VERSION) {
+            throw new IOException("Not a flight recorder snapshot");
+        }
+
+        // Skip the violation ID and time.
+        data.readLong();
+        data.readLong();
+
+        int entries = data.readInt();
+        long[] offsets = new long[entries];
+        double[] latitudes = new double[entries];
+        double[] longitudes = new double[entries];
+        float[] speeds = new float[entries];
+        float[] accuracies = new float[entries];
+        int count = 0;
+        long first = 0;
+
+        for (int i = 0; i < entries; i++) {
+            byte kind = data.readByte();
+            long time = data.readLong();
+            data.readLong();
+            double latitude = data.readDouble();
+            double longitude = data.readDouble();
+            float speed = data.readFloat();
+            float accuracy = data.readFloat();
+
+            if (kind != FlightRecorder.KIND_FIX) {
+                continue;
+            }
+
+            if (count == 0) {
+                first = time;
+            }
+
+            offsets[count] = time - first;
+            latitudes[count] = latitude;
+            longitudes[count] = longitude;
+            speeds[count] = speed;
+            accuracies[count] = accuracy;
+            count++;
+        }
+
+        this.count = count;
+        this.offsets = Arrays.copyOf(offsets, count);
+        this.latitudes = Arrays.copyOf(latitudes, count);
+        this.longitudes = Arrays.copyOf(longitudes, count);
+        this.speeds = Arrays.copyOf(speeds, count);
+        this.accuracies = Arrays.copyOf(accuracies, count);
+    }
+
+    /**
+     * Creates a source that replays a snapshot file.
+     *
+     * @param file The flight recorder snapshot file.
+     * @return The replay source.
+     * @throws IOException If the file cannot be read.
+     */
+    public static ReplayLocationSource fromFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return new ReplayLocationSource(in);
+        }
+    }
+
+    /**
+     * Gets the number of recorded fixes.
+     *
+     * @return The fix count.
+     */
+    public int getFixCount() {
+        return this.count;
+    }
+
+    /**
+     * Delivers every fix right away on the calling thread, with times that start at the given values.
+     *
+     * @param listener The listener that receives the fixes.
+     * @param startNanos The elapsed realtime of the first fix in nanoseconds.
+     * @param startTime The wall clock time of the first fix in milliseconds.
+     */
+    public void replay(FixListener listener, long startNanos, long startTime) {
+        for (int i = 0; i < this.count; i++) {
+            listener.onFix(this.fill(i, startNanos, startTime));
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public long getUpdateInterval() {
+        return this.count > 1 ? this.offsets[this.count - 1] / (this.count - 1) : 0;
+    }
+
+    @Override
+    public void checkSettings(Runnable onSatisfied, Runnable onUnavailable) {
+        onSatisfied.run();
+    }
+
+    @Override
+    public void requestLastKnownFix(Consumer<Fix> consumer) {
+        // A replay has no fixes before it starts.
+    }
+
+    @Override
+    public void start(FixListener listener, Looper looper) {
+        this.listener = listener;
+        this.handler = new Handler(looper);
+        this.next = 0;
+        this.startNanos = SystemClock.elapsedRealtimeNanos();
+        this.startTime = System.currentTimeMillis();
+        this.startUptime = SystemClock.uptimeMillis();
+
+        this.handler.post(this.deliverNext);
+    }
+
+    @Override
+    public void stop() {
+        if (this.handler != null) {
+            this.handler.removeCallbacks(this.deliverNext);
+        }
+
+        this.handler = null;
+        this.listener = null;
+    }
+
+    private void deliverNext() {
+        FixListener listener = this.listener;
+
+        if (listener == null || this.next >= this.count) {
+            return;
+        }
+
+        listener.onFix(this.fill(this.next++, this.startNanos, this.startTime));
+
+        if (this.next < this.count && this.handler != null) {
+            this.handler.postAtTime(this.deliverNext, this.startUptime + this.offsets[this.next]);
+        }
+    }
+
+    private Fix fill(int index, long startNanos, long startTime) {
+        this.fix.elapsedRealtimeNanos = startNanos + this.offsets[index] * 1_000_000;
+        this.fix.time = startTime + this.offsets[index];
+        this.fix.latitude = this.latitudes[index];
+        this.fix.longitude = this.longitudes[index];
+        this.fix.speed = this.speeds[index];
+        this.fix.hasSpeed = !Float.isNaN(this.speeds[index]);
+        this.fix.accuracy = this.accuracies[index];
+
+        return this.fix;
+    }
+}
@@ -0,0 +1,144 @@
+package com.papei.thanos.speedometer;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.time.DayOfWeek;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * The activity that shows reports over the whole violation history.
+ */
+public class ReportsActivity extends AppCompatActivity {
+    /**
+     * The number of characters of the longest bar.
+     */
+    private static final int BAR_WIDTH = 20;
+
+    /**
+     * The engine that computes the reports.
+     */
+    private final AnalyticsEngine analyticsEngine = new AnalyticsEngine();
+
+    /**
+     * The report text view reference.
+     */
+    private TextView reportTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reports);
+
+        getSupportActionBar().setSubtitle(R.string.reports);
+
+        this.reportTextView = findViewById(R.id.reportTextView);
+        this.reportTextView.setText(R.string.report_loading);
+
+        // Read the history on the database thread, then aggregate it on every core.
+        DatabaseHelper.getInstance(this).getViolationHistory().thenApplyAsync(history -> {
+            long start = SystemClock.elapsedRealtime();
+            AnalyticsEngine.Report report = this.analyticsEngine.compute(history, ZoneId.systemDefault());
+
+            PerformanceMetrics.getInstance().recordLatency(
+                    PerformanceMetrics.REPORT_LATENCY, SystemClock.elapsedRealtime() - start);
+
+            return report;
+        }).thenAcceptAsync(this::showReport, getMainExecutor());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        MenuInflater inflater = getMenuInflater();
+
+        // Add the standard menu for navigation.
+        inflater.inflate(R.menu.menu_options, menu);
+
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        return Utilities.handleNavigation(this, item.getItemId());
+    }
+
+    private void showReport(AnalyticsEngine.Report report) {
+        StringBuilder text = new StringBuilder();
+
+        text.append(getString(R.string.report_summary, report.getCount(),
+                String.format(Locale.US, "%.1f", report.getAverageSpeed()),
+                String.format(Locale.US, "%.1f", report.getMaxSpeed())));
+
+        // Speed histogram, the last bin holds every higher speed.
+        text.append("\n\n").append(getString(R.string.report_speeds)).append('\n');
+        long[] speeds = report.getSpeedHistogram();
+
+        for (int i = 0; i < speeds.length; i++) {
+            String label = i == speeds.length - 1
+                    ? (i * AnalyticsEngine.BIN_KMH) + "+"
+                    : Integer.toString(i * AnalyticsEngine.BIN_KMH);
+
+            if (speeds[i] > 0) {
+                this.appendBar(text, label, speeds[i], max(speeds));
+            }
+        }
+
+        text.append('\n').append(getString(R.string.report_hours)).append('\n');
+        long[] hours = report.getHourCounts();
+
+        for (int i = 0; i < hours.length; i++) {
+            this.appendBar(text, String.format(Locale.US, "%02d", i), hours[i], max(hours));
+        }
+
+        text.append('\n').append(getString(R.string.report_weekdays)).append('\n');
+        long[] weekdays = report.getWeekdayCounts();
+
+        for (int i = 0; i < weekdays.length; i++) {
+            String label = DayOfWeek.of(i + 1).getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            this.appendBar(text, label, weekdays[i], max(weekdays));
+        }
+
+        text.append('\n').append(getString(R.string.report_worst_days)).append('\n');
+        DateTimeFormatter dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM);
+
+        for (AnalyticsEngine.Day day : report.getWorstDays()) {
+            text.append(String.format(Locale.US, "%-14s %5d  max %.0f km/h%n",
+                    day.getDate().format(dateFormat), day.getCount(), day.getMaxSpeed()));
+        }
+
+        this.reportTextView.setText(text);
+    }
+
+    private void appendBar(StringBuilder text, String label, long value, long max) {
+        int width = max == 0 ? 0 : (int) Math.round((double) value * BAR_WIDTH / max);
+
+        text.append(String.format(Locale.US, "%-5s", label));
+
+        for (int i = 0; i < width; i++) {
+            text.append('█');
+        }
+
+        text.append(' ').append(value).append('\n');
+    }
+
+    private static long max(long[] values) {
+        long max = 0;
+
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+
+        return max;
+    }
+}
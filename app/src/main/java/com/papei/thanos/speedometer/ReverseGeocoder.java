@@ -0,0 +1,184 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves coordinates to the name of the nearest place without the network, from the
+ * gazetteer bundled with the app or from a gazetteer.csv file placed in the files directory.
+ * Names are cached by coordinates rounded to about a hundred meters, since violations tend
+ * to repeat on the same roads.
+ */
+public final class ReverseGeocoder {
+    /**
+     * The file name of a side-loaded gazetteer, which replaces the bundled one.
+     */
+    private static final String GAZETTEER_NAME = "gazetteer.csv";
+
+    /**
+     * The number of resolved names kept in memory.
+     */
+    private static final int CACHE_SIZE = 512;
+
+    /**
+     * The number of cache cells per degree.
+     */
+    private static final double CELLS_PER_DEGREE = 1_000;
+
+    /**
+     * The distance from a place within which a location is named after it alone, in meters.
+     */
+    static final double NEAR_METERS = 2_000;
+
+    /**
+     * The singleton instance.
+     */
+    private static ReverseGeocoder instance;
+
+    /**
+     * The application context.
+     */
+    private final Context context;
+
+    /**
+     * The thread that loads the gazetteer and resolves names.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The gazetteer, loaded in the background.
+     */
+    private final CompletableFuture<Gazetteer> gazetteer;
+
+    /**
+     * The resolved names, keyed by cache cell.
+     */
+    private final LruCache<Long, String> cache = new LruCache<>(CACHE_SIZE);
+
+    /**
+     * Default constructor, which starts loading the gazetteer.
+     *
+     * @param context The current context.
+     */
+    private ReverseGeocoder(Context context) {
+        this.context = context;
+        this.gazetteer = CompletableFuture.supplyAsync(this::loadGazetteer, this.executor);
+    }
+
+    /**
+     * Gets the reverse geocoder shared by the whole application.
+     *
+     * @param context The current context.
+     * @return The reverse geocoder.
+     */
+    public static synchronized ReverseGeocoder getInstance(Context context) {
+        if (instance == null) {
+            instance = new ReverseGeocoder(context.getApplicationContext());
+        }
+
+        return instance;
+    }
+
+    /**
+     * Gets the name of a location if it is already resolved.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The place name, or null if not resolved yet.
+     */
+    public String getCached(double latitude, double longitude) {
+        return this.cache.get(cellKey(latitude, longitude));
+    }
+
+    /**
+     * Resolves the name of a location in the background.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return A completable future that returns the place name, or null if no place is known.
+     */
+    public CompletableFuture<String> lookup(double latitude, double longitude) {
+        long key = cellKey(latitude, longitude);
+        String cached = this.cache.get(key);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return this.gazetteer.thenApplyAsync(gazetteer -> {
+            String name = this.resolve(gazetteer, latitude, longitude);
+
+            if (name != null) {
+                this.cache.put(key, name);
+            }
+
+            return name;
+        }, this.executor);
+    }
+
+    private String resolve(Gazetteer gazetteer, double latitude, double longitude) {
+        int index = gazetteer.nearest(latitude, longitude);
+
+        if (index == -1) {
+            return null;
+        }
+
+        String name = gazetteer.getName(index);
+        double distance = Geodesy.haversine(latitude, longitude, gazetteer.getLatitude(index), gazetteer.getLongitude(index));
+
+        if (distance < NEAR_METERS) {
+            return name;
+        }
+
+        return this.context.getString(R.string.place_distance, Math.round(distance / 1000), name);
+    }
+
+    private Gazetteer loadGazetteer() {
+        File file = new File(this.context.getFilesDir(), GAZETTEER_NAME);
+
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                return read(in);
+            } catch (IOException e) {
+                // Fall back to the bundled gazetteer if the side-loaded one is broken.
+            }
+        }
+
+        try (InputStream in = this.context.getResources().openRawResource(R.raw.gazetteer)) {
+            return read(in);
+        } catch (IOException e) {
+            // Without a gazetteer, locations stay unnamed.
+            return new Gazetteer(new String[0], new double[0], new double[0], 0);
+        }
+    }
+
+    private static Gazetteer read(InputStream in) throws IOException {
+        Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+        return Gazetteer.read(reader);
+    }
+
+    /**
+     * Computes the cache key of the cell that contains a location.
+     *
+     * @param latitude The latitude of the location.
+     * @param longitude The longitude of the location.
+     * @return The cell key.
+     */
+    static long cellKey(double latitude, double longitude) {
+        long row = Math.round(latitude * CELLS_PER_DEGREE);
+        long column = Math.round(longitude * CELLS_PER_DEGREE);
+
+        return (row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,108 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Fills in the speed of fixes whose source did not measure one, from the distance and time
+ * to an earlier fix. Sources without a speed would otherwise report a constant 0 m/s, so
+ * the speedometer and the violation checks would never react.
+ *
+ * <p>A distance within the accuracy of the two fixes may be position noise alone, which
+ * would make a parked device read tens of km/h. Such a fix keeps the earlier fix, so the
+ * next estimate spans a longer interval, and only holds the last estimate as far as the
+ * distance and accuracy allow.</p>
+ */
+public final class SpeedEstimator {
+    /**
+     * The shortest time between the two fixes of an estimate, so position noise is not
+     * divided by a tiny interval.
+     */
+    static final long MIN_INTERVAL_NANOS = 900_000_000L;
+
+    /**
+     * The longest time between the two fixes of an estimate, past which the path between
+     * them is too uncertain.
+     */
+    static final long MAX_INTERVAL_NANOS = 10_000_000_000L;
+
+    /**
+     * Whether an earlier fix is available.
+     */
+    private boolean hasPrevious = false;
+
+    /**
+     * The elapsed realtime of the earlier fix in nanoseconds.
+     */
+    private long previousNanos;
+
+    /**
+     * The latitude of the earlier fix.
+     */
+    private double previousLatitude;
+
+    /**
+     * The longitude of the earlier fix.
+     */
+    private double previousLongitude;
+
+    /**
+     * The horizontal accuracy of the earlier fix in meters.
+     */
+    private float previousAccuracy;
+
+    /**
+     * The last estimated speed in m/s.
+     */
+    private float speed = 0;
+
+    /**
+     * Sets the speed of a fix without a measured speed. Fixes with a measured speed are
+     * left unchanged.
+     *
+     * @param fix The new fix, in order of elapsed realtime.
+     */
+    public void apply(Fix fix) {
+        if (fix.hasSpeed) {
+            this.moveTo(fix);
+            this.speed = fix.speed;
+            return;
+        }
+
+        long interval = fix.elapsedRealtimeNanos - this.previousNanos;
+
+        if (!this.hasPrevious || interval <= 0 || interval > MAX_INTERVAL_NANOS) {
+            // Nothing recent to compare with.
+            this.moveTo(fix);
+            this.speed = 0;
+        } else if (interval >= MIN_INTERVAL_NANOS) {
+            double distance = Geodesy.equirectangular(
+                    this.previousLatitude, this.previousLongitude, fix.latitude, fix.longitude);
+            double noise = this.previousAccuracy + fix.accuracy;
+
+            if (distance > noise) {
+                this.moveTo(fix);
+                this.speed = (float) (distance * 1e9 / interval);
+            } else {
+                // Keep the earlier fix, and never hold more than the device could have moved.
+                this.speed = (float) Math.min(this.speed, (distance + noise) * 1e9 / interval);
+            }
+        }
+
+        // Fixes closer than the shortest interval keep the last estimate.
+        fix.speed = this.speed;
+    }
+
+    /**
+     * Forgets the earlier fix, at the start of a new monitoring session.
+     */
+    public void reset() {
+        this.hasPrevious = false;
+        this.speed = 0;
+    }
+
+    private void moveTo(Fix fix) {
+        this.hasPrevious = true;
+        this.previousNanos = fix.elapsedRealtimeNanos;
+        this.previousLatitude = fix.latitude;
+        this.previousLongitude = fix.longitude;
+        this.previousAccuracy = fix.accuracy;
+    }
+}
@@ -4,36 +4,85 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 /**
- * A wrapper around shared preferences that is used to save speed settings.
+ * A typed store of the speed settings, backed by shared preferences. The settings are
+ * published as an immutable snapshot through a volatile reference, so the location callbacks
+ * read plain fields instead of looking up and unboxing preference values on every fix.
+ *
+ * <p>The snapshot is rebuilt when a setting changes, from this store or any other editor of
+ * the same preferences, and the changes are written to disk in the background.</p>
  */
 public final class SpeedPreferences {
     /**
-     * The current context.
+     * The location source that picks the fused provider when Play services are available.
      */
-    private final Context context;
+    public static final String SOURCE_AUTO = "auto";
+
+    /**
+     * The location source that uses the raw GPS provider.
+     */
+    public static final String SOURCE_GPS = "gps";
+
+    /**
+     * The location source that replays a recorded trip from files/replay.bin.
+     */
+    public static final String SOURCE_REPLAY = "replay";
+
+    /**
+     * The single instance of the store.
+     */
+    private static SpeedPreferences instance;
 
     /**
      * A reference to shared preferences.
      */
     private final SharedPreferences preferences;
 
+    /**
+     * The listener that rebuilds the snapshot. Shared preferences only keep a weak reference
+     * to it, so it is held here.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener;
+
+    /**
+     * The current settings.
+     */
+    private volatile Snapshot snapshot;
+
     /**
      * Default constructor.
      *
      * @param context The current context.
      */
-    public SpeedPreferences(Context context) {
-        this.context = context;
-        this.preferences = this.context.getSharedPreferences("speed_preferences", Context.MODE_PRIVATE);
+    private SpeedPreferences(Context context) {
+        this.preferences = context.getSharedPreferences("speed_preferences", Context.MODE_PRIVATE);
+        this.snapshot = this.read();
+
+        this.changeListener = (preferences, key) -> this.snapshot = this.read();
+        this.preferences.registerOnSharedPreferenceChangeListener(this.changeListener);
+    }
+
+    /**
+     * Gets the store shared by the whole application.
+     *
+     * @param context The current context.
+     * @return The speed preferences instance.
+     */
+    public static synchronized SpeedPreferences getInstance(Context context) {
+        if (instance == null) {
+            instance = new SpeedPreferences(context.getApplicationContext());
+        }
+
+        return instance;
     }
 
     /**
-     * Gets the saved speed limit.
+     * Gets the current settings. The snapshot never changes, so read it once and use its
+     * fields for a whole fix.
      *
-     * @return The speed limit value.
+     * @return The settings snapshot.
      */
-    public float getSpeedLimit() {
-        return this.preferences.getFloat("speed_limit", 30.0f);
+    public Snapshot getSnapshot() {
+        return this.snapshot;
     }
 
     /**
@@ -42,8 +91,145 @@ public final class SpeedPreferences {
      * @param limit The new speed limit value.
      */
     public void setSpeedLimit(float limit) {
-        SharedPreferences.Editor editor = this.preferences.edit();
-        editor.putFloat("speed_limit", limit);
+        this.apply(this.preferences.edit().putFloat("speed_limit", limit));
+    }
+
+    /**
+     * Sets the time the speed is projected ahead for pre alerts.
+     *
+     * @param horizon The new horizon in milliseconds, zero to disable pre alerts.
+     */
+    public void setAlertHorizon(long horizon) {
+        this.apply(this.preferences.edit().putLong("alert_horizon", horizon));
+    }
+
+    /**
+     * Sets the location source used the next time the speedometer starts.
+     *
+     * @param source The location source name.
+     */
+    public void setLocationSource(String source) {
+        this.apply(this.preferences.edit().putString("location_source", source));
+    }
+
+    /**
+     * Publishes an edit right away and writes it to disk in the background.
+     *
+     * @param editor The edit to apply.
+     */
+    private void apply(SharedPreferences.Editor editor) {
+        // Applying updates the in-memory preferences before it returns.
         editor.apply();
+        this.snapshot = this.read();
+    }
+
+    /**
+     * Reads every setting from the preferences.
+     *
+     * @return A new snapshot.
+     */
+    private Snapshot read() {
+        return new Snapshot(
+                this.preferences.getFloat("speed_limit", 30.0f),
+                this.preferences.getLong("alert_horizon", 3_000),
+                this.preferences.getString("location_source", SOURCE_AUTO),
+                this.preferences.getLong("fused_interval", 500),
+                this.preferences.getLong("gps_interval", 1_000),
+                this.preferences.getLong("violation_throttle", 10_000),
+                this.preferences.getFloat("predictor_alpha", OverLimitPredictor.ALPHA),
+                this.preferences.getFloat("predictor_beta", OverLimitPredictor.BETA),
+                this.preferences.getFloat("predictor_min_acceleration", OverLimitPredictor.MIN_ACCELERATION));
+    }
+
+    /**
+     * An immutable set of the speed settings.
+     */
+    public static final class Snapshot {
+        /**
+         * The speed limit in km/h.
+         */
+        public final float speedLimit;
+
+        /**
+         * The time the speed is projected ahead for pre alerts, in milliseconds, zero when
+         * pre alerts are disabled.
+         */
+        public final long alertHorizon;
+
+        /**
+         * The location source name.
+         */
+        public final String locationSource;
+
+        /**
+         * The requested time between fused provider fixes, in milliseconds.
+         */
+        public final long fusedInterval;
+
+        /**
+         * The requested time between GPS provider fixes, in milliseconds.
+         */
+        public final long gpsInterval;
+
+        /**
+         * The shortest time between two recorded violations, in milliseconds.
+         */
+        public final long violationThrottle;
+
+        /**
+         * The share of the speed residual that corrects the pre alert speed estimate.
+         */
+        public final float predictorAlpha;
+
+        /**
+         * The share of the speed residual that corrects the pre alert acceleration estimate.
+         */
+        public final float predictorBeta;
+
+        /**
+         * The lowest acceleration projected for pre alerts, in km/h per second.
+         */
+        public final float predictorMinAcceleration;
+
+        /**
+         * Default constructor.
+         *
+         * @param speedLimit The speed limit in km/h.
+         * @param alertHorizon The pre alert horizon in milliseconds.
+         * @param locationSource The location source name.
+         * @param fusedInterval The fused provider interval in milliseconds.
+         * @param gpsInterval The GPS provider interval in milliseconds.
+         * @param violationThrottle The shortest time between two violations in milliseconds.
+         * @param predictorAlpha The speed correction of the pre alert filter.
+         * @param predictorBeta The acceleration correction of the pre alert filter.
+         * @param predictorMinAcceleration The lowest projected acceleration in km/h per second.
+         */
+        Snapshot(float speedLimit, long alertHorizon, String locationSource, long fusedInterval,
+                 long gpsInterval, long violationThrottle, float predictorAlpha, float predictorBeta,
+                 float predictorMinAcceleration) {
+            this.speedLimit = speedLimit;
+            this.alertHorizon = alertHorizon;
+            this.locationSource = locationSource;
+            this.fusedInterval = fusedInterval;
+            this.gpsInterval = gpsInterval;
+            this.violationThrottle = violationThrottle;
+            this.predictorAlpha = predictorAlpha;
+            this.predictorBeta = predictorBeta;
+            this.predictorMinAcceleration = predictorMinAcceleration;
+        }
+
+        /**
+         * Creates a pre alert predictor with these settings.
+         *
+         * @return The predictor, or null when pre alerts are disabled.
+         */
+        public OverLimitPredictor createPredictor() {
+            if (this.alertHorizon <= 0) {
+                return null;
+            }
+
+            return new OverLimitPredictor(
+                    this.alertHorizon, this.predictorAlpha, this.predictorBeta, this.predictorMinAcceleration);
+        }
     }
 }
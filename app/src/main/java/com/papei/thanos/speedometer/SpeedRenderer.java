@@ -0,0 +1,139 @@
+package com.papei.thanos.speedometer;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shows the latest speed in a text view at most once per display frame. Speeds can be
+ * set from any thread at any rate, only the newest one is kept, and the text is only
+ * replaced when the displayed value changes.
+ */
+public final class SpeedRenderer implements Choreographer.FrameCallback {
+    /**
+     * The time constant of the smooth animation, the displayed speed covers about
+     * two thirds of the distance to a new speed in this time.
+     */
+    private static final float SMOOTHING_MILLIS = 250;
+
+    /**
+     * The speed below which the smooth animation stops at its target, in km/h.
+     */
+    private static final float SMOOTHING_EPSILON = 0.005f;
+
+    /**
+     * The text view that shows the speed.
+     */
+    private final TextView textView;
+
+    /**
+     * Whether speed changes are animated instead of shown right away.
+     */
+    private final boolean smooth;
+
+    /**
+     * The choreographer of the main thread.
+     */
+    private final Choreographer choreographer;
+
+    /**
+     * The handler of the main thread, used to reach the choreographer from other threads.
+     */
+    private final Handler mainHandler;
+
+    /**
+     * The newest speed in km/h, stored as float bits.
+     */
+    private final AtomicInteger latestSpeed = new AtomicInteger(Float.floatToIntBits(0));
+
+    /**
+     * Whether a frame callback is already posted.
+     */
+    private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+
+    /**
+     * The speed currently shown, in km/h.
+     */
+    private float displayedSpeed = 0;
+
+    /**
+     * The shown speed in hundredths of km/h, matching the displayed text precision.
+     */
+    private long displayedCenti = Long.MIN_VALUE;
+
+    /**
+     * The frame time of the previous frame, or 0 if no animation is running.
+     */
+    private long lastFrameTime = 0;
+
+    /**
+     * Default constructor, must be called on the main thread.
+     *
+     * @param textView The text view that shows the speed.
+     * @param smooth Whether speed changes are animated instead of shown right away.
+     */
+    public SpeedRenderer(TextView textView, boolean smooth) {
+        this.textView = textView;
+        this.smooth = smooth;
+        this.choreographer = Choreographer.getInstance();
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Sets the newest speed, which is shown on the next display frame.
+     *
+     * @param speed The speed in km/h.
+     */
+    public void setSpeed(float speed) {
+        this.latestSpeed.set(Float.floatToIntBits(speed));
+        this.scheduleFrame();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        this.frameScheduled.set(false);
+
+        float target = Float.intBitsToFloat(this.latestSpeed.get());
+
+        if (this.smooth && this.displayedCenti != Long.MIN_VALUE) {
+            // Ease toward the newest speed, independently of the frame rate.
+            float elapsed = this.lastFrameTime == 0 ? 16 : (frameTimeNanos - this.lastFrameTime) / 1_000_000f;
+            float step = 1 - (float) Math.exp(-elapsed / SMOOTHING_MILLIS);
+            this.displayedSpeed += (target - this.displayedSpeed) * step;
+
+            if (Math.abs(target - this.displayedSpeed) < SMOOTHING_EPSILON) {
+                this.displayedSpeed = target;
+                this.lastFrameTime = 0;
+            } else {
+                this.lastFrameTime = frameTimeNanos;
+                this.scheduleFrame();
+            }
+        } else {
+            this.displayedSpeed = target;
+        }
+
+        long centi = Math.round(this.displayedSpeed * 100.0);
+
+        if (centi != this.displayedCenti) {
+            // Only touch the view, and cause a layout pass, when the text changes.
+            this.displayedCenti = centi;
+            this.textView.setText(Utilities.formatSpeed(this.textView.getContext(), this.displayedSpeed));
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!this.frameScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            this.choreographer.postFrameCallback(this);
+        } else {
+            this.mainHandler.post(() -> this.choreographer.postFrameCallback(this));
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.papei.thanos.speedometer;
+
+import java.util.Arrays;
+
+/**
+ * Rolling speed statistics over the last 1, 5 and 15 minutes, computed online with constant memory.
+ * Time is split into fixed slots that each hold a histogram of 1 km/h buckets, and every window
+ * keeps a running sum of the slots it covers, so an update never allocates and does constant work.
+ */
+public final class SpeedStatistics {
+    /**
+     * The lengths of the rolling windows in minutes.
+     */
+    public static final int[] WINDOW_MINUTES = {1, 5, 15};
+
+    /**
+     * The duration of a time slot.
+     */
+    static final long SLOT_MILLIS = 10_000;
+
+    /**
+     * The number of 1 km/h speed buckets, the last one holds all higher speeds.
+     */
+    static final int BUCKET_COUNT = 256;
+
+    /**
+     * The longest gap between two fixes that counts as time above the limit.
+     */
+    private static final long MAX_FIX_GAP_MILLIS = 5_000;
+
+    /**
+     * The number of slots kept, enough for the longest window.
+     */
+    private static final int SLOT_COUNT = (int) (WINDOW_MINUTES[WINDOW_MINUTES.length - 1] * 60_000L / SLOT_MILLIS);
+
+    /**
+     * The number of slots covered by every window.
+     */
+    private final int[] windowSlots = new int[WINDOW_MINUTES.length];
+
+    /**
+     * The speed histogram of every slot.
+     */
+    private final int[][] slotHistograms = new int[SLOT_COUNT][BUCKET_COUNT];
+
+    /**
+     * The number of fixes of every slot.
+     */
+    private final int[] slotCounts = new int[SLOT_COUNT];
+
+    /**
+     * The sum of the speeds of every slot.
+     */
+    private final double[] slotSums = new double[SLOT_COUNT];
+
+    /**
+     * The highest speed of every slot.
+     */
+    private final float[] slotMax = new float[SLOT_COUNT];
+
+    /**
+     * The time spent above the limit in every slot.
+     */
+    private final long[] slotAboveMillis = new long[SLOT_COUNT];
+
+    /**
+     * The absolute slot number held at every ring position, or -1 if empty.
+     */
+    private final long[] slotNumbers = new long[SLOT_COUNT];
+
+    /**
+     * The running speed histogram of every window.
+     */
+    private final int[][] windowHistograms = new int[WINDOW_MINUTES.length][BUCKET_COUNT];
+
+    /**
+     * The running number of fixes of every window.
+     */
+    private final int[] windowCounts = new int[WINDOW_MINUTES.length];
+
+    /**
+     * The running sum of the speeds of every window.
+     */
+    private final double[] windowSums = new double[WINDOW_MINUTES.length];
+
+    /**
+     * The running time above the limit of every window.
+     */
+    private final long[] windowAboveMillis = new long[WINDOW_MINUTES.length];
+
+    /**
+     * The absolute number of the newest slot, or -1 before the first fix.
+     */
+    private long currentSlot = -1;
+
+    /**
+     * The time of the previous fix in milliseconds.
+     */
+    private long lastTime;
+
+    /**
+     * Default constructor.
+     */
+    public SpeedStatistics() {
+        for (int i = 0; i < WINDOW_MINUTES.length; i++) {
+            this.windowSlots[i] = (int) (WINDOW_MINUTES[i] * 60_000L / SLOT_MILLIS);
+        }
+
+        Arrays.fill(this.slotNumbers, -1);
+    }
+
+    /**
+     * Adds a location fix to the statistics. Fixes must arrive in time order.
+     *
+     * @param time The time of the fix in milliseconds, on a monotonic clock.
+     * @param speed The speed of the fix in km/h.
+     * @param limit The current speed limit in km/h.
+     */
+    public void add(long time, float speed, float limit) {
+        long slot = time / SLOT_MILLIS;
+
+        if (slot < this.currentSlot) {
+            // Fixes from an older slot would corrupt the running sums.
+            return;
+        }
+
+        long elapsed = this.currentSlot < 0 ? 0 : time - this.lastTime;
+        this.advance(slot);
+        this.lastTime = time;
+
+        int index = (int) (slot % SLOT_COUNT);
+        int bucket = Math.max(0, Math.min(BUCKET_COUNT - 1, (int) speed));
+        long above = speed > limit ? Math.min(elapsed, MAX_FIX_GAP_MILLIS) : 0;
+
+        this.slotHistograms[index][bucket]++;
+        this.slotCounts[index]++;
+        this.slotSums[index] += speed;
+        this.slotMax[index] = Math.max(this.slotMax[index], speed);
+        this.slotAboveMillis[index] += above;
+
+        for (int w = 0; w < WINDOW_MINUTES.length; w++) {
+            this.windowHistograms[w][bucket]++;
+            this.windowCounts[w]++;
+            this.windowSums[w] += speed;
+            this.windowAboveMillis[w] += above;
+        }
+    }
+
+    /**
+     * Writes the statistics of a window into a snapshot.
+     *
+     * @param window The index of the window in WINDOW_MINUTES.
+     * @param time The current time in milliseconds, on the clock of the fixes.
+     * @param out The snapshot to overwrite.
+     */
+    public void snapshot(int window, long time, Snapshot out) {
+        if (this.currentSlot >= 0) {
+            // Expire the slots that have left the windows since the last fix.
+            this.advance(Math.max(this.currentSlot, time / SLOT_MILLIS));
+        }
+
+        int count = this.windowCounts[window];
+        out.count = count;
+        out.mean = count > 0 ? (float) (this.windowSums[window] / count) : 0;
+        out.aboveLimitMillis = this.windowAboveMillis[window];
+        out.max = 0;
+        out.p95 = 0;
+
+        for (int i = 0; i < this.windowSlots[window]; i++) {
+            long slot = this.currentSlot - i;
+
+            if (slot < 0) {
+                break;
+            }
+
+            int index = (int) (slot % SLOT_COUNT);
+
+            if (this.slotNumbers[index] == slot) {
+                out.max = Math.max(out.max, this.slotMax[index]);
+            }
+        }
+
+        if (count > 0) {
+            // Find the bucket that holds the 95th percentile rank.
+            int rank = (int) Math.ceil(count * 0.95);
+            int[] histogram = this.windowHistograms[window];
+            int seen = 0;
+
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += histogram[bucket];
+
+                if (seen >= rank) {
+                    out.p95 = Math.min(bucket + 1, out.max);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all fixes.
+     */
+    public void clear() {
+        for (int[] histogram : this.slotHistograms) {
+            Arrays.fill(histogram, 0);
+        }
+
+        for (int[] histogram : this.windowHistograms) {
+            Arrays.fill(histogram, 0);
+        }
+
+        Arrays.fill(this.slotCounts, 0);
+        Arrays.fill(this.slotSums, 0);
+        Arrays.fill(this.slotMax, 0);
+        Arrays.fill(this.slotAboveMillis, 0);
+        Arrays.fill(this.slotNumbers, -1);
+        Arrays.fill(this.windowCounts, 0);
+        Arrays.fill(this.windowSums, 0);
+        Arrays.fill(this.windowAboveMillis, 0);
+
+        this.currentSlot = -1;
+    }
+
+    /**
+     * Moves the newest slot forward, removing expired slots from the windows.
+     *
+     * @param slot The new absolute slot number.
+     */
+    private void advance(long slot) {
+        if (this.currentSlot < 0 || slot - this.currentSlot >= SLOT_COUNT) {
+            // Nothing recent is left, so start over.
+            this.clear();
+            this.currentSlot = slot;
+            this.slotNumbers[(int) (slot % SLOT_COUNT)] = slot;
+            return;
+        }
+
+        while (this.currentSlot < slot) {
+            long next = ++this.currentSlot;
+
+            for (int w = 0; w < WINDOW_MINUTES.length; w++) {
+                this.expire(w, next - this.windowSlots[w]);
+            }
+
+            // The ring position of the new slot is reused from the oldest one.
+            int index = (int) (next % SLOT_COUNT);
+            Arrays.fill(this.slotHistograms[index], 0);
+            this.slotCounts[index] = 0;
+            this.slotSums[index] = 0;
+            this.slotMax[index] = 0;
+            this.slotAboveMillis[index] = 0;
+            this.slotNumbers[index] = next;
+        }
+    }
+
+    /**
+     * Subtracts a slot from the running sums of a window.
+     *
+     * @param window The index of the window.
+     * @param slot The absolute number of the slot that left the window.
+     */
+    private void expire(int window, long slot) {
+        if (slot < 0) {
+            return;
+        }
+
+        int index = (int) (slot % SLOT_COUNT);
+
+        if (this.slotNumbers[index] != slot || this.slotCounts[index] == 0) {
+            return;
+        }
+
+        int[] slotHistogram = this.slotHistograms[index];
+        int[] windowHistogram = this.windowHistograms[window];
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            windowHistogram[bucket] -= slotHistogram[bucket];
+        }
+
+        this.windowCounts[window] -= this.slotCounts[index];
+        this.windowSums[window] -= this.slotSums[index];
+        this.windowAboveMillis[window] -= this.slotAboveMillis[index];
+    }
+
+    /**
+     * The statistics of a window, reused between reads to avoid allocations.
+     */
+    public static final class Snapshot {
+        /**
+         * The number of fixes in the window.
+         */
+        public int count;
+
+        /**
+         * The mean speed in km/h.
+         */
+        public float mean;
+
+        /**
+         * The highest speed in km/h.
+         */
+        public float max;
+
+        /**
+         * The 95th percentile speed in km/h, accurate to 1 km/h.
+         */
+        public float p95;
+
+        /**
+         * The time spent above the speed limit in milliseconds.
+         */
+        public long aboveLimitMillis;
+    }
+}
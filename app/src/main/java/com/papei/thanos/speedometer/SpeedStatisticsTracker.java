@@ -0,0 +1,160 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.widget.TextView;
+
+import java.util.Locale;
+
+/**
+ * Feeds location fixes into rolling speed statistics on a background thread
+ * and shows them in a text view about once per second.
+ */
+public final class SpeedStatisticsTracker implements Handler.Callback {
+    /**
+     * The message that adds a location fix.
+     */
+    private static final int MSG_FIX = 1;
+
+    /**
+     * The message that refreshes the text view.
+     */
+    private static final int MSG_REFRESH = 2;
+
+    /**
+     * The time between two refreshes of the text view.
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = 1_000;
+
+    /**
+     * The application context.
+     */
+    private final Context context;
+
+    /**
+     * The text view that shows the statistics.
+     */
+    private final TextView textView;
+
+    /**
+     * The statistics engine, only used on the statistics thread.
+     */
+    private final SpeedStatistics statistics = new SpeedStatistics();
+
+    /**
+     * The snapshot reused for every refresh.
+     */
+    private final SpeedStatistics.Snapshot snapshot = new SpeedStatistics.Snapshot();
+
+    /**
+     * The thread that updates the statistics.
+     */
+    private final HandlerThread thread;
+
+    /**
+     * The handler of the statistics thread.
+     */
+    private final Handler handler;
+
+    /**
+     * The handler of the main thread, used for the text view.
+     */
+    private final Handler mainHandler;
+
+    /**
+     * Default constructor.
+     *
+     * @param context The current context.
+     * @param textView The text view that shows the statistics.
+     */
+    public SpeedStatisticsTracker(Context context, TextView textView) {
+        this.context = context.getApplicationContext();
+        this.textView = textView;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+
+        this.thread = new HandlerThread("SpeedStatistics", Process.THREAD_PRIORITY_BACKGROUND);
+        this.thread.start();
+        this.handler = new Handler(this.thread.getLooper(), this);
+    }
+
+    /**
+     * Queues the speed of a location fix. Uses a pooled message, so that no memory is
+     * allocated per fix, and only primitives, since fix objects are reused by the sources.
+     *
+     * @param kmSpeed The speed of the fix in km/h.
+     * @param limit The current speed limit in km/h.
+     */
+    public void addFix(float kmSpeed, float limit) {
+        this.handler.obtainMessage(MSG_FIX, Float.floatToIntBits(kmSpeed), Float.floatToIntBits(limit)).sendToTarget();
+    }
+
+    /**
+     * Starts refreshing the text view.
+     */
+    public void start() {
+        this.handler.removeMessages(MSG_REFRESH);
+        this.handler.sendEmptyMessage(MSG_REFRESH);
+    }
+
+    /**
+     * Stops refreshing the text view, the statistics are kept.
+     */
+    public void stop() {
+        this.handler.removeMessages(MSG_REFRESH);
+    }
+
+    /**
+     * Stops the statistics thread.
+     */
+    public void release() {
+        this.handler.removeCallbacksAndMessages(null);
+        this.thread.quitSafely();
+    }
+
+    @Override
+    public boolean handleMessage(Message message) {
+        switch (message.what) {
+            case MSG_FIX:
+                // The queue delay is far below the slot size, so the fix is timed on arrival.
+                this.statistics.add(
+                        SystemClock.elapsedRealtime(),
+                        Float.intBitsToFloat(message.arg1),
+                        Float.intBitsToFloat(message.arg2));
+                return true;
+            case MSG_REFRESH:
+                String text = this.format(SystemClock.elapsedRealtime());
+                this.mainHandler.post(() -> this.textView.setText(text));
+                this.handler.sendEmptyMessageDelayed(MSG_REFRESH, REFRESH_INTERVAL_MILLIS);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private String format(long time) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int window = 0; window < SpeedStatistics.WINDOW_MINUTES.length; window++) {
+            this.statistics.snapshot(window, time, this.snapshot);
+
+            if (window > 0) {
+                builder.append('\n');
+            }
+
+            builder.append(this.context.getString(
+                    R.string.speed_statistics,
+                    SpeedStatistics.WINDOW_MINUTES[window],
+                    String.format(Locale.US, "%.0f", this.snapshot.mean),
+                    String.format(Locale.US, "%.0f", this.snapshot.max),
+                    String.format(Locale.US, "%.0f", this.snapshot.p95),
+                    this.snapshot.aboveLimitMillis / 1_000));
+        }
+
+        return builder.toString();
+    }
+}
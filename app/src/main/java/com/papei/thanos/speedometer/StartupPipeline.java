@@ -0,0 +1,317 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Defers and parallelizes the creation of startup components, and traces
+ * every startup phase into a report that can be compared between releases.
+ */
+public final class StartupPipeline {
+    /**
+     * The file name of the startup report, one JSON object per line.
+     */
+    private static final String REPORT_NAME = "startup_report.jsonl";
+
+    /**
+     * Whether the cold start of this process was already reported.
+     */
+    private static final AtomicBoolean REPORTED = new AtomicBoolean(false);
+
+    /**
+     * The threads that run slow initializers in parallel, shared by every startup of the process.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool();
+
+    /**
+     * The executor of the main thread, which runs the actions on started components.
+     */
+    private final Executor mainExecutor;
+
+    /**
+     * The traced phases of this startup.
+     */
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * The uptime when the process was started, used as the origin of all timestamps.
+     */
+    private final long origin = Process.getStartUptimeMillis();
+
+    /**
+     * Default constructor.
+     *
+     * @param mainExecutor The executor of the main thread.
+     */
+    public StartupPipeline(Executor mainExecutor) {
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * Gets the current uptime, used to mark the beginning of a phase.
+     *
+     * @return The current uptime in milliseconds.
+     */
+    public long begin() {
+        return SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Traces a phase that started at the given uptime and ends now.
+     *
+     * @param name The name of the phase.
+     * @param begin The uptime when the phase started.
+     */
+    public void end(String name, long begin) {
+        long end = SystemClock.uptimeMillis();
+
+        synchronized (this.phases) {
+            this.phases.add(new Phase(name, Thread.currentThread().getName(), begin - this.origin, end - this.origin));
+        }
+    }
+
+    /**
+     * Creates a component that is initialized on first use, or earlier in the background.
+     *
+     * @param name The name of the component, used as its phase name.
+     * @param supplier The initializer of the component.
+     * @param <T> The type of the component.
+     * @return The deferred component.
+     */
+    public <T> Deferred<T> defer(String name, Supplier<T> supplier) {
+        return new Deferred<>(name, supplier);
+    }
+
+    /**
+     * Runs an action on the main thread right after the view is drawn for the first time.
+     *
+     * @param view The view to observe.
+     * @param action The action to run.
+     */
+    public void runAfterFirstDraw(View view, Runnable action) {
+        long begin = this.begin();
+
+        ViewTreeObserver.OnDrawListener listener = new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn = false;
+
+            @Override
+            public void onDraw() {
+                if (this.drawn) {
+                    return;
+                }
+
+                this.drawn = true;
+                end("first_draw", begin);
+
+                // Listeners cannot be removed while drawing, so continue on the next loop.
+                view.post(() -> {
+                    view.getViewTreeObserver().removeOnDrawListener(this);
+                    action.run();
+                });
+            }
+        };
+
+        view.getViewTreeObserver().addOnDrawListener(listener);
+    }
+
+    /**
+     * Writes the traced phases as a new line of the startup report in the background.
+     * Only the first startup of the process is reported, since later ones are warm starts.
+     *
+     * @param context The current context.
+     */
+    public void writeReport(Context context) {
+        if (!REPORTED.compareAndSet(false, true)) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+
+        EXECUTOR.execute(() -> {
+            try {
+                JSONObject report = new JSONObject();
+                PackageInfo info = appContext.getPackageManager().getPackageInfo(appContext.getPackageName(), 0);
+
+                report.put("version", info.versionName);
+                report.put("versionCode", info.getLongVersionCode());
+                report.put("time", System.currentTimeMillis());
+
+                JSONArray array = new JSONArray();
+
+                synchronized (this.phases) {
+                    for (Phase phase : this.phases) {
+                        array.put(new JSONObject()
+                                .put("name", phase.name)
+                                .put("thread", phase.thread)
+                                .put("start", phase.start)
+                                .put("end", phase.end));
+                    }
+                }
+
+                report.put("phases", array);
+
+                File file = new File(appContext.getFilesDir(), REPORT_NAME);
+
+                try (FileWriter writer = new FileWriter(file, true)) {
+                    writer.write(report.toString());
+                    writer.write('\n');
+                }
+            } catch (JSONException | IOException | PackageManager.NameNotFoundException e) {
+                // A missing report line only affects startup statistics.
+            }
+        });
+    }
+
+    /**
+     * A component whose creation is deferred until first use or a background start.
+     *
+     * @param <T> The type of the component.
+     */
+    public final class Deferred<T> {
+        /**
+         * The name of the component.
+         */
+        private final String name;
+
+        /**
+         * The initializer of the component.
+         */
+        private final Supplier<T> supplier;
+
+        /**
+         * The future that holds the component once initialization has started.
+         */
+        private CompletableFuture<T> future;
+
+        /**
+         * Default constructor.
+         *
+         * @param name The name of the component.
+         * @param supplier The initializer of the component.
+         */
+        private Deferred(String name, Supplier<T> supplier) {
+            this.name = name;
+            this.supplier = supplier;
+        }
+
+        /**
+         * Starts initializing the component on a background thread.
+         *
+         * @return A completable future that returns the component once ready.
+         */
+        public synchronized CompletableFuture<T> startAsync() {
+            if (this.future == null) {
+                this.future = CompletableFuture.supplyAsync(this::create, EXECUTOR);
+            }
+
+            return this.future;
+        }
+
+        /**
+         * Gets the component that has already finished initializing, without waiting.
+         *
+         * @return The component.
+         * @throws IllegalStateException If the component is not ready.
+         */
+        public synchronized T require() {
+            T component = this.peek();
+
+            if (component == null) {
+                throw new IllegalStateException(this.name + " is not ready");
+            }
+
+            return component;
+        }
+
+        /**
+         * Gets the component only if it has finished initializing, without waiting.
+         *
+         * @return The component, or null if it is not ready.
+         */
+        public synchronized T peek() {
+            return this.future != null && this.future.isDone() && !this.future.isCompletedExceptionally()
+                    ? this.future.join() : null;
+        }
+
+        /**
+         * Runs an action with the component on the main thread, only if its initialization has started.
+         *
+         * @param action The action to run once the component is ready.
+         */
+        public synchronized void ifStarted(Consumer<T> action) {
+            if (this.future != null) {
+                this.future.thenAcceptAsync(action, mainExecutor);
+            }
+        }
+
+        private T create() {
+            long begin = begin();
+            T component = this.supplier.get();
+            end(this.name, begin);
+
+            return component;
+        }
+    }
+
+    /**
+     * A traced startup phase, in milliseconds since the process started.
+     */
+    private static final class Phase {
+        /**
+         * The name of the phase.
+         */
+        final String name;
+
+        /**
+         * The name of the thread that ran the phase.
+         */
+        final String thread;
+
+        /**
+         * The start of the phase.
+         */
+        final long start;
+
+        /**
+         * The end of the phase.
+         */
+        final long end;
+
+        /**
+         * Default constructor.
+         *
+         * @param name The name of the phase.
+         * @param thread The name of the thread that ran the phase.
+         * @param start The start of the phase.
+         * @param end The end of the phase.
+         */
+        Phase(String name, String thread, long start, long end) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
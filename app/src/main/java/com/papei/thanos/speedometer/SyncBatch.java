@@ -0,0 +1,122 @@
+package com.papei.thanos.speedometer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes queued violations into a gzip-compressed JSON upload batch.
+ */
+public final class SyncBatch {
+    /**
+     * This class should not be instantiated.
+     */
+    private SyncBatch() {
+        //
+    }
+
+    /**
+     * Creates the idempotency key of a batch, the same for every retry of it.
+     *
+     * @param deviceId The installation ID of the device.
+     * @param entries The entries of the batch.
+     * @return The idempotency key.
+     */
+    public static String idempotencyKey(String deviceId, List<Entry> entries) {
+        return deviceId + "-" + entries.get(0).outboxId + "-" + entries.get(entries.size() - 1).outboxId;
+    }
+
+    /**
+     * Encodes a batch as gzip-compressed JSON. Every violation carries its local ID,
+     * so the backend can also drop duplicates across batches.
+     *
+     * @param deviceId The installation ID of the device.
+     * @param entries The entries of the batch.
+     * @return The compressed request body.
+     * @throws IOException If the batch cannot be compressed.
+     */
+    public static byte[] encode(String deviceId, List<Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            writer.write("{\"device\":\"");
+            writer.write(deviceId);
+            writer.write("\",\"violations\":[");
+
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+
+                if (i > 0) {
+                    writer.write(',');
+                }
+
+                writer.write(String.format(Locale.US,
+                        "{\"id\":%d,\"longitude\":%.6f,\"latitude\":%.6f,\"speed\":%.2f,\"timestamp\":%d}",
+                        entry.violationId, entry.longitude, entry.latitude, entry.speed, entry.timestamp));
+            }
+
+            writer.write("]}");
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A violation waiting in the outbox.
+     */
+    public static final class Entry {
+        /**
+         * The ID of the outbox row.
+         */
+        final long outboxId;
+
+        /**
+         * The ID of the violation.
+         */
+        final long violationId;
+
+        /**
+         * The longitude of the violation.
+         */
+        final double longitude;
+
+        /**
+         * The latitude of the violation.
+         */
+        final double latitude;
+
+        /**
+         * The recorded speed of the violation in m/s.
+         */
+        final float speed;
+
+        /**
+         * The timestamp of the violation in milliseconds.
+         */
+        final long timestamp;
+
+        /**
+         * Default constructor.
+         *
+         * @param outboxId The ID of the outbox row.
+         * @param violationId The ID of the violation.
+         * @param longitude The longitude of the violation.
+         * @param latitude The latitude of the violation.
+         * @param speed The recorded speed of the violation in m/s.
+         * @param timestamp The timestamp of the violation in milliseconds.
+         */
+        public Entry(long outboxId, long violationId, double longitude, double latitude, float speed, long timestamp) {
+            this.outboxId = outboxId;
+            this.violationId = violationId;
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.speed = speed;
+            this.timestamp = timestamp;
+        }
+    }
+}
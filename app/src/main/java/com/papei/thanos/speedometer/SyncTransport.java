@@ -0,0 +1,18 @@
+package com.papei.thanos.speedometer;
+
+import java.io.IOException;
+
+/**
+ * Sends upload batches to the fleet backend.
+ */
+public interface SyncTransport {
+    /**
+     * Sends one compressed batch.
+     *
+     * @param idempotencyKey The key that identifies the batch across retries.
+     * @param body The gzip-compressed JSON body.
+     * @return The HTTP status code of the response.
+     * @throws IOException If the batch could not be delivered.
+     */
+    int send(String idempotencyKey, byte[] body) throws IOException;
+}
@@ -0,0 +1,298 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads the violations queued in the outbox to the fleet backend in compressed batches.
+ * Uploads wait until a batch is full or a delay has passed, so the radio wakes up rarely,
+ * and failed uploads are retried with exponential backoff and the same idempotency key.
+ * Batches the backend rejects for good are dropped and counted, so they never block the outbox.
+ */
+public final class SyncUploader implements DatabaseHelper.ViolationListener {
+    /**
+     * The maximum number of violations per batch, a full batch is uploaded right away.
+     */
+    static final int BATCH_SIZE = 100;
+
+    /**
+     * The longest time a violation waits for its batch to fill up.
+     */
+    static final long BATCH_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The longest time between two retries.
+     */
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The uploader shared by the whole application.
+     */
+    private static SyncUploader instance;
+
+    /**
+     * The outbox that holds the queued violations.
+     */
+    private final Outbox outbox;
+
+    /**
+     * The transport that sends the batches.
+     */
+    private final SyncTransport transport;
+
+    /**
+     * The installation ID of the device.
+     */
+    private final String deviceId;
+
+    /**
+     * The thread that uploads the batches.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The delay before the first retry.
+     */
+    private final long minBackoffMillis;
+
+    /**
+     * The random source of the retry jitter.
+     */
+    private final Random random = new Random();
+
+    /**
+     * The number of violations queued since the last upload.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * The next scheduled upload, or null if none.
+     */
+    private ScheduledFuture<?> scheduled;
+
+    /**
+     * The current retry delay, or 0 if the last upload succeeded.
+     */
+    private long backoffMillis = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param outbox The outbox that holds the queued violations.
+     * @param transport The transport that sends the batches.
+     * @param deviceId The installation ID of the device.
+     * @param executor The thread that uploads the batches.
+     * @param minBackoffMillis The delay before the first retry.
+     */
+    SyncUploader(Outbox outbox, SyncTransport transport, String deviceId,
+                 ScheduledExecutorService executor, long minBackoffMillis) {
+        this.outbox = outbox;
+        this.transport = transport;
+        this.deviceId = deviceId;
+        this.executor = executor;
+        this.minBackoffMillis = minBackoffMillis;
+    }
+
+    /**
+     * Gets the uploader shared by the whole application and uploads anything left
+     * in the outbox from earlier runs.
+     *
+     * @param context The current context.
+     * @return The shared uploader, or null if no sync endpoint is configured.
+     */
+    public static synchronized SyncUploader getInstance(Context context) {
+        String endpoint = context.getString(R.string.sync_endpoint);
+
+        if (endpoint.isEmpty()) {
+            return null;
+        }
+
+        if (instance == null) {
+            URL url;
+
+            try {
+                url = new URL(endpoint);
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException("Invalid sync endpoint " + endpoint, e);
+            }
+
+            DatabaseHelper dbHelper = DatabaseHelper.getInstance(context);
+
+            instance = new SyncUploader(new Outbox() {
+                @Override
+                public List<SyncBatch.Entry> read(int limit) {
+                    return dbHelper.readOutbox(limit).join();
+                }
+
+                @Override
+                public void acknowledge(long outboxId) {
+                    dbHelper.acknowledgeOutbox(outboxId).join();
+                }
+            }, new HttpSyncTransport(url), getDeviceId(context),
+                    Executors.newSingleThreadScheduledExecutor(), TimeUnit.SECONDS.toMillis(30));
+
+            dbHelper.addViolationListener(instance);
+            instance.flush();
+        }
+
+        return instance;
+    }
+
+    @Override
+    public void onViolationAdded(DatabaseHelper.ViolationRecord record) {
+        if (this.queued.incrementAndGet() >= BATCH_SIZE) {
+            this.schedule(0);
+        } else {
+            this.schedule(BATCH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Uploads everything in the outbox as soon as possible, unless waiting for a retry.
+     */
+    public void flush() {
+        this.schedule(0);
+    }
+
+    /**
+     * Schedules an upload, unless one is already scheduled earlier or a retry is pending.
+     *
+     * @param delayMillis The delay before the upload.
+     */
+    private synchronized void schedule(long delayMillis) {
+        if (this.scheduled != null && !this.scheduled.isDone()) {
+            if (this.backoffMillis > 0 || this.scheduled.getDelay(TimeUnit.MILLISECONDS) <= delayMillis) {
+                return;
+            }
+
+            this.scheduled.cancel(false);
+        }
+
+        this.scheduled = this.executor.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Uploads batches until the outbox is empty or an upload fails.
+     */
+    private void drain() {
+        synchronized (this) {
+            this.scheduled = null;
+        }
+
+        PerformanceMetrics metrics = PerformanceMetrics.getInstance();
+
+        try {
+            while (true) {
+                List<SyncBatch.Entry> entries = this.outbox.read(BATCH_SIZE);
+
+                if (entries.isEmpty()) {
+                    break;
+                }
+
+                String key = SyncBatch.idempotencyKey(this.deviceId, entries);
+                byte[] body = SyncBatch.encode(this.deviceId, entries);
+                int status = this.transport.send(key, body);
+
+                if (isRejected(status)) {
+                    // Retrying the same batch would fail forever, so drop it and record it in the metrics dump.
+                    metrics.increment(PerformanceMetrics.SYNC_BATCHES_DROPPED);
+                } else if ((status < 200 || status >= 300) && status != 409) {
+                    // A conflict means the backend already has this batch from an earlier attempt.
+                    throw new IOException("Upload failed with status " + status);
+                } else {
+                    metrics.increment(PerformanceMetrics.SYNC_BATCHES_SENT);
+                }
+
+                this.outbox.acknowledge(entries.get(entries.size() - 1).outboxId);
+
+                synchronized (this) {
+                    this.backoffMillis = 0;
+                }
+
+                this.queued.addAndGet(-entries.size());
+
+                if (entries.size() < BATCH_SIZE) {
+                    break;
+                }
+            }
+
+            this.queued.set(0);
+        } catch (IOException | RuntimeException e) {
+            metrics.increment(PerformanceMetrics.SYNC_FAILURES);
+            this.retry();
+        }
+    }
+
+    /**
+     * Schedules the next attempt with a doubled delay and random jitter.
+     */
+    private synchronized void retry() {
+        this.backoffMillis = this.backoffMillis == 0
+                ? this.minBackoffMillis
+                : Math.min(this.backoffMillis * 2, MAX_BACKOFF_MILLIS);
+
+        // Spread the retries of many devices after a backend outage.
+        long delay = this.backoffMillis / 2 + (long) (this.random.nextDouble() * this.backoffMillis / 2);
+
+        if (this.scheduled != null) {
+            this.scheduled.cancel(false);
+        }
+
+        this.scheduled = this.executor.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks whether the backend rejected a batch for good. Client errors are permanent,
+     * except timeouts, conflicts and rate limits.
+     *
+     * @param status The HTTP status code of the response.
+     * @return True if the batch should not be sent again.
+     */
+    static boolean isRejected(int status) {
+        return status >= 400 && status < 500 && status != 408 && status != 409 && status != 429;
+    }
+
+    private static String getDeviceId(Context context) {
+        SharedPreferences preferences = context.getSharedPreferences("sync", Context.MODE_PRIVATE);
+        String deviceId = preferences.getString("device_id", null);
+
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString();
+            preferences.edit().putString("device_id", deviceId).apply();
+        }
+
+        return deviceId;
+    }
+
+    /**
+     * The storage of the violations waiting for upload.
+     */
+    interface Outbox {
+        /**
+         * Reads the oldest queued violations.
+         *
+         * @param limit The maximum number of violations.
+         * @return The queued violations in outbox order.
+         */
+        List<SyncBatch.Entry> read(int limit);
+
+        /**
+         * Removes uploaded violations from the outbox.
+         *
+         * @param outboxId The outbox ID of the last uploaded violation.
+         */
+        void acknowledge(long outboxId);
+    }
+}
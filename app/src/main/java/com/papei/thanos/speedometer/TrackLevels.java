@@ -0,0 +1,142 @@
+package com.papei.thanos.speedometer;
+
+import java.util.Arrays;
+
+/**
+ * The levels of detail of a recorded track, one per map zoom level. The vertices are ranked
+ * once in Web Mercator coordinates, and every level keeps the vertices that move the line
+ * by at least a pixel at its zoom. All levels are built up front, off the main thread, so
+ * switching the level on camera changes is a lookup.
+ */
+public final class TrackLevels {
+    /**
+     * The lowest zoom level with its own level of detail.
+     */
+    public static final int MIN_ZOOM = 2;
+
+    /**
+     * The highest zoom level with its own level of detail, deeper zooms reuse it.
+     */
+    public static final int MAX_ZOOM = 21;
+
+    /**
+     * The largest distance of a removed vertex from the drawn line, in screen pixels.
+     */
+    static final double TOLERANCE_PIXELS = 1;
+
+    /**
+     * The size of a map tile in pixels.
+     */
+    private static final int TILE_SIZE = 256;
+
+    /**
+     * The highest latitude of the Web Mercator projection.
+     */
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    /**
+     * The latitude of every vertex.
+     */
+    private final double[] latitudes;
+
+    /**
+     * The longitude of every vertex.
+     */
+    private final double[] longitudes;
+
+    /**
+     * The number of vertices.
+     */
+    private final int count;
+
+    /**
+     * The kept vertex indices of every zoom level.
+     */
+    private final int[][] levels = new int[MAX_ZOOM - MIN_ZOOM + 1][];
+
+    /**
+     * Default constructor, which ranks the vertices in a single pass and builds every level.
+     *
+     * @param latitudes The latitude of every vertex.
+     * @param longitudes The longitude of every vertex.
+     * @param count The number of vertices.
+     */
+    public TrackLevels(double[] latitudes, double[] longitudes, int count) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.count = count;
+
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            double latitude = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitudes[i]));
+            double sin = Math.sin(Math.toRadians(latitude));
+
+            xs[i] = (longitudes[i] + 180) / 360;
+            ys[i] = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        }
+
+        // The ranks are in world units, where the map is one unit wide.
+        double[] ranks = new double[count];
+        PolylineSimplifier.rank(xs, ys, count, ranks);
+
+        int[] indices = new int[count];
+
+        for (int zoom = MIN_ZOOM; zoom <= MAX_ZOOM; zoom++) {
+            double tolerance = TOLERANCE_PIXELS / ((double) TILE_SIZE * (1L << zoom));
+            int kept = PolylineSimplifier.select(ranks, count, tolerance, indices);
+
+            this.levels[zoom - MIN_ZOOM] = Arrays.copyOf(indices, kept);
+        }
+    }
+
+    /**
+     * Gets the number of vertices of the full track.
+     *
+     * @return The vertex count.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the zoom level whose level of detail is shown at a camera zoom.
+     *
+     * @param zoom The camera zoom.
+     * @return The zoom level.
+     */
+    public static int levelFor(float zoom) {
+        return Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, (int) Math.ceil(zoom)));
+    }
+
+    /**
+     * Gets the vertices kept at a zoom level.
+     *
+     * @param zoom The zoom level, between the lowest and highest levels.
+     * @return The kept vertex indices, in order. Must not be modified.
+     */
+    public int[] getLevel(int zoom) {
+        return this.levels[zoom - MIN_ZOOM];
+    }
+
+    /**
+     * Gets the latitude of a vertex.
+     *
+     * @param index The vertex index.
+     * @return The latitude.
+     */
+    public double getLatitude(int index) {
+        return this.latitudes[index];
+    }
+
+    /**
+     * Gets the longitude of a vertex.
+     *
+     * @param index The vertex index.
+     * @return The longitude.
+     */
+    public double getLongitude(int index) {
+        return this.longitudes[index];
+    }
+}
@@ -0,0 +1,76 @@
+package com.papei.thanos.speedometer;
+
+import android.provider.BaseColumns;
+
+/**
+ * A class that holds track point column names and schema statements, used in the database.
+ * Track points are the location fixes recorded during a trip, used to draw its route.
+ */
+final class TrackPointColumns implements BaseColumns {
+    /**
+     * The name of the table that holds all track points.
+     */
+    public static final String TABLE_NAME = "track_points";
+
+    /**
+     * The trip ID column name.
+     */
+    public static final String TRIP_ID = "trip_id";
+
+    /**
+     * The latitude column name.
+     */
+    public static final String LATITUDE = "latitude";
+
+    /**
+     * The longitude column name.
+     */
+    public static final String LONGITUDE = "longitude";
+
+    /**
+     * The timestamp column name.
+     */
+    public static final String TIMESTAMP = "timestamp";
+
+    /**
+     * The index used for the points of a trip, in time order.
+     */
+    public static final String INDEX_TRIP = "idx_track_points_trip";
+
+    /**
+     * The statement that creates the track points table.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
+            _ID + " INTEGER PRIMARY KEY, " +
+            TRIP_ID + " INTEGER NOT NULL, " +
+            LATITUDE + " DOUBLE NOT NULL, " +
+            LONGITUDE + " DOUBLE NOT NULL, " +
+            TIMESTAMP + " LONG NOT NULL)";
+
+    /**
+     * The statement that creates the index of the trip column.
+     */
+    public static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_TRIP + " ON " + TABLE_NAME + "(" + TRIP_ID + ", " + TIMESTAMP + ")";
+
+    /**
+     * The statement that inserts a track point.
+     */
+    public static final String INSERT = "INSERT INTO " + TABLE_NAME + "(" +
+            TRIP_ID + ", " + LATITUDE + ", " + LONGITUDE + ", " + TIMESTAMP + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * The query that reads the points of a trip in time order, up to the end of the trip.
+     */
+    public static final String SELECT_TRIP = "SELECT p." + LATITUDE + ", p." + LONGITUDE +
+            " FROM " + TABLE_NAME + " p JOIN " + TripColumns.TABLE_NAME + " t ON t." + TripColumns._ID + " = p." + TRIP_ID +
+            " WHERE p." + TRIP_ID + " = ? AND (t." + TripColumns.END_TIME + " IS NULL OR p." + TIMESTAMP +
+            " <= t." + TripColumns.END_TIME + ") ORDER BY p." + TIMESTAMP;
+
+    /**
+     * This class should not be instantiated.
+     */
+    private TrackPointColumns() {
+        //
+    }
+}
@@ -0,0 +1,82 @@
+package com.papei.thanos.speedometer;
+
+import java.util.function.Supplier;
+
+/**
+ * Collects the fixes of the trip in progress into primitive arrays and stores them in
+ * chunks, so the database sees one transaction per chunk instead of one per fix.
+ */
+public final class TrackRecorder {
+    /**
+     * The number of points stored per transaction, about half a minute of fixes.
+     */
+    static final int CHUNK_SIZE = 64;
+
+    /**
+     * The database helper that stores the chunks.
+     */
+    private final Supplier<DatabaseHelper> dbHelper;
+
+    /**
+     * The timestamp of every buffered point in milliseconds.
+     */
+    private long[] times = new long[CHUNK_SIZE];
+
+    /**
+     * The latitude of every buffered point.
+     */
+    private double[] latitudes = new double[CHUNK_SIZE];
+
+    /**
+     * The longitude of every buffered point.
+     */
+    private double[] longitudes = new double[CHUNK_SIZE];
+
+    /**
+     * The number of buffered points.
+     */
+    private int count = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param dbHelper The database helper that stores the chunks.
+     */
+    public TrackRecorder(Supplier<DatabaseHelper> dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Adds a point of the trip in progress.
+     *
+     * @param time The timestamp of the point in milliseconds.
+     * @param latitude The latitude of the point.
+     * @param longitude The longitude of the point.
+     */
+    public void add(long time, double latitude, double longitude) {
+        this.times[this.count] = time;
+        this.latitudes[this.count] = latitude;
+        this.longitudes[this.count] = longitude;
+
+        if (++this.count == CHUNK_SIZE) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Stores the buffered points, for example before the trip is finished.
+     */
+    public void flush() {
+        if (this.count == 0) {
+            return;
+        }
+
+        // Hand the arrays over to the write thread and continue with new ones.
+        this.dbHelper.get().addTrackPoints(this.times, this.latitudes, this.longitudes, this.count);
+
+        this.times = new long[CHUNK_SIZE];
+        this.latitudes = new double[CHUNK_SIZE];
+        this.longitudes = new double[CHUNK_SIZE];
+        this.count = 0;
+    }
+}
@@ -0,0 +1,113 @@
+package com.papei.thanos.speedometer;
+
+import android.provider.BaseColumns;
+
+/**
+ * A class that holds trip column names and schema statements, used in the database.
+ * A trip row is inserted when the trip starts, so violations can point to it right away,
+ * and its summary is filled in when the trip ends.
+ */
+final class TripColumns implements BaseColumns {
+    /**
+     * The name of the table that holds all trips.
+     */
+    public static final String TABLE_NAME = "trips";
+
+    /**
+     * The start time column name.
+     */
+    public static final String START_TIME = "start_time";
+
+    /**
+     * The end time column name, which is null while the trip is in progress.
+     */
+    public static final String END_TIME = "end_time";
+
+    /**
+     * The distance column name, in meters.
+     */
+    public static final String DISTANCE = "distance";
+
+    /**
+     * The duration column name, in milliseconds.
+     */
+    public static final String DURATION = "duration";
+
+    /**
+     * The violation count column name.
+     */
+    public static final String VIOLATION_COUNT = "violation_count";
+
+    /**
+     * The statement that creates the trips table.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS " + TABLE_NAME + "(" +
+            _ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            START_TIME + " LONG NOT NULL, " +
+            END_TIME + " LONG, " +
+            DISTANCE + " DOUBLE NOT NULL DEFAULT 0, " +
+            DURATION + " LONG NOT NULL DEFAULT 0, " +
+            VIOLATION_COUNT + " INTEGER NOT NULL DEFAULT 0)";
+
+    /**
+     * The statement that inserts a new trip.
+     */
+    public static final String INSERT = "INSERT INTO " + TABLE_NAME + "(" + START_TIME + ") VALUES (?)";
+
+    /**
+     * The statement that stores the summary of a finished trip, counting its violations on their index.
+     */
+    public static final String FINISH = "UPDATE " + TABLE_NAME + " SET " +
+            END_TIME + " = ?, " +
+            DISTANCE + " = ?, " +
+            DURATION + " = ? - " + START_TIME + ", " +
+            VIOLATION_COUNT + " = (SELECT COUNT(*) FROM " + ViolationRecordColumns.TABLE_NAME +
+            " WHERE " + ViolationRecordColumns.TRIP_ID + " = " + TABLE_NAME + "." + _ID + ")" +
+            " WHERE " + _ID + " = ?";
+
+    /**
+     * The time of the last stored track point or violation of a trip, or its start time if it has none.
+     */
+    private static final String LAST_ACTIVITY = "MAX(" +
+            "IFNULL((SELECT MAX(" + TrackPointColumns.TIMESTAMP + ") FROM " + TrackPointColumns.TABLE_NAME +
+            " WHERE " + TrackPointColumns.TRIP_ID + " = " + TABLE_NAME + "." + _ID + "), " + START_TIME + "), " +
+            "IFNULL((SELECT MAX(" + ViolationRecordColumns.TIMESTAMP + ") * 1000 FROM " + ViolationRecordColumns.TABLE_NAME +
+            " WHERE " + ViolationRecordColumns.TRIP_ID + " = " + TABLE_NAME + "." + _ID + "), " + START_TIME + "))";
+
+    /**
+     * The query that reads the IDs of trips left open by a previous process.
+     */
+    public static final String SELECT_ABANDONED = "SELECT " + _ID + " FROM " + TABLE_NAME +
+            " WHERE " + END_TIME + " IS NULL";
+
+    /**
+     * The statement that closes a trip left open by a previous process at its last stored activity,
+     * with the distance of its stored track.
+     */
+    public static final String CLOSE_ABANDONED = "UPDATE " + TABLE_NAME + " SET " +
+            END_TIME + " = " + LAST_ACTIVITY + ", " +
+            DISTANCE + " = ?, " +
+            DURATION + " = " + LAST_ACTIVITY + " - " + START_TIME + ", " +
+            VIOLATION_COUNT + " = (SELECT COUNT(*) FROM " + ViolationRecordColumns.TABLE_NAME +
+            " WHERE " + ViolationRecordColumns.TRIP_ID + " = " + TABLE_NAME + "." + _ID + ")" +
+            " WHERE " + _ID + " = ?";
+
+    /**
+     * The query that reads all finished trips, newest first.
+     */
+    public static final String SELECT_FINISHED = "SELECT * FROM " + TABLE_NAME +
+            " WHERE " + END_TIME + " IS NOT NULL ORDER BY " + _ID + " DESC";
+
+    /**
+     * The query that reads the ID of the newest finished trip.
+     */
+    public static final String SELECT_LATEST_ID = "SELECT " + _ID + " FROM " + TABLE_NAME +
+            " WHERE " + END_TIME + " IS NOT NULL ORDER BY " + _ID + " DESC LIMIT 1";
+
+    /**
+     * This class should not be instantiated.
+     */
+    private TripColumns() {
+        //
+    }
+}
@@ -0,0 +1,193 @@
+package com.papei.thanos.speedometer;
+
+/**
+ * Splits the stream of location fixes into trips as the fixes arrive. A trip starts when
+ * the device leaves the place where it was resting, and ends once the device has stayed
+ * within a small radius for long enough, or once no fix arrives for that long, for example
+ * while the speedometer is paused. Only the current trip and the candidate stop are kept, so
+ * every fix is handled in constant time and memory.
+ */
+public final class TripSegmenter {
+    /**
+     * The radius around a candidate stop that the device must stay within, in meters.
+     */
+    static final double STOP_RADIUS_METERS = 50;
+
+    /**
+     * The time the device must stay within the stop radius to end a trip.
+     */
+    static final long DWELL_MILLIS = 3 * 60 * 1000;
+
+    /**
+     * The listener notified when trips start and end.
+     */
+    private final Listener listener;
+
+    /**
+     * Whether a trip is in progress.
+     */
+    private boolean inTrip = false;
+
+    /**
+     * Whether a candidate stop has been set.
+     */
+    private boolean hasAnchor = false;
+
+    /**
+     * The latitude of the candidate stop.
+     */
+    private double anchorLatitude;
+
+    /**
+     * The longitude of the candidate stop.
+     */
+    private double anchorLongitude;
+
+    /**
+     * The time the device arrived at the candidate stop, in milliseconds.
+     */
+    private long anchorTime;
+
+    /**
+     * The trip distance when the device arrived at the candidate stop, in meters.
+     */
+    private double anchorDistance;
+
+    /**
+     * The latitude of the previous fix.
+     */
+    private double previousLatitude;
+
+    /**
+     * The longitude of the previous fix.
+     */
+    private double previousLongitude;
+
+    /**
+     * The time of the previous fix in milliseconds.
+     */
+    private long previousTime;
+
+    /**
+     * The start time of the current trip in milliseconds.
+     */
+    private long tripStart;
+
+    /**
+     * The distance covered in the current trip, in meters.
+     */
+    private double tripDistance;
+
+    /**
+     * Default constructor.
+     *
+     * @param listener The listener notified when trips start and end.
+     */
+    public TripSegmenter(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the next location fix.
+     *
+     * @param time The time of the fix in milliseconds.
+     * @param latitude The latitude of the fix.
+     * @param longitude The longitude of the fix.
+     */
+    public void add(long time, double latitude, double longitude) {
+        if (this.hasAnchor && time - this.previousTime >= DWELL_MILLIS) {
+            // Nothing is known about the gap, so the trip ended at the fix before it.
+            this.finish();
+        }
+
+        if (!this.hasAnchor) {
+            this.moveAnchor(time, latitude, longitude);
+            this.setPrevious(time, latitude, longitude);
+            return;
+        }
+
+        double fromAnchor = Geodesy.haversine(this.anchorLatitude, this.anchorLongitude, latitude, longitude);
+
+        if (!this.inTrip) {
+            if (fromAnchor > STOP_RADIUS_METERS) {
+                // The device left its resting place, so the trip started when it was last there.
+                this.inTrip = true;
+                this.tripStart = this.previousTime;
+                this.tripDistance = Geodesy.haversine(this.previousLatitude, this.previousLongitude, latitude, longitude);
+                this.moveAnchor(time, latitude, longitude);
+                this.listener.onTripStarted(this.tripStart);
+            }
+
+            this.setPrevious(time, latitude, longitude);
+            return;
+        }
+
+        this.tripDistance += Geodesy.haversine(this.previousLatitude, this.previousLongitude, latitude, longitude);
+        this.setPrevious(time, latitude, longitude);
+
+        if (fromAnchor > STOP_RADIUS_METERS) {
+            // Still moving, this fix is the new candidate stop.
+            this.moveAnchor(time, latitude, longitude);
+        } else if (time - this.anchorTime >= DWELL_MILLIS) {
+            // The device has rested long enough, so the trip ended when it arrived.
+            this.inTrip = false;
+            this.listener.onTripEnded(this.tripStart, this.anchorTime, this.anchorDistance);
+        }
+    }
+
+    /**
+     * Ends the current trip at the last fix, for example when location updates stop.
+     */
+    public void finish() {
+        if (this.inTrip) {
+            this.inTrip = false;
+            this.listener.onTripEnded(this.tripStart, this.previousTime, this.tripDistance);
+        }
+
+        this.hasAnchor = false;
+    }
+
+    /**
+     * Checks whether a trip is in progress.
+     *
+     * @return Whether a trip is in progress.
+     */
+    public boolean isInTrip() {
+        return this.inTrip;
+    }
+
+    private void moveAnchor(long time, double latitude, double longitude) {
+        this.hasAnchor = true;
+        this.anchorLatitude = latitude;
+        this.anchorLongitude = longitude;
+        this.anchorTime = time;
+        this.anchorDistance = this.tripDistance;
+    }
+
+    private void setPrevious(long time, double latitude, double longitude) {
+        this.previousLatitude = latitude;
+        this.previousLongitude = longitude;
+        this.previousTime = time;
+    }
+
+    /**
+     * A listener notified when trips start and end.
+     */
+    public interface Listener {
+        /**
+         * Called when a new trip starts.
+         *
+         * @param startTime The start time of the trip in milliseconds.
+         */
+        void onTripStarted(long startTime);
+
+        /**
+         * Called when the current trip ends.
+         *
+         * @param startTime The start time of the trip in milliseconds.
+         * @param endTime The end time of the trip in milliseconds.
+         * @param distance The distance covered in the trip, in meters.
+         */
+        void onTripEnded(long startTime, long endTime, double distance);
+    }
+}
@@ -36,6 +36,12 @@ public final class Utilities {
             case R.id.map:
                 context.startActivity(new Intent(context, MapActivity.class));
                 return true;
+            case R.id.hotspots:
+                context.startActivity(new Intent(context, HotspotsActivity.class));
+                return true;
+            case R.id.reports:
+                context.startActivity(new Intent(context, ReportsActivity.class));
+                return true;
             case R.id.preferences:
                 context.startActivity(new Intent(context, PreferencesActivity.class));
                 return true;
@@ -45,27 +51,28 @@ public final class Utilities {
     }
 
     /**
-     * Receives text from speech and executes the appropriate action.
+     * Receives a voice command and starts the appropriate activity.
      *
      * @param context The current context.
-     * @param spokenText The spoken text.
-     * @return Whether an action was taken.
+     * @param command The recognized command.
+     * @return Whether a new activity was started.
      */
-    public static boolean handleTextFromSpeech(Context context, String spokenText) {
-        if (spokenText.contains("home")) {
-            context.startActivity(new Intent(context, MainActivity.class));
-            return true;
-        } else if (spokenText.contains("records")) {
-            context.startActivity(new Intent(context, RecordsActivity.class));
-            return true;
-        } else if (spokenText.contains("map")) {
-            context.startActivity(new Intent(context, MapActivity.class));
-            return true;
-        } else if (spokenText.contains("preferences")) {
-            context.startActivity(new Intent(context, PreferencesActivity.class));
-            return true;
-        } else {
-            return false;
+    public static boolean handleCommand(Context context, CommandMatcher.Command command) {
+        switch (command) {
+            case HOME:
+                context.startActivity(new Intent(context, MainActivity.class));
+                return true;
+            case RECORDS:
+                context.startActivity(new Intent(context, RecordsActivity.class));
+                return true;
+            case MAP:
+                context.startActivity(new Intent(context, MapActivity.class));
+                return true;
+            case PREFERENCES:
+                context.startActivity(new Intent(context, PreferencesActivity.class));
+                return true;
+            default:
+                return false;
         }
     }
 
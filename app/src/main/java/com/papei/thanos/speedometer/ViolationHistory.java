@@ -0,0 +1,112 @@
+package com.papei.thanos.speedometer;
+
+import java.util.Arrays;
+
+/**
+ * The speed and time of every stored violation in primitive arrays, in their stored fixed
+ * point form, so that a million rows take 12 MB and are scanned without boxing.
+ */
+public final class ViolationHistory {
+    /**
+     * The speed of every violation, in hundredths of km/h.
+     */
+    private int[] speeds;
+
+    /**
+     * The time of every violation, in seconds since the epoch.
+     */
+    private long[] times;
+
+    /**
+     * The number of violations.
+     */
+    private int count = 0;
+
+    /**
+     * The earliest violation time, in seconds since the epoch.
+     */
+    private long minTime = Long.MAX_VALUE;
+
+    /**
+     * The latest violation time, in seconds since the epoch.
+     */
+    private long maxTime = Long.MIN_VALUE;
+
+    /**
+     * Default constructor.
+     *
+     * @param capacity The initial violation capacity.
+     */
+    public ViolationHistory(int capacity) {
+        capacity = Math.max(16, capacity);
+
+        this.speeds = new int[capacity];
+        this.times = new long[capacity];
+    }
+
+    /**
+     * Adds a violation.
+     *
+     * @param speed The speed in hundredths of km/h.
+     * @param time The time in seconds since the epoch.
+     */
+    public void add(int speed, long time) {
+        if (this.count == this.speeds.length) {
+            this.speeds = Arrays.copyOf(this.speeds, this.count * 2);
+            this.times = Arrays.copyOf(this.times, this.count * 2);
+        }
+
+        this.speeds[this.count] = speed;
+        this.times[this.count] = time;
+        this.count++;
+        this.minTime = Math.min(this.minTime, time);
+        this.maxTime = Math.max(this.maxTime, time);
+    }
+
+    /**
+     * Gets the number of violations.
+     *
+     * @return The violation count.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the speed of a violation.
+     *
+     * @param index The violation index.
+     * @return The speed in hundredths of km/h.
+     */
+    public int getSpeed(int index) {
+        return this.speeds[index];
+    }
+
+    /**
+     * Gets the time of a violation.
+     *
+     * @param index The violation index.
+     * @return The time in seconds since the epoch.
+     */
+    public long getTime(int index) {
+        return this.times[index];
+    }
+
+    /**
+     * Gets the earliest violation time.
+     *
+     * @return The time in seconds since the epoch, undefined if there are no violations.
+     */
+    public long getMinTime() {
+        return this.minTime;
+    }
+
+    /**
+     * Gets the latest violation time.
+     *
+     * @return The time in seconds since the epoch, undefined if there are no violations.
+     */
+    public long getMaxTime() {
+        return this.maxTime;
+    }
+}
@@ -0,0 +1,96 @@
+package com.papei.thanos.speedometer;
+
+import java.util.Arrays;
+
+/**
+ * The position of every stored violation in primitive arrays, read without the other
+ * columns or the query cache, for building the heatmap.
+ */
+public final class ViolationPositions {
+    /**
+     * The latitude of every violation.
+     */
+    private double[] latitudes;
+
+    /**
+     * The longitude of every violation.
+     */
+    private double[] longitudes;
+
+    /**
+     * The number of violations.
+     */
+    private int count = 0;
+
+    /**
+     * The highest violation ID.
+     */
+    private long highestId = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param capacity The initial violation capacity.
+     */
+    public ViolationPositions(int capacity) {
+        capacity = Math.max(16, capacity);
+
+        this.latitudes = new double[capacity];
+        this.longitudes = new double[capacity];
+    }
+
+    /**
+     * Adds a violation.
+     *
+     * @param id The violation ID.
+     * @param latitude The latitude of the violation.
+     * @param longitude The longitude of the violation.
+     */
+    public void add(long id, double latitude, double longitude) {
+        if (this.count == this.latitudes.length) {
+            this.latitudes = Arrays.copyOf(this.latitudes, this.count * 2);
+            this.longitudes = Arrays.copyOf(this.longitudes, this.count * 2);
+        }
+
+        this.latitudes[this.count] = latitude;
+        this.longitudes[this.count] = longitude;
+        this.count++;
+        this.highestId = Math.max(this.highestId, id);
+    }
+
+    /**
+     * Gets the number of violations.
+     *
+     * @return The violation count.
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Gets the highest violation ID.
+     *
+     * @return The highest ID, or 0 if there are no violations.
+     */
+    public long getHighestId() {
+        return this.highestId;
+    }
+
+    /**
+     * Gets the latitudes, of which only the first {@link #getCount()} are set.
+     *
+     * @return The latitude array.
+     */
+    public double[] getLatitudes() {
+        return this.latitudes;
+    }
+
+    /**
+     * Gets the longitudes, of which only the first {@link #getCount()} are set.
+     *
+     * @return The longitude array.
+     */
+    public double[] getLongitudes() {
+        return this.longitudes;
+    }
+}
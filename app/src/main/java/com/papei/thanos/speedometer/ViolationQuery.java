@@ -0,0 +1,373 @@
+package com.papei.thanos.speedometer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable violation query that combines filters and an order into parameterized SQL,
+ * so that filtering and sorting run in the database on its indices.
+ */
+public final class ViolationQuery {
+    /**
+     * The columns a query can be ordered by.
+     */
+    public enum Order {
+        /**
+         * Orders by the time the violation was recorded.
+         */
+        TIME(ViolationRecordColumns.TIMESTAMP),
+
+        /**
+         * Orders by the recorded speed.
+         */
+        SPEED(ViolationRecordColumns.SPEED),
+
+        /**
+         * Orders by the violation ID.
+         */
+        ID(ViolationRecordColumns._ID);
+
+        /**
+         * The column name used in SQL.
+         */
+        private final String column;
+
+        /**
+         * Default constructor.
+         *
+         * @param column The column name used in SQL.
+         */
+        Order(String column) {
+            this.column = column;
+        }
+    }
+
+    /**
+     * The lowest speed, inclusive, or NaN if unbounded.
+     */
+    private final double minSpeed;
+
+    /**
+     * The highest speed, inclusive, or NaN if unbounded.
+     */
+    private final double maxSpeed;
+
+    /**
+     * The earliest timestamp, inclusive, or Long.MIN_VALUE if unbounded.
+     */
+    private final long fromTime;
+
+    /**
+     * The latest timestamp, exclusive, or Long.MAX_VALUE if unbounded.
+     */
+    private final long toTime;
+
+    /**
+     * The bounding box as south, west, north and east edges, or null if unbounded.
+     */
+    private final double[] box;
+
+    /**
+     * The column to order by.
+     */
+    private final Order order;
+
+    /**
+     * Whether the order is descending.
+     */
+    private final boolean descending;
+
+    /**
+     * The maximum number of rows, or 0 if unlimited.
+     */
+    private final int limit;
+
+    /**
+     * The generated SQL.
+     */
+    private final String sql;
+
+    /**
+     * The generated SQL arguments.
+     */
+    private final String[] args;
+
+    /**
+     * Default constructor.
+     *
+     * @param builder The builder that holds the query settings.
+     */
+    private ViolationQuery(Builder builder) {
+        this.minSpeed = builder.minSpeed;
+        this.maxSpeed = builder.maxSpeed;
+        this.fromTime = builder.fromTime;
+        this.toTime = builder.toTime;
+        this.box = builder.box;
+        this.order = builder.order;
+        this.descending = builder.descending;
+        this.limit = builder.limit;
+
+        List<String> conditions = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+
+        // The bounds are converted to the fixed point columns, rounded inward so that the
+        // database returns exactly the stored records that match in record units.
+        if (!Double.isNaN(this.minSpeed)) {
+            conditions.add(ViolationRecordColumns.SPEED + " >= ?");
+            args.add(Long.toString((long) Math.ceil(this.minSpeed * 360)));
+        }
+
+        if (!Double.isNaN(this.maxSpeed)) {
+            conditions.add(ViolationRecordColumns.SPEED + " <= ?");
+            args.add(Long.toString((long) Math.floor(this.maxSpeed * 360)));
+        }
+
+        if (this.fromTime != Long.MIN_VALUE) {
+            conditions.add(ViolationRecordColumns.TIMESTAMP + " >= ?");
+            args.add(Long.toString(-Math.floorDiv(-this.fromTime, 1000)));
+        }
+
+        if (this.toTime != Long.MAX_VALUE) {
+            conditions.add(ViolationRecordColumns.TIMESTAMP + " < ?");
+            args.add(Long.toString(-Math.floorDiv(-this.toTime, 1000)));
+        }
+
+        if (this.box != null) {
+            conditions.add(ViolationRecordColumns.LATITUDE + " BETWEEN ? AND ?");
+            conditions.add(ViolationRecordColumns.LONGITUDE + " BETWEEN ? AND ?");
+            args.add(Long.toString((long) Math.ceil(this.box[0] * 1e7)));
+            args.add(Long.toString((long) Math.floor(this.box[2] * 1e7)));
+            args.add(Long.toString((long) Math.ceil(this.box[1] * 1e7)));
+            args.add(Long.toString((long) Math.floor(this.box[3] * 1e7)));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(ViolationRecordColumns.TABLE_NAME);
+
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        String direction = this.descending ? " DESC" : " ASC";
+        sql.append(" ORDER BY ").append(this.order.column).append(direction);
+
+        if (this.order != Order.ID) {
+            // Break ties by ID, so the order is stable and matches in-memory sorting.
+            sql.append(", ").append(ViolationRecordColumns._ID).append(direction);
+        }
+
+        if (this.limit > 0) {
+            sql.append(" LIMIT ").append(this.limit);
+        }
+
+        this.sql = sql.toString();
+        this.args = args.toArray(new String[0]);
+    }
+
+    /**
+     * Gets the generated SQL.
+     *
+     * @return The parameterized SQL query.
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    /**
+     * Gets the generated SQL arguments.
+     *
+     * @return A copy of the SQL arguments, in placeholder order.
+     */
+    public String[] getArgs() {
+        return this.args.clone();
+    }
+
+    /**
+     * Gets a key that identifies the query shape and its parameters.
+     *
+     * @return The query key.
+     */
+    public String getKey() {
+        return this.sql + " " + String.join(",", this.args);
+    }
+
+    /**
+     * Gets the column to order by.
+     *
+     * @return The order column.
+     */
+    public Order getOrder() {
+        return this.order;
+    }
+
+    /**
+     * Gets whether the order is descending.
+     *
+     * @return Whether the order is descending.
+     */
+    public boolean isDescending() {
+        return this.descending;
+    }
+
+    /**
+     * Gets the maximum number of rows.
+     *
+     * @return The row limit, or 0 if unlimited.
+     */
+    public int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Checks whether a violation passes the filters of this query.
+     *
+     * @param longitude The longitude of the violation.
+     * @param latitude The latitude of the violation.
+     * @param speed The recorded speed of the violation.
+     * @param timestamp The recorded timestamp of the violation.
+     * @return Whether the violation belongs to the query result.
+     */
+    public boolean matches(double longitude, double latitude, double speed, long timestamp) {
+        if (!Double.isNaN(this.minSpeed) && speed < this.minSpeed) {
+            return false;
+        }
+
+        if (!Double.isNaN(this.maxSpeed) && speed > this.maxSpeed) {
+            return false;
+        }
+
+        if (timestamp < this.fromTime || timestamp >= this.toTime) {
+            return false;
+        }
+
+        return this.box == null || (latitude >= this.box[0] && latitude <= this.box[2]
+                && longitude >= this.box[1] && longitude <= this.box[3]);
+    }
+
+    /**
+     * A builder for violation queries. Queries are ordered from the newest violation by default.
+     */
+    public static final class Builder {
+        /**
+         * The lowest speed, inclusive.
+         */
+        private double minSpeed = Double.NaN;
+
+        /**
+         * The highest speed, inclusive.
+         */
+        private double maxSpeed = Double.NaN;
+
+        /**
+         * The earliest timestamp, inclusive.
+         */
+        private long fromTime = Long.MIN_VALUE;
+
+        /**
+         * The latest timestamp, exclusive.
+         */
+        private long toTime = Long.MAX_VALUE;
+
+        /**
+         * The bounding box as south, west, north and east edges.
+         */
+        private double[] box;
+
+        /**
+         * The column to order by.
+         */
+        private Order order = Order.TIME;
+
+        /**
+         * Whether the order is descending.
+         */
+        private boolean descending = true;
+
+        /**
+         * The maximum number of rows.
+         */
+        private int limit = 0;
+
+        /**
+         * Keeps only violations with a speed in a range, in the units of the recorded speed.
+         *
+         * @param min The lowest speed, inclusive, or NaN if unbounded.
+         * @param max The highest speed, inclusive, or NaN if unbounded.
+         * @return This builder.
+         */
+        public Builder speedBetween(double min, double max) {
+            this.minSpeed = min;
+            this.maxSpeed = max;
+            return this;
+        }
+
+        /**
+         * Keeps only violations recorded in a time range.
+         *
+         * @param from The earliest timestamp in milliseconds, inclusive.
+         * @param to The latest timestamp in milliseconds, exclusive.
+         * @return This builder.
+         */
+        public Builder timeBetween(long from, long to) {
+            this.fromTime = from;
+            this.toTime = to;
+            return this;
+        }
+
+        /**
+         * Keeps only violations recorded at or after a point in time.
+         *
+         * @param from The earliest timestamp in milliseconds, inclusive.
+         * @return This builder.
+         */
+        public Builder since(long from) {
+            return this.timeBetween(from, Long.MAX_VALUE);
+        }
+
+        /**
+         * Keeps only violations inside a bounding box.
+         *
+         * @param south The southern latitude edge.
+         * @param west The western longitude edge.
+         * @param north The northern latitude edge.
+         * @param east The eastern longitude edge.
+         * @return This builder.
+         */
+        public Builder within(double south, double west, double north, double east) {
+            this.box = new double[]{south, west, north, east};
+            return this;
+        }
+
+        /**
+         * Sets the order of the result.
+         *
+         * @param order The column to order by.
+         * @param descending Whether the order is descending.
+         * @return This builder.
+         */
+        public Builder orderBy(Order order, boolean descending) {
+            this.order = order;
+            this.descending = descending;
+            return this;
+        }
+
+        /**
+         * Limits the number of rows of the result.
+         *
+         * @param limit The maximum number of rows, or 0 if unlimited.
+         * @return This builder.
+         */
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Creates the query.
+         *
+         * @return The immutable violation query.
+         */
+        public ViolationQuery build() {
+            return new ViolationQuery(this);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.papei.thanos.speedometer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory LRU cache of violation query results, bounded by their estimated size.
+ * Cached results are patched in place when new violations are inserted.
+ */
+final class ViolationQueryCache {
+    /**
+     * The estimated size of a cached violation record in bytes.
+     */
+    private static final int RECORD_BYTES = 64;
+
+    /**
+     * The maximum estimated size of all cached results in bytes.
+     */
+    private final long maxBytes;
+
+    /**
+     * The cached results in access order, keyed by query shape and parameters.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of queries served from the cache.
+     */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * The number of queries that had to run on the database.
+     */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * The estimated size of all cached results in bytes.
+     */
+    private long size = 0;
+
+    /**
+     * Incremented on every insert, so results read before an insert are not cached after it.
+     */
+    private long version = 0;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxBytes The maximum estimated size of all cached results in bytes.
+     */
+    ViolationQueryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a copy of a cached result. The copy takes time with large results, so
+     * this is called on the read thread.
+     *
+     * @param key The query key.
+     * @return A copy of the cached records, or null if the query is not cached.
+     */
+    synchronized List<DatabaseHelper.ViolationRecord> get(String key) {
+        Entry entry = this.entries.get(key);
+
+        if (entry == null) {
+            this.missCount.incrementAndGet();
+            return null;
+        }
+
+        this.hitCount.incrementAndGet();
+
+        // Callers own the returned list, for example as the backing list of an adapter.
+        return new ArrayList<>(entry.records);
+    }
+
+    /**
+     * Gets the version that must be passed to put, read before the query runs.
+     *
+     * @return The current cache version.
+     */
+    synchronized long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Caches a query result, unless a violation was inserted while the query ran.
+     *
+     * @param key The query key.
+     * @param version The cache version read before the query ran.
+     * @param records The records returned by the query.
+     * @param filter Whether a new violation belongs to the result.
+     * @param order The order of the records in the result.
+     * @param limit The maximum number of records of the result, or 0 if unlimited.
+     */
+    synchronized void put(String key, long version, List<DatabaseHelper.ViolationRecord> records,
+                          Predicate<DatabaseHelper.ViolationRecord> filter,
+                          Comparator<DatabaseHelper.ViolationRecord> order,
+                          int limit) {
+        if (version != this.version) {
+            return;
+        }
+
+        Entry previous = this.entries.remove(key);
+
+        if (previous != null) {
+            this.size -= previous.bytes();
+        }
+
+        Entry entry = new Entry(new ArrayList<>(records), filter, order, limit);
+        this.entries.put(key, entry);
+        this.size += entry.bytes();
+
+        this.trim();
+    }
+
+    /**
+     * Adds a newly inserted violation to every cached result it belongs to.
+     *
+     * @param record The inserted violation.
+     */
+    synchronized void onInsert(DatabaseHelper.ViolationRecord record) {
+        this.version++;
+
+        for (Entry entry : this.entries.values()) {
+            if (entry.filter.test(record)) {
+                int index = Collections.binarySearch(entry.records, record, entry.order);
+
+                // Every order ends with the ID, so a match is this record, already read by a
+                // query that ran after the insert committed and was cached before this call.
+                if (index >= 0) {
+                    continue;
+                }
+
+                entry.records.add(-index - 1, record);
+                this.size += RECORD_BYTES;
+
+                if (entry.limit > 0 && entry.records.size() > entry.limit) {
+                    // The last record no longer fits in a limited result.
+                    entry.records.remove(entry.records.size() - 1);
+                    this.size -= RECORD_BYTES;
+                }
+            }
+        }
+
+        this.trim();
+    }
+
+    /**
+     * Removes the records of a cached result that no longer belong to it, for example
+     * those that have fallen out of a time window since the query ran.
+     *
+     * @param key The query key.
+     * @param stale Whether a cached record no longer belongs to the result.
+     */
+    synchronized void removeIf(String key, Predicate<DatabaseHelper.ViolationRecord> stale) {
+        Entry entry = this.entries.get(key);
+
+        if (entry == null) {
+            return;
+        }
+
+        long bytes = entry.bytes();
+        entry.records.removeIf(stale);
+        this.size -= bytes - entry.bytes();
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    synchronized void invalidateAll() {
+        this.version++;
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Gets the number of queries served from the cache.
+     *
+     * @return The cache hit count.
+     */
+    long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Gets the number of queries that had to run on the database.
+     *
+     * @return The cache miss count.
+     */
+    long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Evicts the least recently used results until the cache fits its size limit.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+
+        while (this.size > this.maxBytes && iterator.hasNext()) {
+            this.size -= iterator.next().getValue().bytes();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A cached query result.
+     */
+    private static final class Entry {
+        /**
+         * The cached records, in query order.
+         */
+        final List<DatabaseHelper.ViolationRecord> records;
+
+        /**
+         * Whether a new violation belongs to the result.
+         */
+        final Predicate<DatabaseHelper.ViolationRecord> filter;
+
+        /**
+         * The order of the records in the result.
+         */
+        final Comparator<DatabaseHelper.ViolationRecord> order;
+
+        /**
+         * The maximum number of records of the result, or 0 if unlimited.
+         */
+        final int limit;
+
+        /**
+         * Default constructor.
+         *
+         * @param records The cached records, in query order.
+         * @param filter Whether a new violation belongs to the result.
+         * @param order The order of the records in the result.
+         * @param limit The maximum number of records of the result, or 0 if unlimited.
+         */
+        Entry(List<DatabaseHelper.ViolationRecord> records,
+              Predicate<DatabaseHelper.ViolationRecord> filter,
+              Comparator<DatabaseHelper.ViolationRecord> order,
+              int limit) {
+            this.records = records;
+            this.filter = filter;
+            this.order = order;
+            this.limit = limit;
+        }
+
+        /**
+         * Estimates the size of the cached result.
+         *
+         * @return The estimated size in bytes.
+         */
+        long bytes() {
+            return (long) this.records.size() * RECORD_BYTES;
+        }
+    }
+}
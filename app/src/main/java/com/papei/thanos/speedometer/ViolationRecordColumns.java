@@ -0,0 +1,193 @@
+package com.papei.thanos.speedometer;
+
+import android.provider.BaseColumns;
+
+/**
+ * A class that holds violation column names and schema statements, used in the database.
+ * Violations are stored in fixed point integers, which SQLite packs into one to four bytes
+ * each: coordinates in degrees times 10^7, speeds in hundredths of km/h and times in seconds.
+ * The encode and decode methods convert between the stored and the record values.
+ */
+final class ViolationRecordColumns implements BaseColumns {
+    /**
+     * The name of the table that holds all violations.
+     */
+    public static final String TABLE_NAME = "violations";
+
+    /**
+     * The longitude column name, in degrees times 10^7.
+     */
+    public static final String LONGITUDE = "longitude_e7";
+
+    /**
+     * The latitude column name, in degrees times 10^7.
+     */
+    public static final String LATITUDE = "latitude_e7";
+
+    /**
+     * The speed column name, in hundredths of km/h.
+     */
+    public static final String SPEED = "speed_centi_kmh";
+
+    /**
+     * The timestamp column name, in seconds.
+     */
+    public static final String TIMESTAMP = "time_s";
+
+    /**
+     * The trip ID column name, which is null for violations outside of a trip.
+     */
+    public static final String TRIP_ID = "trip_id";
+
+    /**
+     * The index used for time ranges and time ordering.
+     */
+    public static final String INDEX_TIMESTAMP = "idx_violations_timestamp";
+
+    /**
+     * The index used for speed ranges and speed ordering.
+     */
+    public static final String INDEX_SPEED = "idx_violations_speed";
+
+    /**
+     * The index used for bounding boxes.
+     */
+    public static final String INDEX_LOCATION = "idx_violations_location";
+
+    /**
+     * The index used for the violations of a trip, in time order.
+     */
+    public static final String INDEX_TRIP = "idx_violations_trip";
+
+    /**
+     * The statement that creates the violations table. The ID is the row ID without
+     * AUTOINCREMENT, since violations are never deleted and IDs are never reused.
+     */
+    public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + "(" +
+            _ID + " INTEGER PRIMARY KEY, " +
+            LONGITUDE + " INTEGER NOT NULL, " +
+            LATITUDE + " INTEGER NOT NULL, " +
+            SPEED + " INTEGER NOT NULL, " +
+            TIMESTAMP + " INTEGER NOT NULL, " +
+            TRIP_ID + " INTEGER)";
+
+    /**
+     * The statements that create the indices of the violations table.
+     */
+    public static final String[] CREATE_INDICES = {
+            "CREATE INDEX IF NOT EXISTS " + INDEX_TIMESTAMP + " ON " + TABLE_NAME + "(" + TIMESTAMP + ")",
+            "CREATE INDEX IF NOT EXISTS " + INDEX_SPEED + " ON " + TABLE_NAME + "(" + SPEED + ")",
+            "CREATE INDEX IF NOT EXISTS " + INDEX_LOCATION + " ON " + TABLE_NAME + "(" + LATITUDE + ", " + LONGITUDE + ")"
+    };
+
+    /**
+     * The statement that creates the index of the trip column, which was added in a later version.
+     */
+    public static final String CREATE_TRIP_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_TRIP + " ON " + TABLE_NAME + "(" + TRIP_ID + ", " + TIMESTAMP + ")";
+
+    /**
+     * The query that selects the newest violations stored after an ID, up to a limit,
+     * in the order they were stored.
+     */
+    public static final String SELECT_AFTER =
+            "SELECT * FROM (SELECT * FROM " + TABLE_NAME + " WHERE " + _ID + " > ? ORDER BY " + _ID + " DESC LIMIT ?)" +
+                    " ORDER BY " + _ID;
+
+    /**
+     * The query that selects the speed and time of every violation, for the reports.
+     */
+    public static final String SELECT_HISTORY = "SELECT " + SPEED + ", " + TIMESTAMP + " FROM " + TABLE_NAME;
+
+    /**
+     * The query that selects the ID and position of every violation, for the heatmap.
+     */
+    public static final String SELECT_POSITIONS = "SELECT " + _ID + ", " + LATITUDE + ", " + LONGITUDE +
+            " FROM " + TABLE_NAME;
+
+    /**
+     * The statements that convert the floating point violations table of earlier versions
+     * into the fixed point one, keeping the IDs. The indices must be created again afterwards.
+     */
+    public static final String[] MIGRATE_TO_FIXED_POINT = {
+            CREATE_TABLE.replace("CREATE TABLE " + TABLE_NAME, "CREATE TABLE " + TABLE_NAME + "_fixed"),
+            "INSERT INTO " + TABLE_NAME + "_fixed(" + _ID + ", " + LONGITUDE + ", " + LATITUDE + ", " +
+                    SPEED + ", " + TIMESTAMP + ", " + TRIP_ID + ") " +
+                    "SELECT " + _ID + ", " +
+                    "CAST(ROUND(IFNULL(longitude, 0) * 10000000) AS INTEGER), " +
+                    "CAST(ROUND(IFNULL(latitude, 0) * 10000000) AS INTEGER), " +
+                    "CAST(ROUND(IFNULL(speed, 0) * 360) AS INTEGER), " +
+                    "CAST(IFNULL(timestamp, 0) / 1000 AS INTEGER), " +
+                    TRIP_ID + " FROM " + TABLE_NAME,
+            "DROP TABLE " + TABLE_NAME,
+            "ALTER TABLE " + TABLE_NAME + "_fixed RENAME TO " + TABLE_NAME,
+            "DELETE FROM sqlite_sequence WHERE name = '" + TABLE_NAME + "'"
+    };
+
+    /**
+     * This class should not be instantiated.
+     */
+    private ViolationRecordColumns() {
+        //
+    }
+
+    /**
+     * Encodes a coordinate for storage.
+     *
+     * @param degrees The coordinate in degrees.
+     * @return The coordinate in degrees times 10^7, about a centimeter of precision.
+     */
+    static long encodeCoordinate(double degrees) {
+        return Math.round(degrees * 1e7);
+    }
+
+    /**
+     * Decodes a stored coordinate.
+     *
+     * @param e7 The coordinate in degrees times 10^7.
+     * @return The coordinate in degrees.
+     */
+    static double decodeCoordinate(long e7) {
+        return e7 / 1e7;
+    }
+
+    /**
+     * Encodes a speed for storage.
+     *
+     * @param speed The speed in m/s.
+     * @return The speed in hundredths of km/h.
+     */
+    static long encodeSpeed(double speed) {
+        return Math.round(speed * 360);
+    }
+
+    /**
+     * Decodes a stored speed.
+     *
+     * @param centiKmh The speed in hundredths of km/h.
+     * @return The speed in m/s.
+     */
+    static float decodeSpeed(long centiKmh) {
+        return (float) (centiKmh / 360.0);
+    }
+
+    /**
+     * Encodes a timestamp for storage.
+     *
+     * @param millis The timestamp in milliseconds.
+     * @return The timestamp in whole seconds.
+     */
+    static long encodeTime(long millis) {
+        return Math.floorDiv(millis, 1000);
+    }
+
+    /**
+     * Decodes a stored timestamp.
+     *
+     * @param seconds The timestamp in seconds.
+     * @return The timestamp in milliseconds.
+     */
+    static long decodeTime(long seconds) {
+        return seconds * 1000;
+    }
+}
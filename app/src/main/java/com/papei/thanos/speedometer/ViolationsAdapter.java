@@ -17,6 +17,11 @@ import java.util.List;
  * A custom array adapter that populates list views.
  */
 public class ViolationsAdapter extends ArrayAdapter<DatabaseHelper.ViolationRecord> {
+    /**
+     * The reverse geocoder that names the violation places.
+     */
+    private final ReverseGeocoder reverseGeocoder;
+
     /**
      * Default constructor.
      *
@@ -25,6 +30,7 @@ public class ViolationsAdapter extends ArrayAdapter<DatabaseHelper.ViolationReco
      */
     public ViolationsAdapter(Context context, List<DatabaseHelper.ViolationRecord> objects) {
         super(context, R.layout.violation_item, objects);
+        this.reverseGeocoder = ReverseGeocoder.getInstance(context);
     }
 
     @NonNull
@@ -35,6 +41,7 @@ public class ViolationsAdapter extends ArrayAdapter<DatabaseHelper.ViolationReco
 
         // Get all text views from the violation item template.
         TextView speedTextView = view.findViewById(R.id.violationSpeedTextView);
+        TextView placeTextView = view.findViewById(R.id.violationPlaceTextView);
         TextView longitudeTextView = view.findViewById(R.id.violationLongitudeTextView);
         TextView latitudeTextView = view.findViewById(R.id.violationLatitudeTextView);
         TextView timestampTextView = view.findViewById(R.id.violationTimestampTextView);
@@ -58,6 +65,20 @@ public class ViolationsAdapter extends ArrayAdapter<DatabaseHelper.ViolationReco
         latitudeTextView.setText(Utilities.formatLatitude(getContext(), record.getLatitude()));
         timestampTextView.setText(Utilities.formatTimestamp(record.getTimestamp()));
 
+        // Name the place of the violation, resolving it in the background the first time.
+        String place = this.reverseGeocoder.getCached(record.getLatitude(), record.getLongitude());
+        placeTextView.setText(place);
+        placeTextView.setTag(record);
+
+        if (place == null) {
+            this.reverseGeocoder.lookup(record.getLatitude(), record.getLongitude()).thenAcceptAsync(name -> {
+                // The view may have been recycled for another row meanwhile.
+                if (placeTextView.getTag() == record) {
+                    placeTextView.setText(name);
+                }
+            }, getContext().getMainExecutor());
+        }
+
         return view;
     }
 }
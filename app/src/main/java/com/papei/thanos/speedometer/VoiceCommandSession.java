@@ -0,0 +1,207 @@
+package com.papei.thanos.speedometer;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listens for voice commands in the app and fires a command as soon as two
+ * consecutive partial recognition results agree on it, without waiting for the
+ * final result. A single partial result can still change as the user keeps speaking.
+ */
+public final class VoiceCommandSession implements RecognitionListener {
+    /**
+     * The number of hypotheses requested from the recognizer.
+     */
+    private static final int MAX_RESULTS = 5;
+
+    /**
+     * The speech recognizer reference.
+     */
+    private final SpeechRecognizer recognizer;
+
+    /**
+     * The matcher that maps hypotheses to commands.
+     */
+    private final CommandMatcher matcher;
+
+    /**
+     * The callback notified with the outcome of a session.
+     */
+    private final Callback callback;
+
+    /**
+     * Whether a command was already fired for the current session.
+     */
+    private boolean fired = false;
+
+    /**
+     * The command agreed by the previous partial result, or null.
+     */
+    private CommandMatcher.Command pendingCommand;
+
+    /**
+     * The elapsed realtime when the user started speaking.
+     */
+    private long speechStartTime;
+
+    /**
+     * Default constructor, must be called on the main thread.
+     *
+     * @param context The current context.
+     * @param matcher The matcher that maps hypotheses to commands.
+     * @param callback The callback notified with the outcome of a session.
+     */
+    public VoiceCommandSession(Context context, CommandMatcher matcher, Callback callback) {
+        this.recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+        this.recognizer.setRecognitionListener(this);
+        this.matcher = matcher;
+        this.callback = callback;
+    }
+
+    /**
+     * Checks whether in-app speech recognition is available on the device.
+     *
+     * @param context The current context.
+     * @return Whether a session can be used.
+     */
+    public static boolean isAvailable(Context context) {
+        return SpeechRecognizer.isRecognitionAvailable(context);
+    }
+
+    /**
+     * Starts listening for a command, cancelling any ongoing session.
+     */
+    public void start() {
+        this.recognizer.cancel();
+        this.fired = false;
+        this.pendingCommand = null;
+        this.speechStartTime = SystemClock.elapsedRealtime();
+
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+        intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, MAX_RESULTS);
+        intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true);
+
+        this.recognizer.startListening(intent);
+    }
+
+    /**
+     * Releases the speech recognizer.
+     */
+    public void destroy() {
+        this.recognizer.destroy();
+    }
+
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+        //
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+        this.speechStartTime = SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {
+        //
+    }
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {
+        //
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+        //
+    }
+
+    @Override
+    public void onError(int error) {
+        if (!this.fired) {
+            this.fired = true;
+            this.callback.onUnrecognized();
+        }
+    }
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+        if (this.fired) {
+            return;
+        }
+
+        CommandMatcher.Command command = this.matcher.matchUnambiguous(getHypotheses(partialResults));
+
+        if (command != null && command == this.pendingCommand) {
+            // The command held while more speech arrived, so there is no need to wait for the final result.
+            this.recognizer.cancel();
+            this.fire(command);
+        } else {
+            this.pendingCommand = command;
+        }
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+        if (this.fired) {
+            return;
+        }
+
+        CommandMatcher.Command command = this.matcher.matchBest(getHypotheses(results));
+
+        if (command != null) {
+            this.fire(command);
+        } else {
+            this.fired = true;
+            this.callback.onUnrecognized();
+        }
+    }
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {
+        //
+    }
+
+    private void fire(CommandMatcher.Command command) {
+        this.fired = true;
+
+        PerformanceMetrics.getInstance().recordLatency(
+                PerformanceMetrics.VOICE_COMMAND_LATENCY,
+                SystemClock.elapsedRealtime() - this.speechStartTime);
+
+        this.callback.onCommand(command);
+    }
+
+    private static List<String> getHypotheses(Bundle bundle) {
+        ArrayList<String> hypotheses = bundle.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        return hypotheses != null ? hypotheses : Collections.emptyList();
+    }
+
+    /**
+     * The callback notified with the outcome of a session.
+     */
+    public interface Callback {
+        /**
+         * Called on the main thread when a command was recognized.
+         *
+         * @param command The recognized command.
+         */
+        void onCommand(CommandMatcher.Command command);
+
+        /**
+         * Called on the main thread when the speech could not be mapped to a command.
+         */
+        void onUnrecognized();
+    }
+}
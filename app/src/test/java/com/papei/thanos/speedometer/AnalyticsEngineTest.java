@@ -0,0 +1,113 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the parallel reports.
+ */
+public class AnalyticsEngineTest {
+    @Test
+    public void compute_matchesSequentialScan() {
+        // A zone without daylight saving, with a half hour offset that moves days.
+        ZoneId zone = ZoneId.of("Asia/Kolkata");
+        ViolationHistory history = this.randomHistory(200_000, 1);
+        AnalyticsEngine.Report report = new AnalyticsEngine(new ForkJoinPool(4)).compute(history, zone);
+
+        long[] speedBins = new long[AnalyticsEngine.BIN_COUNT];
+        long[] hours = new long[24];
+        long[] weekdays = new long[7];
+        int maxSpeed = 0;
+
+        for (int i = 0; i < history.getCount(); i++) {
+            ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(history.getTime(i)), zone);
+            int speed = history.getSpeed(i);
+
+            speedBins[Math.min(speed / 1000, AnalyticsEngine.BIN_COUNT - 1)]++;
+            hours[time.getHour()]++;
+            weekdays[time.getDayOfWeek().getValue() - 1]++;
+            maxSpeed = Math.max(maxSpeed, speed);
+        }
+
+        assertEquals(history.getCount(), report.getCount());
+        assertArrayEquals(speedBins, report.getSpeedHistogram());
+        assertArrayEquals(hours, report.getHourCounts());
+        assertArrayEquals(weekdays, report.getWeekdayCounts());
+        assertEquals(maxSpeed / 100f, report.getMaxSpeed(), 0);
+    }
+
+    @Test
+    public void worstDays_areRankedByCountThenSpeed() {
+        ZoneId zone = ZoneId.of("UTC");
+        ViolationHistory history = new ViolationHistory(0);
+        long day = LocalDate.of(2020, 3, 2).toEpochDay() * 86_400;
+
+        // Three violations on the first day, two fast ones on the second and two slow ones on the third.
+        history.add(9_000, day + 100);
+        history.add(9_000, day + 200);
+        history.add(9_000, day + 300);
+        history.add(15_000, day + 86_400);
+        history.add(9_000, day + 86_500);
+        history.add(9_000, day + 2 * 86_400);
+        history.add(9_500, day + 2 * 86_400 + 1);
+
+        List<AnalyticsEngine.Day> worst = new AnalyticsEngine().compute(history, zone).getWorstDays();
+
+        assertEquals(3, worst.size());
+        assertEquals(LocalDate.of(2020, 3, 2), worst.get(0).getDate());
+        assertEquals(3, worst.get(0).getCount());
+        assertEquals(LocalDate.of(2020, 3, 3), worst.get(1).getDate());
+        assertEquals(150, worst.get(1).getMaxSpeed(), 0);
+        assertEquals(LocalDate.of(2020, 3, 4), worst.get(2).getDate());
+    }
+
+    @Test
+    public void compute_handlesEmptyHistory() {
+        AnalyticsEngine.Report report = new AnalyticsEngine().compute(new ViolationHistory(0), ZoneId.of("UTC"));
+
+        assertEquals(0, report.getCount());
+        assertEquals(0, report.getAverageSpeed(), 0);
+        assertTrue(report.getWorstDays().isEmpty());
+    }
+
+    @Test
+    public void compute_matchesAcrossPoolSizes() {
+        ZoneId zone = ZoneId.of("Europe/Athens");
+        ViolationHistory history = this.randomHistory(300_000, 2);
+
+        AnalyticsEngine.Report sequential = new AnalyticsEngine(new ForkJoinPool(1)).compute(history, zone);
+        AnalyticsEngine.Report parallel = new AnalyticsEngine(new ForkJoinPool(4)).compute(history, zone);
+
+        assertEquals(sequential.getCount(), parallel.getCount());
+        assertArrayEquals(sequential.getSpeedHistogram(), parallel.getSpeedHistogram());
+        assertArrayEquals(sequential.getHourCounts(), parallel.getHourCounts());
+        assertArrayEquals(sequential.getWeekdayCounts(), parallel.getWeekdayCounts());
+        assertEquals(sequential.getWorstDays().size(), parallel.getWorstDays().size());
+
+        for (int i = 0; i < sequential.getWorstDays().size(); i++) {
+            assertEquals(sequential.getWorstDays().get(i).getDate(), parallel.getWorstDays().get(i).getDate());
+        }
+    }
+
+    private ViolationHistory randomHistory(int count, long seed) {
+        Random random = new Random(seed);
+        ViolationHistory history = new ViolationHistory(count);
+        long start = LocalDate.of(2017, 1, 1).toEpochDay() * 86_400;
+
+        for (int i = 0; i < count; i++) {
+            // Three years of violations, between 50 and 260 km/h.
+            history.add(5_000 + random.nextInt(21_000), start + (long) (random.nextDouble() * 3 * 365 * 86_400));
+        }
+
+        return history;
+    }
+}
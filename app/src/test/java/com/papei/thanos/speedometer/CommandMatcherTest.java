@@ -0,0 +1,57 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the voice command matcher.
+ */
+public class CommandMatcherTest {
+    private final CommandMatcher matcher = CommandMatcher.createDefault();
+
+    @Test
+    public void match_findsPhrasesAndSynonyms() {
+        assertEquals(CommandMatcher.Command.MAP, this.matcher.match("Show me the map"));
+        assertEquals(CommandMatcher.Command.RECORDS, this.matcher.match("open my violations"));
+        assertEquals(CommandMatcher.Command.PREFERENCES, this.matcher.match("change the speed limit"));
+        assertEquals(CommandMatcher.Command.HOME, this.matcher.match("back to the main screen"));
+        assertNull(this.matcher.match("what a nice day"));
+    }
+
+    @Test
+    public void match_ignoresGenericWords() {
+        // The start of "open the main map" must not fire the home screen.
+        assertNull(this.matcher.match("open the main"));
+        assertEquals(CommandMatcher.Command.MAP, this.matcher.match("open the main map"));
+        assertNull(this.matcher.match("go back to the list"));
+    }
+
+    @Test
+    public void match_rejectsConflictingCommands() {
+        assertNull(this.matcher.match("map or records"));
+        assertEquals(CommandMatcher.Command.MAP, this.matcher.match("show on map"));
+    }
+
+    @Test
+    public void matchUnambiguous_waitsForAgreement() {
+        List<String> ambiguous = Arrays.asList("maps", "records");
+        List<String> agreed = Arrays.asList("show map", "so", "maps");
+
+        assertNull(this.matcher.matchUnambiguous(ambiguous));
+        assertEquals(CommandMatcher.Command.MAP, this.matcher.matchUnambiguous(agreed));
+        assertEquals(CommandMatcher.Command.RECORDS, this.matcher.matchBest(Arrays.asList("so", "records", "map")));
+    }
+
+    @Test
+    public void matchUnambiguous_acceptsNoisyHypotheses() {
+        List<String> hypotheses = Arrays.asList(
+                "please show the map now", "please show them up now", "please so the map now",
+                "peace show the map now", "please show the maps now");
+
+        assertEquals(CommandMatcher.Command.MAP, this.matcher.matchUnambiguous(hypotheses));
+    }
+}
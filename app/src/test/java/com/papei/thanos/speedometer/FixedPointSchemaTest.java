@@ -0,0 +1,154 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the fixed point violations schema and its migration, run on SQLite.
+ */
+public class FixedPointSchemaTest {
+    /**
+     * The violations table of versions 4 and 5, before the fixed point columns.
+     */
+    private static final String LEGACY_TABLE = "CREATE TABLE violations(" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT, longitude DOUBLE, latitude DOUBLE, " +
+            "speed FLOAT, timestamp LONG, trip_id INTEGER)";
+
+    /**
+     * The number of generated violations.
+     */
+    private static final int ROWS = 50_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void migration_keepsIdsAndValues() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(LEGACY_TABLE);
+                statement.execute("INSERT INTO violations(longitude, latitude, speed, timestamp, trip_id) " +
+                        "VALUES (23.7275123, 37.9838456, 27.5, 1571234567890, 3)");
+                statement.execute("INSERT INTO violations(longitude, latitude, speed, timestamp) " +
+                        "VALUES (-0.1275, 51.5072, 13.9, 1571234599999)");
+
+                for (String sql : ViolationRecordColumns.MIGRATE_TO_FIXED_POINT) {
+                    statement.execute(sql);
+                }
+
+                for (String sql : ViolationRecordColumns.CREATE_INDICES) {
+                    statement.execute(sql);
+                }
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT * FROM violations ORDER BY _id")) {
+                assertTrue(result.next());
+                assertEquals(1, result.getLong(ViolationRecordColumns._ID));
+                assertEquals(237275123, result.getLong(ViolationRecordColumns.LONGITUDE));
+                assertEquals(379838456, result.getLong(ViolationRecordColumns.LATITUDE));
+                assertEquals(9900, result.getLong(ViolationRecordColumns.SPEED));
+                assertEquals(1571234567, result.getLong(ViolationRecordColumns.TIMESTAMP));
+                assertEquals(3, result.getLong(ViolationRecordColumns.TRIP_ID));
+
+                assertTrue(result.next());
+                assertEquals(2, result.getLong(ViolationRecordColumns._ID));
+                assertEquals(-1275000, result.getLong(ViolationRecordColumns.LONGITUDE));
+                assertEquals(13.9f, ViolationRecordColumns.decodeSpeed(result.getLong(ViolationRecordColumns.SPEED)), 0.01f);
+                assertEquals(1571234599000L, ViolationRecordColumns.decodeTime(result.getLong(ViolationRecordColumns.TIMESTAMP)));
+
+                assertFalse(result.next());
+            }
+        }
+    }
+
+    @Test
+    public void fixedPoint_isSmallerThanLegacy() throws SQLException {
+        File legacy = new File(this.folder.getRoot(), "legacy.db");
+        File fixed = new File(this.folder.getRoot(), "fixed.db");
+
+        ViolationGenerator generator = new ViolationGenerator(ROWS, System.currentTimeMillis(), 365);
+        double[] longitudes = new double[ROWS];
+        double[] latitudes = new double[ROWS];
+        float[] speeds = new float[ROWS];
+        long[] timestamps = new long[ROWS];
+
+        for (int i = 0; i < ROWS; i++) {
+            generator.next(i, longitudes, latitudes, speeds, timestamps);
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + legacy.getPath())) {
+            this.create(connection, LEGACY_TABLE);
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO violations(longitude, latitude, speed, timestamp) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    insert.setDouble(1, longitudes[i]);
+                    insert.setDouble(2, latitudes[i]);
+                    insert.setDouble(3, speeds[i]);
+                    insert.setLong(4, timestamps[i]);
+                    insert.addBatch();
+                }
+
+                this.commit(connection, insert);
+            }
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + fixed.getPath())) {
+            this.create(connection, ViolationRecordColumns.CREATE_TABLE);
+
+            try (PreparedStatement insert = connection.prepareStatement(DatabaseHelper.INSERT_VIOLATION)) {
+                for (int i = 0; i < ROWS; i++) {
+                    insert.setLong(1, ViolationRecordColumns.encodeCoordinate(longitudes[i]));
+                    insert.setLong(2, ViolationRecordColumns.encodeCoordinate(latitudes[i]));
+                    insert.setLong(3, ViolationRecordColumns.encodeSpeed(speeds[i]));
+                    insert.setLong(4, ViolationRecordColumns.encodeTime(timestamps[i]));
+                    insert.setNull(5, Types.INTEGER);
+                    insert.addBatch();
+                }
+
+                this.commit(connection, insert);
+            }
+        }
+
+        assertTrue(fixed.length() < legacy.length() * 0.8);
+    }
+
+    private void create(Connection connection, String table) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(table);
+
+            for (String index : ViolationRecordColumns.CREATE_INDICES) {
+                // The same indices, on the column names of the schema being created.
+                statement.execute(table.contains("longitude_e7") ? index : index
+                        .replace(ViolationRecordColumns.LONGITUDE, "longitude")
+                        .replace(ViolationRecordColumns.LATITUDE, "latitude")
+                        .replace(ViolationRecordColumns.SPEED, "speed")
+                        .replace(ViolationRecordColumns.TIMESTAMP, "timestamp"));
+            }
+        }
+    }
+
+    private void commit(Connection connection, PreparedStatement insert) throws SQLException {
+        connection.setAutoCommit(false);
+        insert.executeBatch();
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("VACUUM");
+        }
+    }
+}
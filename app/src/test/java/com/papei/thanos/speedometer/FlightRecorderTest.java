@@ -0,0 +1,89 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the flight recorder ring buffer and its snapshot files.
+ */
+public class FlightRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void write_keepsNewestSnapshots() throws IOException {
+        File directory = new File(this.folder.getRoot(), "flight");
+        FlightRecorder recorder = new FlightRecorder(directory, null);
+        recorder.recordFix(0, 1_000_000L, 37.9, 23.6, 10, 5);
+
+        for (long id = 1; id <= FlightRecorder.MAX_SNAPSHOTS + 5; id++) {
+            recorder.write(id, 0);
+        }
+
+        assertEquals(FlightRecorder.MAX_SNAPSHOTS, directory.list().length);
+        assertFalse(recorder.getSnapshotFile(5).exists());
+        assertTrue(recorder.getSnapshotFile(6).exists());
+        assertTrue(recorder.getSnapshotFile(FlightRecorder.MAX_SNAPSHOTS + 5).exists());
+    }
+
+    @Test
+    public void write_keepsWindowAroundViolation() throws IOException {
+        File directory = new File(this.folder.getRoot(), "flight");
+        FlightRecorder recorder = new FlightRecorder(directory, null);
+
+        // Record more fixes than the ring holds, one every 500 ms.
+        int fixes = FlightRecorder.CAPACITY + 500;
+        long violationTime = (fixes - 100) * 500L;
+
+        for (int i = 0; i < fixes; i++) {
+            recorder.recordFix(i * 500L, 1_000_000L + i * 500L, 37.9, 23.6, i, 5);
+
+            if (i * 500L == violationTime) {
+                recorder.recordEvent(FlightRecorder.EVENT_VIOLATION, violationTime, 0);
+            }
+        }
+
+        recorder.write(7, violationTime);
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(recorder.getSnapshotFile(7)))) {
+            assertEquals(FlightRecorder.MAGIC, in.readInt());
+            assertEquals(FlightRecorder.FORMAT_VERSION, in.readShort());
+            assertEquals(7, in.readLong());
+            assertEquals(violationTime, in.readLong());
+
+            // 60 s before and 15 s after at two fixes per second, plus the event.
+            int count = in.readInt();
+            assertEquals(120 + 30 + 1 + 1, count);
+
+            long previous = Long.MIN_VALUE;
+            int events = 0;
+
+            for (int i = 0; i < count; i++) {
+                byte kind = in.readByte();
+                long time = in.readLong();
+                in.readLong();
+                in.readDouble();
+                in.readDouble();
+                in.readFloat();
+                in.readFloat();
+
+                assertTrue(time >= previous);
+                assertTrue(time >= violationTime - FlightRecorder.WINDOW_BEFORE_MILLIS);
+                assertTrue(time <= violationTime + FlightRecorder.WINDOW_AFTER_MILLIS);
+                events += kind == FlightRecorder.EVENT_VIOLATION ? 1 : 0;
+                previous = time;
+            }
+
+            assertEquals(1, events);
+            assertEquals(-1, in.read());
+        }
+    }
+}
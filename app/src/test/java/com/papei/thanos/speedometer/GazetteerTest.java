@@ -0,0 +1,84 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the k-d tree gazetteer.
+ */
+public class GazetteerTest {
+    /**
+     * The number of random places and lookups.
+     */
+    private static final int PLACES = 20_000;
+
+    @Test
+    public void nearest_matchesLinearScan() {
+        Random random = new Random(1);
+        String[] names = new String[PLACES];
+        double[] latitudes = new double[PLACES];
+        double[] longitudes = new double[PLACES];
+
+        for (int i = 0; i < PLACES; i++) {
+            names[i] = "Place " + i;
+            latitudes[i] = Math.toDegrees(Math.asin(random.nextDouble() * 2 - 1));
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+
+        Gazetteer gazetteer = new Gazetteer(names.clone(), latitudes.clone(), longitudes.clone(), PLACES);
+
+        for (int i = 0; i < 1_000; i++) {
+            double latitude = random.nextDouble() * 180 - 90;
+            double longitude = random.nextDouble() * 360 - 180;
+            int expected = 0;
+
+            for (int j = 1; j < PLACES; j++) {
+                if (Geodesy.haversine(latitude, longitude, latitudes[j], longitudes[j])
+                        < Geodesy.haversine(latitude, longitude, latitudes[expected], longitudes[expected])) {
+                    expected = j;
+                }
+            }
+
+            assertEquals(names[expected], gazetteer.getName(gazetteer.nearest(latitude, longitude)));
+        }
+    }
+
+    @Test
+    public void read_parsesBundledGazetteer() throws IOException {
+        Gazetteer gazetteer;
+
+        try (Reader reader = new InputStreamReader(
+                new FileInputStream("src/main/res/raw/gazetteer.csv"), StandardCharsets.UTF_8)) {
+            gazetteer = Gazetteer.read(reader);
+        } catch (IOException e) {
+            // Not run from the module directory, so read the file from the repository root.
+            try (Reader reader = new InputStreamReader(
+                    new FileInputStream("app/src/main/res/raw/gazetteer.csv"), StandardCharsets.UTF_8)) {
+                gazetteer = Gazetteer.read(reader);
+            }
+        }
+
+        assertTrue(gazetteer.getCount() > 100);
+        assertEquals("Athens", gazetteer.getName(gazetteer.nearest(37.9755, 23.7348)));
+        assertEquals("Heraklion", gazetteer.getName(gazetteer.nearest(35.33, 25.13)));
+    }
+
+    @Test
+    public void read_rejectsMalformedLines() {
+        try {
+            Gazetteer.read(new StringReader("# name,latitude,longitude\nAthens,37.98\n"));
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests and error bounds of the geodesy functions.
+ */
+public class GeodesyTest {
+    /**
+     * The number of random point pairs.
+     */
+    private static final int PAIRS = 100_000;
+
+    @Test
+    public void haversine_matchesKnownValue() {
+        // Athens to Thessaloniki, about 302 km.
+        double distance = Geodesy.haversine(37.9838, 23.7275, 40.6401, 22.9444);
+
+        assertEquals(302_000, distance, 2_000);
+    }
+
+    @Test
+    public void equirectangular_staysWithinErrorBound() {
+        Random random = new Random(1);
+        double worst = 0;
+
+        for (int i = 0; i < PAIRS; i++) {
+            double latitude = (random.nextDouble() * 2 - 1) * 70;
+            double longitude = (random.nextDouble() * 2 - 1) * 180;
+            double meters = 1 + random.nextDouble() * 10_000;
+            double bearing = Math.toRadians(random.nextDouble() * 360);
+
+            // Offset the second point by about the chosen distance.
+            double latitude2 = latitude + Math.toDegrees(meters * Math.cos(bearing) / Geodesy.EARTH_RADIUS_METERS);
+            double longitude2 = longitude + Math.toDegrees(meters * Math.sin(bearing)
+                    / (Geodesy.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(latitude))));
+
+            double exact = Geodesy.haversine(latitude, longitude, latitude2, longitude2);
+            double approximate = Geodesy.equirectangular(latitude, longitude, latitude2, longitude2);
+
+            worst = Math.max(worst, Math.abs(approximate - exact) / exact);
+        }
+
+        assertTrue(worst < Geodesy.EQUIRECTANGULAR_ERROR);
+    }
+
+    @Test
+    public void equirectangular_wrapsAntimeridian() {
+        double distance = Geodesy.equirectangular(0, 179.9999, 0, -179.9999);
+
+        assertEquals(Geodesy.haversine(0, 179.9999, 0, -179.9999), distance, 0.01);
+    }
+
+    @Test
+    public void bearing_pointsToCardinalDirections() {
+        assertEquals(0, Geodesy.bearing(37, 23, 38, 23), 1e-9);
+        assertEquals(180, Geodesy.bearing(38, 23, 37, 23), 1e-9);
+        assertEquals(90, Geodesy.bearing(0, 23, 0, 24), 1e-9);
+        assertEquals(270, Geodesy.bearing(0, 24, 0, 23), 1e-9);
+    }
+
+    @Test
+    public void boundingBox_containsCircle() {
+        double[] box = new double[4];
+        Geodesy.boundingBox(37.9838, 23.7275, 1_000, box);
+
+        // Every point on the circle is inside the box, and the box touches it.
+        for (int degrees = 0; degrees < 360; degrees++) {
+            double bearing = Math.toRadians(degrees);
+            double angle = 1_000 / Geodesy.EARTH_RADIUS_METERS;
+            double phi1 = Math.toRadians(37.9838);
+            double phi2 = Math.asin(Math.sin(phi1) * Math.cos(angle)
+                    + Math.cos(phi1) * Math.sin(angle) * Math.cos(bearing));
+            double lambda = Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(phi1),
+                    Math.cos(angle) - Math.sin(phi1) * Math.sin(phi2));
+            double latitude = Math.toDegrees(phi2);
+            double longitude = 23.7275 + Math.toDegrees(lambda);
+
+            assertTrue(latitude >= box[0] - 1e-9 && latitude <= box[2] + 1e-9);
+            assertTrue(longitude >= box[1] - 1e-9 && longitude <= box[3] + 1e-9);
+        }
+
+        assertEquals(1_000, Geodesy.haversine(box[0], 23.7275, 37.9838, 23.7275), 0.01);
+
+        Geodesy.boundingBox(89.9999, 0, 1_000, box);
+        assertEquals(-180, box[1], 0);
+        assertEquals(180, box[3], 0);
+    }
+
+    @Test
+    public void nearest_findsClosestPoint() {
+        double[] latitudes = {37.98, 40.64, 38.25, 35.34};
+        double[] longitudes = {23.73, 22.94, 21.73, 25.14};
+
+        assertEquals(1, Geodesy.nearest(40.5, 22.9, latitudes, longitudes, 4));
+        assertEquals(3, Geodesy.nearest(35.5, 24.9, latitudes, longitudes, 4));
+        assertEquals(-1, Geodesy.nearest(35.5, 24.9, latitudes, longitudes, 0));
+        assertEquals(0, Geodesy.pathLength(latitudes, longitudes, 1), 0);
+    }
+}
@@ -0,0 +1,46 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the violation density grid.
+ */
+public class HeatmapGridTest {
+    @Test
+    public void build_binsEveryZoomLevel() {
+        HeatmapGrid grid = new HeatmapGrid();
+        grid.build(new double[]{37.9420, 37.9421}, new double[]{23.6465, 23.6466}, 2);
+
+        long[] changed = grid.add(37.9420, 23.6465);
+
+        for (int zoom = HeatmapGrid.MIN_ZOOM; zoom <= HeatmapGrid.MAX_ZOOM; zoom++) {
+            long key = changed[zoom - HeatmapGrid.MIN_ZOOM];
+            int[] bins = grid.copyTile(zoom, HeatmapGrid.tileX(key), HeatmapGrid.tileY(key));
+
+            int total = 0;
+
+            for (int count : bins) {
+                total += count;
+            }
+
+            assertEquals(3, total);
+        }
+    }
+
+    @Test
+    public void add_reportsTileOfViolation() {
+        HeatmapGrid grid = new HeatmapGrid();
+        long[] changed = grid.add(0, 0);
+
+        // The origin lies on the corner of the four center tiles at zoom level 2.
+        long key = changed[0];
+        assertEquals(2, HeatmapGrid.tileZoom(key));
+        assertEquals(2, HeatmapGrid.tileX(key));
+        assertEquals(2, HeatmapGrid.tileY(key));
+
+        assertNull(grid.copyTile(2, 0, 0));
+        assertNotNull(grid.copyTile(2, 2, 2));
+    }
+}
@@ -0,0 +1,185 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the geohash cells and the hotspot statements, run on SQLite.
+ */
+public class HotspotIndexTest {
+    /**
+     * The time of the test violations, in seconds.
+     */
+    private static final long NOW = 1_600_000_000L;
+
+    @Test
+    public void geohash_matchesKnownCells() {
+        long cell = Geohash.encode(37.9838, 23.7275, 7);
+        double[] center = new double[2];
+        Geohash.decodeCenter(cell, 7, center);
+
+        assertEquals("swbb5ft", Geohash.toString(cell, 7));
+        assertEquals(37.9838, center[0], 0.001);
+        assertEquals(23.7275, center[1], 0.001);
+
+        // Every cell nests inside the cell of the lower precision.
+        assertEquals(Geohash.encode(37.9838, 23.7275, 5), cell >>> 10);
+    }
+
+    @Test
+    public void decayedScore_ranksRecentCellsFirst() throws SQLException {
+        try (Connection connection = this.create()) {
+            // An old cell with many violations and a recent one with a few.
+            for (int i = 0; i < 8; i++) {
+                this.add(connection, 37.9838, 23.7275, 100, NOW - 180 * 86_400);
+            }
+
+            for (int i = 0; i < 3; i++) {
+                this.add(connection, 38.2466, 21.7346, 120 + i, NOW - 86_400);
+            }
+
+            List<double[]> top = this.top(connection, 6, null, 0, 10);
+
+            assertEquals(2, top.size());
+            assertEquals(38.2466, top.get(0)[0], 0.01);
+            assertEquals(3, top.get(0)[2], 0);
+            assertEquals(122, top.get(0)[4], 0);
+            assertEquals(8, top.get(1)[2], 0);
+
+            // Eight violations six half lives ago weigh an eighth of a violation today.
+            assertEquals(8 / 64.0, HotspotColumns.decay(top.get(1)[3], NOW), 0.01);
+
+            // Only the recent cell had a violation in the last month.
+            assertEquals(1, this.top(connection, 6, null, NOW - 30 * 86_400, 10).size());
+
+            // Only the first cell is around Athens.
+            List<double[]> athens = this.top(connection, 5, new double[]{37.5, 23.0, 38.5, 24.5}, 0, 10);
+            assertEquals(1, athens.size());
+            assertEquals(8, athens.get(0)[2], 0);
+        }
+    }
+
+    @Test
+    public void selectTop_readsScoresInIndexOrder() throws SQLException {
+        try (Connection connection = this.create()) {
+            Random random = new Random(1);
+            connection.setAutoCommit(false);
+
+            for (int i = 0; i < 20_000; i++) {
+                this.add(connection, 34.8 + random.nextDouble() * 7, 19.3 + random.nextDouble() * 9,
+                        9_000 + random.nextInt(9_000), NOW - random.nextInt(365 * 86_400));
+            }
+
+            connection.commit();
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet plan = statement.executeQuery("EXPLAIN QUERY PLAN " + HotspotColumns.SELECT_TOP
+                         .replace("?", "0"))) {
+                StringBuilder details = new StringBuilder();
+
+                while (plan.next()) {
+                    details.append(plan.getString(4)).append('\n');
+                }
+
+                assertTrue(details.toString(), details.toString().contains(HotspotColumns.INDEX_SCORE));
+                assertFalse(details.toString(), details.toString().contains("TEMP B-TREE"));
+            }
+
+            List<double[]> top = this.top(connection, 7, null, 0, 20);
+            assertEquals(20, top.size());
+
+            for (int i = 1; i < top.size(); i++) {
+                assertTrue(top.get(i - 1)[3] >= top.get(i)[3]);
+            }
+        }
+    }
+
+    private Connection create() throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(HotspotColumns.CREATE_TABLE);
+            statement.execute(HotspotColumns.CREATE_INDEX);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Counts a violation the way the database helper does.
+     */
+    private void add(Connection connection, double latitude, double longitude, long centiKmh, long seconds) throws SQLException {
+        double weight = HotspotColumns.weight(seconds);
+        double[] center = new double[2];
+
+        for (int level : HotspotColumns.LEVELS) {
+            long cell = Geohash.encode(latitude, longitude, level);
+
+            try (PreparedStatement update = connection.prepareStatement(HotspotColumns.UPDATE)) {
+                update.setDouble(1, weight);
+                update.setLong(2, centiKmh);
+                update.setLong(3, seconds);
+                update.setLong(4, level);
+                update.setLong(5, cell);
+
+                if (update.executeUpdate() > 0) {
+                    continue;
+                }
+            }
+
+            Geohash.decodeCenter(cell, level, center);
+
+            try (PreparedStatement insert = connection.prepareStatement(HotspotColumns.INSERT)) {
+                insert.setLong(1, level);
+                insert.setLong(2, cell);
+                insert.setLong(3, ViolationRecordColumns.encodeCoordinate(center[0]));
+                insert.setLong(4, ViolationRecordColumns.encodeCoordinate(center[1]));
+                insert.setDouble(5, weight);
+                insert.setLong(6, centiKmh);
+                insert.setLong(7, seconds);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Reads the top cells as latitude, longitude, count, stored score and peak speed.
+     */
+    private List<double[]> top(Connection connection, int level, double[] box, long since, int limit) throws SQLException {
+        List<double[]> cells = new ArrayList<>();
+
+        try (PreparedStatement select = connection.prepareStatement(HotspotColumns.SELECT_TOP)) {
+            select.setLong(1, level);
+            select.setLong(2, since);
+            select.setLong(3, ViolationRecordColumns.encodeCoordinate(box != null ? box[0] : -90));
+            select.setLong(4, ViolationRecordColumns.encodeCoordinate(box != null ? box[2] : 90));
+            select.setLong(5, ViolationRecordColumns.encodeCoordinate(box != null ? box[1] : -180));
+            select.setLong(6, ViolationRecordColumns.encodeCoordinate(box != null ? box[3] : 180));
+            select.setLong(7, limit);
+
+            try (ResultSet result = select.executeQuery()) {
+                while (result.next()) {
+                    cells.add(new double[]{
+                            ViolationRecordColumns.decodeCoordinate(result.getLong(HotspotColumns.LATITUDE)),
+                            ViolationRecordColumns.decodeCoordinate(result.getLong(HotspotColumns.LONGITUDE)),
+                            result.getLong(HotspotColumns.COUNT),
+                            result.getDouble(HotspotColumns.SCORE),
+                            result.getLong(HotspotColumns.PEAK_SPEED)});
+                }
+            }
+        }
+
+        return cells;
+    }
+}
@@ -0,0 +1,116 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the binary map snapshot.
+ */
+public class MapSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void save_roundTrips() throws IOException {
+        File file = new File(this.folder.getRoot(), "map_snapshot.bin");
+        MapSnapshot snapshot = new MapSnapshot(0);
+
+        // Grow past the initial capacity.
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(snapshot.add(i * 2, 37.9 + i * 1e-4, 23.7 - i * 1e-4, 20 + i * 0.1f));
+        }
+
+        snapshot.setCamera(37.95, 23.72, 14.5f);
+        snapshot.save(file);
+
+        MapSnapshot loaded = MapSnapshot.load(file);
+
+        assertNotNull(loaded);
+        assertEquals(100, loaded.getCount());
+        assertEquals(200, loaded.getHighWaterId());
+        assertEquals(2, loaded.getId(0));
+        assertEquals(37.9 + 100 * 1e-4, loaded.getLatitude(99), 0);
+        assertEquals(23.7 - 100 * 1e-4, loaded.getLongitude(99), 0);
+        assertEquals(20 + 100 * 0.1f, loaded.getSpeed(99), 0);
+        assertTrue(loaded.hasCamera());
+        assertEquals(37.95, loaded.getCameraLatitude(), 0);
+        assertEquals(23.72, loaded.getCameraLongitude(), 0);
+        assertEquals(14.5f, loaded.getCameraZoom(), 0);
+    }
+
+    @Test
+    public void add_skipsKnownViolations() {
+        MapSnapshot snapshot = new MapSnapshot(0);
+
+        assertTrue(snapshot.add(5, 0, 0, 0));
+        assertFalse(snapshot.add(5, 0, 0, 0));
+        assertFalse(snapshot.add(3, 0, 0, 0));
+        assertTrue(snapshot.add(6, 0, 0, 0));
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(6, snapshot.getHighWaterId());
+        assertFalse(snapshot.hasCamera());
+    }
+
+    @Test
+    public void add_keepsNewestMarkers() {
+        MapSnapshot snapshot = new MapSnapshot(0);
+
+        for (int i = 1; i <= MapSnapshot.MAX_MARKERS + 10; i++) {
+            assertTrue(snapshot.add(i, i, -i, i));
+        }
+
+        assertEquals(MapSnapshot.MAX_MARKERS, snapshot.getCount());
+        assertEquals(11, snapshot.getId(0));
+        assertEquals(11, snapshot.getLatitude(0), 0);
+        assertEquals(MapSnapshot.MAX_MARKERS + 10, snapshot.getId(MapSnapshot.MAX_MARKERS - 1));
+        assertEquals(MapSnapshot.MAX_MARKERS + 10, snapshot.getHighWaterId());
+    }
+
+    @Test
+    public void load_rejectsInvalidCounts() throws IOException {
+        File file = new File(this.folder.getRoot(), "map_snapshot.bin");
+
+        for (int count : new int[]{-1, 2, Integer.MAX_VALUE}) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+                out.writeInt(MapSnapshot.MAGIC);
+                out.writeShort(MapSnapshot.FORMAT_VERSION);
+                out.writeInt(count);
+                out.writeLong(1);
+                out.writeBoolean(false);
+                out.writeDouble(0);
+                out.writeDouble(0);
+                out.writeFloat(0);
+
+                // A single marker, fewer than the count claims.
+                out.writeLong(1);
+                out.writeDouble(0);
+                out.writeDouble(0);
+                out.writeFloat(0);
+            }
+
+            assertNull(MapSnapshot.load(file));
+        }
+    }
+
+    @Test
+    public void load_rejectsMissingAndInvalidFiles() throws IOException {
+        File file = new File(this.folder.getRoot(), "map_snapshot.bin");
+
+        assertNull(MapSnapshot.load(file));
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+
+        assertNull(MapSnapshot.load(file));
+    }
+}
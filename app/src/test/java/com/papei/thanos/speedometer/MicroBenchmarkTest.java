@@ -0,0 +1,391 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Timing runs of the hot paths on the location callback, the map, the database and voice
+ * commands, kept apart from the unit tests so those stay fast and quiet. Skipped unless
+ * enabled with {@code -Dbenchmark.micro=true}. The results are written as JSON to
+ * {@code build/reports/benchmark/micro.json}.
+ */
+public class MicroBenchmarkTest {
+    /**
+     * The number of warm up runs before every measurement.
+     */
+    private static final int WARMUP_RUNS = 20;
+
+    /**
+     * The number of random places and lookups of the gazetteer run.
+     */
+    private static final int PLACES = 20_000;
+
+    /**
+     * The number of point pairs of the distance runs.
+     */
+    private static final int PAIRS = 100_000;
+
+    /**
+     * About four hours of fixes at two per second.
+     */
+    private static final int TRACK_POINTS = 30_000;
+
+    /**
+     * The number of violations of the decode runs.
+     */
+    private static final int ROWS = 50_000;
+
+    /**
+     * The number of matched hypothesis lists of the voice command run.
+     */
+    private static final int MATCHES = 200_000;
+
+    /**
+     * The violations table before the fixed point columns.
+     */
+    private static final String LEGACY_TABLE = "CREATE TABLE violations(" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT, longitude DOUBLE, latitude DOUBLE, " +
+            "speed FLOAT, timestamp LONG, trip_id INTEGER)";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void benchmark() throws IOException, SQLException {
+        Assume.assumeTrue("Set benchmark.micro to run the benchmark", Boolean.getBoolean("benchmark.micro"));
+
+        String report = String.format(Locale.US, "{\n"
+                        + "  \"gazetteer_nearest_ns\": %.1f,\n"
+                        + "  \"haversine_ns\": %.1f,\n"
+                        + "  \"equirectangular_ns\": %.1f,\n"
+                        + "  \"polyline_rank_ms\": %.2f,\n"
+                        + "  \"replay_fix_ns\": %.1f,\n"
+                        + "  \"legacy_decode_ns\": %.1f,\n"
+                        + "  \"fixed_point_decode_ns\": %.1f,\n"
+                        + "  \"command_match_ns\": %.1f\n"
+                        + "}\n",
+                this.gazetteerNearest(),
+                this.distance(false),
+                this.distance(true),
+                this.polylineRank(),
+                this.replayDelivery(),
+                this.decode(false),
+                this.decode(true),
+                this.commandMatch());
+
+        File file = new File("build/reports/benchmark/micro.json");
+        File parent = file.getAbsoluteFile().getParentFile();
+        assertTrue(parent.isDirectory() || parent.mkdirs());
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(report);
+        }
+    }
+
+    /**
+     * Times nearest place lookups within Greece.
+     *
+     * @return The nanoseconds per lookup.
+     */
+    private double gazetteerNearest() {
+        Random random = new Random(2);
+        String[] names = new String[PLACES];
+        double[] latitudes = new double[PLACES];
+        double[] longitudes = new double[PLACES];
+
+        for (int i = 0; i < PLACES; i++) {
+            names[i] = "Place " + i;
+            latitudes[i] = 34.8 + random.nextDouble() * 7;
+            longitudes[i] = 19.3 + random.nextDouble() * 9;
+        }
+
+        Gazetteer gazetteer = new Gazetteer(names, latitudes, longitudes, PLACES);
+        long checksum = 0;
+
+        // Warm up before measuring.
+        for (int i = 0; i < PLACES; i++) {
+            checksum += gazetteer.nearest(34.8 + random.nextDouble() * 7, 19.3 + random.nextDouble() * 9);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < PLACES; i++) {
+            checksum += gazetteer.nearest(34.8 + random.nextDouble() * 7, 19.3 + random.nextDouble() * 9);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(checksum > 0);
+
+        return (double) elapsed / PLACES;
+    }
+
+    /**
+     * Times the distance between consecutive points within a city.
+     *
+     * @param approximate Whether to time the equirectangular approximation instead of haversine.
+     * @return The nanoseconds per distance.
+     */
+    private double distance(boolean approximate) {
+        Random random = new Random(2);
+        double[] latitudes = new double[PAIRS + 1];
+        double[] longitudes = new double[PAIRS + 1];
+
+        for (int i = 0; i <= PAIRS; i++) {
+            latitudes[i] = 37.9 + random.nextDouble() * 0.1;
+            longitudes[i] = 23.7 + random.nextDouble() * 0.1;
+        }
+
+        double checksum = 0;
+
+        // Warm up before measuring.
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            checksum += this.distanceRun(latitudes, longitudes, approximate);
+        }
+
+        long start = System.nanoTime();
+        checksum += this.distanceRun(latitudes, longitudes, approximate);
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(checksum > 0);
+
+        return (double) elapsed / PAIRS;
+    }
+
+    private double distanceRun(double[] latitudes, double[] longitudes, boolean approximate) {
+        double sum = 0;
+
+        for (int i = 0; i < PAIRS; i++) {
+            sum += approximate
+                    ? Geodesy.equirectangular(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1])
+                    : Geodesy.haversine(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1]);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Times ranking a long trip track for simplification.
+     *
+     * @return The milliseconds per track.
+     */
+    private double polylineRank() {
+        Random random = new Random(3);
+        double[] longitudes = new double[TRACK_POINTS];
+        double[] latitudes = new double[TRACK_POINTS];
+        double[] ranks = new double[TRACK_POINTS];
+        double heading = 0;
+        longitudes[0] = 23.7;
+        latitudes[0] = 37.9;
+
+        // A random walk that drives mostly straight with occasional turns.
+        for (int i = 1; i < TRACK_POINTS; i++) {
+            if (random.nextInt(100) == 0) {
+                heading += random.nextGaussian() * Math.PI / 2;
+            }
+
+            heading += random.nextGaussian() * 0.02;
+            longitudes[i] = longitudes[i - 1] + Math.cos(heading) * 1e-4;
+            latitudes[i] = latitudes[i - 1] + Math.sin(heading) * 1e-4;
+        }
+
+        // Warm up before measuring.
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            PolylineSimplifier.rank(longitudes, latitudes, TRACK_POINTS, ranks);
+        }
+
+        long start = System.nanoTime();
+
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            PolylineSimplifier.rank(longitudes, latitudes, TRACK_POINTS, ranks);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(Double.isInfinite(ranks[0]));
+
+        return elapsed / 1e6 / WARMUP_RUNS;
+    }
+
+    /**
+     * Times replaying a full flight recorder snapshot.
+     *
+     * @return The nanoseconds per delivered fix.
+     */
+    private double replayDelivery() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(new File(this.folder.getRoot(), "flight"), null);
+
+        for (int i = 0; i < FlightRecorder.CAPACITY; i++) {
+            recorder.recordFix(i * 30L, i * 30L, 37.9, 23.6, i % 40, 4);
+        }
+
+        recorder.write(1, 0);
+
+        ReplayLocationSource source = ReplayLocationSource.fromFile(recorder.getSnapshotFile(1));
+        long[] count = new long[1];
+        FixListener listener = new FixListener() {
+            @Override
+            public void onFix(Fix fix) {
+                count[0]++;
+            }
+
+            @Override
+            public void onAvailabilityChanged(boolean available) {
+                // Not part of the measurement.
+            }
+        };
+        int rounds = 200;
+
+        // Warm up before measuring.
+        for (int i = 0; i < rounds; i++) {
+            source.replay(listener, 0, 0);
+        }
+
+        count[0] = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < rounds; i++) {
+            source.replay(listener, 0, 0);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertEquals((long) rounds * source.getFixCount(), count[0]);
+
+        return (double) elapsed / count[0];
+    }
+
+    /**
+     * Times matching the partial results of a noisy voice command.
+     *
+     * @return The nanoseconds per list of hypotheses.
+     */
+    private double commandMatch() {
+        CommandMatcher matcher = CommandMatcher.createDefault();
+        List<String> hypotheses = Arrays.asList(
+                "please show the map now", "please show them up now", "please so the map now",
+                "peace show the map now", "please show the maps now");
+        int found = 0;
+
+        // Warm up before measuring.
+        for (int i = 0; i < MATCHES; i++) {
+            found += matcher.matchUnambiguous(hypotheses) != null ? 1 : 0;
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < MATCHES; i++) {
+            found += matcher.matchUnambiguous(hypotheses) != null ? 1 : 0;
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertEquals(2 * MATCHES, found);
+
+        return (double) elapsed / MATCHES;
+    }
+
+    /**
+     * Times reading and decoding every row of the violations table.
+     *
+     * @param fixedPoint Whether to use the fixed point schema instead of the legacy one.
+     * @return The nanoseconds per row.
+     */
+    private double decode(boolean fixedPoint) throws IOException, SQLException {
+        File database = this.folder.newFile(fixedPoint ? "fixed.db" : "legacy.db");
+        ViolationGenerator generator = new ViolationGenerator(ROWS, System.currentTimeMillis(), 365);
+        double[] longitudes = new double[ROWS];
+        double[] latitudes = new double[ROWS];
+        float[] speeds = new float[ROWS];
+        long[] timestamps = new long[ROWS];
+
+        for (int i = 0; i < ROWS; i++) {
+            generator.next(i, longitudes, latitudes, speeds, timestamps);
+        }
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath())) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(fixedPoint ? ViolationRecordColumns.CREATE_TABLE : LEGACY_TABLE);
+            }
+
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement insert = connection.prepareStatement(fixedPoint
+                    ? DatabaseHelper.INSERT_VIOLATION
+                    : "INSERT INTO violations(longitude, latitude, speed, timestamp) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    if (fixedPoint) {
+                        insert.setLong(1, ViolationRecordColumns.encodeCoordinate(longitudes[i]));
+                        insert.setLong(2, ViolationRecordColumns.encodeCoordinate(latitudes[i]));
+                        insert.setLong(3, ViolationRecordColumns.encodeSpeed(speeds[i]));
+                        insert.setLong(4, ViolationRecordColumns.encodeTime(timestamps[i]));
+                        insert.setNull(5, Types.INTEGER);
+                    } else {
+                        insert.setDouble(1, longitudes[i]);
+                        insert.setDouble(2, latitudes[i]);
+                        insert.setDouble(3, speeds[i]);
+                        insert.setLong(4, timestamps[i]);
+                    }
+
+                    insert.addBatch();
+                }
+
+                insert.executeBatch();
+            }
+
+            connection.commit();
+            connection.setAutoCommit(true);
+
+            long fastest = Long.MAX_VALUE;
+
+            // Keep the fastest run, measured with a warm JIT and page cache.
+            for (int run = 0; run < 5; run++) {
+                fastest = Math.min(fastest, this.decodeRun(connection, fixedPoint));
+            }
+
+            return (double) fastest / ROWS;
+        }
+    }
+
+    private long decodeRun(Connection connection, boolean fixedPoint) throws SQLException {
+        double checksum = 0;
+        long start = System.nanoTime();
+
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT * FROM violations")) {
+            while (result.next()) {
+                if (fixedPoint) {
+                    checksum += ViolationRecordColumns.decodeCoordinate(result.getLong(2))
+                            + ViolationRecordColumns.decodeCoordinate(result.getLong(3))
+                            + ViolationRecordColumns.decodeSpeed(result.getLong(4))
+                            + ViolationRecordColumns.decodeTime(result.getLong(5));
+                } else {
+                    checksum += result.getDouble(2) + result.getDouble(3)
+                            + result.getFloat(4) + result.getLong(5);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(checksum != 0);
+
+        return elapsed;
+    }
+}
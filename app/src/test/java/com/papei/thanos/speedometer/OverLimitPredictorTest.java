@@ -0,0 +1,136 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the over limit pre alerts on replayed speed traces.
+ */
+public class OverLimitPredictorTest {
+    /**
+     * The time between two fixes of the traces.
+     */
+    private static final long INTERVAL_NANOS = 500_000_000L;
+
+    /**
+     * The time from the alert decision until the beep is heard.
+     */
+    private static final long PLAYBACK_NANOS = 300_000_000L;
+
+    /**
+     * The speed limit of the traces in km/h.
+     */
+    private static final float LIMIT = 50;
+
+    @Test
+    public void preAlert_cutsAlertLagOnAcceleratingTraces() {
+        Random random = new Random(3);
+        double baselineLag = 0;
+        double predictedLag = 0;
+        int traces = 0;
+
+        for (float acceleration = 1; acceleration <= 4; acceleration += 0.5f) {
+            for (int run = 0; run < 20; run++) {
+                // Accelerate from 35 km/h through the limit, with GPS speed noise.
+                float[] trace = new float[120];
+
+                for (int i = 0; i < trace.length; i++) {
+                    float exact = Math.min(35 + acceleration * i * INTERVAL_NANOS / 1e9f, 70);
+                    trace[i] = exact + (float) random.nextGaussian() * 0.7f;
+                }
+
+                long crossing = (long) ((LIMIT - 35) / acceleration * 1e9);
+                long alert = this.firstAlert(trace, new OverLimitPredictor(3_000));
+
+                assertTrue(alert >= 0);
+
+                baselineLag += (this.firstViolation(trace) + PLAYBACK_NANOS - crossing) / 1e9;
+                predictedLag += (Math.min(alert, this.firstViolation(trace)) + PLAYBACK_NANOS - crossing) / 1e9;
+                traces++;
+            }
+        }
+
+        baselineLag /= traces;
+        predictedLag /= traces;
+
+        assertTrue("lag " + baselineLag + " s without and " + predictedLag + " s with prediction",
+                predictedLag < baselineLag - 1);
+    }
+
+    @Test
+    public void steadySpeed_belowLimitDoesNotAlert() {
+        Random random = new Random(4);
+        OverLimitPredictor predictor = new OverLimitPredictor(3_000);
+        int alerts = 0;
+
+        // Ten minutes just under the limit, with GPS speed noise.
+        for (int i = 0; i < 1_200; i++) {
+            float speed = LIMIT - 3 + (float) random.nextGaussian() * 0.7f;
+
+            if (predictor.update(i * INTERVAL_NANOS, Math.min(speed, LIMIT - 0.1f), LIMIT)) {
+                alerts++;
+            }
+        }
+
+        assertTrue("alerts: " + alerts, alerts <= 1);
+    }
+
+    @Test
+    public void preAlert_firesOncePerApproach() {
+        OverLimitPredictor predictor = new OverLimitPredictor(3_000);
+        int alerts = 0;
+        long time = 0;
+
+        // Approach the limit twice, slowing down well below it in between.
+        for (int approach = 0; approach < 2; approach++) {
+            for (float speed = 30; speed < 60; speed += 1) {
+                alerts += predictor.update(time += INTERVAL_NANOS, speed, LIMIT) ? 1 : 0;
+            }
+
+            for (float speed = 60; speed > 30; speed -= 1) {
+                alerts += predictor.update(time += INTERVAL_NANOS, speed, LIMIT) ? 1 : 0;
+            }
+        }
+
+        assertEquals(2, alerts);
+    }
+
+    @Test
+    public void gap_startsOverWithoutAcceleration() {
+        OverLimitPredictor predictor = new OverLimitPredictor(3_000);
+
+        for (int i = 0; i < 10; i++) {
+            predictor.update(i * INTERVAL_NANOS, 20 + 2 * i, LIMIT);
+        }
+
+        assertTrue(predictor.getAcceleration() > 2);
+
+        predictor.update(10 * INTERVAL_NANOS + OverLimitPredictor.MAX_INTERVAL_NANOS + 1, 45, LIMIT);
+
+        assertEquals(0, predictor.getAcceleration(), 0);
+        assertEquals(45, predictor.getProjectedSpeed(), 0);
+    }
+
+    private long firstAlert(float[] trace, OverLimitPredictor predictor) {
+        for (int i = 0; i < trace.length; i++) {
+            if (predictor.update(i * INTERVAL_NANOS, trace[i], LIMIT)) {
+                return i * INTERVAL_NANOS;
+            }
+        }
+
+        return -1;
+    }
+
+    private long firstViolation(float[] trace) {
+        for (int i = 0; i < trace.length; i++) {
+            if (trace[i] >= LIMIT) {
+                return i * INTERVAL_NANOS;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,107 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ranked Douglas-Peucker simplification.
+ */
+public class PolylineSimplifierTest {
+    /**
+     * About four hours of fixes at two per second.
+     */
+    private static final int TRACK_POINTS = 30_000;
+
+    @Test
+    public void select_matchesRecursiveDouglasPeucker() {
+        double[][] track = this.randomTrack(2_000, 1);
+        double[] ranks = new double[2_000];
+        PolylineSimplifier.rank(track[0], track[1], 2_000, ranks);
+
+        for (double tolerance : new double[]{1e-5, 1e-4, 1e-3}) {
+            boolean[] expected = new boolean[2_000];
+            expected[0] = true;
+            expected[1_999] = true;
+            this.simplify(track[0], track[1], 0, 1_999, tolerance, expected);
+
+            for (int i = 0; i < 2_000; i++) {
+                assertEquals("Vertex " + i + " at " + tolerance, expected[i], ranks[i] >= tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void levels_nestAndKeepEndPoints() {
+        double[][] track = this.randomTrack(TRACK_POINTS, 2);
+        TrackLevels levels = new TrackLevels(track[1], track[0], TRACK_POINTS);
+        int previous = 0;
+
+        for (int zoom = TrackLevels.MIN_ZOOM; zoom <= TrackLevels.MAX_ZOOM; zoom++) {
+            int[] level = levels.getLevel(zoom);
+
+            assertEquals(0, level[0]);
+            assertEquals(TRACK_POINTS - 1, level[level.length - 1]);
+            assertTrue(level.length >= previous);
+
+            previous = level.length;
+        }
+
+        // A city-level view needs only a small fraction of the vertices.
+        assertTrue(levels.getLevel(12).length < TRACK_POINTS / 10);
+        assertEquals(TrackLevels.MAX_ZOOM, TrackLevels.levelFor(25));
+        assertEquals(15, TrackLevels.levelFor(14.2f));
+    }
+
+    /**
+     * Creates a random walk that drives mostly straight with occasional turns, in degrees.
+     */
+    private double[][] randomTrack(int count, long seed) {
+        Random random = new Random(seed);
+        double[] longitudes = new double[count];
+        double[] latitudes = new double[count];
+        double heading = 0;
+        longitudes[0] = 23.7;
+        latitudes[0] = 37.9;
+
+        for (int i = 1; i < count; i++) {
+            if (random.nextInt(100) == 0) {
+                heading += random.nextGaussian() * Math.PI / 2;
+            }
+
+            heading += random.nextGaussian() * 0.02;
+
+            // About 10 meters per fix.
+            longitudes[i] = longitudes[i - 1] + Math.cos(heading) * 1e-4;
+            latitudes[i] = latitudes[i - 1] + Math.sin(heading) * 1e-4;
+        }
+
+        return new double[][]{longitudes, latitudes};
+    }
+
+    /**
+     * The textbook recursive Douglas-Peucker, used as the reference.
+     */
+    private void simplify(double[] xs, double[] ys, int first, int last, double tolerance, boolean[] kept) {
+        int farthest = -1;
+        double farthestDistance = -1;
+
+        for (int i = first + 1; i < last; i++) {
+            double distance = Math.sqrt(PolylineSimplifier.segmentDistanceSquared(
+                    xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]));
+
+            if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+
+        if (farthest != -1 && farthestDistance >= tolerance) {
+            kept[farthest] = true;
+            this.simplify(xs, ys, first, farthest, tolerance, kept);
+            this.simplify(xs, ys, farthest, last, tolerance, kept);
+        }
+    }
+}
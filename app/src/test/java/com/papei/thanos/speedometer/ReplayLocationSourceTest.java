@@ -0,0 +1,86 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for replaying flight recorder snapshots through the location source interface.
+ */
+public class ReplayLocationSourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_deliversRecordedFixesRebased() throws IOException {
+        File directory = new File(this.folder.getRoot(), "flight");
+        FlightRecorder recorder = new FlightRecorder(directory, null);
+
+        // Ten fixes one second apart, with an event in between that is not replayed.
+        for (int i = 0; i < 10; i++) {
+            recorder.recordFix(50_000L + i * 1000L, 1_000_000L + i * 1000L, 37.9 + i * 0.001, 23.6, i, 4);
+
+            if (i == 5) {
+                recorder.recordEvent(FlightRecorder.EVENT_VIOLATION, 55_000L, 0);
+            }
+        }
+
+        recorder.write(3, 55_000L);
+
+        ReplayLocationSource source = ReplayLocationSource.fromFile(recorder.getSnapshotFile(3));
+        assertEquals(10, source.getFixCount());
+        assertEquals(1000, source.getUpdateInterval());
+
+        RecordingListener listener = new RecordingListener();
+        source.replay(listener, 7_000_000_000L, 2_000_000L);
+
+        assertEquals(10, listener.count);
+        assertEquals(7_000_000_000L + 9 * 1_000_000_000L, listener.lastNanos);
+        assertEquals(2_000_000L + 9000L, listener.lastTime);
+        assertEquals(37.909, listener.lastLatitude, 1e-9);
+        assertEquals(9, listener.lastSpeed, 0);
+        assertTrue(listener.allHadSpeed);
+
+        // The same fix object is refilled for every delivery.
+        assertTrue(listener.sameInstance);
+    }
+
+    /**
+     * A listener that keeps the last delivered values.
+     */
+    private static final class RecordingListener implements FixListener {
+        int count;
+        long lastNanos;
+        long lastTime;
+        double lastLatitude;
+        float lastSpeed;
+        boolean allHadSpeed = true;
+        boolean sameInstance = true;
+        Fix first;
+
+        @Override
+        public void onFix(Fix fix) {
+            if (this.first == null) {
+                this.first = fix;
+            }
+
+            this.sameInstance &= fix == this.first;
+            this.allHadSpeed &= fix.hasSpeed;
+            this.lastNanos = fix.elapsedRealtimeNanos;
+            this.lastTime = fix.time;
+            this.lastLatitude = fix.latitude;
+            this.lastSpeed = fix.speed;
+            this.count++;
+        }
+
+        @Override
+        public void onAvailabilityChanged(boolean available) {
+            //
+        }
+    }
+}
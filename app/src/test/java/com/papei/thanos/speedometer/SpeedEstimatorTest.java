@@ -0,0 +1,97 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for deriving the speed of fixes without one.
+ */
+public class SpeedEstimatorTest {
+    @Test
+    public void apply_derivesSpeedFromPreviousFix() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        Fix fix = new Fix();
+
+        estimator.apply(this.set(fix, 0, 37.9838, false));
+        assertEquals(0, fix.speed, 0);
+
+        // About 27.8 m/s, or 100 km/h, to the north.
+        double latitude = 37.9838 + Math.toDegrees(27.78 / Geodesy.EARTH_RADIUS_METERS);
+        estimator.apply(this.set(fix, 1_000_000_000L, latitude, false));
+        assertEquals(27.78, fix.speed, 0.01);
+
+        // A fix right after keeps the estimate instead of dividing by a tiny interval.
+        estimator.apply(this.set(fix, 1_100_000_000L, latitude + 1e-5, false));
+        assertEquals(27.78, fix.speed, 0.01);
+
+        // After a long gap there is nothing to compare with.
+        estimator.apply(this.set(fix, 30_000_000_000L, latitude, false));
+        assertEquals(0, fix.speed, 0);
+    }
+
+    @Test
+    public void apply_ignoresPositionNoiseWhenParked() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        Random random = new Random(1);
+        Fix fix = new Fix();
+        float fastest = 0;
+
+        // Two minutes parked, every fix somewhere within its 5 to 10 m accuracy radius.
+        for (int i = 0; i < 120; i++) {
+            double meters = random.nextDouble() * 10;
+            double bearing = random.nextDouble() * 2 * Math.PI;
+
+            this.set(fix, i * 1_000_000_000L, 37.9838 + Math.toDegrees(meters * Math.cos(bearing)
+                    / Geodesy.EARTH_RADIUS_METERS), false);
+            fix.longitude += Math.toDegrees(meters * Math.sin(bearing)
+                    / (Geodesy.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(37.9838))));
+            fix.accuracy = (float) Math.max(meters, 5);
+
+            estimator.apply(fix);
+            fastest = Math.max(fastest, fix.speed);
+        }
+
+        assertEquals(0, fastest, 0);
+    }
+
+    @Test
+    public void apply_keepsSlowSpeedBelowNoise() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        Fix fix = new Fix();
+        double latitude = 37.9838;
+
+        // About 8 m/s to the north, with 5 m accuracy, so one second is within the noise.
+        for (int i = 0; i < 10; i++, latitude += Math.toDegrees(8 / Geodesy.EARTH_RADIUS_METERS)) {
+            this.set(fix, i * 1_000_000_000L, latitude, false);
+            fix.accuracy = 5;
+            estimator.apply(fix);
+        }
+
+        assertEquals(8, fix.speed, 0.1);
+    }
+
+    @Test
+    public void apply_keepsMeasuredSpeed() {
+        SpeedEstimator estimator = new SpeedEstimator();
+        Fix fix = this.set(new Fix(), 0, 37.9838, true);
+        fix.speed = 12.5f;
+
+        estimator.apply(fix);
+
+        assertEquals(12.5f, fix.speed, 0);
+        assertTrue(fix.hasSpeed);
+    }
+
+    private Fix set(Fix fix, long nanos, double latitude, boolean hasSpeed) {
+        fix.elapsedRealtimeNanos = nanos;
+        fix.latitude = latitude;
+        fix.longitude = 23.7275;
+        fix.hasSpeed = hasSpeed;
+        fix.speed = 0;
+
+        return fix;
+    }
+}
@@ -0,0 +1,90 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the rolling speed statistics, replaying synthetic traces.
+ */
+public class SpeedStatisticsTest {
+    @Test
+    public void snapshot_matchesExactStatisticsOfReplayedTrace() {
+        SpeedStatistics statistics = new SpeedStatistics();
+        SpeedStatistics.Snapshot snapshot = new SpeedStatistics.Snapshot();
+        Random random = new Random(42);
+
+        // Replay 20 minutes of fixes every 500 ms.
+        int fixes = 2_400;
+        long[] times = new long[fixes];
+        float[] speeds = new float[fixes];
+
+        for (int i = 0; i < fixes; i++) {
+            times[i] = 1_000_000 + i * 500L;
+            speeds[i] = 40 + random.nextFloat() * 60;
+            statistics.add(times[i], speeds[i], 90);
+        }
+
+        long now = times[fixes - 1];
+
+        for (int window = 0; window < SpeedStatistics.WINDOW_MINUTES.length; window++) {
+            statistics.snapshot(window, now, snapshot);
+
+            // The window covers whole slots up to the newest one.
+            long windowMillis = SpeedStatistics.WINDOW_MINUTES[window] * 60_000L;
+            long firstSlot = now / SpeedStatistics.SLOT_MILLIS - windowMillis / SpeedStatistics.SLOT_MILLIS + 1;
+
+            float[] windowSpeeds = new float[fixes];
+            int count = 0;
+            double sum = 0;
+            float max = 0;
+            long above = 0;
+
+            for (int i = 0; i < fixes; i++) {
+                if (times[i] / SpeedStatistics.SLOT_MILLIS >= firstSlot) {
+                    windowSpeeds[count] = speeds[i];
+                    count++;
+                    sum += speeds[i];
+                    max = Math.max(max, speeds[i]);
+                    above += speeds[i] > 90 ? 500 : 0;
+                }
+            }
+
+            assertEquals(count, snapshot.count);
+            assertEquals(sum / count, snapshot.mean, 0.01);
+            assertEquals(max, snapshot.max, 0);
+            assertEquals(above, snapshot.aboveLimitMillis);
+
+            // The histogram percentile is accurate to the 1 km/h bucket width.
+            float[] sorted = Arrays.copyOf(windowSpeeds, count);
+            Arrays.sort(sorted);
+            float p95 = sorted[(int) Math.ceil(count * 0.95) - 1];
+            assertEquals(p95, snapshot.p95, 1);
+        }
+    }
+
+    @Test
+    public void snapshot_expiresOldFixes() {
+        SpeedStatistics statistics = new SpeedStatistics();
+        SpeedStatistics.Snapshot snapshot = new SpeedStatistics.Snapshot();
+
+        statistics.add(0, 120, 50);
+        statistics.add(1_000, 120, 50);
+
+        statistics.snapshot(0, 1_000, snapshot);
+        assertEquals(2, snapshot.count);
+        assertEquals(1_000, snapshot.aboveLimitMillis);
+
+        // After two minutes the fixes have left the 1 minute window only.
+        statistics.snapshot(0, 120_000, snapshot);
+        assertEquals(0, snapshot.count);
+        assertEquals(0, snapshot.max, 0);
+
+        statistics.snapshot(1, 120_000, snapshot);
+        assertEquals(2, snapshot.count);
+        assertEquals(120, snapshot.max, 0);
+    }
+}
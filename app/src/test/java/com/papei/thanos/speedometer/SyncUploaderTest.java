@@ -0,0 +1,198 @@
+package com.papei.thanos.speedometer;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the violation uploader, run against a local stand-in HTTP server.
+ */
+public class SyncUploaderTest {
+    private HttpServer server;
+    private ScheduledExecutorService executor;
+    private final BlockingQueue<String[]> requests = new LinkedBlockingQueue<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int failureStatus = 503;
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/violations", exchange -> {
+            String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            String body = read(new GZIPInputStream(exchange.getRequestBody()));
+            this.requests.add(new String[]{key, encoding, body});
+
+            // Fail the requested number of uploads before accepting them.
+            int status = this.failures.getAndDecrement() > 0 ? this.failureStatus : 200;
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        this.server.start();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+        this.server.stop(0);
+    }
+
+    @Test
+    public void flush_uploadsBatchesAndAcknowledgesThem() throws Exception {
+        MemoryOutbox outbox = new MemoryOutbox(250);
+        SyncUploader uploader = this.createUploader(outbox);
+
+        uploader.flush();
+
+        // 250 violations make two full batches and a partial one.
+        int[] sizes = {100, 100, 50};
+
+        for (int size : sizes) {
+            String[] request = this.requests.poll(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            assertEquals("gzip", request[1]);
+            assertEquals(size, count(request[2], "\"id\":"));
+            assertTrue(request[2].startsWith("{\"device\":\"device\",\"violations\":["));
+        }
+
+        this.awaitEmpty(outbox);
+    }
+
+    @Test
+    public void flush_retriesWithSameIdempotencyKey() throws Exception {
+        this.failures.set(2);
+        MemoryOutbox outbox = new MemoryOutbox(3);
+        SyncUploader uploader = this.createUploader(outbox);
+
+        uploader.flush();
+
+        String first = this.requests.poll(5, TimeUnit.SECONDS)[0];
+        assertEquals("device-1-3", first);
+        assertEquals(first, this.requests.poll(5, TimeUnit.SECONDS)[0]);
+        assertEquals(first, this.requests.poll(5, TimeUnit.SECONDS)[0]);
+
+        this.awaitEmpty(outbox);
+    }
+
+    @Test
+    public void flush_dropsRejectedBatchWithoutRetrying() throws Exception {
+        this.failureStatus = 400;
+        this.failures.set(Integer.MAX_VALUE);
+        MemoryOutbox outbox = new MemoryOutbox(3);
+        SyncUploader uploader = this.createUploader(outbox);
+
+        uploader.flush();
+
+        assertNotNull(this.requests.poll(5, TimeUnit.SECONDS));
+        this.awaitEmpty(outbox);
+        assertNull(this.requests.poll(200, TimeUnit.MILLISECONDS));
+
+        // Timeouts, conflicts and rate limits are still retried.
+        assertTrue(SyncUploader.isRejected(422));
+        assertFalse(SyncUploader.isRejected(408));
+        assertFalse(SyncUploader.isRejected(429));
+        assertFalse(SyncUploader.isRejected(503));
+    }
+
+    @Test
+    public void encode_batchesUseFewerBytesPerViolation() throws IOException {
+        List<SyncBatch.Entry> entries = new MemoryOutbox(SyncUploader.BATCH_SIZE).read(SyncUploader.BATCH_SIZE);
+
+        int single = 0;
+
+        for (SyncBatch.Entry entry : entries) {
+            single += SyncBatch.encode("device", Collections.singletonList(entry)).length;
+        }
+
+        int batch = SyncBatch.encode("device", entries).length;
+
+        assertTrue("single " + single + " bytes, batched " + batch + " bytes", batch * 2 < single);
+    }
+
+    private SyncUploader createUploader(MemoryOutbox outbox) {
+        URL url;
+
+        try {
+            url = new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/violations");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        return new SyncUploader(outbox, new HttpSyncTransport(url), "device", this.executor, 10);
+    }
+
+    private void awaitEmpty(MemoryOutbox outbox) throws InterruptedException {
+        for (int i = 0; i < 100 && !outbox.read(1).isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(outbox.read(1).isEmpty());
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+
+        return count;
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An outbox kept in memory, filled with violations around Athens.
+     */
+    private static final class MemoryOutbox implements SyncUploader.Outbox {
+        private final List<SyncBatch.Entry> entries = new ArrayList<>();
+
+        MemoryOutbox(int count) {
+            for (int i = 1; i <= count; i++) {
+                this.entries.add(new SyncBatch.Entry(i, 1000 + i, 23.7275 + i * 1e-4, 37.9838 - i * 1e-4,
+                        15 + i % 7, 1_570_000_000_000L + i * 60_000L));
+            }
+        }
+
+        @Override
+        public synchronized List<SyncBatch.Entry> read(int limit) {
+            return new ArrayList<>(this.entries.subList(0, Math.min(limit, this.entries.size())));
+        }
+
+        @Override
+        public synchronized void acknowledge(long outboxId) {
+            this.entries.removeIf(entry -> entry.outboxId <= outboxId);
+        }
+    }
+}
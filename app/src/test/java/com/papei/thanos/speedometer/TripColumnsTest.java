@@ -0,0 +1,66 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the trip statements, run on SQLite.
+ */
+public class TripColumnsTest {
+    @Test
+    public void closeAbandoned_endsAtLastTrackPoint() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(ViolationRecordColumns.CREATE_TABLE);
+                statement.execute(TripColumns.CREATE_TABLE);
+                statement.execute(TrackPointColumns.CREATE_TABLE);
+
+                // A trip whose last violation was long before its last track point.
+                statement.execute("INSERT INTO trips(start_time) VALUES (1000000)");
+                statement.execute("INSERT INTO violations(longitude_e7, latitude_e7, speed_centi_kmh, time_s, trip_id) " +
+                        "VALUES (237000000, 379000000, 9000, 1100, 1)");
+                statement.execute("INSERT INTO track_points(trip_id, latitude, longitude, timestamp) " +
+                        "VALUES (1, 37.9, 23.7, 1000000), (1, 38.0, 23.7, 1900000)");
+
+                // A trip with no track points or violations.
+                statement.execute("INSERT INTO trips(start_time) VALUES (2000000)");
+            }
+
+            for (long tripId = 1; tripId <= 2; tripId++) {
+                try (PreparedStatement close = connection.prepareStatement(TripColumns.CLOSE_ABANDONED)) {
+                    close.setDouble(1, tripId == 1 ? 11_100 : 0);
+                    close.setLong(2, tripId);
+                    close.executeUpdate();
+                }
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT * FROM trips ORDER BY _id")) {
+                assertTrue(result.next());
+                assertEquals(1_900_000, result.getLong(TripColumns.END_TIME));
+                assertEquals(900_000, result.getLong(TripColumns.DURATION));
+                assertEquals(11_100, result.getDouble(TripColumns.DISTANCE), 0);
+                assertEquals(1, result.getInt(TripColumns.VIOLATION_COUNT));
+
+                assertTrue(result.next());
+                assertEquals(2_000_000, result.getLong(TripColumns.END_TIME));
+                assertEquals(0, result.getLong(TripColumns.DURATION));
+            }
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(TripColumns.SELECT_LATEST_ID)) {
+                assertTrue(result.next());
+                assertEquals(2, result.getLong(1));
+                assertFalse(result.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for splitting a stream of fixes into trips.
+ */
+public class TripSegmenterTest {
+    /**
+     * About 10 meters of latitude in degrees.
+     */
+    private static final double TEN_METERS = 10 / 111_195.0;
+
+    @Test
+    public void add_splitsTripsAtStops() {
+        List<long[]> trips = new ArrayList<>();
+        List<Double> distances = new ArrayList<>();
+        int[] starts = {0};
+
+        TripSegmenter segmenter = new TripSegmenter(new TripSegmenter.Listener() {
+            @Override
+            public void onTripStarted(long startTime) {
+                starts[0]++;
+            }
+
+            @Override
+            public void onTripEnded(long startTime, long endTime, double distance) {
+                trips.add(new long[]{startTime, endTime});
+                distances.add(distance);
+            }
+        });
+
+        long time = 0;
+        double latitude = 37.9;
+
+        // Parked for a minute, GPS jitter only.
+        for (int i = 0; i < 60; i++, time += 1000) {
+            segmenter.add(time, latitude + (i % 2) * TEN_METERS, 23.7);
+        }
+
+        assertEquals(0, starts[0]);
+        long departure = time - 1000;
+
+        // Drive north at 10 m/s for 100 seconds.
+        for (int i = 0; i < 100; i++, time += 1000) {
+            latitude += TEN_METERS;
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        assertEquals(1, starts[0]);
+        assertTrue(segmenter.isInTrip());
+        long arrival = time - 1000;
+
+        // A short stop at a traffic light does not end the trip.
+        for (int i = 0; i < 60; i++, time += 1000) {
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        assertTrue(segmenter.isInTrip());
+
+        // Parked long enough to end the trip.
+        for (int i = 0; i < 200; i++, time += 1000) {
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        assertFalse(segmenter.isInTrip());
+        assertEquals(1, trips.size());
+        // The start is detected once the device leaves the stop radius, five fixes in.
+        assertEquals(departure + 4000, trips.get(0)[0]);
+        assertEquals(arrival, trips.get(0)[1]);
+        assertEquals(950, distances.get(0), 15);
+
+        // Drive again and stop updates in the middle of the trip.
+        for (int i = 0; i < 20; i++, time += 1000) {
+            latitude += TEN_METERS;
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        segmenter.finish();
+
+        assertEquals(2, starts[0]);
+        assertEquals(2, trips.size());
+        assertEquals(time - 1000, trips.get(1)[1]);
+        assertEquals(150, distances.get(1), 15);
+    }
+
+    @Test
+    public void add_keepsTripAcrossShortPausesOnly() {
+        List<long[]> trips = new ArrayList<>();
+
+        TripSegmenter segmenter = new TripSegmenter(new TripSegmenter.Listener() {
+            @Override
+            public void onTripStarted(long startTime) {
+                //
+            }
+
+            @Override
+            public void onTripEnded(long startTime, long endTime, double distance) {
+                trips.add(new long[]{startTime, endTime});
+            }
+        });
+
+        long time = 0;
+        double latitude = 37.9;
+
+        for (int i = 0; i < 20; i++, time += 1000) {
+            latitude += TEN_METERS;
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        // Updates stop for a minute, then continue further along the road.
+        time += 60_000;
+
+        for (int i = 0; i < 20; i++, time += 1000) {
+            latitude += TEN_METERS;
+            segmenter.add(time, latitude, 23.7);
+        }
+
+        assertTrue(segmenter.isInTrip());
+        assertTrue(trips.isEmpty());
+        long lastFix = time - 1000;
+
+        // A gap longer than a stop ends the trip at the fix before it.
+        time += TripSegmenter.DWELL_MILLIS;
+        segmenter.add(time, latitude + 100 * TEN_METERS, 23.7);
+
+        assertFalse(segmenter.isInTrip());
+        assertEquals(1, trips.size());
+        assertEquals(lastFix, trips.get(0)[1]);
+    }
+}
@@ -0,0 +1,290 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load and query benchmarks of the violation database, run against the app schema and
+ * queries on SQLite. Skipped unless the row counts are given, for example with
+ * {@code -Dbenchmark.rows=10000,100000,1000000}. The results are written as JSON to
+ * {@code build/reports/benchmark/violations.json}, or to the {@code benchmark.report} path.
+ */
+public class ViolationBenchmarkTest {
+    /**
+     * The number of rows inserted with one commit each, like the app does.
+     */
+    private static final int SINGLE_INSERT_ROWS = 10_000;
+
+    /**
+     * The number of rows per transaction when loading the remaining rows.
+     */
+    private static final int BATCH_SIZE = 10_000;
+
+    /**
+     * The number of timed runs of every query.
+     */
+    private static final int QUERY_RUNS = 5;
+
+    /**
+     * The number of days covered by the synthetic violations.
+     */
+    private static final int DAYS = 730;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void benchmark() throws Exception {
+        String rows = System.getProperty("benchmark.rows", "");
+        Assume.assumeFalse("Set benchmark.rows to run the benchmark", rows.isEmpty());
+
+        StringBuilder report = new StringBuilder();
+        report.append("{\n  \"sqlite\": \"").append(this.sqliteVersion()).append("\",\n");
+        report.append("  \"runs\": [");
+
+        String[] counts = rows.split(",");
+
+        for (int i = 0; i < counts.length; i++) {
+            report.append(i == 0 ? "\n" : ",\n");
+            report.append(this.run(Integer.parseInt(counts[i].trim())));
+        }
+
+        report.append("\n  ]\n}\n");
+
+        File file = new File(System.getProperty("benchmark.report", "build/reports/benchmark/violations.json"));
+        File parent = file.getAbsoluteFile().getParentFile();
+        assertTrue(parent.isDirectory() || parent.mkdirs());
+
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(report.toString());
+        }
+    }
+
+    private String run(int rows) throws SQLException, IOException {
+        File database = this.folder.newFile("violations-" + rows + ".db");
+        long now = System.currentTimeMillis();
+
+        // Generate the dataset up front, so its cost is not part of the insert timings.
+        double[] longitudes = new double[rows];
+        double[] latitudes = new double[rows];
+        float[] speeds = new float[rows];
+        long[] timestamps = new long[rows];
+
+        ViolationGenerator generator = new ViolationGenerator(rows, now, DAYS);
+
+        for (int i = 0; i < rows; i++) {
+            generator.next(i, longitudes, latitudes, speeds, timestamps);
+        }
+
+        // Insert in time order, like violations are recorded.
+        Integer[] order = new Integer[rows];
+
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath())) {
+            try (Statement statement = connection.createStatement()) {
+                // Match the journal settings of the app connection.
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute(ViolationRecordColumns.CREATE_TABLE);
+
+                for (String index : ViolationRecordColumns.CREATE_INDICES) {
+                    statement.execute(index);
+                }
+
+                statement.execute(ViolationRecordColumns.CREATE_TRIP_INDEX);
+            }
+
+            int single = Math.min(rows, SINGLE_INSERT_ROWS);
+            long singleNanos;
+            long batchNanos;
+
+            try (PreparedStatement insert = connection.prepareStatement(DatabaseHelper.INSERT_VIOLATION)) {
+                long start = System.nanoTime();
+
+                for (int i = 0; i < single; i++) {
+                    this.bind(insert, order[i], longitudes, latitudes, speeds, timestamps);
+                    insert.executeUpdate();
+                }
+
+                singleNanos = System.nanoTime() - start;
+
+                connection.setAutoCommit(false);
+                start = System.nanoTime();
+
+                for (int i = single; i < rows; i++) {
+                    this.bind(insert, order[i], longitudes, latitudes, speeds, timestamps);
+                    insert.addBatch();
+
+                    if ((i - single + 1) % BATCH_SIZE == 0 || i == rows - 1) {
+                        insert.executeBatch();
+                        connection.commit();
+                    }
+                }
+
+                batchNanos = System.nanoTime() - start;
+                connection.setAutoCommit(true);
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+
+            ViolationQuery lastWeek = DatabaseHelper.lastWeekQuery(now - TimeUnit.DAYS.toMillis(7));
+
+            QueryResult all = this.time(connection, DatabaseHelper.ALL_VIOLATIONS);
+            QueryResult week = this.time(connection, lastWeek);
+
+            assertEquals(rows, all.rows);
+
+            return String.format(Locale.US, "    {\n"
+                            + "      \"rows\": %d,\n"
+                            + "      \"single_insert_rows_per_second\": %.1f,\n"
+                            + "      \"batch_insert_rows_per_second\": %.1f,\n"
+                            + "      \"get_violations\": %s,\n"
+                            + "      \"get_last_week_violations\": %s,\n"
+                            + "      \"database_bytes\": %d,\n"
+                            + "      \"bytes_per_row\": %.1f\n"
+                            + "    }",
+                    rows,
+                    single / (singleNanos / 1e9),
+                    rows > single ? (rows - single) / (batchNanos / 1e9) : 0.0,
+                    all.toJson(),
+                    week.toJson(),
+                    database.length(),
+                    (double) database.length() / rows);
+        }
+    }
+
+    private void bind(PreparedStatement insert, int index, double[] longitudes, double[] latitudes,
+                      float[] speeds, long[] timestamps) throws SQLException {
+        insert.setLong(1, ViolationRecordColumns.encodeCoordinate(longitudes[index]));
+        insert.setLong(2, ViolationRecordColumns.encodeCoordinate(latitudes[index]));
+        insert.setLong(3, ViolationRecordColumns.encodeSpeed(speeds[index]));
+        insert.setLong(4, ViolationRecordColumns.encodeTime(timestamps[index]));
+        insert.setNull(5, Types.INTEGER);
+    }
+
+    private QueryResult time(Connection connection, ViolationQuery query) throws SQLException {
+        QueryResult result = new QueryResult();
+        long[] nanos = new long[QUERY_RUNS];
+
+        for (int run = 0; run < QUERY_RUNS; run++) {
+            System.gc();
+            this.resetPeakHeap();
+            long heapBefore = this.usedHeap();
+            long start = System.nanoTime();
+
+            // Materialize every row like the app does for its adapters.
+            List<double[]> records = new ArrayList<>();
+
+            try (PreparedStatement statement = connection.prepareStatement(query.getSql())) {
+                String[] args = query.getArgs();
+
+                for (int i = 0; i < args.length; i++) {
+                    statement.setString(i + 1, args[i]);
+                }
+
+                try (ResultSet cursor = statement.executeQuery()) {
+                    while (cursor.next()) {
+                        records.add(new double[]{
+                                cursor.getLong(ViolationRecordColumns._ID),
+                                ViolationRecordColumns.decodeCoordinate(cursor.getLong(ViolationRecordColumns.LONGITUDE)),
+                                ViolationRecordColumns.decodeCoordinate(cursor.getLong(ViolationRecordColumns.LATITUDE)),
+                                ViolationRecordColumns.decodeSpeed(cursor.getLong(ViolationRecordColumns.SPEED)),
+                                ViolationRecordColumns.decodeTime(cursor.getLong(ViolationRecordColumns.TIMESTAMP))
+                        });
+                    }
+                }
+            }
+
+            nanos[run] = System.nanoTime() - start;
+            result.rows = records.size();
+            result.peakHeapBytes = Math.max(result.peakHeapBytes, this.peakHeap() - heapBefore);
+        }
+
+        result.firstMillis = nanos[0] / 1e6;
+        Arrays.sort(nanos);
+        result.medianMillis = nanos[QUERY_RUNS / 2] / 1e6;
+
+        return result;
+    }
+
+    private void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private long peakHeap() {
+        long peak = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+
+        return peak;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private String sqliteVersion() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT sqlite_version()")) {
+            return result.next() ? result.getString(1) : "unknown";
+        }
+    }
+
+    /**
+     * The timings of one query.
+     */
+    private static final class QueryResult {
+        int rows;
+        double firstMillis;
+        double medianMillis;
+        long peakHeapBytes;
+
+        String toJson() {
+            return String.format(Locale.US,
+                    "{\"rows\": %d, \"first_ms\": %.2f, \"median_ms\": %.2f, \"peak_heap_bytes\": %d}",
+                    this.rows, this.firstMillis, this.medianMillis, this.peakHeapBytes);
+        }
+    }
+}
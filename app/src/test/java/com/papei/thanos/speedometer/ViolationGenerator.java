@@ -0,0 +1,125 @@
+package com.papei.thanos.speedometer;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates synthetic violations with realistic spatial and temporal distributions.
+ * Most violations cluster around a few city hotspots, with more of them on weekdays
+ * and during commuting hours, and speeds a little above common urban limits.
+ */
+final class ViolationGenerator {
+    /**
+     * The hotspot centers as latitude and longitude pairs.
+     */
+    private static final double[][] HOTSPOTS = {
+            {37.9838, 23.7275},
+            {40.6401, 22.9444},
+            {38.2466, 21.7346},
+            {35.3387, 25.1442},
+            {39.6650, 20.8537}
+    };
+
+    /**
+     * The relative weight of every hour of the day.
+     */
+    private static final double[] HOUR_WEIGHTS = {
+            1, 1, 1, 1, 1, 2, 4, 9, 10, 6, 4, 4, 5, 5, 5, 6, 8, 10, 9, 6, 4, 3, 2, 1
+    };
+
+    /**
+     * The fraction of violations outside of any hotspot.
+     */
+    private static final double BACKGROUND_FRACTION = 0.1;
+
+    /**
+     * The random source, seeded for repeatable datasets.
+     */
+    private final Random random;
+
+    /**
+     * The timestamp of the newest violation in milliseconds.
+     */
+    private final long now;
+
+    /**
+     * The time span covered by the violations in milliseconds.
+     */
+    private final long span;
+
+    /**
+     * The cumulative hour weights used for sampling.
+     */
+    private final double[] hourCumulative = new double[HOUR_WEIGHTS.length];
+
+    /**
+     * Default constructor.
+     *
+     * @param seed The random seed.
+     * @param now The timestamp of the newest violation in milliseconds.
+     * @param days The number of days covered by the violations.
+     */
+    ViolationGenerator(long seed, long now, int days) {
+        this.random = new Random(seed);
+        this.now = now;
+        this.span = TimeUnit.DAYS.toMillis(days);
+
+        double total = 0;
+
+        for (int i = 0; i < HOUR_WEIGHTS.length; i++) {
+            total += HOUR_WEIGHTS[i];
+            this.hourCumulative[i] = total;
+        }
+    }
+
+    /**
+     * Fills the next violation into the output arrays.
+     *
+     * @param index The index to fill.
+     * @param longitudes The longitude of every violation.
+     * @param latitudes The latitude of every violation.
+     * @param speeds The speed of every violation in m/s.
+     * @param timestamps The timestamp of every violation in milliseconds.
+     */
+    void next(int index, double[] longitudes, double[] latitudes, float[] speeds, long[] timestamps) {
+        if (this.random.nextDouble() < BACKGROUND_FRACTION) {
+            // Anywhere in mainland Greece and the islands.
+            latitudes[index] = 35 + this.random.nextDouble() * 6.5;
+            longitudes[index] = 20 + this.random.nextDouble() * 6;
+        } else {
+            // Around a hotspot, with a spread of a few kilometers.
+            double[] hotspot = HOTSPOTS[this.random.nextInt(HOTSPOTS.length)];
+            latitudes[index] = hotspot[0] + this.random.nextGaussian() * 0.03;
+            longitudes[index] = hotspot[1] + this.random.nextGaussian() * 0.04;
+        }
+
+        // A common limit plus a long tail of excess speed, in km/h.
+        int[] limits = {30, 50, 50, 70, 90};
+        double kmSpeed = limits[this.random.nextInt(limits.length)] + Math.exp(1.5 + this.random.nextGaussian() * 0.7);
+        speeds[index] = (float) (kmSpeed / 3.6);
+
+        timestamps[index] = this.nextTimestamp();
+    }
+
+    private long nextTimestamp() {
+        long dayMillis = TimeUnit.DAYS.toMillis(1);
+        long day;
+
+        do {
+            day = (long) (this.random.nextDouble() * (this.span / dayMillis));
+
+            // Keep only half of the weekend days.
+        } while (day % 7 >= 5 && this.random.nextBoolean());
+
+        double sample = this.random.nextDouble() * this.hourCumulative[HOUR_WEIGHTS.length - 1];
+        int hour = 0;
+
+        while (this.hourCumulative[hour] < sample) {
+            hour++;
+        }
+
+        long offset = TimeUnit.HOURS.toMillis(hour) + (long) (this.random.nextDouble() * TimeUnit.HOURS.toMillis(1));
+
+        return this.now - this.span + day * dayMillis + offset;
+    }
+}
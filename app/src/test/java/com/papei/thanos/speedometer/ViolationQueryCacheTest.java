@@ -0,0 +1,142 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the in-memory violation query cache.
+ */
+public class ViolationQueryCacheTest {
+    /**
+     * Newest first, the order of the all time records.
+     */
+    private static final Comparator<DatabaseHelper.ViolationRecord> NEWEST_FIRST =
+            Comparator.comparingLong(DatabaseHelper.ViolationRecord::getTimestamp)
+                    .thenComparingLong(DatabaseHelper.ViolationRecord::getId)
+                    .reversed();
+
+    @Test
+    public void put_returnsCopiesOfTheCachedResult() {
+        ViolationQueryCache cache = new ViolationQueryCache(1 << 20);
+
+        assertNull(cache.get("all"));
+
+        cache.put("all", cache.getVersion(), records(3, 2, 1), record -> true, NEWEST_FIRST, 0);
+        List<DatabaseHelper.ViolationRecord> first = cache.get("all");
+        first.clear();
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), ids(cache.get("all")));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void onInsert_addsMatchingRecordsInOrder() {
+        ViolationQueryCache cache = new ViolationQueryCache(1 << 20);
+
+        cache.put("all", cache.getVersion(), records(5, 3, 1), record -> true, NEWEST_FIRST, 0);
+        cache.put("fast", cache.getVersion(), new ArrayList<>(), record -> record.getSpeed() > 30, NEWEST_FIRST, 0);
+
+        cache.onInsert(record(4));
+
+        assertEquals(Arrays.asList(5L, 4L, 3L, 1L), ids(cache.get("all")));
+        assertTrue(cache.get("fast").isEmpty());
+    }
+
+    @Test
+    public void onInsert_keepsLimitedResultsAtTheirLimit() {
+        ViolationQueryCache cache = new ViolationQueryCache(1 << 20);
+
+        cache.put("top", cache.getVersion(), records(5, 3), record -> true, NEWEST_FIRST, 2);
+        cache.onInsert(record(6));
+
+        assertEquals(Arrays.asList(6L, 5L), ids(cache.get("top")));
+    }
+
+    @Test
+    public void put_skipsResultsReadBeforeAnInsert() {
+        ViolationQueryCache cache = new ViolationQueryCache(1 << 20);
+
+        // The query ran before the insert, so its result misses the new record.
+        long version = cache.getVersion();
+        cache.onInsert(record(2));
+        cache.put("all", version, records(1), record -> true, NEWEST_FIRST, 0);
+
+        assertNull(cache.get("all"));
+    }
+
+    @Test
+    public void onInsert_skipsRecordsAlreadyReadByTheQuery() {
+        ViolationQueryCache cache = new ViolationQueryCache(1 << 20);
+
+        // The query read the committed record and was cached before the insert was reported.
+        long version = cache.getVersion();
+        cache.put("all", version, records(2, 1), record -> true, NEWEST_FIRST, 0);
+        cache.onInsert(record(2));
+
+        assertEquals(Arrays.asList(2L, 1L), ids(cache.get("all")));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedResults() {
+        // Room for three records of about 64 bytes.
+        ViolationQueryCache cache = new ViolationQueryCache(200);
+
+        cache.put("a", cache.getVersion(), records(1), record -> true, NEWEST_FIRST, 0);
+        cache.put("b", cache.getVersion(), records(2), record -> true, NEWEST_FIRST, 0);
+        cache.get("a");
+        cache.put("c", cache.getVersion(), records(4, 3), record -> true, NEWEST_FIRST, 0);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void removeIf_trimsTheCachedResult() {
+        // Room for three records of about 64 bytes.
+        ViolationQueryCache cache = new ViolationQueryCache(200);
+
+        cache.put("week", cache.getVersion(), records(3, 2, 1), record -> true, NEWEST_FIRST, 0);
+        cache.removeIf("week", record -> record.getId() < 3);
+        cache.removeIf("missing", record -> true);
+
+        assertEquals(Arrays.asList(3L), ids(cache.get("week")));
+
+        // The removed records no longer count towards the size limit.
+        cache.put("other", cache.getVersion(), records(5, 4), record -> true, NEWEST_FIRST, 0);
+
+        assertNotNull(cache.get("week"));
+    }
+
+    private static List<DatabaseHelper.ViolationRecord> records(long... ids) {
+        List<DatabaseHelper.ViolationRecord> records = new ArrayList<>();
+
+        for (long id : ids) {
+            records.add(record(id));
+        }
+
+        return records;
+    }
+
+    private static DatabaseHelper.ViolationRecord record(long id) {
+        // Later IDs are newer, with a speed that grows with the ID.
+        return new DatabaseHelper.ViolationRecord(id, 23.7275, 37.9838, 10 + id, 1_570_000_000_000L + id * 1_000);
+    }
+
+    private static List<Long> ids(List<DatabaseHelper.ViolationRecord> records) {
+        List<Long> ids = new ArrayList<>();
+
+        for (DatabaseHelper.ViolationRecord record : records) {
+            ids.add(record.getId());
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,187 @@
+package com.papei.thanos.speedometer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the violation query builder, run against the app schema on SQLite.
+ */
+public class ViolationQueryTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        this.connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+
+        try (Statement statement = this.connection.createStatement()) {
+            statement.execute(ViolationRecordColumns.CREATE_TABLE);
+
+            for (String index : ViolationRecordColumns.CREATE_INDICES) {
+                statement.execute(index);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        this.connection.close();
+    }
+
+    @Test
+    public void timeRange_usesTimestampIndex() throws SQLException {
+        ViolationQuery query = new ViolationQuery.Builder().since(1000).build();
+
+        String plan = this.explain(query);
+        assertTrue(plan, plan.contains(ViolationRecordColumns.INDEX_TIMESTAMP));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void speedRange_usesSpeedIndex() throws SQLException {
+        ViolationQuery query = new ViolationQuery.Builder()
+                .speedBetween(20, 40)
+                .orderBy(ViolationQuery.Order.SPEED, true)
+                .build();
+
+        String plan = this.explain(query);
+        assertTrue(plan, plan.contains(ViolationRecordColumns.INDEX_SPEED));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void boundingBox_usesLocationIndex() throws SQLException {
+        ViolationQuery query = new ViolationQuery.Builder()
+                .within(37.9, 23.6, 38.1, 23.8)
+                .build();
+
+        String plan = this.explain(query);
+        assertTrue(plan, plan.contains(ViolationRecordColumns.INDEX_LOCATION));
+    }
+
+    @Test
+    public void speedOrder_scansSpeedIndex() throws SQLException {
+        ViolationQuery query = new ViolationQuery.Builder()
+                .orderBy(ViolationQuery.Order.SPEED, false)
+                .limit(10)
+                .build();
+
+        String plan = this.explain(query);
+        assertTrue(plan, plan.contains(ViolationRecordColumns.INDEX_SPEED));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void combinedFilters_returnOnlyMatchingRows() throws SQLException {
+        String insert = "INSERT INTO " + ViolationRecordColumns.TABLE_NAME + "(" +
+                ViolationRecordColumns.LONGITUDE + ", " +
+                ViolationRecordColumns.LATITUDE + ", " +
+                ViolationRecordColumns.SPEED + ", " +
+                ViolationRecordColumns.TIMESTAMP + ") VALUES (?, ?, ?, ?)";
+
+        double[][] rows = {
+                {23.70, 38.00, 25, 1000},
+                {23.70, 38.00, 35, 2000},
+                {23.70, 38.00, 45, 3000},
+                {25.00, 38.00, 35, 4000},
+                {23.70, 38.00, 30, 5000},
+        };
+
+        try (PreparedStatement statement = this.connection.prepareStatement(insert)) {
+            for (double[] row : rows) {
+                statement.setLong(1, ViolationRecordColumns.encodeCoordinate(row[0]));
+                statement.setLong(2, ViolationRecordColumns.encodeCoordinate(row[1]));
+                statement.setLong(3, ViolationRecordColumns.encodeSpeed(row[2]));
+                statement.setLong(4, ViolationRecordColumns.encodeTime((long) row[3]));
+                statement.executeUpdate();
+            }
+        }
+
+        ViolationQuery query = new ViolationQuery.Builder()
+                .speedBetween(30, 40)
+                .timeBetween(1500, 6000)
+                .within(37.9, 23.6, 38.1, 23.8)
+                .orderBy(ViolationQuery.Order.SPEED, true)
+                .build();
+
+        List<Long> ids = new ArrayList<>();
+
+        try (PreparedStatement statement = this.prepare(query.getSql(), query.getArgs());
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                long id = result.getLong(ViolationRecordColumns._ID);
+                ids.add(id);
+
+                assertTrue(query.matches(
+                        ViolationRecordColumns.decodeCoordinate(result.getLong(ViolationRecordColumns.LONGITUDE)),
+                        ViolationRecordColumns.decodeCoordinate(result.getLong(ViolationRecordColumns.LATITUDE)),
+                        ViolationRecordColumns.decodeSpeed(result.getLong(ViolationRecordColumns.SPEED)),
+                        ViolationRecordColumns.decodeTime(result.getLong(ViolationRecordColumns.TIMESTAMP))));
+            }
+        }
+
+        assertEquals(2, ids.size());
+        assertEquals(Long.valueOf(2), ids.get(0));
+        assertEquals(Long.valueOf(5), ids.get(1));
+
+        assertFalse(query.matches(25.00, 38.00, 35, 4000));
+    }
+
+    @Test
+    public void selectAfter_returnsNewestInOrder() throws SQLException {
+        try (Statement statement = this.connection.createStatement()) {
+            for (int i = 0; i < 6; i++) {
+                statement.execute("INSERT INTO " + ViolationRecordColumns.TABLE_NAME +
+                        "(longitude_e7, latitude_e7, speed_centi_kmh, time_s) VALUES (0, 0, 0, " + i + ")");
+            }
+        }
+
+        List<Long> ids = new ArrayList<>();
+
+        // Bound as strings, like the arguments of a raw query.
+        try (PreparedStatement statement = this.prepare(ViolationRecordColumns.SELECT_AFTER, new String[]{"2", "3"});
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                ids.add(result.getLong(ViolationRecordColumns._ID));
+            }
+        }
+
+        assertEquals(3, ids.size());
+        assertEquals(Long.valueOf(4), ids.get(0));
+        assertEquals(Long.valueOf(6), ids.get(2));
+    }
+
+    private String explain(ViolationQuery query) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+
+        try (PreparedStatement statement = this.prepare("EXPLAIN QUERY PLAN " + query.getSql(), query.getArgs());
+             ResultSet result = statement.executeQuery()) {
+            while (result.next()) {
+                plan.append(result.getString("detail")).append('\n');
+            }
+        }
+
+        return plan.toString();
+    }
+
+    private PreparedStatement prepare(String sql, String[] args) throws SQLException {
+        PreparedStatement statement = this.connection.prepareStatement(sql);
+
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+
+        return statement;
+    }
+}